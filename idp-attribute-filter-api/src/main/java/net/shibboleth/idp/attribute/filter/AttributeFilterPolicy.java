@@ -17,10 +17,13 @@
 
 package net.shibboleth.idp.attribute.filter;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -62,6 +65,9 @@ public final class AttributeFilterPolicy extends AbstractIdentifiedInitializable
     /** Filters to be used on attribute values. */
     private final List<AttributeRule> valuePolicies;
 
+    /** Filters to be used on attribute values, indexed by attribute ID. Built at initialization. */
+    @Nonnull @NonnullElements private Map<String,List<AttributeRule>> valuePoliciesByAttribute;
+
     /** Log prefix. */
     private String logPrefix;
 
@@ -85,6 +91,7 @@ public final class AttributeFilterPolicy extends AbstractIdentifiedInitializable
         } else {
             valuePolicies = Collections.emptyList();
         }
+        valuePoliciesByAttribute = Collections.emptyMap();
     }
 
     /**
@@ -105,6 +112,16 @@ public final class AttributeFilterPolicy extends AbstractIdentifiedInitializable
         return valuePolicies;
     }
 
+    /**
+     * Gets the IDs of the attributes to which this policy's attribute rules apply.
+     * 
+     * @return attribute IDs covered by this policy
+     */
+    @Nonnull @NonnullElements @Unmodifiable public Set<String> getAttributeIds() {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        return valuePoliciesByAttribute.keySet();
+    }
+
     /**
      * Checks if the given filter context meets the requirements for this attribute filter policy as given by the
      * {@link PolicyRequirementRule}.
@@ -149,18 +166,63 @@ public final class AttributeFilterPolicy extends AbstractIdentifiedInitializable
             return;
         }
 
+        applyAttributeRules(filterContext);
+    }
+
+    /**
+     * Applies this policy's attribute rules to the given filter context without checking whether the policy is
+     * applicable.
+     * 
+     * <p>This is for callers which have already established that the policy's {@link PolicyRequirementRule} is met
+     * for the request. Only the rules for attributes actually present in the context are evaluated.</p>
+     * 
+     * @param filterContext current filter context
+     * 
+     * @throws AttributeFilterException thrown if there is a problem filtering out the attributes and values for this
+     *             request
+     */
+    public void applyAttributeRules(@Nonnull final AttributeFilterContext filterContext)
+            throws AttributeFilterException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        Constraint.isNotNull(filterContext, "Attribute filter context can not be null");
+
         final Map<String, IdPAttribute> attributes = filterContext.getPrefilteredIdPAttributes();
         log.debug("{} Applying attribute filter policy to current set of attributes: {}", getLogPrefix(),
                 attributes.keySet());
 
-        IdPAttribute attribute;
-        for (final AttributeRule valuePolicy : valuePolicies) {
-            attribute = attributes.get(valuePolicy.getAttributeId());
-            if (attribute != null) {
-                if (!attribute.getValues().isEmpty()) {
-                    valuePolicy.apply(attribute, filterContext);
+        // Walk whichever of the two sets is smaller.
+        if (attributes.size() < valuePoliciesByAttribute.size()) {
+            for (final IdPAttribute attribute : attributes.values()) {
+                final List<AttributeRule> rules = valuePoliciesByAttribute.get(attribute.getId());
+                if (rules != null) {
+                    applyAttributeRules(rules, attribute, filterContext);
                 }
             }
+        } else {
+            for (final Map.Entry<String,List<AttributeRule>> entry : valuePoliciesByAttribute.entrySet()) {
+                final IdPAttribute attribute = attributes.get(entry.getKey());
+                if (attribute != null) {
+                    applyAttributeRules(entry.getValue(), attribute, filterContext);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the supplied attribute rules, in order, to an attribute.
+     * 
+     * @param rules the rules for the attribute
+     * @param attribute the attribute
+     * @param filterContext current filter context
+     */
+    private void applyAttributeRules(@Nonnull @NonnullElements final List<AttributeRule> rules,
+            @Nonnull final IdPAttribute attribute, @Nonnull final AttributeFilterContext filterContext) {
+        if (!attribute.getValues().isEmpty()) {
+            for (final AttributeRule valuePolicy : rules) {
+                valuePolicy.apply(attribute, filterContext);
+            }
         }
     }
 
@@ -168,6 +230,13 @@ public final class AttributeFilterPolicy extends AbstractIdentifiedInitializable
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
         logPrefix = null;
+
+        final Map<String,List<AttributeRule>> byAttribute = new LinkedHashMap<>();
+        for (final AttributeRule valuePolicy : valuePolicies) {
+            byAttribute.computeIfAbsent(valuePolicy.getAttributeId(), k -> new ArrayList<>()).add(valuePolicy);
+        }
+        byAttribute.replaceAll((k, v) -> List.copyOf(v));
+        valuePoliciesByAttribute = Collections.unmodifiableMap(byAttribute);
     }
 
     /**
@@ -17,9 +17,11 @@
 
 package net.shibboleth.idp.attribute.filter.impl;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -38,6 +40,7 @@ import net.shibboleth.idp.attribute.IdPAttributeValue;
 import net.shibboleth.idp.attribute.filter.AttributeFilter;
 import net.shibboleth.idp.attribute.filter.AttributeFilterException;
 import net.shibboleth.idp.attribute.filter.AttributeFilterPolicy;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule.Tristate;
 import net.shibboleth.idp.attribute.filter.context.AttributeFilterContext;
 import net.shibboleth.idp.attribute.filter.context.AttributeFilterWorkContext;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
@@ -57,6 +60,12 @@ public class AttributeFilterImpl extends AbstractServiceableComponent<AttributeF
     /** Filter policies used by this engine. */
     @Nonnull @NonnullElements private final List<AttributeFilterPolicy> filterPolicies;
 
+    /** Whether to index the policies to reduce the number evaluated per request. */
+    private boolean indexPolicies;
+
+    /** Index of the filter policies, if enabled. */
+    @Nullable private AttributeFilterPolicyIndex policyIndex;
+
     /** Log prefix. */
     @Nullable private String logPrefix;
 
@@ -87,6 +96,30 @@ public class AttributeFilterImpl extends AbstractServiceableComponent<AttributeF
         return filterPolicies;
     }
 
+    /**
+     * Get whether the policies are indexed to reduce the number evaluated per request.
+     * 
+     * @return whether the policies are indexed
+     */
+    public boolean isIndexPolicies() {
+        return indexPolicies;
+    }
+
+    /**
+     * Set whether the policies are indexed to reduce the number evaluated per request.
+     * 
+     * <p>When set, policies restricted to particular attribute requesters are only evaluated for those requesters,
+     * policies depending only on the requester's metadata have their requirement rules memoized against it, and
+     * policies without rules for any of the attributes being filtered are skipped. Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setIndexPolicies(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        indexPolicies = flag;
+    }
+
     /**
      * Filters attributes and values. This filtering process may remove attributes and values but must never add them.
      * 
@@ -112,9 +145,13 @@ public class AttributeFilterImpl extends AbstractServiceableComponent<AttributeF
             log.debug("{} Beginning process of filtering the following {} attributes: {}", new Object[] {getLogPrefix(),
                     prefilteredAttributes.size(), prefilteredAttributes.keySet(),});
     
-            final List<AttributeFilterPolicy> policies = getFilterPolicies();
-            for (final AttributeFilterPolicy policy : policies) {
-                policy.apply(filterContext);
+            if (policyIndex != null) {
+                applyIndexedPolicies(policyIndex, filterContext);
+            } else {
+                final List<AttributeFilterPolicy> policies = getFilterPolicies();
+                for (final AttributeFilterPolicy policy : policies) {
+                    policy.apply(filterContext);
+                }
             }
     
             IdPAttribute filteredAttribute;
@@ -138,6 +175,62 @@ public class AttributeFilterImpl extends AbstractServiceableComponent<AttributeF
         }
     }
 
+    /**
+     * Applies those policies which the index indicates may be active for the request, in their original order.
+     * 
+     * @param index the policy index
+     * @param filterContext current filter context
+     * 
+     * @throws AttributeFilterException thrown if there is a problem applying a policy
+     */
+    private void applyIndexedPolicies(@Nonnull final AttributeFilterPolicyIndex index,
+            @Nonnull final AttributeFilterContext filterContext) throws AttributeFilterException {
+        final Set<String> attributeIds = filterContext.getPrefilteredIdPAttributes().keySet();
+        final List<AttributeFilterPolicy> policies = index.getPolicies();
+        final BitSet candidates = index.getCandidates(filterContext.getAttributeRecipientID());
+        log.trace("{} {} of {} policies are candidates for this request", getLogPrefix(), candidates.cardinality(),
+                policies.size());
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final AttributeFilterPolicy policy = policies.get(i);
+            if (!appliesToAny(policy, attributeIds)) {
+                continue;
+            }
+            if (index.isMemoizable(i)) {
+                final Tristate isActive = index.evaluate(i, filterContext);
+                if (isActive == Tristate.TRUE) {
+                    log.debug("{} Policy is active for this request", policy.getLogPrefix());
+                    policy.applyAttributeRules(filterContext);
+                } else if (isActive == Tristate.FAIL) {
+                    log.warn("{} Policy requirement rule failed for this request", policy.getLogPrefix());
+                }
+            } else {
+                policy.apply(filterContext);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a policy has rules for any of the supplied attributes.
+     * 
+     * @param policy the policy
+     * @param attributeIds IDs of the attributes being filtered
+     * 
+     * @return whether the policy has rules for any of the attributes
+     */
+    private boolean appliesToAny(@Nonnull final AttributeFilterPolicy policy,
+            @Nonnull @NonnullElements final Set<String> attributeIds) {
+        final Set<String> policyAttributeIds = policy.getAttributeIds();
+        final Set<String> smaller = policyAttributeIds.size() < attributeIds.size() ? policyAttributeIds : attributeIds;
+        final Set<String> larger = smaller == attributeIds ? policyAttributeIds : attributeIds;
+        for (final String id : smaller) {
+            if (larger.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Gets the permitted values for the given attribute from the
      * {@link AttributeFilterWorkContext#getPermittedIdPAttributeValues()} and removes all denied values given in the
@@ -186,6 +279,7 @@ public class AttributeFilterImpl extends AbstractServiceableComponent<AttributeF
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
         logPrefix = null;
+        policyIndex = indexPolicies ? new AttributeFilterPolicyIndex(filterPolicies) : null;
     }
 
     /**
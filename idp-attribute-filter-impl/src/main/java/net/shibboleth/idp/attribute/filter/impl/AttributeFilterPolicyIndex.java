@@ -0,0 +1,295 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.filter.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.saml.common.messaging.context.SAMLMetadataContext;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.shibboleth.idp.attribute.filter.AttributeFilterPolicy;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule.Tristate;
+import net.shibboleth.idp.attribute.filter.context.AttributeFilterContext;
+import net.shibboleth.idp.attribute.filter.policyrule.filtercontext.impl.AttributeRequesterPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.AbstractComposedPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.AndPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.NotPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.OrPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.saml.impl.AttributeRequesterEntityAttributeExactPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.saml.impl.AttributeRequesterEntityAttributeRegexPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.saml.impl.AttributeRequesterInEntityGroupPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.saml.impl.AttributeRequesterRegistrationAuthorityPolicyRule;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A precomputed index over a list of {@link AttributeFilterPolicy} objects, used by {@link AttributeFilterImpl}
+ * to avoid evaluating every policy for every request.
+ *
+ * <p>Each policy is classified once, by inspecting its {@link PolicyRequirementRule}:</p>
+ * <ul>
+ *  <li>Policies which can only be active for particular attribute requesters, because their rule is an
+ *  {@link AttributeRequesterPolicyRule}, an OR of such rules, or an AND containing such a rule, are indexed by
+ *  requester name and are only candidates for requests from those requesters.</li>
+ *  <li>Policies whose rule depends solely on the requester's {@link EntityDescriptor} (entity attributes, entity
+ *  groups and registration authority, combined with AND, OR and NOT) have their result memoized against that
+ *  descriptor. Metadata refreshes produce new descriptor objects, so a memoized result never outlives the metadata
+ *  it was computed from.</li>
+ *  <li>All other policies are evaluated for every request, as before.</li>
+ * </ul>
+ */
+@ThreadSafe
+public final class AttributeFilterPolicyIndex {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AttributeFilterPolicyIndex.class);
+
+    /** The indexed policies, in evaluation order. */
+    @Nonnull @NonnullElements private final List<AttributeFilterPolicy> policies;
+
+    /** Policies which are candidates for every request. */
+    @Nonnull private final BitSet unconditional;
+
+    /** Policies which are only candidates for particular requesters, keyed by exact name. */
+    @Nonnull @NonnullElements private final Map<String,BitSet> byRequester;
+
+    /** Policies which are only candidates for particular requesters, keyed by case-folded name. */
+    @Nonnull @NonnullElements private final Map<String,BitSet> byRequesterIgnoreCase;
+
+    /** Policies whose requirement rule result may be memoized against the requester's metadata. */
+    @Nonnull private final BitSet memoizable;
+
+    /** Memoized requirement rule results, by requester metadata and policy position. */
+    @Nonnull private final Cache<EntityDescriptor,AtomicReferenceArray<Tristate>> results;
+
+    /**
+     * Constructor.
+     *
+     * @param filterPolicies the policies to index, in evaluation order
+     */
+    public AttributeFilterPolicyIndex(@Nonnull @NonnullElements final List<AttributeFilterPolicy> filterPolicies) {
+        policies = List.copyOf(Constraint.isNotNull(filterPolicies, "Filter policies cannot be null"));
+        unconditional = new BitSet(policies.size());
+        byRequester = new HashMap<>();
+        byRequesterIgnoreCase = new HashMap<>();
+        memoizable = new BitSet(policies.size());
+        results = CacheBuilder.newBuilder().weakKeys().build();
+
+        for (int i = 0; i < policies.size(); i++) {
+            final PolicyRequirementRule rule = policies.get(i).getPolicyRequirementRule();
+            final List<AttributeRequesterPolicyRule> guards = getRequesterGuards(rule);
+            if (guards != null) {
+                for (final AttributeRequesterPolicyRule guard : guards) {
+                    if (guard.isCaseSensitive()) {
+                        byRequester.computeIfAbsent(guard.getMatchString(), k -> new BitSet()).set(i);
+                    } else {
+                        byRequesterIgnoreCase.computeIfAbsent(foldCase(guard.getMatchString()),
+                                k -> new BitSet()).set(i);
+                    }
+                }
+            } else {
+                unconditional.set(i);
+                if (isMemoizable(rule)) {
+                    memoizable.set(i);
+                }
+            }
+        }
+
+        log.debug("Indexed {} attribute filter policies: {} by requester, {} memoizable, {} unindexed",
+                policies.size(), policies.size() - unconditional.cardinality(), memoizable.cardinality(),
+                unconditional.cardinality() - memoizable.cardinality());
+    }
+
+    /**
+     * Get the indexed policies, in evaluation order.
+     *
+     * @return the indexed policies
+     */
+    @Nonnull @NonnullElements public List<AttributeFilterPolicy> getPolicies() {
+        return policies;
+    }
+
+    /**
+     * Get the positions of the policies which may be active for a request.
+     *
+     * <p>Policies outside the returned set are guaranteed not to be active. Iterating the set in order preserves
+     * the original evaluation order.</p>
+     *
+     * @param requester the attribute requester, if known
+     *
+     * @return positions of the candidate policies
+     */
+    @Nonnull public BitSet getCandidates(@Nullable final String requester) {
+        final BitSet candidates = (BitSet) unconditional.clone();
+        if (requester != null) {
+            final BitSet exact = byRequester.get(requester);
+            if (exact != null) {
+                candidates.or(exact);
+            }
+            if (!byRequesterIgnoreCase.isEmpty()) {
+                final BitSet folded = byRequesterIgnoreCase.get(foldCase(requester));
+                if (folded != null) {
+                    candidates.or(folded);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Get whether the requirement rule of the policy at a given position may be memoized.
+     *
+     * @param index position of the policy
+     *
+     * @return whether the result of the policy's requirement rule may be memoized
+     */
+    public boolean isMemoizable(final int index) {
+        return memoizable.get(index);
+    }
+
+    /**
+     * Evaluate the requirement rule of a memoizable policy, consulting and populating the memoized results.
+     *
+     * <p>Failures are never memoized.</p>
+     *
+     * @param index position of the policy
+     * @param filterContext current filter context
+     *
+     * @return the result of the policy's requirement rule
+     */
+    @Nonnull public Tristate evaluate(final int index, @Nonnull final AttributeFilterContext filterContext) {
+        Constraint.isTrue(memoizable.get(index), "Policy is not memoizable");
+
+        final PolicyRequirementRule rule = policies.get(index).getPolicyRequirementRule();
+        final SAMLMetadataContext metadataContext = filterContext.getRequesterMetadataContext();
+        final EntityDescriptor entity = metadataContext != null ? metadataContext.getEntityDescriptor() : null;
+        if (entity == null) {
+            return rule.matches(filterContext);
+        }
+
+        final AtomicReferenceArray<Tristate> memo =
+                results.asMap().computeIfAbsent(entity, k -> new AtomicReferenceArray<>(policies.size()));
+        Tristate result = memo.get(index);
+        if (result == null) {
+            result = rule.matches(filterContext);
+            if (result != Tristate.FAIL) {
+                memo.set(index, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the requester rules at least one of which must match for a requirement rule to be true.
+     *
+     * @param rule the requirement rule
+     *
+     * @return the requester rules, or null if the requirement rule cannot be indexed by requester
+     */
+    @Nullable private static List<AttributeRequesterPolicyRule> getRequesterGuards(
+            @Nonnull final PolicyRequirementRule rule) {
+        if (rule == PolicyRequirementRule.MATCHES_NONE) {
+            return Collections.emptyList();
+        } else if (rule instanceof AttributeRequesterPolicyRule) {
+            final AttributeRequesterPolicyRule requesterRule = (AttributeRequesterPolicyRule) rule;
+            return requesterRule.getMatchString() != null ? Collections.singletonList(requesterRule) : null;
+        } else if (rule instanceof OrPolicyRule) {
+            // Every branch must be restricted by requester.
+            final List<AttributeRequesterPolicyRule> guards = new ArrayList<>();
+            for (final PolicyRequirementRule composed : ((OrPolicyRule) rule).getComposedRules()) {
+                final List<AttributeRequesterPolicyRule> composedGuards = getRequesterGuards(composed);
+                if (composedGuards == null) {
+                    return null;
+                }
+                guards.addAll(composedGuards);
+            }
+            return guards;
+        } else if (rule instanceof AndPolicyRule) {
+            // Any one restricted branch restricts the whole.
+            for (final PolicyRequirementRule composed : ((AndPolicyRule) rule).getComposedRules()) {
+                final List<AttributeRequesterPolicyRule> composedGuards = getRequesterGuards(composed);
+                if (composedGuards != null) {
+                    return composedGuards;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get whether a requirement rule depends only on the requester's {@link EntityDescriptor}.
+     *
+     * @param rule the requirement rule
+     *
+     * @return whether the rule's result may be memoized against the requester's metadata
+     */
+    private static boolean isMemoizable(@Nonnull final PolicyRequirementRule rule) {
+        if (rule == PolicyRequirementRule.MATCHES_ALL || rule == PolicyRequirementRule.MATCHES_NONE
+                || rule instanceof AttributeRequesterEntityAttributeExactPolicyRule
+                || rule instanceof AttributeRequesterEntityAttributeRegexPolicyRule
+                || rule instanceof AttributeRequesterRegistrationAuthorityPolicyRule) {
+            return true;
+        } else if (rule instanceof AttributeRequesterInEntityGroupPolicyRule) {
+            // Affiliation checks consult the live metadata resolver.
+            return !((AttributeRequesterInEntityGroupPolicyRule) rule).isCheckAffiliations();
+        } else if (rule instanceof NotPolicyRule) {
+            return isMemoizable(((NotPolicyRule) rule).getNegatedRule());
+        } else if (rule instanceof AbstractComposedPolicyRule) {
+            for (final PolicyRequirementRule composed : ((AbstractComposedPolicyRule) rule).getComposedRules()) {
+                if (!isMemoizable(composed)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fold the case of a string such that any two strings equal under {@link String#equalsIgnoreCase(String)}
+     * fold to the same value.
+     *
+     * @param value the string to fold
+     *
+     * @return the folded string
+     */
+    @Nonnull private static String foldCase(@Nonnull final String value) {
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            builder.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+        }
+        return builder.toString();
+    }
+
+}
@@ -34,6 +34,7 @@ import net.shibboleth.idp.attribute.filter.MockMatcher;
 import net.shibboleth.idp.attribute.filter.MockPolicyRequirementRule;
 import net.shibboleth.idp.attribute.filter.PolicyRequirementRule;
 import net.shibboleth.idp.attribute.filter.context.AttributeFilterContext;
+import net.shibboleth.idp.attribute.filter.policyrule.filtercontext.impl.AttributeRequesterPolicyRule;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
@@ -396,4 +397,59 @@ public class AttributeFilterImplTest {
         Assert.assertTrue(matcher.isDestroyed());
     }
 
+    @Test public void testIndexedPolicies() throws Exception {
+        AttributeRule attribute1Policy = new AttributeRule();
+        attribute1Policy.setId("attribute1Policy");
+        attribute1Policy.setAttributeId("attribute1");
+        attribute1Policy.setMatcher(Matcher.MATCHES_ALL);
+        attribute1Policy.setIsDenyRule(false);
+        attribute1Policy.initialize();
+
+        AttributeRule attribute2Policy = new AttributeRule();
+        attribute2Policy.setId("attribute2Policy");
+        attribute2Policy.setAttributeId("attribute2");
+        attribute2Policy.setMatcher(Matcher.MATCHES_ALL);
+        attribute2Policy.setIsDenyRule(false);
+        attribute2Policy.initialize();
+
+        AttributeRequesterPolicyRule requesterRule = new AttributeRequesterPolicyRule();
+        requesterRule.setId("requesterRule");
+        requesterRule.setMatchString("https://sp.example.org");
+        requesterRule.initialize();
+
+        MockPolicyRequirementRule unusedRule = new MockPolicyRequirementRule();
+        unusedRule.setRetVal(PolicyRequirementRule.Tristate.TRUE);
+        unusedRule.initialize();
+
+        AttributeFilterPolicy policy1 =
+                new AttributeFilterPolicy("policy1", requesterRule, Collections.singletonList(attribute1Policy));
+        policy1.initialize();
+        AttributeFilterPolicy policy2 =
+                new AttributeFilterPolicy("policy2", unusedRule, Collections.singletonList(attribute2Policy));
+        policy2.initialize();
+
+        AttributeFilterImpl filter = new AttributeFilterImpl("engine", Arrays.asList(policy1, policy2));
+        filter.setApplicationContext(new MockApplicationContext());
+        filter.setIndexPolicies(true);
+        filter.initialize();
+        Assert.assertTrue(filter.isIndexPolicies());
+
+        IdPAttribute attribute1 = new IdPAttribute("attribute1");
+        attribute1.setValues(Arrays.asList(new StringAttributeValue("one"), new StringAttributeValue("two")));
+
+        AttributeFilterContext filterContext = new AttributeFilterContext();
+        filterContext.setAttributeRecipientID("https://sp.example.org");
+        filterContext.getPrefilteredIdPAttributes().put(attribute1.getId(), attribute1);
+        filter.filterAttributes(filterContext);
+        Assert.assertEquals(filterContext.getFilteredIdPAttributes().get("attribute1").getValues().size(), 2);
+        // No attribute2 to filter, so its policy is never evaluated.
+        Assert.assertNull(unusedRule.getContextUsedAndReset());
+
+        filterContext = new AttributeFilterContext();
+        filterContext.setAttributeRecipientID("https://other.example.org");
+        filterContext.getPrefilteredIdPAttributes().put(attribute1.getId(), attribute1);
+        filter.filterAttributes(filterContext);
+        Assert.assertTrue(filterContext.getFilteredIdPAttributes().isEmpty());
+    }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.filter.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.filter.AttributeFilterPolicy;
+import net.shibboleth.idp.attribute.filter.MockPolicyRequirementRule;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule.Tristate;
+import net.shibboleth.idp.attribute.filter.policyrule.filtercontext.impl.AttributeRequesterPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.AndPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.NotPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.logic.impl.OrPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.saml.impl.AttributeRequesterInEntityGroupPolicyRule;
+import net.shibboleth.idp.attribute.filter.policyrule.saml.impl.BaseMetadataTests;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/** Unit test for {@link AttributeFilterPolicyIndex}. */
+public class AttributeFilterPolicyIndexTest extends BaseMetadataTests {
+
+    private static final String JIRA = "https://issues.shibboleth.net/shibboleth";
+
+    private static final String WIKI = "https://wiki.shibboleth.net/shibboleth";
+
+    private AttributeRequesterPolicyRule requester(final String name, final boolean caseSensitive)
+            throws ComponentInitializationException {
+        final AttributeRequesterPolicyRule rule = new AttributeRequesterPolicyRule();
+        rule.setId("requester");
+        rule.setMatchString(name);
+        rule.setCaseSensitive(caseSensitive);
+        rule.initialize();
+        return rule;
+    }
+
+    private AttributeRequesterInEntityGroupPolicyRule group(final String name, final boolean checkAffiliations)
+            throws ComponentInitializationException {
+        final AttributeRequesterInEntityGroupPolicyRule rule = new AttributeRequesterInEntityGroupPolicyRule();
+        rule.setId("group");
+        rule.setEntityGroup(name);
+        rule.setCheckAffiliations(checkAffiliations);
+        rule.initialize();
+        return rule;
+    }
+
+    private AttributeFilterPolicy policy(final String id, final PolicyRequirementRule rule)
+            throws ComponentInitializationException {
+        final AttributeFilterPolicy policy = new AttributeFilterPolicy(id, rule, null);
+        policy.initialize();
+        return policy;
+    }
+
+    @Test public void candidates() throws Exception {
+        final OrPolicyRule or = new OrPolicyRule();
+        or.setId("or");
+        or.setSubsidiaries(Arrays.asList(requester(JIRA, true), requester(WIKI.toUpperCase(), false)));
+        or.initialize();
+
+        final AndPolicyRule and = new AndPolicyRule();
+        and.setId("and");
+        and.setSubsidiaries(Arrays.asList(new MockPolicyRequirementRule(), requester(WIKI, true)));
+        and.initialize();
+
+        final OrPolicyRule mixed = new OrPolicyRule();
+        mixed.setId("mixed");
+        mixed.setSubsidiaries(Arrays.asList(requester(JIRA, true), new MockPolicyRequirementRule()));
+        mixed.initialize();
+
+        final List<AttributeFilterPolicy> policies = Arrays.asList(
+                policy("jira", requester(JIRA, true)),
+                policy("or", or),
+                policy("and", and),
+                policy("mixed", mixed),
+                policy("none", PolicyRequirementRule.MATCHES_NONE),
+                policy("all", PolicyRequirementRule.MATCHES_ALL));
+        final AttributeFilterPolicyIndex index = new AttributeFilterPolicyIndex(policies);
+
+        BitSet candidates = index.getCandidates(JIRA);
+        assertEquals(candidates.toString(), "{0, 1, 3, 5}");
+
+        candidates = index.getCandidates(WIKI);
+        assertEquals(candidates.toString(), "{1, 2, 3, 5}");
+
+        candidates = index.getCandidates(JIRA.toUpperCase());
+        assertEquals(candidates.toString(), "{3, 5}");
+
+        candidates = index.getCandidates(null);
+        assertEquals(candidates.toString(), "{3, 5}");
+    }
+
+    @Test public void memoizable() throws Exception {
+        final NotPolicyRule not = new NotPolicyRule();
+        not.setId("not");
+        not.setNegation(group("http://shibboleth.net", false));
+        not.initialize();
+
+        final List<AttributeFilterPolicy> policies = Arrays.asList(
+                policy("group", group("http://shibboleth.net", false)),
+                policy("affiliation", group("http://shibboleth.net", true)),
+                policy("not", not),
+                policy("mock", new MockPolicyRequirementRule()));
+        final AttributeFilterPolicyIndex index = new AttributeFilterPolicyIndex(policies);
+
+        assertTrue(index.isMemoizable(0));
+        assertFalse(index.isMemoizable(1));
+        assertTrue(index.isMemoizable(2));
+        assertFalse(index.isMemoizable(3));
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(index.evaluate(0, reqMetadataContext(jiraEntity, "Principal")), Tristate.TRUE);
+            assertEquals(index.evaluate(2, reqMetadataContext(jiraEntity, "Principal")), Tristate.FALSE);
+        }
+        assertEquals(index.evaluate(0, reqMetadataContext(null, null)), Tristate.FALSE);
+    }
+
+}
@@ -45,6 +45,18 @@ public class AttributeFilterServiceStrategy extends AbstractIdentifiableInitiali
     /** log. */
     private final Logger log = LoggerFactory.getLogger(AttributeFilterServiceStrategy.class);
 
+    /** Whether to index the policies. */
+    private boolean indexPolicies;
+
+    /**
+     * Set whether to index the policies to reduce the number evaluated per request.
+     * 
+     * @param flag flag to set
+     */
+    public void setIndexPolicies(final boolean flag) {
+        indexPolicies = flag;
+    }
+
     /** {@inheritDoc} */
     @Nullable public ServiceableComponent<AttributeFilter> apply(@Nullable final ApplicationContext appContext) {
 
@@ -52,6 +64,7 @@ public class AttributeFilterServiceStrategy extends AbstractIdentifiableInitiali
         log.debug("Creating Attribute Filter {} with  {} Policies", getId(), afps.size());
 
         final AttributeFilterImpl filter = new AttributeFilterImpl(getId(), afps);
+        filter.setIndexPolicies(indexPolicies);
         filter.setApplicationContext(appContext);
 
         try {
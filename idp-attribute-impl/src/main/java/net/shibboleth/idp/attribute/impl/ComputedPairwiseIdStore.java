@@ -20,6 +20,7 @@ package net.shibboleth.idp.attribute.impl;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -50,6 +51,9 @@ import org.slf4j.LoggerFactory;
  * but due to discovery of the lack of appropriate case handling of identifiers by applications, the
  * ability to use base32 has been added to eliminate the possibility of case conflicts.</p>
  * 
+ * <p>Each thread reuses its own {@link MessageDigest}, and salt overrides are converted to bytes once when
+ * installed, so that generating an ID involves no provider lookups or per-call salt encoding.</p>
+ * 
  * @since 4.0.0
  */
 public class ComputedPairwiseIdStore extends AbstractInitializableComponent implements PairwiseIdStore {
@@ -78,8 +82,11 @@ public class ComputedPairwiseIdStore extends AbstractInitializableComponent impl
     /** The encoding to apply to the digest. */
     @Nonnull private Encoding encoding;
     
-    /** Override map to block or re-issue identifiers. */
-    @Nonnull private Map<String,Map<String,String>> exceptionMap;
+    /** Override map to block or re-issue identifiers, with the salts pre-encoded. */
+    @Nonnull private Map<String,Map<String,byte[]>> exceptionMap;
+    
+    /** Per-thread digest objects, or null if the algorithm is not supported. */
+    @Nullable private ThreadLocal<MessageDigest> digests;
     
     /** Constructor. */
     public ComputedPairwiseIdStore() {
@@ -202,12 +209,12 @@ public class ComputedPairwiseIdStore extends AbstractInitializableComponent impl
             for (final Map.Entry<String,Map<String,String>> entry : map.entrySet()) {
                 final String principal = StringSupport.trimOrNull(entry.getKey());
                 if (principal != null && entry.getValue() != null) {
-                    final Map<String,String> overrides = new HashMap<>(entry.getValue().size());
+                    final Map<String,byte[]> overrides = new HashMap<>(entry.getValue().size());
                     for (final Map.Entry<String,String> subentry : entry.getValue().entrySet()) {
                         final String rpname = StringSupport.trimOrNull(subentry.getKey());
                         if (rpname != null) {
                             final String override = StringSupport.trimOrNull(subentry.getValue());
-                            overrides.put(rpname, override);
+                            overrides.put(rpname, override != null ? override.getBytes() : null);
                         }
                     }
                     exceptionMap.put(principal, overrides);
@@ -228,6 +235,14 @@ public class ComputedPairwiseIdStore extends AbstractInitializableComponent impl
         if (getSalt().length < 16) {
             throw new ComponentInitializationException("Salt must be at least 16 bytes in size");
         }
+        
+        try {
+            final MessageDigest prototype = MessageDigest.getInstance(algorithm);
+            digests = ThreadLocal.withInitial(() -> newDigest(prototype));
+        } catch (final NoSuchAlgorithmException e) {
+            // Reported when an ID is requested, as before.
+            digests = null;
+        }
     }
 
     /** {@inheritDoc} */
@@ -245,23 +260,25 @@ public class ComputedPairwiseIdStore extends AbstractInitializableComponent impl
             throw new IOException("Pairwise ID generation blocked by exception rule");
         }
         
-        try {
-            final MessageDigest md = MessageDigest.getInstance(algorithm);
-            md.update(pid.getRecipientEntityID().getBytes());
-            md.update((byte) '!');
-            md.update(pid.getSourceSystemId().getBytes());
-            md.update((byte) '!');
-
-            if (encoding == Encoding.BASE32) {
-                pid.setPairwiseId(Base32Support.encode(md.digest(effectiveSalt), Base32Support.UNCHUNKED));
-            } else if (encoding == Encoding.BASE64) {
-                pid.setPairwiseId(Base64Support.encode(md.digest(effectiveSalt), Base64Support.UNCHUNKED));
-            } else {
-                throw new IOException("Desired encoding was not recognized, unable to compute ID");
-            }
-        } catch (final NoSuchAlgorithmException e) {
+        if (digests == null) {
             log.error("Digest algorithm {} is not supported", algorithm);
-            throw new IOException("Digest algorithm was not supported, unable to compute ID", e);
+            throw new IOException("Digest algorithm was not supported, unable to compute ID");
+        }
+        
+        final MessageDigest md = digests.get();
+        md.reset();
+        md.update(pid.getRecipientEntityID().getBytes());
+        md.update((byte) '!');
+        md.update(pid.getSourceSystemId().getBytes());
+        md.update((byte) '!');
+
+        if (encoding == Encoding.BASE32) {
+            pid.setPairwiseId(Base32Support.encode(md.digest(effectiveSalt), Base32Support.UNCHUNKED));
+        } else if (encoding == Encoding.BASE64) {
+            // Equivalent to unchunked Base64Support output, without the intermediate copies.
+            pid.setPairwiseId(Base64.getEncoder().encodeToString(md.digest(effectiveSalt)));
+        } else {
+            throw new IOException("Desired encoding was not recognized, unable to compute ID");
         }
         
         return pid;
@@ -278,28 +295,32 @@ public class ComputedPairwiseIdStore extends AbstractInitializableComponent impl
     @Nullable private byte[] getEffectiveSalt(@Nonnull @NotEmpty final String principalName,
             @Nonnull @NotEmpty final String relyingPartyId) {
         
-        Map<String,String> override = exceptionMap.get(principalName);
+        if (exceptionMap.isEmpty()) {
+            return salt;
+        }
+        
+        Map<String,byte[]> override = exceptionMap.get(principalName);
         if (override == null) {
             override = exceptionMap.get(WILDCARD_OVERRIDE);
         }
         
         if (override != null) {
             if (override.containsKey(relyingPartyId)) {
-                final String s = override.get(relyingPartyId);
+                final byte[] s = override.get(relyingPartyId);
                 if (s != null) {
                     log.debug("Overriding salt for principal '{}' and relying party '{}'", principalName,
                             relyingPartyId);
-                    return s.getBytes();
+                    return s;
                 }
                 log.debug("Blocked generation of ID for principal '{}' for relying party '{}'",
                         principalName, relyingPartyId);
                 return null;
             } else if (override.containsKey(WILDCARD_OVERRIDE)) {
-                final String s = override.get(WILDCARD_OVERRIDE);
+                final byte[] s = override.get(WILDCARD_OVERRIDE);
                 if (s != null) {
                     log.debug("Overriding salt for principal '{}' and relying party '{}'", principalName,
                             relyingPartyId);
-                    return s.getBytes();
+                    return s;
                 }
                 log.debug("Blocked generation of ID for principal '{}' for relying party '{}'",
                         principalName, relyingPartyId);
@@ -310,4 +331,24 @@ public class ComputedPairwiseIdStore extends AbstractInitializableComponent impl
         return salt;
     }
     
+    /**
+     * Get a digest object for a thread, by cloning the prototype where the provider allows it.
+     * 
+     * @param prototype an unused digest object for the configured algorithm
+     * 
+     * @return a new digest object
+     */
+    @Nonnull private MessageDigest newDigest(@Nonnull final MessageDigest prototype) {
+        try {
+            return (MessageDigest) prototype.clone();
+        } catch (final CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (final NoSuchAlgorithmException e2) {
+                // Already shown to be available by doInitialize.
+                throw new IllegalStateException(e2);
+            }
+        }
+    }
+    
 }
\ No newline at end of file
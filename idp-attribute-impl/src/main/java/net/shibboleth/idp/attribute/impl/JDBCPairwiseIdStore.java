@@ -29,8 +29,14 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -53,6 +59,10 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
 /**
  * JDBC-based storage management for pairwise IDs.
  * 
@@ -74,10 +84,18 @@ import org.slf4j.LoggerFactory;
  * <p>The first three columns should be defined as the primary key of the table, and the other columns
  * should be indexed.</p>
  * 
+ * <p>Optionally, the results of lookups by source ID may be cached in-process, including the absence of an active
+ * ID when creation was not requested. Entries are invalidated by {@link #deactivate(PairwiseId)} and
+ * {@link #attach(PairwiseId)} on this instance, but changes made through other nodes or directly to the database
+ * are only seen once an entry expires.</p>
+ * 
  * @since 4.0.0
  */
 public class JDBCPairwiseIdStore extends AbstractInitializableComponent implements DurablePairwiseIdStore {
 
+    /** Number of inputs to look up per query in {@link #getBySourceValues(List, boolean)}. */
+    public static final int BULK_QUERY_SIZE = 100;
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(JDBCPairwiseIdStore.class);
     
@@ -144,6 +162,21 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
     /** Optional hook for obtaining initial values from a primary store, usually a computed algorithm. */
     @Nullable private PairwiseIdStore initialValueStore;
 
+    /** Maximum number of lookup results to cache, or 0 for no cache. */
+    private long cacheSize;
+
+    /** Time to cache an active ID. */
+    @Nonnull private Duration cacheExpiration;
+
+    /** Time to cache the absence of an active ID. */
+    @Nonnull private Duration negativeCacheExpiration;
+
+    /** Cache of lookup results, keyed by issuer, recipient and source ID. */
+    @Nullable private Cache<List<String>,CachedId> cache;
+
+    /** Cache keys of cached active IDs, keyed by issuer, recipient and pairwise ID. */
+    @Nullable private ConcurrentMap<List<String>,List<String>> cacheKeysByIssuedId;
+
     /** Constructor. */
     public JDBCPairwiseIdStore() {
         transactionRetry = 3;
@@ -160,6 +193,8 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
         peerProvidedIdColumn = "peerProvidedId";
         creationTimeColumn = "creationDate";
         deactivationTimeColumn = "deactivationDate";
+        cacheExpiration = Duration.ofMinutes(10);
+        negativeCacheExpiration = Duration.ofMinutes(1);
     }
     
     /**
@@ -468,6 +503,49 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
         
         initialValueStore = store;
     }
+
+    /**
+     * Set the maximum number of lookup results to cache.
+     * 
+     * <p>Defaults to 0, which disables the cache.</p>
+     * 
+     * @param size maximum number of results to cache
+     */
+    public void setCacheSize(final long size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        cacheSize = Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative");
+    }
+
+    /**
+     * Set the time to cache an active ID.
+     * 
+     * <p>This bounds how long a change made elsewhere can go unseen. Defaults to 10 minutes.</p>
+     * 
+     * @param expiration cache expiration
+     */
+    public void setCacheExpiration(@Nonnull final Duration expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        Constraint.isNotNull(expiration, "Cache expiration cannot be null");
+        Constraint.isFalse(expiration.isNegative() || expiration.isZero(), "Cache expiration must be greater than 0");
+        cacheExpiration = expiration;
+    }
+
+    /**
+     * Set the time to cache the absence of an active ID, for lookups that do not create one.
+     * 
+     * <p>Defaults to 1 minute. A value of 0 disables negative caching.</p>
+     * 
+     * @param expiration negative cache expiration
+     */
+    public void setNegativeCacheExpiration(@Nonnull final Duration expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        Constraint.isNotNull(expiration, "Negative cache expiration cannot be null");
+        Constraint.isFalse(expiration.isNegative(), "Negative cache expiration cannot be negative");
+        negativeCacheExpiration = expiration;
+    }
     
     /** {@inheritDoc} */
     @Override
@@ -519,6 +597,23 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
         if (deleteSQL == null) {
             deleteSQL = "DELETE FROM " + tableName + " WHERE " + issuerColumn + "= ?";
         }
+
+        if (cacheSize > 0) {
+            final ConcurrentMap<List<String>,List<String>> issuedIds = new ConcurrentHashMap<>();
+            cacheKeysByIssuedId = issuedIds;
+            cache = CacheBuilder.newBuilder()
+                    .maximumSize(cacheSize)
+                    .expireAfterWrite(cacheExpiration)
+                    .<List<String>,CachedId>removalListener(notification -> {
+                        // Replacements are handled when caching the new result.
+                        if (notification.getCause() != RemovalCause.REPLACED && notification.getValue() != null
+                                && notification.getValue().getId() != null) {
+                            issuedIds.remove(getIssuedIdKey(notification.getValue().getId()),
+                                    notification.getKey());
+                        }
+                    })
+                    .build();
+        }
         
         try {
             verifyDatabase();
@@ -546,6 +641,13 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
         
         log.debug("Obtaining pairwise ID for source ID: {}", pid.getSourceSystemId());
 
+        final List<String> cacheKey = getCacheKey(pid);
+        final CachedId cached = getCachedId(cacheKey, allowCreate);
+        if (cached != null) {
+            log.debug("Returning cached lookup result for source ID: {}", pid.getSourceSystemId());
+            return cached.getId() != null ? copy(cached.getId()) : null;
+        }
+
         log.trace("Prepared statement: {}", getBySourceSelectSQL);
         log.trace("Setting prepared statement parameter {}: {}", 1, pid.getIssuerEntityID());
         log.trace("Setting prepared statement parameter {}: {}", 2, pid.getRecipientEntityID());
@@ -572,10 +674,12 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
                         || entries.get(0).getDeactivationTime().isAfter(Instant.now()))) {
                     dbConn.commit();
                     log.debug("Returning existing active pairwise ID: {}", entries.get(0).getPairwiseId());
+                    cacheId(cacheKey, entries.get(0));
                     return entries.get(0);
                 } else if (!allowCreate) {
                     dbConn.commit();
                     log.debug("No existing pairwise ID and creation is not permitted by caller");
+                    cacheId(cacheKey, null);
                     return null;
                 }
 
@@ -596,28 +700,134 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
                 }
                 store(retValue, dbConn);
                 dbConn.commit();
+                cacheId(cacheKey, retValue);
                 return retValue;
             } catch (final SQLException e) {
-                boolean retry = false;
-                for (final String msg : retryableErrors) {
-                    if (e.getSQLState() != null && e.getSQLState().contains(msg)) {
-                        log.warn("Caught retryable SQL exception", e);
-                        retry = true;
-                        break;
+                if (isRetryable(e)) {
+                    if (--retries < 0) {
+                        log.warn("Error retryable, but retry limit exceeded");
+                        throw new IOException(e);
                     }
+                    log.info("Retrying pairwise ID lookup/create operation");
+                } else {
+                    throw new IOException(e);
                 }
-                
-                if (retry) {
+            }
+        }
+    }
+// Checkstyle: MethodLength|CyclomaticComplexity ON
+
+    // Checkstyle: MethodLength|CyclomaticComplexity OFF
+    /**
+     * Get the active pairwise IDs for a number of source values, with the semantics of
+     * {@link #getBySourceValue(PairwiseId, boolean)} for each.
+     * 
+     * <p>This is intended for bulk jobs such as pre-provisioning IDs for many principals or many relying parties.
+     * Lookups not satisfied by the cache are made on a single connection in one transaction, using one query per
+     * {@link #BULK_QUERY_SIZE} inputs built from the configured table and column names, and any IDs needing to be
+     * created are inserted as a single batch. Inputs with the same issuer, recipient and source ID receive the
+     * same ID.</p>
+     * 
+     * <p>Unlike the single lookup, the inputs are not modified.</p>
+     * 
+     * @param pids inputs, populated as for {@link #getBySourceValue(PairwiseId, boolean)}
+     * @param allowCreate whether to create IDs for inputs without an active one
+     * 
+     * @return the IDs, in input order, with nulls where no active ID exists and none was created
+     * 
+     * @throws IOException if an error occurs accessing the database
+     */
+    @Nonnull public List<PairwiseId> getBySourceValues(@Nonnull @NonnullElements final List<PairwiseId> pids,
+            final boolean allowCreate) throws IOException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        Constraint.isNotNull(pids, "Input PairwiseId collection cannot be null");
+
+        final List<PairwiseId> results = new ArrayList<>(Collections.nCopies(pids.size(), null));
+        final Map<List<String>,List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < pids.size(); i++) {
+            final PairwiseId pid = Constraint.isNotNull(pids.get(i), "Input PairwiseId object cannot be null");
+            Constraint.isNotEmpty(pid.getIssuerEntityID(), "Issuer entityID cannot be null or empty");
+            Constraint.isNotEmpty(pid.getRecipientEntityID(), "Recipient entityID cannot be null or empty");
+            Constraint.isNotEmpty(pid.getPrincipalName(), "Principal name cannot be null or empty");
+            Constraint.isNotEmpty(pid.getSourceSystemId(), "Source system ID cannot be null or empty");
+
+            final List<String> cacheKey = getCacheKey(pid);
+            final CachedId cached = getCachedId(cacheKey, allowCreate);
+            if (cached != null) {
+                results.set(i, cached.getId() != null ? copy(cached.getId()) : null);
+            } else {
+                misses.computeIfAbsent(cacheKey, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        log.debug("Obtaining pairwise IDs for {} inputs, {} not cached", pids.size(), misses.size());
+
+        final Map<List<String>,PairwiseId> resolved = new HashMap<>(misses.size());
+        int retries = transactionRetry;
+        while (true) {
+            resolved.clear();
+            try (final Connection dbConn = getConnection(false)) {
+                final Map<List<String>,PairwiseId> existing = selectBySourceValues(misses.keySet(), dbConn);
+                final List<PairwiseId> created = new ArrayList<>();
+                final Instant now = Instant.now();
+
+                for (final Map.Entry<List<String>,List<Integer>> miss : misses.entrySet()) {
+                    final PairwiseId entry = existing.get(miss.getKey());
+                    if (entry != null && (entry.getDeactivationTime() == null
+                            || entry.getDeactivationTime().isAfter(now))) {
+                        resolved.put(miss.getKey(), entry);
+                        continue;
+                    } else if (!allowCreate) {
+                        resolved.put(miss.getKey(), null);
+                        continue;
+                    }
+
+                    PairwiseId newId = copy(pids.get(miss.getValue().get(0)));
+                    newId.setCreationTime(now);
+                    if (entry == null && initialValueStore != null) {
+                        newId = initialValueStore.getBySourceValue(newId, allowCreate);
+                    } else {
+                        newId.setPairwiseId(UUID.randomUUID().toString());
+                        if (entry != null) {
+                            newId.setPeerProvidedId(entry.getPeerProvidedId());
+                        }
+                    }
+                    created.add(newId);
+                    resolved.put(miss.getKey(), newId);
+                }
+
+                if (!created.isEmpty()) {
+                    log.debug("Issuing {} new pairwise IDs", created.size());
+                    storeAll(created, dbConn);
+                }
+                dbConn.commit();
+                break;
+            } catch (final SQLException e) {
+                if (isRetryable(e)) {
                     if (--retries < 0) {
                         log.warn("Error retryable, but retry limit exceeded");
                         throw new IOException(e);
                     }
-                    log.info("Retrying pairwise ID lookup/create operation");
+                    log.info("Retrying bulk pairwise ID lookup/create operation");
                 } else {
                     throw new IOException(e);
                 }
             }
         }
+
+        for (final Map.Entry<List<String>,List<Integer>> miss : misses.entrySet()) {
+            final PairwiseId id = resolved.get(miss.getKey());
+            cacheId(miss.getKey(), id);
+            for (final Integer index : miss.getValue()) {
+                results.set(index, id != null ? copy(id) : null);
+            }
+        }
+
+        return results;
     }
 // Checkstyle: MethodLength|CyclomaticComplexity ON
     
@@ -702,6 +912,8 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
             
         } catch (final SQLException e) {
             throw new IOException(e);
+        } finally {
+            invalidateCachedId(pid);
         }
     }
 
@@ -735,6 +947,8 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
             }
         } catch (final SQLException e) {
             throw new IOException(e);
+        } finally {
+            invalidateCachedId(pid);
         }
     }
     
@@ -773,7 +987,50 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
         
         final PreparedStatement statement = dbConn.prepareStatement(insertSQL);
         statement.setQueryTimeout((int) queryTimeout.toSeconds());
-    
+        setInsertParameters(statement, entry);
+        statement.executeUpdate();
+    }
+
+    /**
+     * Store records containing the values from the input objects as a single batch.
+     * 
+     * @param entries new objects to store
+     * @param dbConn connection to obtain a statement from.
+     * 
+     * @throws SQLException if an error occurs
+     */
+    private void storeAll(@Nonnull @NonnullElements final Collection<PairwiseId> entries,
+            @Nonnull final Connection dbConn) throws SQLException {
+
+        log.trace("Prepared statement: {}", insertSQL);
+        try (final PreparedStatement statement = dbConn.prepareStatement(insertSQL)) {
+            statement.setQueryTimeout((int) queryTimeout.toSeconds());
+            for (final PairwiseId entry : entries) {
+                if (StringSupport.trimOrNull(entry.getIssuerEntityID()) == null
+                        || StringSupport.trimOrNull(entry.getRecipientEntityID()) == null
+                        || StringSupport.trimOrNull(entry.getPairwiseId()) == null
+                        || StringSupport.trimOrNull(entry.getPrincipalName()) == null
+                        || StringSupport.trimOrNull(entry.getSourceSystemId()) == null
+                        || entry.getCreationTime() == null) {
+                    throw new SQLException("Required field was empty/null, store operation not possible");
+                }
+                setInsertParameters(statement, entry);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Set the parameters of the insert statement from an input object.
+     * 
+     * @param statement the insert statement
+     * @param entry object to store
+     * 
+     * @throws SQLException if an error occurs
+     */
+    private void setInsertParameters(@Nonnull final PreparedStatement statement, @Nonnull final PairwiseId entry)
+            throws SQLException {
         statement.setString(1, entry.getIssuerEntityID());
         statement.setString(2, entry.getRecipientEntityID());
         statement.setString(3, entry.getPairwiseId());
@@ -790,8 +1047,210 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
         } else {
             statement.setNull(8, Types.TIMESTAMP);
         }
-    
-        statement.executeUpdate();
+    }
+
+    /**
+     * Look up the latest records for a number of issuer, recipient and source ID combinations.
+     * 
+     * <p>For each combination, this selects the record {@link #getBySourceSelectSQL} would return first:
+     * the most recently created of those that are active or were the last deactivated.</p>
+     * 
+     * @param keys the combinations, as produced by {@link #getCacheKey(PairwiseId)}
+     * @param dbConn connection to obtain a statement from
+     * 
+     * @return the records found, keyed by combination
+     * 
+     * @throws SQLException if an error occurs
+     */
+    @Nonnull @NonnullElements private Map<List<String>,PairwiseId> selectBySourceValues(
+            @Nonnull @NonnullElements final Collection<List<String>> keys, @Nonnull final Connection dbConn)
+                    throws SQLException {
+
+        final Map<List<String>,List<PairwiseId>> rows = new HashMap<>(keys.size());
+        final List<List<String>> pending = new ArrayList<>(keys);
+        for (int start = 0; start < pending.size(); start += BULK_QUERY_SIZE) {
+            final List<List<String>> chunk = pending.subList(start, Math.min(pending.size(), start + BULK_QUERY_SIZE));
+            final StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName).append(" WHERE ");
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    sql.append(" OR ");
+                }
+                sql.append('(').append(issuerColumn).append("= ? AND ").append(recipientColumn).append("= ? AND ")
+                    .append(sourceIdColumn).append("= ?)");
+            }
+
+            log.trace("Prepared statement: {}", sql);
+            try (final PreparedStatement statement = dbConn.prepareStatement(sql.toString())) {
+                statement.setQueryTimeout((int) queryTimeout.toSeconds());
+                int param = 1;
+                for (final List<String> key : chunk) {
+                    statement.setString(param++, key.get(0));
+                    statement.setString(param++, key.get(1));
+                    statement.setString(param++, key.get(2));
+                }
+                for (final PairwiseId entry : buildIdentifierEntries(statement.executeQuery())) {
+                    rows.computeIfAbsent(getCacheKey(entry), k -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+
+        final Map<List<String>,PairwiseId> latest = new HashMap<>(rows.size());
+        for (final Map.Entry<List<String>,List<PairwiseId>> entries : rows.entrySet()) {
+            Instant lastDeactivation = null;
+            for (final PairwiseId entry : entries.getValue()) {
+                if (entry.getDeactivationTime() != null
+                        && (lastDeactivation == null || entry.getDeactivationTime().isAfter(lastDeactivation))) {
+                    lastDeactivation = entry.getDeactivationTime();
+                }
+            }
+            PairwiseId selected = null;
+            for (final PairwiseId entry : entries.getValue()) {
+                if ((entry.getDeactivationTime() == null || entry.getDeactivationTime().equals(lastDeactivation))
+                        && (selected == null || isCreatedAfter(entry, selected))) {
+                    selected = entry;
+                }
+            }
+            if (selected != null) {
+                latest.put(entries.getKey(), selected);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Get whether one record was created after another.
+     * 
+     * @param entry the record to check
+     * @param other the record to compare to
+     * 
+     * @return true iff the first record has the later creation time
+     */
+    private boolean isCreatedAfter(@Nonnull final PairwiseId entry, @Nonnull final PairwiseId other) {
+        return entry.getCreationTime() != null
+                && (other.getCreationTime() == null || entry.getCreationTime().isAfter(other.getCreationTime()));
+    }
+
+    /**
+     * Get whether an exception signals that the transaction should be retried.
+     * 
+     * @param e the exception
+     * 
+     * @return true iff the SQL state matches one of the retryable errors
+     */
+    private boolean isRetryable(@Nonnull final SQLException e) {
+        for (final String msg : retryableErrors) {
+            if (e.getSQLState() != null && e.getSQLState().contains(msg)) {
+                log.warn("Caught retryable SQL exception", e);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the key under which the lookup result for an input is cached.
+     * 
+     * @param pid the input
+     * 
+     * @return issuer, recipient and source ID
+     */
+    @Nonnull @NonnullElements private static List<String> getCacheKey(@Nonnull final PairwiseId pid) {
+        return List.of(pid.getIssuerEntityID(), pid.getRecipientEntityID(), pid.getSourceSystemId());
+    }
+
+    /**
+     * Get a usable cached lookup result.
+     * 
+     * <p>An ID found to have been deactivated since it was cached is not usable, nor is the absence of an ID
+     * if creation is allowed or the negative cache expiration has passed.</p>
+     * 
+     * @param cacheKey cache key
+     * @param allowCreate whether the lookup may create an ID
+     * 
+     * @return the cached result, or null if there is no usable result
+     */
+    @Nullable private CachedId getCachedId(@Nonnull @NonnullElements final List<String> cacheKey,
+            final boolean allowCreate) {
+        if (cache == null) {
+            return null;
+        }
+        final CachedId cached = cache.getIfPresent(cacheKey);
+        if (cached == null) {
+            return null;
+        } else if (cached.getId() == null) {
+            return !allowCreate
+                    && Instant.now().isBefore(cached.getCachedAt().plus(negativeCacheExpiration)) ? cached : null;
+        } else if (cached.getId().getDeactivationTime() != null
+                && !cached.getId().getDeactivationTime().isAfter(Instant.now())) {
+            cache.invalidate(cacheKey);
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Cache a lookup result.
+     * 
+     * @param cacheKey cache key
+     * @param id the active ID, or null if there is none
+     */
+    private void cacheId(@Nonnull @NonnullElements final List<String> cacheKey, @Nullable final PairwiseId id) {
+        if (cache == null || (id == null && negativeCacheExpiration.isZero())) {
+            return;
+        }
+        final CachedId previous = cache.asMap().put(cacheKey, new CachedId(id != null ? copy(id) : null));
+        if (previous != null && previous.getId() != null) {
+            cacheKeysByIssuedId.remove(getIssuedIdKey(previous.getId()), cacheKey);
+        }
+        if (id != null) {
+            cacheKeysByIssuedId.put(getIssuedIdKey(id), cacheKey);
+        }
+    }
+
+    /**
+     * Remove any cached result for an issued ID.
+     * 
+     * @param pid the issued ID
+     */
+    private void invalidateCachedId(@Nonnull final PairwiseId pid) {
+        if (cache == null) {
+            return;
+        }
+        final List<String> cacheKey = cacheKeysByIssuedId.remove(getIssuedIdKey(pid));
+        if (cacheKey != null) {
+            cache.invalidate(cacheKey);
+        }
+    }
+
+    /**
+     * Get the key under which the cache key for an issued ID is recorded.
+     * 
+     * @param pid the issued ID
+     * 
+     * @return issuer, recipient and pairwise ID
+     */
+    @Nonnull @NonnullElements private static List<String> getIssuedIdKey(@Nonnull final PairwiseId pid) {
+        return List.of(pid.getIssuerEntityID(), pid.getRecipientEntityID(), pid.getPairwiseId());
+    }
+
+    /**
+     * Copy a {@link PairwiseId}, which is mutable.
+     * 
+     * @param pid the object to copy
+     * 
+     * @return the copy
+     */
+    @Nonnull private static PairwiseId copy(@Nonnull final PairwiseId pid) {
+        final PairwiseId copy = new PairwiseId();
+        copy.setIssuerEntityID(pid.getIssuerEntityID());
+        copy.setRecipientEntityID(pid.getRecipientEntityID());
+        copy.setPrincipalName(pid.getPrincipalName());
+        copy.setSourceSystemId(pid.getSourceSystemId());
+        copy.setPairwiseId(pid.getPairwiseId());
+        copy.setPeerProvidedId(pid.getPeerProvidedId());
+        copy.setCreationTime(pid.getCreationTime());
+        copy.setDeactivationTime(pid.getDeactivationTime());
+        return copy;
     }
 
     /**
@@ -892,5 +1351,43 @@ public class JDBCPairwiseIdStore extends AbstractInitializableComponent implemen
     
         return entries;
     }
-    
-}
\ No newline at end of file
+
+    /** A cached lookup result. */
+    private static final class CachedId {
+
+        /** The active ID, or null if there was none. */
+        @Nullable private final PairwiseId id;
+
+        /** When the result was cached. */
+        @Nonnull private final Instant cachedAt;
+
+        /**
+         * Constructor.
+         *
+         * @param pid the active ID, or null if there was none
+         */
+        CachedId(@Nullable final PairwiseId pid) {
+            id = pid;
+            cachedAt = Instant.now();
+        }
+
+        /**
+         * Get the active ID.
+         * 
+         * @return the active ID, or null if there was none
+         */
+        @Nullable PairwiseId getId() {
+            return id;
+        }
+
+        /**
+         * Get when the result was cached.
+         * 
+         * @return when the result was cached
+         */
+        @Nonnull Instant getCachedAt() {
+            return cachedAt;
+        }
+    }
+
+}
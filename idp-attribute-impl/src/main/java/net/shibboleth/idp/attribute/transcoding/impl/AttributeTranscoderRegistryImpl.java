@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -44,17 +45,24 @@ import net.shibboleth.idp.attribute.transcoding.AttributeTranscoder;
 import net.shibboleth.idp.attribute.transcoding.AttributeTranscoderRegistry;
 import net.shibboleth.idp.attribute.transcoding.TranscodingRule;
 import net.shibboleth.idp.profile.logic.RelyingPartyIdPredicate;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport.ObjectType;
 
-/** Service implementation of the {@link AttributeTranscoderRegistry} interface. */
+/**
+ * Service implementation of the {@link AttributeTranscoderRegistry} interface.
+ * 
+ * <p>Rules are indexed by name and type into immutable lists when the registry is initialized, and the type
+ * used to look up rules for a given class is cached, so lookups do not allocate.</p>
+ */
 @ThreadSafe
 public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponent<AttributeTranscoderRegistry>
         implements AttributeTranscoderRegistry {
@@ -74,12 +82,23 @@ public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponen
     /** Registry of naming functions for supported object types. */
     @Nonnull @NonnullElements private final Map<Class<?>,Function<?,String>> namingFunctionRegistry;
     
+    /** Immutable copy of the transcoding registry, built at initialization. */
+    @NonnullAfterInit private Map<String,Map<Class<?>,List<TranscodingRule>>> transcodingIndex;
+    
+    /** Cache of the effective type for each type passed in. */
+    @Nonnull private final ClassValue<Optional<Class<?>>> effectiveTypes;
+    
     /** Constructor. */
     public AttributeTranscoderRegistryImpl() {
         transcodingRegistry = new HashMap<>();
         namingFunctionRegistry = new HashMap<>();
         displayNameRegistry = new HashMap<>();
         descriptionRegistry = new HashMap<>();
+        effectiveTypes = new ClassValue<>() {
+            protected Optional<Class<?>> computeValue(final Class<?> type) {
+                return Optional.ofNullable(findEffectiveType(type));
+            }
+        };
     }
     
     /** {@inheritDoc} */
@@ -157,6 +176,20 @@ public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponen
         }
     }
     
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        
+        final Map<String,Map<Class<?>,List<TranscodingRule>>> index = new HashMap<>(transcodingRegistry.size());
+        transcodingRegistry.forEach((name, rules) -> {
+            final Map<Class<?>,List<TranscodingRule>> byType = new HashMap<>(rules.keySet().size());
+            rules.asMap().forEach((type, typeRules) -> byType.put(type, List.copyOf(typeRules)));
+            index.put(name, Map.copyOf(byType));
+        });
+        transcodingIndex = Map.copyOf(index);
+    }
+    
     /** {@inheritDoc} */
     @Nonnull @NonnullElements @NotLive @Unmodifiable public Map<Locale,String> getDisplayNames(
             @Nonnull final IdPAttribute attribute) {
@@ -188,7 +221,7 @@ public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponen
         Constraint.isNotNull(from, "IdPAttribute cannot be null");
         Constraint.isNotNull(to, "Target type cannot be null");
         
-        final Multimap<Class<?>,TranscodingRule> propertyCollections = transcodingRegistry.get(from.getId());
+        final Map<Class<?>,List<TranscodingRule>> propertyCollections = transcodingIndex.get(from.getId());
         if (propertyCollections == null) {
             return Collections.emptyList();
         }
@@ -201,7 +234,7 @@ public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponen
         
         log.trace("Using rules for effective type {}", effectiveType.getName());
         
-        return List.copyOf(propertyCollections.get(effectiveType));
+        return propertyCollections.getOrDefault(effectiveType, Collections.emptyList());
     }
 
     /** {@inheritDoc} */
@@ -223,9 +256,10 @@ public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponen
         // Don't know if we can work around this cast or not.
         @SuppressWarnings("unchecked") final String id = ((Function<? super T,String>) namingFunction).apply(from);
         if (id != null) {
-            final Multimap<Class<?>,TranscodingRule> propertyCollections = transcodingRegistry.get(id);
+            final Map<Class<?>,List<TranscodingRule>> propertyCollections = transcodingIndex.get(id);
             
-            return propertyCollections != null ? List.copyOf(propertyCollections.get(effectiveType))
+            return propertyCollections != null
+                    ? propertyCollections.getOrDefault(effectiveType, Collections.emptyList())
                     : Collections.emptyList();
         }
         log.warn("Object of type {} did not have a canonical name", from.getClass().getName());
@@ -382,6 +416,17 @@ public class AttributeTranscoderRegistryImpl extends AbstractServiceableComponen
      * @return the appropriate type to use subsequently or null if not found
      */
     @Nullable private Class<?> getEffectiveType(@Nonnull final Class<?> inputType) {
+        return effectiveTypes.get(inputType).orElse(null);
+    }
+    
+    /**
+     * Find the appropriate type (possibly itself) to use in looking up rules for an input type.
+     * 
+     * @param inputType the type passed into the registry operation
+     * 
+     * @return the appropriate type to use subsequently or null if not found
+     */
+    @Nullable private Class<?> findEffectiveType(@Nonnull final Class<?> inputType) {
         
         // Check for explicit support.
         if (namingFunctionRegistry.containsKey(inputType)) {
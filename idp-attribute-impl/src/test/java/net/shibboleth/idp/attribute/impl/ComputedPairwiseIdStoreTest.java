@@ -18,7 +18,13 @@
 package net.shibboleth.idp.attribute.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.shibboleth.idp.attribute.PairwiseId;
 import net.shibboleth.idp.attribute.impl.ComputedPairwiseIdStore.Encoding;
@@ -165,4 +171,82 @@ public class ComputedPairwiseIdStoreTest {
         Assert.assertEquals(pid.getPairwiseId(), B32RESULT);
     }
    
-}
\ No newline at end of file
+    @Test
+    public void testPrincipalOverride() throws Exception {
+        final ComputedPairwiseIdStore store = new ComputedPairwiseIdStore();
+        store.setSalt(salt);
+        store.setExceptionMap(Map.of(
+                ComputedPairwiseIdStore.WILDCARD_OVERRIDE,
+                Collections.<String,String>singletonMap(ComputedPairwiseIdStore.WILDCARD_OVERRIDE, null),
+                "foo", Collections.<String,String>singletonMap(DatabaseTestingSupport.SP_ENTITY_ID, salt2)));
+        store.initialize();
+
+        PairwiseId pid = new PairwiseId();
+        pid.setRecipientEntityID(DatabaseTestingSupport.SP_ENTITY_ID);
+        pid.setPrincipalName("foo");
+        pid.setSourceSystemId(COMMON_ATTRIBUTE_VALUE_STRING);
+        
+        pid = store.getBySourceValue(pid, true);
+
+        Assert.assertNotNull(pid);
+        Assert.assertEquals(pid.getPairwiseId(), RESULT2);
+        
+        pid.setPrincipalName("bar");
+        try {
+            store.getBySourceValue(pid, true);
+            Assert.fail("Generation should have been blocked");
+        } catch (final IOException e) {
+            
+        }
+    }
+
+    @Test
+    public void testConcurrentComputedId() throws Exception {
+        final ComputedPairwiseIdStore store = new ComputedPairwiseIdStore();
+        store.setSalt(salt);
+        store.setExceptionMap(Collections.singletonMap("bar",
+                Collections.<String,String>singletonMap(DatabaseTestingSupport.SP_ENTITY_ID, salt2)));
+        store.initialize();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 500; j++) {
+                        final PairwiseId pid = new PairwiseId();
+                        pid.setRecipientEntityID(DatabaseTestingSupport.SP_ENTITY_ID);
+                        pid.setPrincipalName(j % 2 == 0 ? "foo" : "bar");
+                        pid.setSourceSystemId(COMMON_ATTRIBUTE_VALUE_STRING);
+                        final String expected = j % 2 == 0 ? RESULT : RESULT2;
+                        if (!expected.equals(store.getBySourceValue(pid, true).getPairwiseId())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions=IOException.class)
+    public void testUnsupportedAlgorithm() throws Exception {
+        final ComputedPairwiseIdStore store = new ComputedPairwiseIdStore();
+        store.setSalt(salt);
+        store.setAlgorithm("NoSuchDigest");
+        store.initialize();
+
+        final PairwiseId pid = new PairwiseId();
+        pid.setRecipientEntityID(DatabaseTestingSupport.SP_ENTITY_ID);
+        pid.setPrincipalName("foo");
+        pid.setSourceSystemId(COMMON_ATTRIBUTE_VALUE_STRING);
+        
+        store.getBySourceValue(pid, true);
+    }
+
+}
@@ -23,6 +23,9 @@ import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -170,5 +173,95 @@ public class JDBCPairwiseIdStoreTest {
         Assert.assertNull(id3.getDeactivationTime());
         Assert.assertTrue(comparePersistentIdEntrys(id3, id));
     }
-    
-}
\ No newline at end of file
+
+    private PairwiseId newInput(@Nonnull final String recipient) {
+        final PairwiseId id = new PairwiseId();
+        id.setIssuerEntityID(DatabaseTestingSupport.IDP_ENTITY_ID);
+        id.setRecipientEntityID(recipient);
+        id.setPrincipalName(DatabaseTestingSupport.PRINCIPAL_ID);
+        id.setSourceSystemId("localID");
+        return id;
+    }
+
+    @Test public void cache() throws ComponentInitializationException, IOException, SQLException {
+        final JDBCPairwiseIdStore store = new JDBCPairwiseIdStore();
+        store.setDataSource(testSource);
+        store.setCacheSize(100);
+        store.initialize();
+
+        Assert.assertNull(store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), false));
+
+        // Stored behind the cache, so only seen by a lookup that may create.
+        final PairwiseId id = newInput(DatabaseTestingSupport.SP_ENTITY_ID);
+        id.setPairwiseId(UUID.randomUUID().toString());
+        id.setCreationTime(Instant.now());
+        try (final Connection conn = testSource.getConnection()) {
+            store.store(id, conn);
+        }
+        Assert.assertNull(store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), false));
+        PairwiseId result = store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), true);
+        Assert.assertTrue(comparePersistentIdEntrys(result, id));
+
+        // Now cached, and returned as a copy.
+        result.setPairwiseId("changed");
+        result = store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), false);
+        Assert.assertTrue(comparePersistentIdEntrys(result, id));
+
+        id.setPeerProvidedId("PeerprovidedId");
+        store.attach(id);
+        result = store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), false);
+        Assert.assertEquals(result.getPeerProvidedId(), "PeerprovidedId");
+
+        store.deactivate(id);
+        Assert.assertNull(store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), false));
+        result = store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), true);
+        Assert.assertNotEquals(result.getPairwiseId(), id.getPairwiseId());
+        Assert.assertEquals(result.getPeerProvidedId(), "PeerprovidedId");
+
+        // Deactivation by issued ID alone, without the source ID, also reaches the cached result.
+        final PairwiseId issued = new PairwiseId();
+        issued.setIssuerEntityID(result.getIssuerEntityID());
+        issued.setRecipientEntityID(result.getRecipientEntityID());
+        issued.setPairwiseId(result.getPairwiseId());
+        store.deactivate(issued);
+        Assert.assertNull(store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID), false));
+    }
+
+    @Test public void bulk() throws ComponentInitializationException, IOException {
+        final JDBCPairwiseIdStore store = new JDBCPairwiseIdStore();
+        store.setDataSource(testSource);
+        store.initialize();
+
+        final List<PairwiseId> inputs = new ArrayList<>();
+        for (int i = 0; i < JDBCPairwiseIdStore.BULK_QUERY_SIZE + 10; i++) {
+            inputs.add(newInput(DatabaseTestingSupport.SP_ENTITY_ID + i));
+        }
+        inputs.add(newInput(DatabaseTestingSupport.SP_ENTITY_ID + "0"));
+
+        Assert.assertEquals(store.getBySourceValues(inputs, false), Collections.nCopies(inputs.size(), null));
+
+        final List<PairwiseId> created = store.getBySourceValues(inputs, true);
+        Assert.assertEquals(created.size(), inputs.size());
+        Assert.assertEquals(created.get(created.size() - 1).getPairwiseId(), created.get(0).getPairwiseId());
+        Assert.assertNull(inputs.get(0).getPairwiseId());
+
+        final PairwiseId single = store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID + "5"), false);
+        Assert.assertTrue(comparePersistentIdEntrys(single, created.get(5)));
+
+        store.deactivate(created.get(5));
+        final List<PairwiseId> existing = store.getBySourceValues(inputs, false);
+        for (int i = 0; i < inputs.size(); i++) {
+            if (i == 5) {
+                Assert.assertNull(existing.get(i));
+            } else {
+                Assert.assertTrue(comparePersistentIdEntrys(existing.get(i), created.get(i)));
+            }
+        }
+
+        final PairwiseId replacement = store.getBySourceValues(List.of(inputs.get(5)), true).get(0);
+        Assert.assertNotEquals(replacement.getPairwiseId(), created.get(5).getPairwiseId());
+        Assert.assertTrue(comparePersistentIdEntrys(
+                store.getBySourceValue(newInput(DatabaseTestingSupport.SP_ENTITY_ID + "5"), false), replacement));
+    }
+
+}
@@ -121,6 +121,24 @@ public class AttributeTranscoderRegistryImplTest {
         assertTrue(registry.getTranscodingRules(new IdPAttribute("foo"), String.class).isEmpty());
 }
 
+    @Test public void testSharedRules() {
+        final Collection<TranscodingRule> rules = registry.getTranscodingRules(new IdPAttribute("foo"), Pair.class);
+        assertEquals(rules.size(), 3);
+        assertSame(registry.getTranscodingRules(new IdPAttribute("foo"), MyPair.class), rules);
+        assertSame(registry.getTranscodingRules(new IdPAttribute("foo"), Pair.class), rules);
+        
+        final Collection<TranscodingRule> decodeRules = registry.getTranscodingRules(new MyPair<>("bar", "value"));
+        assertEquals(decodeRules.size(), 1);
+        assertSame(registry.getTranscodingRules(new Pair<>("bar", "value")), decodeRules);
+        
+        try {
+            rules.clear();
+            fail("Rules should be unmodifiable");
+        } catch (final UnsupportedOperationException e) {
+            
+        }
+    }
+
     @Test public void testDecodeNoMappings() throws AttributeDecodingException {
         
         assertTrue(registry.getTranscodingRules(new Pair<>("foo", "value")).isEmpty());
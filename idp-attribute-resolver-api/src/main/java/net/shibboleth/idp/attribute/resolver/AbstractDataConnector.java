@@ -171,6 +171,9 @@ public abstract class AbstractDataConnector extends AbstractResolverPlugin<Map<S
      * This method delegates to
      * {@link #doDataConnectorResolve(AttributeResolutionContext, AttributeResolverWorkContext)}. It serves as a future
      * extension point for introducing new common behavior.
+     * 
+     * Any failure other than an 'expected' one is recorded both as the last failure time and in the work context, so
+     * that the failure of this particular call can be seen even if it is not propagated.
      */
     @Override
     @Nullable public final Map<String, IdPAttribute> doResolve(
@@ -185,6 +188,7 @@ public abstract class AbstractDataConnector extends AbstractResolverPlugin<Map<S
             throw e;
         } catch (final Exception e) {
             setLastFail(Instant.now());
+            workContext.recordDataConnectorFailure(this);
             throw e;
         }
 
@@ -316,12 +316,15 @@ public abstract class AbstractResolverPlugin<ResolvedType> extends AbstractIdent
      * 
      * @return true iff the {@link #stopTimer(AttributeResolutionContext)} method needs to be called
      */
-    private boolean startTimer(@Nonnull final AttributeResolutionContext resolutionContext) {
+    protected boolean startTimer(@Nonnull final AttributeResolutionContext resolutionContext) {
         final ProfileRequestContext prc = profileContextStrategy.apply(resolutionContext);
         if (prc != null) {
             final MetricContext timerCtx = prc.getSubcontext(MetricContext.class);
             if (timerCtx != null) {
-                timerCtx.start(getId());
+                // Plugins may be resolved concurrently, so serialize access to the shared timer state.
+                synchronized (timerCtx) {
+                    timerCtx.start(getId());
+                }
                 return true;
             }
         }
@@ -333,12 +336,14 @@ public abstract class AbstractResolverPlugin<ResolvedType> extends AbstractIdent
      * 
      * @param resolutionContext attribute resolution context
      */
-    private void stopTimer(@Nonnull final AttributeResolutionContext resolutionContext) {
+    protected void stopTimer(@Nonnull final AttributeResolutionContext resolutionContext) {
         final ProfileRequestContext prc = profileContextStrategy.apply(resolutionContext);
         if (prc != null) {
             final MetricContext timerCtx = prc.getSubcontext(MetricContext.class);
             if (timerCtx != null) {
-                timerCtx.stop(getId());
+                synchronized (timerCtx) {
+                    timerCtx.stop(getId());
+                }
             }
         }
     }
@@ -17,6 +17,10 @@
 
 package net.shibboleth.idp.attribute.resolver;
 
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -48,4 +52,33 @@ public interface AttributeResolver extends IdentifiedComponent {
      */
     void resolveAttributes(@Nonnull final AttributeResolutionContext resolutionContext) throws ResolutionException;
 
+    /**
+     * Resolves the attributes for many subjects.
+     * 
+     * <p>The contexts are consumed lazily from the supplied stream and each is passed to the handler as soon as
+     * its resolution is complete, so memory use does not depend on the number of subjects. A failure to resolve
+     * one subject does not prevent the others from being resolved; the exception is passed to the handler
+     * alongside the context instead.</p>
+     * 
+     * <p>The default implementation simply resolves each subject in turn.</p>
+     * 
+     * @param resolutionContexts the attribute resolution contexts, one per subject
+     * @param handler receives each context once it has been resolved, together with the exception if resolution
+     *          failed
+     */
+    default void resolveAttributes(@Nonnull final Stream<AttributeResolutionContext> resolutionContexts,
+            @Nonnull final BiConsumer<AttributeResolutionContext,ResolutionException> handler) {
+        final Iterator<AttributeResolutionContext> iterator = resolutionContexts.iterator();
+        while (iterator.hasNext()) {
+            final AttributeResolutionContext resolutionContext = iterator.next();
+            ResolutionException failure = null;
+            try {
+                resolveAttributes(resolutionContext);
+            } catch (final ResolutionException e) {
+                failure = e;
+            }
+            handler.accept(resolutionContext, failure);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.resolver;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+
+/**
+ * A {@link DataConnector} which can resolve attributes for several subjects at once.
+ * 
+ * <p>This is only used by an {@link AttributeResolver} during bulk resolution, and only for connectors which
+ * have no dependencies on other plugins. The results are recorded against each subject as if they had been
+ * produced by {@link #resolve(AttributeResolutionContext)}. Each supplied context carries an
+ * {@link net.shibboleth.idp.attribute.resolver.context.AttributeResolverWorkContext}.</p>
+ * 
+ * <p>A failure of the underlying data source should be handled as {@link #resolve(AttributeResolutionContext)}
+ * would handle it for each subject: the failure is recorded against the connector and in each work context,
+ * and is either thrown or, if exceptions are not propagated, replaced by empty results. The resolver treats a
+ * thrown exception as a failure of the connector for every subject, so the connector is not queried again for
+ * them and any failover connector is used instead.</p>
+ */
+@ThreadSafe
+public interface BulkDataConnector extends DataConnector {
+
+    /**
+     * Resolve attributes for each of the supplied subjects.
+     * 
+     * @param resolutionContexts the resolution contexts of the subjects
+     * 
+     * @return the attributes for each subject, in the same order as the contexts; an entry is empty if no
+     *      attributes were resolved for that subject, and null if that subject was not resolved and should be
+     *      resolved individually in the usual way
+     * 
+     * @throws ResolutionException thrown if there was a problem resolving the attributes
+     */
+    @Nonnull List<Map<String,IdPAttribute>> resolve(
+            @Nonnull @NonnullElements final List<AttributeResolutionContext> resolutionContexts)
+                    throws ResolutionException;
+
+}
@@ -18,12 +18,13 @@
 package net.shibboleth.idp.attribute.resolver.context;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
 
 import net.shibboleth.idp.attribute.IdPAttribute;
 import net.shibboleth.idp.attribute.resolver.AttributeDefinition;
@@ -44,8 +45,13 @@ import org.opensaml.messaging.context.BaseContext;
  * <p>
  * This should be considered a private API limited to plugin implementations.
  * </p>
+ * 
+ * <p>
+ * Recording is safe to perform from multiple threads so that independent data connectors may be resolved
+ * concurrently.
+ * </p>
  */
-@NotThreadSafe
+@ThreadSafe
 public final class AttributeResolverWorkContext extends BaseContext {
 
     /** Attribute definitions that have been resolved and the resultant attribute. */
@@ -54,11 +60,16 @@ public final class AttributeResolverWorkContext extends BaseContext {
     /** Data connectors that have been resolved and the resultant attributes. */
     @Nonnull @NonnullElements private final Map<String, ResolvedDataConnector> resolvedDataConnectors;
 
+    /** IDs of data connectors that failed during this resolution. */
+    @Nonnull @NonnullElements private final Set<String> failedDataConnectors;
+
     /** Constructor. */
     public AttributeResolverWorkContext() {
-        resolvedAttributeDefinitions = new HashMap<>();
+        resolvedAttributeDefinitions = new ConcurrentHashMap<>();
+
+        resolvedDataConnectors = new ConcurrentHashMap<>();
 
-        resolvedDataConnectors = new HashMap<>();
+        failedDataConnectors = ConcurrentHashMap.newKeySet();
     }
 
     /**
@@ -84,13 +95,11 @@ public final class AttributeResolverWorkContext extends BaseContext {
             @Nullable final IdPAttribute attribute) throws ResolutionException {
         Constraint.isNotNull(definition, "Resolver attribute definition cannot be null");
 
-        if (resolvedAttributeDefinitions.containsKey(definition.getId())) {
+        final ResolvedAttributeDefinition wrapper = new ResolvedAttributeDefinition(definition, attribute);
+        if (resolvedAttributeDefinitions.putIfAbsent(definition.getId(), wrapper) != null) {
             throw new ResolutionException("The resolution of attribute definition " + definition.getId()
                     + " has already been recorded");
         }
-
-        final ResolvedAttributeDefinition wrapper = new ResolvedAttributeDefinition(definition, attribute);
-        resolvedAttributeDefinitions.put(definition.getId(), wrapper);
     }
 
     /**
@@ -115,13 +124,32 @@ public final class AttributeResolverWorkContext extends BaseContext {
             @Nullable final Map<String, IdPAttribute> attributes) throws ResolutionException {
         Constraint.isNotNull(connector, "Resolver data connector cannot be null");
 
-        if (resolvedDataConnectors.containsKey(connector.getId())) {
+        final ResolvedDataConnector wrapper = new ResolvedDataConnector(connector, attributes);
+        if (resolvedDataConnectors.putIfAbsent(connector.getId(), wrapper) != null) {
             throw new ResolutionException("The resolution of data connector " + connector.getId()
                     + " has already been recorded");
         }
+    }
 
-        final ResolvedDataConnector wrapper = new ResolvedDataConnector(connector, attributes);
-        resolvedDataConnectors.put(connector.getId(), wrapper);
+    /**
+     * Gets the IDs of the data connectors that have been recorded as failing during this resolution, including
+     * those whose failure was not propagated.
+     * 
+     * @return IDs of the failed data connectors
+     */
+    @Nonnull @NonnullElements @Unmodifiable public Set<String> getFailedDataConnectors() {
+        return Collections.unmodifiableSet(failedDataConnectors);
+    }
+
+    /**
+     * Records that a data connector failed during this resolution.
+     * 
+     * @param connector the failed data connector, must not be null
+     */
+    public void recordDataConnectorFailure(@Nonnull final DataConnector connector) {
+        Constraint.isNotNull(connector, "Resolver data connector cannot be null");
+
+        failedDataConnectors.add(connector.getId());
     }
 
     /**
@@ -140,11 +168,6 @@ public final class AttributeResolverWorkContext extends BaseContext {
             return;
         }
 
-        if (resolvedDataConnectors.containsKey(failedConnector.getId())) {
-            throw new ResolutionException("The resolution of data connector " + failedConnector.getId()
-                    + " has already been recorded");
-        }
-
         final ResolvedDataConnector resolvedFailoverConector = resolvedDataConnectors.get(failoverConnector.getId());
         if (null == resolvedFailoverConector) {
             throw new ResolutionException("The resolution of failover conector" + failoverConnector.getId()
@@ -152,6 +175,9 @@ public final class AttributeResolverWorkContext extends BaseContext {
         }
         final ResolvedDataConnector wrapper =
                 new ResolvedDataConnector(failedConnector, resolvedFailoverConector.getResolvedAttributes());
-        resolvedDataConnectors.put(failedConnector.getId(), wrapper);
+        if (resolvedDataConnectors.putIfAbsent(failedConnector.getId(), wrapper) != null) {
+            throw new ResolutionException("The resolution of data connector " + failedConnector.getId()
+                    + " has already been recorded");
+        }
     }
 }
\ No newline at end of file
@@ -45,5 +45,15 @@ public interface HTTPSearch extends ExecutableSearch {
     @Nonnull Map<String,IdPAttribute> execute(@Nonnull final HttpClient client,
             @Nullable final HttpClientSecurityParameters securityParameters,
             @Nonnull final HTTPResponseMappingStrategy mappingStrategy) throws IOException;
+
+    /**
+     * Abort a request in progress from another thread, causing {@link #execute(HttpClient,
+     * HttpClientSecurityParameters, HTTPResponseMappingStrategy)} to fail with an {@link IOException}.
+     * 
+     * <p>The default implementation does nothing, in which case the request runs to completion.</p>
+     */
+    default void abort() {
+        
+    }
     
 }
\ No newline at end of file
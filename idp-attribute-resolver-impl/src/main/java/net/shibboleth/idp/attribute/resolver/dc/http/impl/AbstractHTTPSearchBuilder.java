@@ -173,6 +173,11 @@ public abstract class AbstractHTTPSearchBuilder extends AbstractInitializableCom
                 HttpClientSecuritySupport.checkTLSCredentialEvaluated(clientContext, request.getURI().getScheme());
                 return results;
             }
+
+            /** {@inheritDoc} */
+            public void abort() {
+                request.abort();
+            }
             
         };
 // Checkstyle: AnonInnerLength ON
@@ -22,7 +22,15 @@
 package net.shibboleth.idp.attribute.resolver.dc.http.impl;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -39,6 +47,8 @@ import net.shibboleth.idp.attribute.resolver.dc.http.HTTPResponseMappingStrategy
 import net.shibboleth.idp.attribute.resolver.dc.http.HTTPSearch;
 import net.shibboleth.idp.attribute.resolver.dc.impl.AbstractSearchDataConnector;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
@@ -46,6 +56,11 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 /**
  * This class implements a {@link net.shibboleth.idp.attribute.resolver.DataConnector}
  * that obtains data from an HTTP service.
+ * 
+ * <p>An overall deadline may be applied to each request, after which the request is aborted, and the number of
+ * requests outstanding at once may be bounded so that a slow service cannot tie up more threads than the
+ * client's connection pool can serve. Counts of requests, failures, timeouts and latency are available via
+ * {@link #getStatistics()}.</p>
  */
 public class HTTPDataConnector extends AbstractSearchDataConnector<HTTPSearch,HTTPResponseMappingStrategy> {
     
@@ -57,9 +72,48 @@ public class HTTPDataConnector extends AbstractSearchDataConnector<HTTPSearch,HT
     
     /** HTTP client security parameters. */
     @Nullable private HttpClientSecurityParameters httpClientSecurityParameters;
+
+    /** Overall deadline for each request, or zero for none. */
+    @Nonnull private Duration requestTimeout;
+
+    /** Maximum number of requests outstanding at once, or zero for no limit. */
+    private int maxConcurrentRequests;
+
+    /** Permits for outstanding requests. */
+    @Nullable private Semaphore requestPermits;
+
+    /** Requests issued. */
+    @Nonnull private final LongAdder requests;
+
+    /** Requests that failed, including timeouts. */
+    @Nonnull private final LongAdder failures;
+
+    /** Requests aborted at the deadline. */
+    @Nonnull private final LongAdder timeouts;
+
+    /** Requests not issued because no permit became available before the deadline. */
+    @Nonnull private final LongAdder rejections;
+
+    /** Requests currently outstanding. */
+    @Nonnull private final AtomicInteger active;
+
+    /** Total time spent on requests. */
+    @Nonnull private final LongAdder requestTime;
+
+    /** Longest time spent on a request. */
+    @Nonnull private final LongAccumulator maxRequestTime;
     
     /** Constructor. */
     public HTTPDataConnector() {
+        requestTimeout = Duration.ZERO;
+        requests = new LongAdder();
+        failures = new LongAdder();
+        timeouts = new LongAdder();
+        rejections = new LongAdder();
+        active = new AtomicInteger();
+        requestTime = new LongAdder();
+        maxRequestTime = new LongAccumulator(Math::max, 0);
+
         setValidator(new Validator() {
             public void validate() throws ValidationException {
             }
@@ -96,6 +150,60 @@ public class HTTPDataConnector extends AbstractSearchDataConnector<HTTPSearch,HT
 
         httpClientSecurityParameters = params;
     }
+
+    /**
+     * Set an overall deadline for each request, including any wait for a request permit.
+     * 
+     * <p>A request still in progress at the deadline is aborted and the resolution fails. This bounds the time
+     * taken regardless of how the response trickles in, which the client's socket timeout alone does not.</p>
+     * 
+     * <p>Defaults to zero, meaning no deadline.</p>
+     * 
+     * @param timeout request deadline
+     */
+    public void setRequestTimeout(@Nonnull final Duration timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        Constraint.isNotNull(timeout, "Request timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative(), "Request timeout cannot be negative");
+        requestTimeout = timeout;
+    }
+
+    /**
+     * Set the maximum number of requests this connector will have outstanding at once.
+     * 
+     * <p>Requests beyond the limit wait for one to complete, up to the request deadline if one is set. This
+     * should usually not exceed the per-route connection limit of the client, so that requests queue here
+     * rather than holding threads while waiting for a connection.</p>
+     * 
+     * <p>Defaults to zero, meaning no limit.</p>
+     * 
+     * @param max maximum number of outstanding requests
+     */
+    public void setMaxConcurrentRequests(final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        maxConcurrentRequests = (int) Constraint.isGreaterThanOrEqual(0, max,
+                "Maximum concurrent requests cannot be negative");
+    }
+
+    /**
+     * Get request statistics for this connector.
+     * 
+     * @return counts of requests, failures, timeouts, rejections, outstanding requests, and total and maximum
+     *  request time
+     */
+    @Nonnull @NonnullElements @Unmodifiable public Map<String,Long> getStatistics() {
+        return Map.of("requests", requests.sum(),
+                "failures", failures.sum(),
+                "timeouts", timeouts.sum(),
+                "rejections", rejections.sum(),
+                "active", (long) active.get(),
+                "requestTimeMillis", TimeUnit.NANOSECONDS.toMillis(requestTime.sum()),
+                "maxRequestTimeMillis", TimeUnit.NANOSECONDS.toMillis(maxRequestTime.get()));
+    }
     
     /** {@inheritDoc} */
     public void doInitialize() throws ComponentInitializationException {
@@ -104,6 +212,10 @@ public class HTTPDataConnector extends AbstractSearchDataConnector<HTTPSearch,HT
         if (httpClient == null) {
             throw new ComponentInitializationException(getLogPrefix() + " HttpClient cannot be null");
         }
+
+        if (maxConcurrentRequests > 0) {
+            requestPermits = new Semaphore(maxConcurrentRequests, true);
+        }
     }
 
     /** {@inheritDoc} */
@@ -111,11 +223,78 @@ public class HTTPDataConnector extends AbstractSearchDataConnector<HTTPSearch,HT
     @Nullable protected Map<String,IdPAttribute> retrieveAttributes(@Nonnull final HTTPSearch executable)
             throws ResolutionException {
 
+        final long start = System.nanoTime();
+        final long deadline = requestTimeout.isZero() ? 0 : start + requestTimeout.toNanos();
+        acquirePermit(deadline);
+
+        requests.increment();
+        active.incrementAndGet();
+        boolean success = false;
+        
+        final AtomicBoolean expired = new AtomicBoolean();
+        final CompletableFuture<Void> watchdog;
+        if (deadline != 0) {
+            watchdog = CompletableFuture.runAsync(() -> {
+                    expired.set(true);
+                    executable.abort();
+                }, CompletableFuture.delayedExecutor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        } else {
+            watchdog = null;
+        }
+
         try {
-            return getMappingStrategy().map(
+            final Map<String,IdPAttribute> results = getMappingStrategy().map(
                     executable.execute(httpClient, httpClientSecurityParameters, getMappingStrategy()));
+            success = true;
+            return results;
         } catch (final IOException e) {
+            if (expired.get()) {
+                timeouts.increment();
+                throw new ResolutionException(getLogPrefix() + " HTTP request exceeded deadline of "
+                        + requestTimeout, e);
+            }
             throw new ResolutionException(getLogPrefix() + " HTTP request failed", e);
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (!success) {
+                failures.increment();
+            }
+            active.decrementAndGet();
+            if (requestPermits != null) {
+                requestPermits.release();
+            }
+            final long elapsed = System.nanoTime() - start;
+            requestTime.add(elapsed);
+            maxRequestTime.accumulate(elapsed);
+        }
+    }
+
+    /**
+     * Obtain a permit to issue a request, if the number of outstanding requests is bounded.
+     * 
+     * @param deadline time by which a permit must be obtained, per {@link System#nanoTime()}, or zero for none
+     * 
+     * @throws ResolutionException if no permit was obtained
+     */
+    private void acquirePermit(final long deadline) throws ResolutionException {
+        if (requestPermits == null) {
+            return;
+        }
+
+        try {
+            if (deadline == 0) {
+                requestPermits.acquire();
+            } else if (!requestPermits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                rejections.increment();
+                throw new ResolutionException(getLogPrefix() + " Deadline exceeded waiting for one of "
+                        + maxConcurrentRequests + " outstanding HTTP requests to complete");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejections.increment();
+            throw new ResolutionException(getLogPrefix() + " Interrupted waiting to issue HTTP request", e);
         }
     }
         
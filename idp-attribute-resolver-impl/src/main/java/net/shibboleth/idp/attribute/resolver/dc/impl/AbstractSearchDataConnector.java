@@ -17,9 +17,14 @@
 
 package net.shibboleth.idp.attribute.resolver.dc.impl;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -27,6 +32,7 @@ import javax.annotation.Nullable;
 import net.shibboleth.idp.attribute.IdPAttribute;
 import net.shibboleth.idp.attribute.IdPAttributeValue;
 import net.shibboleth.idp.attribute.resolver.AbstractDataConnector;
+import net.shibboleth.idp.attribute.resolver.BulkDataConnector;
 import net.shibboleth.idp.attribute.resolver.PluginDependencySupport;
 import net.shibboleth.idp.attribute.resolver.ResolutionException;
 import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
@@ -36,14 +42,17 @@ import net.shibboleth.idp.attribute.resolver.dc.ExecutableSearchBuilder;
 import net.shibboleth.idp.attribute.resolver.dc.MappingStrategy;
 import net.shibboleth.idp.attribute.resolver.dc.Validator;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
  * A {@link net.shibboleth.idp.attribute.resolver.DataConnector} containing functionality common to data connectors that
@@ -53,7 +62,7 @@ import com.google.common.cache.Cache;
  * @param <T2> type of mapping strategy
  */
 public abstract class AbstractSearchDataConnector<T1 extends ExecutableSearch,T2 extends MappingStrategy<?>>
-    extends AbstractDataConnector {
+    extends AbstractDataConnector implements BulkDataConnector {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractSearchDataConnector.class);
@@ -148,6 +157,11 @@ public abstract class AbstractSearchDataConnector<T1 extends ExecutableSearch,T2
     /**
      * Sets the cache used to cache search results. Note, all entries in the cache are invalidated prior to use.
      * 
+     * <p>Results are loaded via {@link Cache#get(Object, java.util.concurrent.Callable)}, so concurrent misses
+     * for the same key are coalesced if the cache implementation supports it. See {@link CoalescingResultsCache}
+     * for an implementation which also supports separate lifetimes for empty results and serving stale results
+     * while they are refreshed.</p>
+     * 
      * @param cache cache used to cache search results
      */
     public void setResultsCache(@Nullable final Cache<String,Map<String,IdPAttribute>> cache) {
@@ -172,6 +186,157 @@ public abstract class AbstractSearchDataConnector<T1 extends ExecutableSearch,T2
     @Nullable protected abstract Map<String,IdPAttribute> retrieveAttributes(@Nonnull final T1 executable)
             throws ResolutionException;
 
+    /**
+     * Attempts to retrieve attributes from the data source for several searches at once.
+     * 
+     * <p>Subclasses able to combine searches into fewer round-trips, and to attribute the combined results back
+     * to each search, should override this. The default implementation cannot, and returns null so that each
+     * subject is resolved individually.</p>
+     * 
+     * <p>Within the result, an entry should be empty if its search found nothing, and null if that search was
+     * not answered and should be performed individually. This includes a search whose results could not be
+     * mapped, so that the failure is reported against that subject alone.</p>
+     * 
+     * @param executables used to retrieve data from the data source
+     * 
+     * @return attributes for each search, in the same order as the searches, or null if the searches cannot be
+     *      combined
+     * 
+     * @throws ResolutionException thrown if there is a problem retrieving data from the data source
+     */
+    @Nullable protected List<Map<String,IdPAttribute>> retrieveAttributes(
+            @Nonnull @NonnullElements final List<T1> executables) throws ResolutionException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Searches are built for every subject, answered from the results cache where possible, and identical
+     * searches are executed only once. The remainder are passed to {@link #retrieveAttributes(List)}. A failure
+     * of the data source is recorded, and propagated or not, as it would be by
+     * {@link #resolve(AttributeResolutionContext)}.</p>
+     */
+    // CheckStyle: CyclomaticComplexity|MethodLength OFF
+    @Override @Nonnull public List<Map<String,IdPAttribute>> resolve(
+            @Nonnull @NonnullElements final List<AttributeResolutionContext> resolutionContexts)
+                    throws ResolutionException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        if (!getAttributeDependencies().isEmpty() || !getDataConnectorDependencies().isEmpty()) {
+            throw new ResolutionException(getLogPrefix() + " Cannot resolve in bulk with dependencies");
+        }
+
+        final Predicate<ProfileRequestContext> activation = getActivationCondition();
+        final List<Map<String,IdPAttribute>> results = new ArrayList<>(resolutionContexts.size());
+        final List<T1> searches = new ArrayList<>();
+        final List<String> searchKeys = new ArrayList<>();
+        final List<List<Integer>> searchTargets = new ArrayList<>();
+        final Map<String,Integer> searchesByKey = new HashMap<>();
+        final List<AttributeResolutionContext> timed = new ArrayList<>(resolutionContexts.size());
+
+        try {
+            for (final AttributeResolutionContext resolutionContext : resolutionContexts) {
+                final int index = results.size();
+                results.add(null);
+                if (startTimer(resolutionContext)) {
+                    timed.add(resolutionContext);
+                }
+                if (activation != null && !activation.test(getProfileContextStrategy().apply(resolutionContext))) {
+                    log.debug("{} Activation criteria not met for '{}', nothing to do", getLogPrefix(),
+                            resolutionContext.getPrincipal());
+                    results.set(index, Collections.emptyMap());
+                    continue;
+                }
+
+                final T1 executable;
+                try {
+                    executable = searchBuilder.build(resolutionContext, Collections.emptyMap());
+                } catch (final ResolutionException e) {
+                    log.debug("{} Unable to build search for '{}', leaving it to be resolved individually",
+                            getLogPrefix(), resolutionContext.getPrincipal(), e);
+                    continue;
+                }
+                final String cacheKey = executable.getResultCacheKey();
+                final boolean cacheable = cacheKey != null && resultsCache != null
+                        && resolutionContext.getAllowCachedResults();
+                if (cacheable) {
+                    final Map<String,IdPAttribute> cached = resultsCache.getIfPresent(cacheKey);
+                    if (cached != null) {
+                        results.set(index, cached);
+                        continue;
+                    }
+                }
+
+                final Integer existing = cacheKey != null ? searchesByKey.get(cacheKey) : null;
+                if (existing != null) {
+                    searchTargets.get(existing).add(index);
+                } else {
+                    if (cacheKey != null) {
+                        searchesByKey.put(cacheKey, searches.size());
+                    }
+                    searches.add(executable);
+                    searchKeys.add(cacheable ? cacheKey : null);
+                    final List<Integer> targets = new ArrayList<>(1);
+                    targets.add(index);
+                    searchTargets.add(targets);
+                }
+            }
+
+            if (searches.isEmpty()) {
+                return results;
+            }
+
+            log.debug("{} Combining {} searches for {} subjects", getLogPrefix(), searches.size(),
+                    resolutionContexts.size());
+            final List<Map<String,IdPAttribute>> retrieved;
+            try {
+                retrieved = retrieveAttributes(searches);
+            } catch (final ResolutionException e) {
+                setLastFail(Instant.now());
+                for (final List<Integer> targets : searchTargets) {
+                    for (final Integer index : targets) {
+                        final AttributeResolverWorkContext workContext = Constraint.isNotNull(
+                                resolutionContexts.get(index).getSubcontext(AttributeResolverWorkContext.class),
+                                "AttributeResolverWorkContext cannot be null");
+                        workContext.recordDataConnectorFailure(this);
+                        results.set(index, Collections.emptyMap());
+                    }
+                }
+                if (isPropagateResolutionExceptions()) {
+                    throw e;
+                }
+                log.error("{} Bulk resolution produced the following error but was configured not to propagate",
+                        getLogPrefix(), e);
+                return results;
+            }
+
+            if (retrieved == null) {
+                log.debug("{} Searches cannot be combined, resolving subjects individually", getLogPrefix());
+                return results;
+            }
+            for (int i = 0; i < searches.size(); i++) {
+                final Map<String,IdPAttribute> result = retrieved.get(i);
+                if (result == null) {
+                    continue;
+                }
+                for (final Integer index : searchTargets.get(i)) {
+                    results.set(index, result);
+                }
+                if (searchKeys.get(i) != null) {
+                    resultsCache.put(searchKeys.get(i), result);
+                }
+            }
+
+            return results;
+        } finally {
+            for (final AttributeResolutionContext resolutionContext : timed) {
+                stopTimer(resolutionContext);
+            }
+        }
+    }
+    // CheckStyle: CyclomaticComplexity|MethodLength ON
+
     /** {@inheritDoc} */
     @Override @Nullable protected Map<String, IdPAttribute> doDataConnectorResolve(
             @Nonnull final AttributeResolutionContext resolutionContext,
@@ -187,15 +352,9 @@ public abstract class AbstractSearchDataConnector<T1 extends ExecutableSearch,T2
         if (resultsCache != null && resolutionContext.getAllowCachedResults()) {
             final String cacheKey = executable.getResultCacheKey();
             if (cacheKey != null) {
-                resolvedAttributes = resultsCache.getIfPresent(cacheKey);
+                resolvedAttributes = getCachedAttributes(cacheKey, executable);
                 log.trace("{} Cache found, resolved attributes {} using cache {}", new Object[] {getLogPrefix(),
                         resolvedAttributes, resultsCache,});
-                if (resolvedAttributes == null) {
-                    resolvedAttributes = retrieveAttributes(executable);
-                    log.trace("{} Resolved attributes {}", getLogPrefix(), resolvedAttributes);
-                    resultsCache.put(cacheKey, resolvedAttributes != null ? resolvedAttributes
-                            : Collections.<String,IdPAttribute>emptyMap());
-                }
             } else {
                 log.trace("No cache key returned, will not check for cached results");
                 resolvedAttributes = retrieveAttributes(executable);
@@ -209,6 +368,39 @@ public abstract class AbstractSearchDataConnector<T1 extends ExecutableSearch,T2
         return resolvedAttributes;
     }
 
+    /**
+     * Obtain attributes from the results cache, searching the data source on a miss.
+     * 
+     * @param cacheKey the cache key
+     * @param executable used to retrieve data from the data source
+     * 
+     * @return attributes
+     * 
+     * @throws ResolutionException thrown if there is a problem retrieving data from the data source
+     */
+    @Nonnull private Map<String,IdPAttribute> getCachedAttributes(@Nonnull final String cacheKey,
+            @Nonnull final T1 executable) throws ResolutionException {
+        final Throwable cause;
+        try {
+            return resultsCache.get(cacheKey, () -> {
+                final Map<String,IdPAttribute> retrieved = retrieveAttributes(executable);
+                log.trace("{} Resolved attributes {}", getLogPrefix(), retrieved);
+                return retrieved != null ? retrieved : Collections.<String,IdPAttribute>emptyMap();
+            });
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            cause = e.getCause();
+        }
+
+        if (cause instanceof ResolutionException) {
+            throw (ResolutionException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new ResolutionException(getLogPrefix() + " Error retrieving attributes", (Exception) cause);
+    }
+
     /** {@inheritDoc} */
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.resolver.dc.impl;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.utilities.java.support.annotation.ParameterName;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A results cache for {@link AbstractSearchDataConnector} which coalesces concurrent lookups for the same key.
+ *
+ * <p>Concurrent misses on a key wait for a single in-flight search rather than each issuing their own. Empty
+ * results are cached for a distinct (usually shorter) lifetime from non-empty ones. Once an entry has expired it
+ * may still be served for a further "stale" period: the first caller to see the stale entry re-runs the search
+ * while any concurrent callers are given the stale result, and if the search fails the stale result is returned
+ * in its place.</p>
+ *
+ * <p>Counters of hits, misses, coalesced lookups and load time are available via {@link #getStatistics()}.</p>
+ */
+@ThreadSafe
+public class CoalescingResultsCache extends AbstractCache<String,Map<String,IdPAttribute>> {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CoalescingResultsCache.class);
+
+    /** Lifetime of non-empty results. */
+    @Nonnull private final Duration timeToLive;
+
+    /** Lifetime of empty results. */
+    @Nonnull private final Duration negativeTimeToLive;
+
+    /** How long after expiry a result may be served while it is refreshed. */
+    @Nonnull private final Duration staleTimeToLive;
+
+    /** Cached results. */
+    @Nonnull private final Cache<String,CachedResult> entries;
+
+    /** Searches currently in progress, keyed by cache key. */
+    @Nonnull private final ConcurrentMap<String,CompletableFuture<Map<String,IdPAttribute>>> inFlight;
+
+    /** Fresh results returned. */
+    @Nonnull private final LongAdder hits;
+
+    /** Stale results returned. */
+    @Nonnull private final LongAdder staleHits;
+
+    /** Lookups that found nothing usable and ran a search. */
+    @Nonnull private final LongAdder misses;
+
+    /** Lookups that waited on another caller's search. */
+    @Nonnull private final LongAdder coalesced;
+
+    /** Searches that failed. */
+    @Nonnull private final LongAdder loadFailures;
+
+    /** Total time spent searching, in nanoseconds. */
+    @Nonnull private final LongAdder loadTime;
+
+    /**
+     * Constructor.
+     *
+     * @param maximumSize maximum number of cached results
+     * @param ttl lifetime of non-empty results
+     * @param negativeTTL lifetime of empty results, or null to use the same lifetime as non-empty ones
+     * @param staleTTL how long after expiry a result may be served while it is refreshed, or null for none
+     */
+    public CoalescingResultsCache(@ParameterName(name="maximumSize") final long maximumSize,
+            @Nonnull @ParameterName(name="ttl") final Duration ttl,
+            @Nullable @ParameterName(name="negativeTTL") final Duration negativeTTL,
+            @Nullable @ParameterName(name="staleTTL") final Duration staleTTL) {
+        Constraint.isGreaterThan(0, maximumSize, "Maximum size must be greater than zero");
+        timeToLive = Constraint.isNotNull(ttl, "Time to live cannot be null");
+        Constraint.isFalse(ttl.isNegative() || ttl.isZero(), "Time to live must be greater than zero");
+        negativeTimeToLive = negativeTTL != null ? negativeTTL : ttl;
+        Constraint.isFalse(negativeTimeToLive.isNegative(), "Negative time to live cannot be negative");
+        staleTimeToLive = staleTTL != null ? staleTTL : Duration.ZERO;
+        Constraint.isFalse(staleTimeToLive.isNegative(), "Stale time to live cannot be negative");
+
+        final Duration longest = timeToLive.compareTo(negativeTimeToLive) >= 0 ? timeToLive : negativeTimeToLive;
+        entries = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(longest.plus(staleTimeToLive).toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        inFlight = new ConcurrentHashMap<>();
+
+        hits = new LongAdder();
+        staleHits = new LongAdder();
+        misses = new LongAdder();
+        coalesced = new LongAdder();
+        loadFailures = new LongAdder();
+        loadTime = new LongAdder();
+    }
+
+    /**
+     * Get the lifetime of non-empty results.
+     *
+     * @return lifetime of non-empty results
+     */
+    @Nonnull public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Get the lifetime of empty results.
+     *
+     * @return lifetime of empty results
+     */
+    @Nonnull public Duration getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * Get how long after expiry a result may be served while it is refreshed.
+     *
+     * @return stale lifetime
+     */
+    @Nonnull public Duration getStaleTimeToLive() {
+        return staleTimeToLive;
+    }
+
+    /**
+     * Get a snapshot of the cache counters.
+     *
+     * <p>The keys are "hits", "staleHits", "misses", "coalesced", "loadFailures", "loadTimeMillis" and "size".</p>
+     *
+     * @return counter values
+     */
+    @Nonnull @NonnullElements @Unmodifiable public Map<String,Long> getStatistics() {
+        return Map.of("hits", hits.sum(),
+                "staleHits", staleHits.sum(),
+                "misses", misses.sum(),
+                "coalesced", coalesced.sum(),
+                "loadFailures", loadFailures.sum(),
+                "loadTimeMillis", TimeUnit.NANOSECONDS.toMillis(loadTime.sum()),
+                "size", entries.size());
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nullable public Map<String,IdPAttribute> getIfPresent(@Nonnull final Object key) {
+        final CachedResult entry = entries.getIfPresent(key);
+        if (entry != null && entry.isFresh(System.nanoTime())) {
+            return entry.getValue();
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public Map<String,IdPAttribute> get(@Nonnull final String key,
+            @Nonnull final Callable<? extends Map<String,IdPAttribute>> loader) throws ExecutionException {
+
+        final CachedResult entry = entries.getIfPresent(key);
+        if (entry != null) {
+            final long now = System.nanoTime();
+            if (entry.isFresh(now)) {
+                hits.increment();
+                return entry.getValue();
+            } else if (entry.isServable(now)) {
+                final CompletableFuture<Map<String,IdPAttribute>> refresh = new CompletableFuture<>();
+                if (inFlight.putIfAbsent(key, refresh) == null) {
+                    try {
+                        return load(key, loader, refresh);
+                    } catch (final ExecutionException | UncheckedExecutionException e) {
+                        log.warn("Refresh of cached result '{}' failed, returning stale result: {}", key,
+                                e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    }
+                }
+                staleHits.increment();
+                return entry.getValue();
+            }
+        }
+
+        final CompletableFuture<Map<String,IdPAttribute>> pending = new CompletableFuture<>();
+        final CompletableFuture<Map<String,IdPAttribute>> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            coalesced.increment();
+            log.trace("Waiting on in-flight lookup for '{}'", key);
+            try {
+                return existing.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException(e);
+            }
+        }
+
+        misses.increment();
+        return load(key, loader, pending);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void put(@Nonnull final String key, @Nonnull final Map<String,IdPAttribute> value) {
+        entries.put(key, new CachedResult(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override public void invalidate(@Nonnull final Object key) {
+        entries.invalidate(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override public long size() {
+        return entries.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override public void cleanUp() {
+        entries.cleanUp();
+    }
+
+    /**
+     * Run a search on behalf of every caller waiting on the supplied future, caching and publishing the result.
+     *
+     * @param key cache key
+     * @param loader the search to run
+     * @param pending the future registered for the key by the caller
+     *
+     * @return the search result
+     *
+     * @throws ExecutionException if the search raised a checked exception
+     */
+    @Nonnull private Map<String,IdPAttribute> load(@Nonnull final String key,
+            @Nonnull final Callable<? extends Map<String,IdPAttribute>> loader,
+            @Nonnull final CompletableFuture<Map<String,IdPAttribute>> pending) throws ExecutionException {
+        final long start = System.nanoTime();
+        try {
+            Map<String,IdPAttribute> value = loader.call();
+            if (value == null) {
+                value = Collections.emptyMap();
+            }
+            entries.put(key, new CachedResult(value));
+            pending.complete(value);
+            return value;
+        } catch (final RuntimeException e) {
+            loadFailures.increment();
+            pending.completeExceptionally(e);
+            throw new UncheckedExecutionException(e);
+        } catch (final Exception e) {
+            loadFailures.increment();
+            pending.completeExceptionally(e);
+            throw new ExecutionException(e);
+        } catch (final Error e) {
+            loadFailures.increment();
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadTime.add(System.nanoTime() - start);
+            inFlight.remove(key, pending);
+        }
+    }
+
+    /** A cached result and its expiry. */
+    private final class CachedResult {
+
+        /** The result. */
+        @Nonnull private final Map<String,IdPAttribute> value;
+
+        /** When the result expires, per {@link System#nanoTime()}. */
+        private final long expires;
+
+        /** When the result may no longer be served stale, per {@link System#nanoTime()}. */
+        private final long staleUntil;
+
+        /**
+         * Constructor.
+         *
+         * @param result the result to cache
+         */
+        CachedResult(@Nonnull final Map<String,IdPAttribute> result) {
+            value = result;
+            expires = System.nanoTime() + (result.isEmpty() ? negativeTimeToLive : timeToLive).toNanos();
+            staleUntil = expires + staleTimeToLive.toNanos();
+        }
+
+        /**
+         * Get the result.
+         *
+         * @return the result
+         */
+        @Nonnull Map<String,IdPAttribute> getValue() {
+            return value;
+        }
+
+        /**
+         * Whether the result is unexpired.
+         *
+         * @param now current {@link System#nanoTime()}
+         *
+         * @return whether the result is unexpired
+         */
+        boolean isFresh(final long now) {
+            return now - expires < 0;
+        }
+
+        /**
+         * Whether the result may still be served, possibly stale.
+         *
+         * @param now current {@link System#nanoTime()}
+         *
+         * @return whether the result may be served
+         */
+        boolean isServable(final long now) {
+            return now - staleUntil < 0;
+        }
+    }
+
+}
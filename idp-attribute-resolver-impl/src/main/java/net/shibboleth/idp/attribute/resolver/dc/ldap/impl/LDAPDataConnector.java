@@ -17,8 +17,18 @@
 
 package net.shibboleth.idp.attribute.resolver.dc.ldap.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -26,8 +36,13 @@ import javax.annotation.Nullable;
 import org.ldaptive.Connection;
 import org.ldaptive.ConnectionConfig;
 import org.ldaptive.ConnectionFactory;
+import org.ldaptive.LdapAttribute;
+import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
+import org.ldaptive.Response;
+import org.ldaptive.ResultCode;
 import org.ldaptive.SearchExecutor;
+import org.ldaptive.SearchFilter;
 import org.ldaptive.SearchResult;
 import org.ldaptive.ssl.SSLContextInitializer;
 import org.ldaptive.ssl.SslConfig;
@@ -43,6 +58,7 @@ import net.shibboleth.idp.attribute.resolver.dc.impl.AbstractSearchDataConnector
 import net.shibboleth.idp.attribute.resolver.dc.ldap.ExecutableSearchFilter;
 import net.shibboleth.idp.attribute.resolver.dc.ldap.SearchResultMappingStrategy;
 import net.shibboleth.idp.attribute.resolver.dc.ldap.StringAttributeValueMappingStrategy;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
@@ -50,9 +66,20 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 /**
  * A {@link net.shibboleth.idp.attribute.resolver.DataConnector} that queries an LDAP in order to retrieve attribute
  * data.
+ * 
+ * <p>During bulk resolution, searches consisting of a single equality assertion on the same attribute, such as
+ * <code>(uid=jdoe)</code>, are combined into one OR filter. Each returned entry is attributed to the searches
+ * whose value it holds for that attribute, compared case-insensitively, so this relies on the attribute having
+ * case-insensitive equality matching, as is usual for the attributes subjects are looked up by. Other searches,
+ * and combined searches which do not complete, for example because of a size limit, are performed individually.
+ * </p>
  */
 public class LDAPDataConnector extends AbstractSearchDataConnector<ExecutableSearchFilter,SearchResultMappingStrategy> {
 
+    /** Matches a filter consisting of a single equality assertion. */
+    @Nonnull private static final Pattern EQUALITY_FILTER =
+            Pattern.compile("\\(([A-Za-z][A-Za-z0-9-]*)=((?:[^*()\\\\]|\\\\\\p{XDigit}{2})+)\\)");
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(LDAPDataConnector.class);
 
@@ -62,6 +89,9 @@ public class LDAPDataConnector extends AbstractSearchDataConnector<ExecutableSea
     /** For executing LDAP searches. */
     private SearchExecutor searchExecutor;
 
+    /** Maximum number of searches combined into one during bulk resolution. */
+    private int maxCombinedSearches = 50;
+
     /** Whether the default validator is being used. */
     private boolean defaultValidator = true;
 
@@ -116,6 +146,28 @@ public class LDAPDataConnector extends AbstractSearchDataConnector<ExecutableSea
         searchExecutor = Constraint.isNotNull(executor, "LDAP search executor can not be null");
     }
 
+    /**
+     * Gets the maximum number of searches combined into one during bulk resolution.
+     * 
+     * @return maximum number of searches combined into one
+     */
+    public int getMaxCombinedSearches() {
+        return maxCombinedSearches;
+    }
+
+    /**
+     * Sets the maximum number of searches combined into one during bulk resolution. A value of 1 disables
+     * combining.
+     * 
+     * @param max maximum number of searches combined into one
+     */
+    public void setMaxCombinedSearches(final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        maxCombinedSearches = (int) Constraint.isGreaterThan(0, max, "Maximum combined searches must be positive");
+    }
+
     /** {@inheritDoc} */
     @Override public void setValidator(@Nonnull final Validator validator) {
         super.setValidator(validator);
@@ -226,4 +278,163 @@ public class LDAPDataConnector extends AbstractSearchDataConnector<ExecutableSea
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Searches which are a single equality assertion are grouped by attribute and combined into OR filters
+     * of at most {@link #getMaxCombinedSearches()} assertions. The entries returned by each combined search are
+     * split back out by their values of that attribute and mapped separately for each search.</p>
+     */
+    @Override @Nullable protected List<Map<String,IdPAttribute>> retrieveAttributes(
+            @Nonnull @NonnullElements final List<ExecutableSearchFilter> filters) throws ResolutionException {
+        if (maxCombinedSearches < 2) {
+            return null;
+        }
+
+        final Map<String,List<Integer>> byAttribute = new LinkedHashMap<>();
+        final List<String> values = new ArrayList<>(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+            final Matcher matcher = EQUALITY_FILTER.matcher(filters.get(i).getSearchFilter().format());
+            if (matcher.matches() && isReturnAttribute(matcher.group(1))) {
+                byAttribute.computeIfAbsent(matcher.group(1).toLowerCase(Locale.ROOT),
+                        k -> new ArrayList<>()).add(i);
+                values.add(normalize(unescape(matcher.group(2))));
+            } else {
+                values.add(null);
+            }
+        }
+
+        final List<Map<String,IdPAttribute>> results = new ArrayList<>(Collections.nCopies(filters.size(), null));
+        for (final Map.Entry<String,List<Integer>> group : byAttribute.entrySet()) {
+            final List<Integer> indexes = group.getValue();
+            for (int from = 0; from < indexes.size(); from += maxCombinedSearches) {
+                final List<Integer> chunk = indexes.subList(from, Math.min(from + maxCombinedSearches,
+                        indexes.size()));
+                if (chunk.size() > 1) {
+                    retrieveCombined(group.getKey(), chunk, filters, values, results);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Performs one combined search and attributes the results to the searches it combines.
+     * 
+     * @param attribute the attribute the combined searches assert on
+     * @param indexes positions of the combined searches
+     * @param filters all of the searches
+     * @param values the normalized value each search asserts
+     * @param results receives the attributes for each combined search
+     * 
+     * @throws ResolutionException thrown if there is a problem retrieving data from the LDAP
+     */
+    private void retrieveCombined(@Nonnull final String attribute, @Nonnull final List<Integer> indexes,
+            @Nonnull final List<ExecutableSearchFilter> filters, @Nonnull final List<String> values,
+            @Nonnull final List<Map<String,IdPAttribute>> results) throws ResolutionException {
+        final StringBuilder combined = new StringBuilder("(|");
+        final Map<String,List<Integer>> byValue = new HashMap<>(indexes.size());
+        final Map<Integer,SearchResult> split = new HashMap<>(indexes.size());
+        for (final Integer index : indexes) {
+            combined.append(filters.get(index).getSearchFilter().format());
+            byValue.computeIfAbsent(values.get(index), k -> new ArrayList<>(1)).add(index);
+            split.put(index, new SearchResult());
+        }
+        combined.append(')');
+
+        final Response<SearchResult> response;
+        try {
+            response = searchExecutor.search(connectionFactory, new SearchFilter(combined.toString()));
+        } catch (final LdapException e) {
+            throw new ResolutionException(getLogPrefix() + " Unable to execute LDAP search", e);
+        }
+        if (response.getResultCode() != ResultCode.SUCCESS) {
+            log.debug("{} Combined search of {} filters returned {}, performing them individually", getLogPrefix(),
+                    indexes.size(), response.getResultCode());
+            return;
+        }
+        log.trace("{} Combined search returned {}", getLogPrefix(), response.getResult());
+
+        for (final LdapEntry entry : response.getResult().getEntries()) {
+            final LdapAttribute key = entry.getAttribute(attribute);
+            if (key == null) {
+                continue;
+            }
+            for (final String value : key.getStringValues()) {
+                final List<Integer> matches = byValue.get(normalize(value));
+                if (matches != null) {
+                    for (final Integer index : matches) {
+                        split.get(index).addEntry(entry);
+                    }
+                }
+            }
+        }
+
+        for (final Integer index : indexes) {
+            try {
+                final Map<String,IdPAttribute> mapped = getMappingStrategy().map(split.get(index));
+                results.set(index, mapped != null ? mapped : Collections.<String,IdPAttribute>emptyMap());
+            } catch (final ResolutionException e) {
+                log.debug("{} Unable to map results of {}, performing it individually", getLogPrefix(),
+                        filters.get(index), e);
+            }
+        }
+    }
+
+    /**
+     * Gets whether the given attribute is returned by the configured searches.
+     * 
+     * @param attribute name of the attribute
+     * 
+     * @return whether the attribute is returned
+     */
+    private boolean isReturnAttribute(@Nonnull final String attribute) {
+        final String[] returned = searchExecutor.getReturnAttributes();
+        if (returned == null || returned.length == 0) {
+            return true;
+        }
+        for (final String name : returned) {
+            if ("*".equals(name) || attribute.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reverses the escaping applied to an assertion value in a search filter.
+     * 
+     * @param value the escaped assertion value
+     * 
+     * @return the assertion value
+     */
+    @Nonnull private static String unescape(@Nonnull final String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\') {
+                bytes.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                final byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Normalizes a value for case-insensitive comparison.
+     * 
+     * @param value the value
+     * 
+     * @return the normalized value
+     */
+    @Nonnull private static String normalize(@Nonnull final String value) {
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+}
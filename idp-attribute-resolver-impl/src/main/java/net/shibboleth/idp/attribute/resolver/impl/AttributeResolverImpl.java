@@ -23,13 +23,24 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -49,7 +60,10 @@ import net.shibboleth.idp.attribute.IdPAttributeValue;
 import net.shibboleth.idp.attribute.context.AttributeContext;
 import net.shibboleth.idp.attribute.resolver.AttributeDefinition;
 import net.shibboleth.idp.attribute.resolver.AttributeResolver;
+import net.shibboleth.idp.attribute.resolver.BulkDataConnector;
 import net.shibboleth.idp.attribute.resolver.DataConnector;
+import net.shibboleth.idp.attribute.resolver.MultipleResultAnErrorResolutionException;
+import net.shibboleth.idp.attribute.resolver.NoResultAnErrorResolutionException;
 import net.shibboleth.idp.attribute.resolver.ResolutionException;
 import net.shibboleth.idp.attribute.resolver.ResolvedAttributeDefinition;
 import net.shibboleth.idp.attribute.resolver.ResolvedDataConnector;
@@ -101,9 +115,37 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
     /** Strategy to get the {@link ProfileRequestContext}. */
     @Nonnull private Function<AttributeResolutionContext,ProfileRequestContext> profileContextStrategy;
 
+    /** Optional executor used to resolve independent data connectors concurrently. */
+    @Nullable private Executor executor;
+
+    /** IDs of the data connectors which may be dispatched to the executor. */
+    @NonnullAfterInit private Set<String> concurrentDataConnectors;
+
+    /** Direct data connector dependencies of each connector in {@link #concurrentDataConnectors}. */
+    @NonnullAfterInit private Map<String, Set<String>> concurrentDataConnectorDependencies;
+
+    /** The data connectors reachable from each attribute definition, keyed by definition ID. */
+    @NonnullAfterInit private Map<String, Set<String>> definitionDataConnectorClosures;
+
+    /** The data connectors reachable from each data connector (including itself), keyed by connector ID. */
+    @NonnullAfterInit private Map<String, Set<String>> dataConnectorClosures;
+
+    /** Number of subjects resolved together during bulk resolution. */
+    private int bulkBatchSize;
+
+    /** Connectors without dependencies which can resolve many subjects at once. */
+    @NonnullAfterInit private List<BulkDataConnector> bulkDataConnectors;
+
+    /** Optional circuit breaker settings. */
+    @Nullable private CircuitBreakerPolicy circuitBreakerPolicy;
+
+    /** Circuit breaker for each data connector, empty if circuit breaking is disabled. */
+    @NonnullAfterInit private Map<String, DataConnectorCircuitBreaker> circuitBreakers;
+
     /** Constructor. */
     public AttributeResolverImpl() {
         profileContextStrategy = new ParentContextLookup<>(ProfileRequestContext.class);
+        bulkBatchSize = 100;
     }
     
     /** Sets the attribute definitions for this resolver.
@@ -194,6 +236,89 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
         
         profileContextStrategy = Constraint.isNotNull(strategy, "ProfileRequestContext lookup strategy cannot be null");
     }
+
+    /**
+     * Get the executor used to resolve independent data connectors concurrently.
+     * 
+     * @return the executor, or null if resolution is sequential
+     */
+    @Nullable public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set an executor used to resolve independent data connectors concurrently.
+     * 
+     * <p>If set, any data connector that depends only on other data connectors (transitively) is dispatched to
+     * the executor as soon as its dependencies have been resolved, and resolution joins on the results before
+     * any attribute definitions are resolved. Connectors that depend on attribute definitions, or that depend
+     * on a connector with a failover, are resolved sequentially as usual. The executor should be bounded;
+     * if it rejects a task the affected connector is resolved on the dispatching thread instead.</p>
+     * 
+     * <p>The default is null, which resolves all plugins sequentially on the calling thread.</p>
+     * 
+     * @param exec executor to use
+     */
+    public void setExecutor(@Nullable final Executor exec) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        executor = exec;
+    }
+
+    /**
+     * Get the number of subjects resolved together during bulk resolution.
+     * 
+     * @return the batch size
+     */
+    public int getBulkBatchSize() {
+        return bulkBatchSize;
+    }
+
+    /**
+     * Set the number of subjects resolved together during bulk resolution.
+     * 
+     * <p>This bounds the number of resolution contexts held in memory at once by
+     * {@link #resolveAttributes(Stream, BiConsumer)}. The default is 100.</p>
+     * 
+     * @param size the batch size
+     */
+    public void setBulkBatchSize(final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        Constraint.isGreaterThan(0, size, "Bulk batch size must be greater than zero");
+        bulkBatchSize = size;
+    }
+
+    /**
+     * Set the policy for circuit breakers placed around each data connector.
+     * 
+     * <p>If set, each connector is given a breaker per the policy which replaces the fixed
+     * {@link DataConnector#getNoRetryDelay()} behaviour: while a connector's breaker is open the connector is not
+     * called, and its failover is used (or resolution fails) as it would be had the connector failed.</p>
+     * 
+     * <p>The default is null, in which case a connector is skipped only during its retry delay after a failure.</p>
+     * 
+     * @param policy circuit breaker policy
+     */
+    public void setCircuitBreakerPolicy(@Nullable final CircuitBreakerPolicy policy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        circuitBreakerPolicy = policy;
+    }
+
+    /**
+     * Get the state of each data connector's circuit breaker and the outcomes in its current window.
+     * 
+     * @return statistics indexed by data connector ID, empty if circuit breaking is disabled
+     */
+    @Nonnull @NonnullElements @Unmodifiable public Map<String, Map<String, Object>> getCircuitBreakerStatistics() {
+        final long now = System.nanoTime();
+        final Map<String, Map<String, Object>> statistics = new HashMap<>(circuitBreakers.size());
+        for (final Entry<String, DataConnectorCircuitBreaker> entry : circuitBreakers.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().getStatistics(now));
+        }
+        return Map.copyOf(statistics);
+    }
     
     /**
      * Resolves the attribute for the given request. Note, if attributes are requested,
@@ -231,6 +356,10 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
             }
             attributeContext = resolutionContext.getSubcontext(AttributeContext.class, true);
 
+            if (executor != null && !concurrentDataConnectors.isEmpty()) {
+                resolveDataConnectorsConcurrently(resolutionContext);
+            }
+
             boolean hasExportingDataConnector = false;
 
             for (final Entry<String, DataConnector> dataConnectorEntry : dataConnectors.entrySet()) {
@@ -271,6 +400,174 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
     }
     // CheckStyle: CyclomaticComplexity ON
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Subjects are taken from the stream in batches of {@link #getBulkBatchSize()}. For each batch, any needed
+     * {@link BulkDataConnector} without dependencies is asked to resolve the whole batch at once, and its results
+     * are recorded against each subject before the subjects are resolved individually in the usual way. A connector
+     * which fails in bulk is treated as having failed for each of those subjects.</p>
+     */
+    @Override public void resolveAttributes(@Nonnull final Stream<AttributeResolutionContext> resolutionContexts,
+            @Nonnull final BiConsumer<AttributeResolutionContext,ResolutionException> handler) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        Constraint.isNotNull(resolutionContexts, "Attribute resolution contexts cannot be null");
+        Constraint.isNotNull(handler, "Handler cannot be null");
+
+        final Iterator<AttributeResolutionContext> iterator = resolutionContexts.iterator();
+        final List<AttributeResolutionContext> batch = new ArrayList<>(bulkBatchSize);
+        while (iterator.hasNext()) {
+            batch.add(Constraint.isNotNull(iterator.next(), "Attribute resolution context cannot be null"));
+            if (batch.size() == bulkBatchSize || !iterator.hasNext()) {
+                resolveBatch(batch, handler);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Resolve a batch of subjects during bulk resolution.
+     * 
+     * @param batch the resolution contexts of the subjects
+     * @param handler receives each context once it has been resolved
+     */
+    private void resolveBatch(@Nonnull @NonnullElements final List<AttributeResolutionContext> batch,
+            @Nonnull final BiConsumer<AttributeResolutionContext,ResolutionException> handler) {
+        log.debug("{} Resolving batch of {} subjects", logPrefix, batch.size());
+
+        for (final BulkDataConnector connector : bulkDataConnectors) {
+            final List<AttributeResolutionContext> needing = new ArrayList<>(batch.size());
+            for (final AttributeResolutionContext resolutionContext : batch) {
+                if (getNeededDataConnectors(resolutionContext).contains(connector.getId())) {
+                    needing.add(resolutionContext);
+                }
+            }
+            if (!needing.isEmpty()) {
+                resolveDataConnectorInBulk(connector, needing);
+            }
+        }
+
+        for (final AttributeResolutionContext resolutionContext : batch) {
+            ResolutionException failure = null;
+            try {
+                resolveAttributes(resolutionContext);
+            } catch (final ResolutionException e) {
+                log.debug("{} Bulk resolution of subject '{}' failed", logPrefix, resolutionContext.getPrincipal(),
+                        e);
+                failure = e;
+            }
+            handler.accept(resolutionContext, failure);
+        }
+    }
+
+    /**
+     * Resolve a {@link BulkDataConnector} for several subjects at once and record its results, subject to the same
+     * circuit breaker or retry delay as {@link #attemptDataConnector(DataConnector, AttributeResolutionContext)}.
+     * 
+     * <p>Subjects the connector does not resolve are left to be resolved individually. If the connector fails,
+     * the failure is recorded against every subject, so that each of them uses the failover connector, or fails,
+     * without querying the connector again.</p>
+     * 
+     * @param connector the data connector to resolve
+     * @param resolutionContexts the resolution contexts of the subjects needing the connector
+     */
+    private void resolveDataConnectorInBulk(@Nonnull final BulkDataConnector connector,
+            @Nonnull @NonnullElements final List<AttributeResolutionContext> resolutionContexts) {
+        final String connectorId = connector.getId();
+        final DataConnectorCircuitBreaker breaker = circuitBreakers.get(connectorId);
+        final DataConnectorCircuitBreaker.Permit permit;
+
+        if (breaker != null) {
+            permit = breaker.tryAcquire(System.nanoTime());
+            if (permit == DataConnectorCircuitBreaker.Permit.DENIED) {
+                log.debug("{} Data connector '{}' circuit breaker is {}, not resolving in bulk", logPrefix,
+                        connectorId, breaker.getState());
+                return;
+            }
+        } else {
+            permit = null;
+            if (connector.getLastFail() != null
+                    && Instant.now().isBefore(connector.getLastFail().plus(connector.getNoRetryDelay()))) {
+                log.debug("{} Data connector '{}' failed to resolve previously, not resolving in bulk", logPrefix,
+                        connectorId);
+                return;
+            }
+        }
+
+        final List<AttributeResolverWorkContext> workContexts = new ArrayList<>(resolutionContexts.size());
+        for (final AttributeResolutionContext resolutionContext : resolutionContexts) {
+            workContexts.add(resolutionContext.getSubcontext(AttributeResolverWorkContext.class, true));
+        }
+
+        List<Map<String, IdPAttribute>> results = null;
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            log.debug("{} Resolving data connector '{}' for {} subjects in bulk", logPrefix, connectorId,
+                    resolutionContexts.size());
+            results = connector.resolve(resolutionContexts);
+            // A connector that does not propagate exceptions records its failure in the work contexts instead.
+            failed = workContexts.stream().anyMatch(wc -> wc.getFailedDataConnectors().contains(connectorId));
+        } catch (final ResolutionException | RuntimeException e) {
+            log.debug("{} Data connector '{}' failed to resolve in bulk", logPrefix, connectorId, e);
+            for (final AttributeResolverWorkContext workContext : workContexts) {
+                workContext.recordDataConnectorFailure(connector);
+            }
+            return;
+        } finally {
+            if (breaker != null) {
+                final long now = System.nanoTime();
+                if (failed || results.stream().anyMatch(Objects::nonNull)) {
+                    breaker.record(permit, failed, now - start, now);
+                } else {
+                    // Nothing was resolved, so the call says nothing about the data source.
+                    breaker.release(permit);
+                }
+            }
+        }
+
+        int resolved = 0;
+        for (int i = 0; i < resolutionContexts.size(); i++) {
+            final Map<String, IdPAttribute> result = results.get(i);
+            if (result != null) {
+                try {
+                    workContexts.get(i).recordDataConnectorResolution(connector, result);
+                    resolved++;
+                } catch (final ResolutionException e) {
+                    log.debug("{} Unable to record bulk resolution of data connector '{}'", logPrefix, connectorId,
+                            e);
+                }
+            }
+        }
+        log.debug("{} Data connector '{}' resolved {} of {} subjects in bulk", logPrefix, connectorId, resolved,
+                resolutionContexts.size());
+    }
+
+    /**
+     * Get the IDs of the data connectors that resolving the given request will need.
+     * 
+     * @param resolutionContext current resolution context
+     * 
+     * @return IDs of the data connectors needed
+     */
+    @Nonnull @NonnullElements private Set<String> getNeededDataConnectors(
+            @Nonnull final AttributeResolutionContext resolutionContext) {
+        final Set<String> needed = new LinkedHashSet<>();
+        for (final DataConnector connector : dataConnectors.values()) {
+            if (connector.isExportAllAttributes() || !connector.getExportAttributes().isEmpty()) {
+                needed.addAll(dataConnectorClosures.get(connector.getId()));
+            }
+        }
+        for (final String attributeId : getToBeResolvedAttributeIds(resolutionContext)) {
+            final Set<String> closure = definitionDataConnectorClosures.get(attributeId);
+            if (closure != null) {
+                needed.addAll(closure);
+            }
+        }
+        return needed;
+    }
+
     /**
      * Gets the list of attributes, identified by IDs, that should be resolved. If the
      * {@link AttributeResolutionContext#getRequestedIdPAttributeNames()} is not empty then those attributes are the
@@ -370,40 +667,102 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
             return;
         }
 
-        final Instant resolveTime = Instant.now();
-        
-        if (connector.getLastFail() != null
-                && resolveTime.isBefore(connector.getLastFail().plus(connector.getNoRetryDelay()))) {
-            log.debug("{} Data connector '{}' failed to resolve previously, still waiting", logPrefix, 
+        if (!attemptDataConnector(connector, resolutionContext)) {
+            resolveFailoverDataConnector(connector, resolutionContext);
+        }
+    }
+    // CheckStyle: ReturnCount ON
+
+    /**
+     * Attempt to resolve a {@link DataConnector} and record the result, stopping short of invoking any
+     * failover connector.
+     * 
+     * @param connector the data connector to resolve
+     * @param resolutionContext resolution context that we are working in
+     * 
+     * @return true if the result was recorded, false if the connector failed and its failover needs resolving
+     * 
+     * @throws ResolutionException if the connector failed and has no failover
+     */
+    private boolean attemptDataConnector(@Nonnull final DataConnector connector,
+            @Nonnull final AttributeResolutionContext resolutionContext) throws ResolutionException {
+        final String connectorId = connector.getId();
+        final AttributeResolverWorkContext workContext =
+                resolutionContext.getSubcontext(AttributeResolverWorkContext.class, false);
+        if (workContext.getFailedDataConnectors().contains(connectorId)) {
+            log.debug("{} Data connector '{}' already failed for this subject, not resolving again", logPrefix,
                     connectorId);
-            final String failoverDataConnectorId = connector.getFailoverDataConnectorId();
-            if (null != failoverDataConnectorId) {
-                log.debug("{} Data connector '{}' invoking failover data connector '{}'", logPrefix, connectorId,
-                        failoverDataConnectorId);
-                resolveDataConnector(failoverDataConnectorId, resolutionContext);
-                workContext.recordFailoverResolution(connector, dataConnectors.get(failoverDataConnectorId));
-                return;
+            if (null != connector.getFailoverDataConnectorId()) {
+                return false;
+            }
+            throw new ResolutionException("Data connector already failed");
+        }
+
+        final DataConnectorCircuitBreaker breaker = circuitBreakers.get(connectorId);
+        final DataConnectorCircuitBreaker.Permit permit;
+
+        if (breaker != null) {
+            permit = breaker.tryAcquire(System.nanoTime());
+            if (permit == DataConnectorCircuitBreaker.Permit.DENIED) {
+                log.debug("{} Data connector '{}' circuit breaker is {}, not resolving", logPrefix, connectorId,
+                        breaker.getState());
+                if (null != connector.getFailoverDataConnectorId()) {
+                    return false;
+                }
+                throw new ResolutionException("Data connector circuit breaker is open");
+            } else if (permit == DataConnectorCircuitBreaker.Permit.PROBE) {
+                log.debug("{} Data connector '{}' circuit breaker is half-open, probing", logPrefix, connectorId);
+            }
+        } else {
+            permit = null;
+            final Instant resolveTime = Instant.now();
+            if (connector.getLastFail() != null
+                    && resolveTime.isBefore(connector.getLastFail().plus(connector.getNoRetryDelay()))) {
+                log.debug("{} Data connector '{}' failed to resolve previously, still waiting", logPrefix, 
+                        connectorId);
+                if (null != connector.getFailoverDataConnectorId()) {
+                    return false;
+                }
+                throw new ResolutionException("Previous resolve failed");
+            }
+        }
+
+        try {
+            resolveDependencies(connector, resolutionContext);
+        } catch (final ResolutionException | RuntimeException e) {
+            if (breaker != null) {
+                breaker.release(permit);
             }
-            throw new ResolutionException("Previous resolve failed");
+            throw e;
         }
 
-        resolveDependencies(connector, resolutionContext);
         final Map<String, IdPAttribute> resolvedAttributes;
+        final long start = System.nanoTime();
+        boolean failed = true;
         try {
             log.debug("{} Resolving data connector {}", logPrefix, connectorId);
             resolvedAttributes = connector.resolve(resolutionContext);
+            // A connector that does not propagate exceptions records its failure in the work context instead.
+            failed = workContext.getFailedDataConnectors().contains(connectorId);
+        } catch (final NoResultAnErrorResolutionException | MultipleResultAnErrorResolutionException e) {
+            // The connector is working, these are 'expected'.
+            failed = false;
+            throw e;
         } catch (final ResolutionException e) {
             final String failoverDataConnectorId = connector.getFailoverDataConnectorId();
             if (null != failoverDataConnectorId) {
                 log.debug("{} Data connector '{}' failed to resolve, invoking failover data"
                         + " connector '{}'.  Reason for failure:", logPrefix, connectorId, failoverDataConnectorId, e);
-                resolveDataConnector(failoverDataConnectorId, resolutionContext);
-                workContext.recordFailoverResolution(connector, dataConnectors.get(failoverDataConnectorId));
-                return;
+                return false;
             }
             // Pass it on. Do not look at propagateException because this is handled in the
             // connector code logic.
             throw e;
+        } finally {
+            if (breaker != null) {
+                final long now = System.nanoTime();
+                breaker.record(permit, failed, now - start, now);
+            }
         }
 
         if (null != resolvedAttributes) {
@@ -413,7 +772,145 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
             log.debug("{} Data connector '{}' produced no attributes", logPrefix, connectorId);
         }
         workContext.recordDataConnectorResolution(connector, resolvedAttributes);
+        return true;
+    }
+
+    /**
+     * Resolve the failover of a failed {@link DataConnector} and record its results against the failed connector.
+     * 
+     * @param connector the data connector which failed
+     * @param resolutionContext resolution context that we are working in
+     * 
+     * @throws ResolutionException if unable to resolve the failover connector
+     */
+    private void resolveFailoverDataConnector(@Nonnull final DataConnector connector,
+            @Nonnull final AttributeResolutionContext resolutionContext) throws ResolutionException {
+        final String failoverDataConnectorId = connector.getFailoverDataConnectorId();
+        log.debug("{} Data connector '{}' invoking failover data connector '{}'", logPrefix, connector.getId(),
+                failoverDataConnectorId);
+        resolveDataConnector(failoverDataConnectorId, resolutionContext);
+        resolutionContext.getSubcontext(AttributeResolverWorkContext.class, false).recordFailoverResolution(
+                connector, dataConnectors.get(failoverDataConnectorId));
+    }
+
+    /**
+     * Resolve, on the configured {@link Executor}, those data connectors which are needed by this request and
+     * which depend only on other data connectors.
+     * 
+     * <p>Each connector is dispatched as soon as the connectors it depends upon have been resolved. This method
+     * returns once every dispatched connector has completed, so that the remaining (sequential) resolution finds
+     * their results already recorded. Failovers are resolved on the calling thread.</p>
+     * 
+     * @param resolutionContext resolution context that we are working in
+     * 
+     * @throws ResolutionException if a dispatched connector failed and has no failover
+     */
+    // CheckStyle: CyclomaticComplexity OFF
+    private void resolveDataConnectorsConcurrently(@Nonnull final AttributeResolutionContext resolutionContext)
+            throws ResolutionException {
+        final AttributeResolverWorkContext workContext =
+                resolutionContext.getSubcontext(AttributeResolverWorkContext.class, false);
+
+        final Set<String> needed = getNeededDataConnectors(resolutionContext);
+        needed.retainAll(concurrentDataConnectors);
+        needed.removeAll(workContext.getResolvedDataConnectors().keySet());
+        if (needed.isEmpty()) {
+            return;
+        }
+
+        log.debug("{} Dispatching data connectors {} for concurrent resolution", logPrefix, needed);
+        final Map<String, CompletableFuture<Boolean>> dispatched = new LinkedHashMap<>(needed.size());
+        for (final String connectorId : needed) {
+            dispatchDataConnector(connectorId, resolutionContext, dispatched);
+        }
+
+        try {
+            CompletableFuture.allOf(dispatched.values().toArray(new CompletableFuture<?>[dispatched.size()])).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResolutionException(logPrefix + " Interrupted while resolving data connectors", e);
+        } catch (final ExecutionException e) {
+            // Examined per connector below.
+        }
+
+        for (final Entry<String, CompletableFuture<Boolean>> entry : dispatched.entrySet()) {
+            final Boolean recorded;
+            try {
+                recorded = entry.getValue().join();
+            } catch (final CompletionException e) {
+                Throwable cause = e.getCause();
+                while (cause instanceof CompletionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof ResolutionException) {
+                    throw (ResolutionException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ResolutionException(logPrefix + " Error resolving data connector '" + entry.getKey() + "'",
+                        cause);
+            }
+            if (!recorded) {
+                resolveFailoverDataConnector(dataConnectors.get(entry.getKey()), resolutionContext);
+            }
+        }
+    }
+    // CheckStyle: CyclomaticComplexity ON
+
+    /**
+     * Dispatch a data connector to the executor, chaining it after the connectors it depends upon.
+     * 
+     * @param connectorId ID of the connector to dispatch
+     * @param resolutionContext resolution context that we are working in
+     * @param dispatched the connectors dispatched so far, keyed by ID
+     * 
+     * @return the future result of {@link #attemptDataConnector(DataConnector, AttributeResolutionContext)}
+     */
+    @Nonnull private CompletableFuture<Boolean> dispatchDataConnector(@Nonnull final String connectorId,
+            @Nonnull final AttributeResolutionContext resolutionContext,
+            @Nonnull final Map<String, CompletableFuture<Boolean>> dispatched) {
+        final CompletableFuture<Boolean> existing = dispatched.get(connectorId);
+        if (existing != null) {
+            return existing;
+        }
+
+        final AttributeResolverWorkContext workContext =
+                resolutionContext.getSubcontext(AttributeResolverWorkContext.class, false);
+        final List<CompletableFuture<Boolean>> dependencies = new ArrayList<>();
+        for (final String dependencyId : concurrentDataConnectorDependencies.get(connectorId)) {
+            if (!workContext.getResolvedDataConnectors().containsKey(dependencyId)) {
+                dependencies.add(dispatchDataConnector(dependencyId, resolutionContext, dispatched));
+            }
+        }
+
+        final DataConnector connector = dataConnectors.get(connectorId);
+        final CompletableFuture<Boolean> result =
+                CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+                    .thenApplyAsync(v -> {
+                        try {
+                            return attemptDataConnector(connector, resolutionContext);
+                        } catch (final ResolutionException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, this::execute);
+        dispatched.put(connectorId, result);
+        return result;
+    }
+
+    /**
+     * Hand a task to the configured {@link Executor}, running it on the calling thread if it is rejected.
+     * 
+     * @param task the task to run
+     */
+    private void execute(@Nonnull final Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (final RejectedExecutionException e) {
+            log.debug("{} Executor rejected data connector task, running it on the calling thread", logPrefix);
+            task.run();
+        }
     }
+
     // CheckStyle: ReturnCount ON
 
     /**
@@ -657,6 +1154,127 @@ public class AttributeResolverImpl extends AbstractServiceableComponent<Attribut
             log.debug("{} Checking if attribute definition '{}' has a circular dependency", logPrefix, plugin.getId());
             checkPlugInDependencies(plugin.getId(), plugin, dependencyVerifiedPlugins);
         }
+
+        buildDataConnectorClosures();
+
+        if (executor != null) {
+            buildConcurrencyPlan();
+        } else {
+            concurrentDataConnectors = Collections.emptySet();
+        }
+
+        if (circuitBreakerPolicy != null) {
+            circuitBreakers = new HashMap<>(dataConnectors.size());
+            for (final DataConnector connector : dataConnectors.values()) {
+                circuitBreakers.put(connector.getId(),
+                        new DataConnectorCircuitBreaker(circuitBreakerPolicy, connector.getNoRetryDelay()));
+            }
+        } else {
+            circuitBreakers = Collections.emptyMap();
+        }
+
+        bulkDataConnectors = dataConnectors.values().stream().
+                filter(BulkDataConnector.class::isInstance).
+                filter(c -> c.getAttributeDependencies().isEmpty() && c.getDataConnectorDependencies().isEmpty()).
+                map(BulkDataConnector.class::cast).
+                collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Precompute, from the (already verified acyclic) plugin dependency graph, which connectors each plugin
+     * reaches.
+     */
+    private void buildDataConnectorClosures() {
+        dataConnectorClosures = new HashMap<>(dataConnectors.size());
+        for (final DataConnector connector : dataConnectors.values()) {
+            final Set<String> closure = new LinkedHashSet<>();
+            collectDataConnectorClosure(connector, closure, new HashSet<>());
+            dataConnectorClosures.put(connector.getId(), Collections.unmodifiableSet(closure));
+        }
+
+        definitionDataConnectorClosures = new HashMap<>(attributeDefinitions.size());
+        for (final AttributeDefinition definition : attributeDefinitions.values()) {
+            final Set<String> closure = new LinkedHashSet<>();
+            collectDataConnectorClosure(definition, closure, new HashSet<>());
+            definitionDataConnectorClosures.put(definition.getId(), Collections.unmodifiableSet(closure));
+        }
+    }
+
+    /**
+     * Precompute, from the plugin dependency graph, which data connectors can be resolved concurrently.
+     */
+    private void buildConcurrencyPlan() {
+        final Map<String, Boolean> eligibility = new HashMap<>(dataConnectors.size());
+        concurrentDataConnectorDependencies = new HashMap<>();
+        for (final DataConnector connector : dataConnectors.values()) {
+            if (isConcurrencyEligible(connector, eligibility)) {
+                concurrentDataConnectorDependencies.put(connector.getId(),
+                        connector.getDataConnectorDependencies().stream().
+                            map(ResolverDataConnectorDependency::getDependencyPluginId).
+                            collect(Collectors.toUnmodifiableSet()));
+            }
+        }
+        concurrentDataConnectors = Set.copyOf(concurrentDataConnectorDependencies.keySet());
+        log.debug("{} Data connectors eligible for concurrent resolution: {}", logPrefix, concurrentDataConnectors);
+    }
+
+    /**
+     * Collect the IDs of every data connector reachable from a plugin, including the plugin itself if it is a
+     * data connector.
+     * 
+     * @param plugin the plugin to start from
+     * @param closure bucket to collect connector IDs into
+     * @param visitedDefinitions IDs of attribute definitions already traversed
+     */
+    private void collectDataConnectorClosure(@Nonnull final ResolverPlugin<?> plugin,
+            @Nonnull final Set<String> closure, @Nonnull final Set<String> visitedDefinitions) {
+        if (plugin instanceof DataConnector) {
+            if (!closure.add(plugin.getId())) {
+                return;
+            }
+        } else if (!visitedDefinitions.add(plugin.getId())) {
+            return;
+        }
+
+        for (final ResolverAttributeDefinitionDependency dependency : plugin.getAttributeDependencies()) {
+            collectDataConnectorClosure(attributeDefinitions.get(dependency.getDependencyPluginId()), closure,
+                    visitedDefinitions);
+        }
+        for (final ResolverDataConnectorDependency dependency : plugin.getDataConnectorDependencies()) {
+            collectDataConnectorClosure(dataConnectors.get(dependency.getDependencyPluginId()), closure,
+                    visitedDefinitions);
+        }
+    }
+
+    /**
+     * Work out whether a data connector can be dispatched concurrently, that is whether it depends only on
+     * other eligible data connectors, none of which has a failover.
+     * 
+     * @param connector the connector to check
+     * @param eligibility memo of connectors already checked
+     * 
+     * @return whether the connector can be dispatched concurrently
+     */
+    private boolean isConcurrencyEligible(@Nonnull final DataConnector connector,
+            @Nonnull final Map<String, Boolean> eligibility) {
+        final Boolean known = eligibility.get(connector.getId());
+        if (known != null) {
+            return known;
+        }
+
+        boolean eligible = connector.getAttributeDependencies().isEmpty();
+        if (eligible) {
+            for (final ResolverDataConnectorDependency dependency : connector.getDataConnectorDependencies()) {
+                final DataConnector dependencyConnector = dataConnectors.get(dependency.getDependencyPluginId());
+                if (dependencyConnector.getFailoverDataConnectorId() != null
+                        || !isConcurrencyEligible(dependencyConnector, eligibility)) {
+                    eligible = false;
+                    break;
+                }
+            }
+        }
+        eligibility.put(connector.getId(), eligible);
+        return eligible;
     }
 
     /**
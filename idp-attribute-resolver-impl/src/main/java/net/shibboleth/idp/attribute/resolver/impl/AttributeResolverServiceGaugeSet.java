@@ -33,6 +33,9 @@ import com.codahale.metrics.MetricSet;
 
 import net.shibboleth.idp.attribute.resolver.AttributeResolver;
 import net.shibboleth.idp.attribute.resolver.DataConnector;
+import net.shibboleth.idp.attribute.resolver.dc.http.impl.HTTPDataConnector;
+import net.shibboleth.idp.attribute.resolver.dc.impl.AbstractSearchDataConnector;
+import net.shibboleth.idp.attribute.resolver.dc.impl.CoalescingResultsCache;
 import net.shibboleth.idp.metrics.ReloadableServiceGaugeSet;
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
@@ -91,6 +94,86 @@ public class AttributeResolverServiceGaugeSet extends ReloadableServiceGaugeSet<
                         return Map.copyOf(mapBuilder);
                     }
                 });
+
+        getMetricMap().put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "resultcache"),
+                new Gauge<Map<String,Map<String,Long>>>() {
+                    public Map<String,Map<String,Long>> getValue() {
+                        final Map<String,Map<String,Long>> mapBuilder = new HashMap<>();
+                        final ServiceableComponent<AttributeResolver> component =
+                                getService().getServiceableComponent();
+                        if (component != null) {
+                            try {
+                                final Object resolver = component.getComponent();
+                                if (resolver instanceof AttributeResolverImpl) {
+                                    final Collection<DataConnector> connectors =
+                                            ((AttributeResolverImpl) resolver).getDataConnectors().values();
+                                    for (final DataConnector connector: connectors) {
+                                        if (connector instanceof AbstractSearchDataConnector) {
+                                            final Object cache =
+                                                    ((AbstractSearchDataConnector<?,?>) connector).getResultsCache();
+                                            if (cache instanceof CoalescingResultsCache) {
+                                                mapBuilder.put(connector.getId(),
+                                                        ((CoalescingResultsCache) cache).getStatistics());
+                                            }
+                                        }
+                                    }
+                                }
+                            } finally {
+                                component.unpinComponent();
+                            }
+                        }
+                        return Map.copyOf(mapBuilder);
+                    }
+                });
+
+        getMetricMap().put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "http"),
+                new Gauge<Map<String,Map<String,Long>>>() {
+                    public Map<String,Map<String,Long>> getValue() {
+                        final Map<String,Map<String,Long>> mapBuilder = new HashMap<>();
+                        final ServiceableComponent<AttributeResolver> component =
+                                getService().getServiceableComponent();
+                        if (component != null) {
+                            try {
+                                final Object resolver = component.getComponent();
+                                if (resolver instanceof AttributeResolverImpl) {
+                                    final Collection<DataConnector> connectors =
+                                            ((AttributeResolverImpl) resolver).getDataConnectors().values();
+                                    for (final DataConnector connector: connectors) {
+                                        if (connector instanceof HTTPDataConnector) {
+                                            mapBuilder.put(connector.getId(),
+                                                    ((HTTPDataConnector) connector).getStatistics());
+                                        }
+                                    }
+                                }
+                            } finally {
+                                component.unpinComponent();
+                            }
+                        }
+                        return Map.copyOf(mapBuilder);
+                    }
+                });
+
+        getMetricMap().put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "circuitbreaker"),
+                new Gauge<Map<String,Map<String,Object>>>() {
+                    public Map<String,Map<String,Object>> getValue() {
+                        final ServiceableComponent<AttributeResolver> component =
+                                getService().getServiceableComponent();
+                        if (component != null) {
+                            try {
+                                final Object resolver = component.getComponent();
+                                if (resolver instanceof AttributeResolverImpl) {
+                                    return ((AttributeResolverImpl) resolver).getCircuitBreakerStatistics();
+                                }
+                            } finally {
+                                component.unpinComponent();
+                            }
+                        }
+                        return Map.of();
+                    }
+                });
 // Checkstyle: AnonInnerLength ON
         
     }
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.resolver.impl;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Settings governing the circuit breaker the {@link AttributeResolverImpl} places around each data connector.
+ *
+ * <p>A connector's breaker is <em>closed</em> while the connector is healthy. Outcomes are recorded over a sliding
+ * time window, and once at least {@link #getMinimumCalls()} calls have been seen the breaker <em>opens</em> if the
+ * proportion that failed, or that took longer than {@link #getSlowCallDuration()}, reaches the corresponding
+ * threshold. While open, the connector is not called and its failover (if any) is used instead. After the open
+ * duration, the breaker becomes <em>half-open</em> and lets a single probe call through: success closes the
+ * breaker, while failure reopens it for twice as long as before, up to {@link #getMaxOpenDuration()}.</p>
+ *
+ * <p>The initial open duration is the connector's own {@link
+ * net.shibboleth.idp.attribute.resolver.DataConnector#getNoRetryDelay()} if that is set, or
+ * {@link #getOpenDuration()} if not.</p>
+ */
+public class CircuitBreakerPolicy {
+
+    /** Length of the sliding window. */
+    @Nonnull private Duration window;
+
+    /** Calls needed in the window before the breaker may open. */
+    private int minimumCalls;
+
+    /** Proportion of failed calls at which the breaker opens. */
+    private double failureRateThreshold;
+
+    /** Duration beyond which a call counts as slow, or zero. */
+    @Nonnull private Duration slowCallDuration;
+
+    /** Proportion of slow calls at which the breaker opens. */
+    private double slowCallRateThreshold;
+
+    /** Initial open duration for connectors without a retry delay. */
+    @Nonnull private Duration openDuration;
+
+    /** Upper bound on the open duration. */
+    @Nonnull private Duration maxOpenDuration;
+
+    /** Constructor. */
+    public CircuitBreakerPolicy() {
+        window = Duration.ofMinutes(1);
+        minimumCalls = 10;
+        failureRateThreshold = 0.5;
+        slowCallDuration = Duration.ZERO;
+        slowCallRateThreshold = 1.0;
+        openDuration = Duration.ofSeconds(30);
+        maxOpenDuration = Duration.ofMinutes(10);
+    }
+
+    /**
+     * Get the length of the sliding window over which outcomes are recorded.
+     *
+     * @return window length
+     */
+    @Nonnull public Duration getWindow() {
+        return window;
+    }
+
+    /**
+     * Set the length of the sliding window over which outcomes are recorded.
+     *
+     * <p>Defaults to one minute.</p>
+     *
+     * @param duration window length
+     */
+    public void setWindow(@Nonnull final Duration duration) {
+        Constraint.isNotNull(duration, "Window cannot be null");
+        Constraint.isFalse(duration.isNegative() || duration.isZero(), "Window must be greater than zero");
+        window = duration;
+    }
+
+    /**
+     * Get the number of calls that must be recorded in the window before the breaker may open.
+     *
+     * @return minimum number of calls
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * Set the number of calls that must be recorded in the window before the breaker may open.
+     *
+     * <p>Defaults to 10.</p>
+     *
+     * @param calls minimum number of calls
+     */
+    public void setMinimumCalls(final int calls) {
+        minimumCalls = (int) Constraint.isGreaterThan(0, calls, "Minimum calls must be greater than zero");
+    }
+
+    /**
+     * Get the proportion of failed calls in the window at which the breaker opens.
+     *
+     * @return failure rate threshold
+     */
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Set the proportion of failed calls in the window at which the breaker opens.
+     *
+     * <p>Defaults to 0.5.</p>
+     *
+     * @param threshold failure rate threshold, greater than 0 and at most 1
+     */
+    public void setFailureRateThreshold(final double threshold) {
+        Constraint.isTrue(threshold > 0 && threshold <= 1, "Failure rate threshold must be in (0, 1]");
+        failureRateThreshold = threshold;
+    }
+
+    /**
+     * Get the duration beyond which a call counts as slow.
+     *
+     * @return slow call duration, or zero if call latency is not considered
+     */
+    @Nonnull public Duration getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * Set the duration beyond which a call counts as slow.
+     *
+     * <p>Defaults to zero, meaning call latency is not considered.</p>
+     *
+     * @param duration slow call duration
+     */
+    public void setSlowCallDuration(@Nonnull final Duration duration) {
+        Constraint.isNotNull(duration, "Slow call duration cannot be null");
+        Constraint.isFalse(duration.isNegative(), "Slow call duration cannot be negative");
+        slowCallDuration = duration;
+    }
+
+    /**
+     * Get the proportion of slow calls in the window at which the breaker opens.
+     *
+     * @return slow call rate threshold
+     */
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Set the proportion of slow calls in the window at which the breaker opens.
+     *
+     * <p>Defaults to 1.</p>
+     *
+     * @param threshold slow call rate threshold, greater than 0 and at most 1
+     */
+    public void setSlowCallRateThreshold(final double threshold) {
+        Constraint.isTrue(threshold > 0 && threshold <= 1, "Slow call rate threshold must be in (0, 1]");
+        slowCallRateThreshold = threshold;
+    }
+
+    /**
+     * Get the initial open duration for connectors without a retry delay of their own.
+     *
+     * @return initial open duration
+     */
+    @Nonnull public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Set the initial open duration for connectors without a retry delay of their own.
+     *
+     * <p>Defaults to 30 seconds.</p>
+     *
+     * @param duration initial open duration
+     */
+    public void setOpenDuration(@Nonnull final Duration duration) {
+        Constraint.isNotNull(duration, "Open duration cannot be null");
+        Constraint.isFalse(duration.isNegative() || duration.isZero(), "Open duration must be greater than zero");
+        openDuration = duration;
+    }
+
+    /**
+     * Get the upper bound on the open duration as probes continue to fail.
+     *
+     * @return maximum open duration
+     */
+    @Nonnull public Duration getMaxOpenDuration() {
+        return maxOpenDuration;
+    }
+
+    /**
+     * Set the upper bound on the open duration as probes continue to fail.
+     *
+     * <p>Defaults to 10 minutes.</p>
+     *
+     * @param duration maximum open duration
+     */
+    public void setMaxOpenDuration(@Nonnull final Duration duration) {
+        Constraint.isNotNull(duration, "Maximum open duration cannot be null");
+        Constraint.isFalse(duration.isNegative() || duration.isZero(),
+                "Maximum open duration must be greater than zero");
+        maxOpenDuration = duration;
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.resolver.impl;
+
+import java.time.Duration;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+/**
+ * Circuit breaker state for one data connector, as described by {@link CircuitBreakerPolicy}.
+ *
+ * <p>Outcomes are counted in a ring of time buckets covering the policy's window. All methods take the current
+ * {@link System#nanoTime()} so that callers (and tests) control the clock.</p>
+ */
+@ThreadSafe
+final class DataConnectorCircuitBreaker {
+
+    /** Breaker states. */
+    enum State {
+        /** Calls are permitted. */
+        CLOSED,
+        /** Calls are refused. */
+        OPEN,
+        /** A single probe call is in progress. */
+        HALF_OPEN,
+    }
+
+    /** Result of asking to make a call. */
+    enum Permit {
+        /** The call must not be made. */
+        DENIED,
+        /** The call may be made. */
+        CALL,
+        /** The call may be made, and its outcome decides whether the breaker closes. */
+        PROBE,
+    }
+
+    /** Number of buckets in the window. */
+    private static final int BUCKETS = 10;
+
+    /** Largest power of two applied to the initial open duration. */
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    /** Settings. */
+    @Nonnull private final CircuitBreakerPolicy policy;
+
+    /** Initial open duration in nanoseconds. */
+    private final long baseOpenNanos;
+
+    /** Width of a bucket in nanoseconds. */
+    private final long bucketNanos;
+
+    /** Slow call duration in nanoseconds, or zero. */
+    private final long slowCallNanos;
+
+    /** Bucket number each slot currently holds. */
+    @Nonnull private final long[] epochs;
+
+    /** Calls per slot. */
+    @Nonnull private final int[] calls;
+
+    /** Failed calls per slot. */
+    @Nonnull private final int[] failures;
+
+    /** Slow calls per slot. */
+    @Nonnull private final int[] slowCalls;
+
+    /** Current state. */
+    @Nonnull private State state;
+
+    /** When an open breaker may next admit a probe. */
+    private long openUntil;
+
+    /** Probes that have failed since the breaker last closed. */
+    private int failedProbes;
+
+    /** State changes so far. */
+    private long transitions;
+
+    /** Calls refused so far. */
+    private long rejections;
+
+    /**
+     * Constructor.
+     *
+     * @param settings breaker settings
+     * @param retryDelay the connector's own retry delay, used as the initial open duration if non-zero
+     */
+    DataConnectorCircuitBreaker(@Nonnull final CircuitBreakerPolicy settings, @Nonnull final Duration retryDelay) {
+        policy = settings;
+        baseOpenNanos = retryDelay.isZero() || retryDelay.isNegative()
+                ? settings.getOpenDuration().toNanos() : retryDelay.toNanos();
+        bucketNanos = Math.max(1, settings.getWindow().toNanos() / BUCKETS);
+        slowCallNanos = settings.getSlowCallDuration().toNanos();
+        epochs = new long[BUCKETS];
+        calls = new int[BUCKETS];
+        failures = new int[BUCKETS];
+        slowCalls = new int[BUCKETS];
+        state = State.CLOSED;
+    }
+
+    /**
+     * Get the current state.
+     *
+     * @return current state
+     */
+    @Nonnull synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Ask whether a call may be made.
+     *
+     * <p>A {@link Permit#CALL} or {@link Permit#PROBE} must be followed by {@link #record(Permit, boolean, long,
+     * long)} or {@link #release(Permit)}.</p>
+     *
+     * @param now current time
+     *
+     * @return whether and how the call may be made
+     */
+    @Nonnull synchronized Permit tryAcquire(final long now) {
+        switch (state) {
+            case CLOSED:
+                return Permit.CALL;
+            case OPEN:
+                if (now - openUntil >= 0) {
+                    transition(State.HALF_OPEN);
+                    return Permit.PROBE;
+                }
+                rejections++;
+                return Permit.DENIED;
+            default:
+                rejections++;
+                return Permit.DENIED;
+        }
+    }
+
+    /**
+     * Record the outcome of a call.
+     *
+     * @param permit the permit under which the call was made
+     * @param failed whether the call failed
+     * @param elapsed how long the call took, in nanoseconds
+     * @param now current time
+     */
+    synchronized void record(@Nonnull final Permit permit, final boolean failed, final long elapsed,
+            final long now) {
+        final boolean slow = slowCallNanos > 0 && elapsed >= slowCallNanos;
+
+        if (permit == Permit.PROBE) {
+            if (failed || slow) {
+                failedProbes++;
+                open(now);
+            } else {
+                failedProbes = 0;
+                clearWindow();
+                transition(State.CLOSED);
+            }
+            return;
+        } else if (permit != Permit.CALL || state != State.CLOSED) {
+            // Late outcome of a call made before the breaker opened.
+            return;
+        }
+
+        final long epoch = now / bucketNanos;
+        final int slot = (int) Math.floorMod(epoch, (long) BUCKETS);
+        if (epochs[slot] != epoch) {
+            epochs[slot] = epoch;
+            calls[slot] = 0;
+            failures[slot] = 0;
+            slowCalls[slot] = 0;
+        }
+        calls[slot]++;
+        if (failed) {
+            failures[slot]++;
+        }
+        if (slow) {
+            slowCalls[slot]++;
+        }
+
+        final int[] totals = totals(now);
+        if (totals[0] >= policy.getMinimumCalls()
+                && (totals[1] >= policy.getFailureRateThreshold() * totals[0]
+                    || slowCallNanos > 0 && totals[2] >= policy.getSlowCallRateThreshold() * totals[0])) {
+            failedProbes = 0;
+            open(now);
+        }
+    }
+
+    /**
+     * Give back a permit whose call was never made.
+     *
+     * @param permit the permit
+     */
+    synchronized void release(@Nonnull final Permit permit) {
+        if (permit == Permit.PROBE && state == State.HALF_OPEN) {
+            // Leave openUntil in the past so that the next caller probes.
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Get the breaker's state and the outcomes recorded in the current window.
+     *
+     * @param now current time
+     *
+     * @return statistics
+     */
+    @Nonnull @NonnullElements @Unmodifiable synchronized Map<String,Object> getStatistics(final long now) {
+        final int[] totals = totals(now);
+        return Map.of("state", state.name(),
+                "calls", (long) totals[0],
+                "failureRate", totals[0] == 0 ? 0.0 : (double) totals[1] / totals[0],
+                "slowCallRate", totals[0] == 0 ? 0.0 : (double) totals[2] / totals[0],
+                "transitions", transitions,
+                "rejections", rejections);
+    }
+
+    /**
+     * Sum the calls, failures and slow calls in buckets within the window.
+     *
+     * @param now current time
+     *
+     * @return the three totals
+     */
+    @Nonnull private int[] totals(final long now) {
+        final long current = now / bucketNanos;
+        final int[] totals = new int[3];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (current - epochs[i] < BUCKETS && calls[i] > 0) {
+                totals[0] += calls[i];
+                totals[1] += failures[i];
+                totals[2] += slowCalls[i];
+            }
+        }
+        return totals;
+    }
+
+    /** Discard all recorded outcomes. */
+    private void clearWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            calls[i] = 0;
+            failures[i] = 0;
+            slowCalls[i] = 0;
+        }
+    }
+
+    /**
+     * Open the breaker for the initial open duration doubled once per failed probe, within the policy maximum.
+     *
+     * @param now current time
+     */
+    private void open(final long now) {
+        final long max = policy.getMaxOpenDuration().toNanos();
+        final int shift = Math.min(failedProbes, MAX_BACKOFF_SHIFT);
+        final long duration = baseOpenNanos > max >> shift ? max : baseOpenNanos << shift;
+        openUntil = now + duration;
+        transition(State.OPEN);
+    }
+
+    /**
+     * Change state.
+     *
+     * @param next new state
+     */
+    private void transition(@Nonnull final State next) {
+        if (state != next) {
+            state = next;
+            transitions++;
+        }
+    }
+
+}
@@ -18,15 +18,20 @@
 package net.shibboleth.idp.attribute.resolver.dc.http.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.script.ScriptException;
 
 import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
 import org.opensaml.saml.metadata.resolver.impl.HTTPMetadataResolverTest;
 import org.opensaml.security.httpclient.HttpClientSecurityParameters;
 import org.opensaml.security.httpclient.impl.SecurityEnhancedHttpClientSupport;
@@ -39,6 +44,8 @@ import net.shibboleth.idp.attribute.IdPAttribute;
 import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.attribute.resolver.ResolutionException;
 import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.idp.attribute.resolver.dc.http.HTTPResponseMappingStrategy;
+import net.shibboleth.idp.attribute.resolver.dc.http.HTTPSearch;
 import net.shibboleth.idp.attribute.resolver.dc.impl.TestCache;
 import net.shibboleth.idp.saml.impl.TestSources;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
@@ -252,6 +259,86 @@ public class HTTPDataConnectorTest {
         assertEquals(cache.iterator().next(), optional);
     }
     
+    @Test public void testDeadline() throws ComponentInitializationException, ScriptException {
+        final CountDownLatch aborted = new CountDownLatch(1);
+        connector.setExecutableSearchBuilder((ctx, deps) -> new HTTPSearch() {
+            public String getResultCacheKey() {
+                return null;
+            }
+
+            public Map<String,IdPAttribute> execute(final HttpClient client,
+                    final HttpClientSecurityParameters securityParameters,
+                    final HTTPResponseMappingStrategy mappingStrategy) throws IOException {
+                try {
+                    if (!aborted.await(10, TimeUnit.SECONDS)) {
+                        return Collections.emptyMap();
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Request aborted");
+            }
+
+            public void abort() {
+                aborted.countDown();
+            }
+        });
+        connector.setMappingStrategy(ScriptedResponseMappingStrategy.inlineScript("1"));
+        connector.setRequestTimeout(Duration.ofMillis(200));
+        connector.setMaxConcurrentRequests(1);
+        connector.initialize();
+
+        final AttributeResolutionContext context =
+                TestSources.createResolutionContext(TestSources.PRINCIPAL_ID, TestSources.IDP_ENTITY_ID,
+                        TestSources.SP_ENTITY_ID);
+
+        try {
+            connector.resolve(context);
+            assertFalse(true, "Request should have been aborted");
+        } catch (final ResolutionException e) {
+            assertEquals(aborted.getCount(), 0);
+        }
+
+        final Map<String,Long> stats = connector.getStatistics();
+        assertEquals(stats.get("requests").longValue(), 1);
+        assertEquals(stats.get("failures").longValue(), 1);
+        assertEquals(stats.get("timeouts").longValue(), 1);
+        assertEquals(stats.get("rejections").longValue(), 0);
+        assertEquals(stats.get("active").longValue(), 0);
+        assertTrue(stats.get("maxRequestTimeMillis") >= 200);
+    }
+
+    @Test public void testNoDeadline() throws ComponentInitializationException, ResolutionException,
+            ScriptException {
+        connector.setExecutableSearchBuilder((ctx, deps) -> new HTTPSearch() {
+            public String getResultCacheKey() {
+                return null;
+            }
+
+            public Map<String,IdPAttribute> execute(final HttpClient client,
+                    final HttpClientSecurityParameters securityParameters,
+                    final HTTPResponseMappingStrategy mappingStrategy) {
+                return Collections.emptyMap();
+            }
+        });
+        connector.setMappingStrategy(ScriptedResponseMappingStrategy.inlineScript("1"));
+        connector.setMaxConcurrentRequests(1);
+        connector.initialize();
+
+        final AttributeResolutionContext context =
+                TestSources.createResolutionContext(TestSources.PRINCIPAL_ID, TestSources.IDP_ENTITY_ID,
+                        TestSources.SP_ENTITY_ID);
+
+        connector.resolve(context);
+        connector.resolve(context);
+
+        final Map<String,Long> stats = connector.getStatistics();
+        assertEquals(stats.get("requests").longValue(), 2);
+        assertEquals(stats.get("failures").longValue(), 0);
+        assertEquals(stats.get("timeouts").longValue(), 0);
+        assertEquals(stats.get("active").longValue(), 0);
+    }
+
     @Test(enabled=false) public void testPOST() throws ComponentInitializationException, ResolutionException, ScriptException, IOException {
         final TemplatedBodyBuilder builder = new TemplatedBodyBuilder();
         builder.setURLTemplateText("https://shibboleth.net/cgi-bin/_frobnitz.cgi");
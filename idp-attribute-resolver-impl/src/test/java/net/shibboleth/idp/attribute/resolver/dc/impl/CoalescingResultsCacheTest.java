@@ -0,0 +1,135 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.resolver.dc.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.resolver.ResolutionException;
+
+/** Tests for {@link CoalescingResultsCache}. */
+public class CoalescingResultsCacheTest {
+
+    private final Map<String,IdPAttribute> result = Collections.singletonMap("foo", new IdPAttribute("foo"));
+
+    @Test public void hitAndMiss() throws Exception {
+        final CoalescingResultsCache cache = new CoalescingResultsCache(10, Duration.ofMinutes(1), null, null);
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertNull(cache.getIfPresent("key"));
+        assertSame(cache.get("key", () -> {loads.incrementAndGet(); return result;}), result);
+        assertSame(cache.get("key", () -> {loads.incrementAndGet(); return result;}), result);
+        assertSame(cache.getIfPresent("key"), result);
+        assertEquals(loads.get(), 1);
+
+        final Map<String,Long> stats = cache.getStatistics();
+        assertEquals(stats.get("hits").longValue(), 1);
+        assertEquals(stats.get("misses").longValue(), 1);
+        assertEquals(stats.get("size").longValue(), 1);
+    }
+
+    @Test public void negativeTTL() throws Exception {
+        final CoalescingResultsCache cache =
+                new CoalescingResultsCache(10, Duration.ofMinutes(1), Duration.ofMillis(50), null);
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertTrue(cache.get("key", () -> {loads.incrementAndGet(); return null;}).isEmpty());
+        assertTrue(cache.get("key", () -> {loads.incrementAndGet(); return null;}).isEmpty());
+        assertEquals(loads.get(), 1);
+
+        Thread.sleep(100);
+        assertTrue(cache.get("key", () -> {loads.incrementAndGet(); return null;}).isEmpty());
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test public void staleOnFailure() throws Exception {
+        final CoalescingResultsCache cache =
+                new CoalescingResultsCache(10, Duration.ofMillis(50), null, Duration.ofMinutes(1));
+        cache.get("key", () -> result);
+
+        Thread.sleep(100);
+        assertSame(cache.get("key", () -> {throw new ResolutionException("down");}), result);
+        assertEquals(cache.getStatistics().get("staleHits").longValue(), 1);
+        assertEquals(cache.getStatistics().get("loadFailures").longValue(), 1);
+    }
+
+    @Test public void failureNotCached() throws Exception {
+        final CoalescingResultsCache cache = new CoalescingResultsCache(10, Duration.ofMinutes(1), null, null);
+        try {
+            cache.get("key", () -> {throw new ResolutionException("down");});
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResolutionException);
+        }
+        assertSame(cache.get("key", () -> result), result);
+    }
+
+    @Test public void coalesce() throws Exception {
+        final CoalescingResultsCache cache = new CoalescingResultsCache(10, Duration.ofMinutes(1), null, null);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final int threads = 4;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Map<String,IdPAttribute>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> cache.get("key", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return result;
+                })));
+            }
+
+            // Give the other threads a chance to pile up behind the first load.
+            Thread.sleep(200);
+            release.countDown();
+
+            for (final Future<Map<String,IdPAttribute>> future : futures) {
+                assertSame(future.get(5, TimeUnit.SECONDS), result);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(loads.get(), 1);
+        assertEquals(cache.getStatistics().get("misses").longValue()
+                + cache.getStatistics().get("coalesced").longValue()
+                + cache.getStatistics().get("hits").longValue(), threads);
+    }
+
+}
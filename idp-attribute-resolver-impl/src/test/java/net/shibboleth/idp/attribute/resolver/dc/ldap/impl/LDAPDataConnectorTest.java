@@ -24,6 +24,8 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +35,11 @@ import javax.annotation.Nonnull;
 
 import org.ldaptive.ConnectionFactory;
 import org.ldaptive.DefaultConnectionFactory;
+import org.ldaptive.LdapException;
+import org.ldaptive.Response;
 import org.ldaptive.SearchExecutor;
+import org.ldaptive.SearchFilter;
+import org.ldaptive.SearchResult;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
@@ -51,6 +57,7 @@ import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.attribute.resolver.DataConnector;
 import net.shibboleth.idp.attribute.resolver.ResolutionException;
 import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolverWorkContext;
 import net.shibboleth.idp.attribute.resolver.dc.ExecutableSearchBuilder;
 import net.shibboleth.idp.attribute.resolver.dc.impl.TestCache;
 import net.shibboleth.idp.attribute.resolver.dc.ldap.ExecutableSearchFilter;
@@ -571,6 +578,89 @@ public class LDAPDataConnectorTest {
         assertTrue(attrs.get("mail").getValues().contains(new StringAttributeValue(" philip.principal@shibboleth.net ")));
     }
     
+    @Test public void resolveBulk() throws ComponentInitializationException, ResolutionException {
+        final List<String> filters = new ArrayList<>();
+        final LDAPDataConnector connector = createLdapDataConnector(null, null);
+        final SearchExecutor searchExecutor = new SearchExecutor() {
+            @Override public Response<SearchResult> search(final ConnectionFactory factory, final SearchFilter filter)
+                    throws LdapException {
+                filters.add(filter.format());
+                return super.search(factory, filter);
+            }
+        };
+        searchExecutor.setBaseDn(TEST_BASE_DN);
+        searchExecutor.setReturnAttributes(TEST_RETURN_ATTRIBUTES);
+        connector.setSearchExecutor(searchExecutor);
+        connector.initialize();
+
+        final List<AttributeResolutionContext> contexts = new ArrayList<>();
+        for (final String principal : Arrays.asList(TestSources.PRINCIPAL_ID, "PAUL_THE_PRINCIPAL", "NOBODY")) {
+            final AttributeResolutionContext context =
+                    TestSources.createResolutionContext(principal, TestSources.IDP_ENTITY_ID,
+                            TestSources.SP_ENTITY_ID);
+            context.getSubcontext(AttributeResolverWorkContext.class, true);
+            contexts.add(context);
+        }
+
+        final List<Map<String, IdPAttribute>> results = connector.resolve(contexts);
+        assertEquals(filters, Collections.singletonList(
+                "(|(uid=PETER_THE_PRINCIPAL)(uid=PAUL_THE_PRINCIPAL)(uid=NOBODY))"));
+        assertEquals(results.size(), 3);
+        assertEquals(results.get(0).get("uid").getValues(),
+                Collections.singletonList(new StringAttributeValue(TestSources.PRINCIPAL_ID)));
+        assertEquals(results.get(0).get("cn").getValues().size(), 3);
+        assertEquals(results.get(1).get("uid").getValues(),
+                Collections.singletonList(new StringAttributeValue("PAUL_THE_PRINCIPAL")));
+        assertTrue(results.get(2).isEmpty());
+    }
+
+    @Test public void resolveBulkNotCombined() throws ComponentInitializationException, ResolutionException {
+        final LDAPDataConnector connector =
+                createLdapDataConnector(newParameterizedExecutableSearchFilterBuilder("(uid={principalName}*)"), null);
+        connector.initialize();
+
+        final List<AttributeResolutionContext> contexts = new ArrayList<>();
+        for (final String principal : Arrays.asList("PETER", "PAUL")) {
+            final AttributeResolutionContext context =
+                    TestSources.createResolutionContext(principal, TestSources.IDP_ENTITY_ID,
+                            TestSources.SP_ENTITY_ID);
+            context.getSubcontext(AttributeResolverWorkContext.class, true);
+            contexts.add(context);
+        }
+
+        // Substring searches cannot be split back out, so they are left to be resolved individually.
+        assertEquals(connector.resolve(contexts), Arrays.asList(null, null));
+    }
+
+    @Test public void resolveBulkFails() throws ComponentInitializationException {
+        final LDAPDataConnector connector = createLdapDataConnector(null, null);
+        final ConnectionFactory connectionFactory = new DefaultConnectionFactory("ldap://localhost:55555");
+        connector.setConnectionFactory(connectionFactory);
+        connector.setValidator(newConnectionFactoryValidator(connectionFactory));
+        connector.initialize();
+
+        final List<AttributeResolutionContext> contexts = new ArrayList<>();
+        for (final String principal : Arrays.asList(TestSources.PRINCIPAL_ID, "PAUL_THE_PRINCIPAL")) {
+            final AttributeResolutionContext context =
+                    TestSources.createResolutionContext(principal, TestSources.IDP_ENTITY_ID,
+                            TestSources.SP_ENTITY_ID);
+            context.getSubcontext(AttributeResolverWorkContext.class, true);
+            contexts.add(context);
+        }
+
+        try {
+            connector.resolve(contexts);
+            fail("Unreachable LDAP");
+        } catch (final ResolutionException e) {
+            // OK
+        }
+        assertNotNull(connector.getLastFail());
+        for (final AttributeResolutionContext context : contexts) {
+            assertTrue(context.getSubcontext(AttributeResolverWorkContext.class).getFailedDataConnectors().contains(
+                    TEST_CONNECTOR_NAME));
+        }
+    }
+
     public static ParameterizedExecutableSearchFilterBuilder newParameterizedExecutableSearchFilterBuilder(final String filter) throws ComponentInitializationException {
         final ParameterizedExecutableSearchFilterBuilder builder = new ParameterizedExecutableSearchFilterBuilder();
         builder.setSearchFilter(filter);
@@ -25,6 +25,7 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -33,6 +34,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -50,6 +55,7 @@ import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.attribute.context.AttributeContext;
 import net.shibboleth.idp.attribute.resolver.AbstractAttributeDefinition;
 import net.shibboleth.idp.attribute.resolver.AttributeDefinition;
+import net.shibboleth.idp.attribute.resolver.BulkDataConnector;
 import net.shibboleth.idp.attribute.resolver.DataConnector;
 import net.shibboleth.idp.attribute.resolver.MockAttributeDefinition;
 import net.shibboleth.idp.attribute.resolver.MockDataConnector;
@@ -490,6 +496,103 @@ public class AttributeResolverImplTest {
         assertEquals(context.getResolvedIdPAttributes().get("output").getValues().size(), 1);
     }
 
+    @Test public void resolveWithCircuitBreaker() throws Exception {
+        final IdPAttribute i1Val = new IdPAttribute("Atr");
+        i1Val.setValues(Collections.singletonList(new StringAttributeValue("value1")));
+        final MockDataConnector dc1 = new MockDataConnector("dc1", Collections.singletonMap("Atr", i1Val));
+
+        final IdPAttribute i2Val = new IdPAttribute("Atr");
+        i2Val.setValues(Collections.singletonList(new StringAttributeValue("failover")));
+        final MockDataConnector dc2 = new MockDataConnector("dc2", Collections.singletonMap("Atr", i2Val));
+        dc2.initialize();
+
+        dc1.setFailoverDataConnectorId("dc2");
+        dc1.setNoRetryDelay(Duration.ofMillis(500));
+        dc1.initialize();
+
+        final SimpleAttributeDefinition ad = new SimpleAttributeDefinition();
+        ad.setId("output");
+        ad.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", "Atr")));
+        ad.initialize();
+
+        final CircuitBreakerPolicy policy = new CircuitBreakerPolicy();
+        policy.setMinimumCalls(2);
+        final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                Collections.singleton((AttributeDefinition) ad), Arrays.<DataConnector>asList(dc1, dc2));
+        resolver.setCircuitBreakerPolicy(policy);
+        resolver.initialize();
+
+        dc1.setFailure(true);
+        for (int i = 0; i < 2; i++) {
+            final AttributeResolutionContext context = new AttributeResolutionContext();
+            resolver.resolveAttributes(context);
+            assertEquals(context.getResolvedIdPAttributes().get("output").getValues().get(0).getValue(), "failover");
+        }
+        assertEquals(resolver.getCircuitBreakerStatistics().get("dc1").get("state"), "OPEN");
+
+        // While open, the connector is not called at all.
+        final Instant lastFail = dc1.getLastFail();
+        dc1.setFailure(false);
+        AttributeResolutionContext context = new AttributeResolutionContext();
+        resolver.resolveAttributes(context);
+        assertEquals(context.getResolvedIdPAttributes().get("output").getValues().get(0).getValue(), "failover");
+        assertEquals(dc1.getLastFail(), lastFail);
+
+        Thread.sleep(600);
+        context = new AttributeResolutionContext();
+        resolver.resolveAttributes(context);
+        assertEquals(context.getResolvedIdPAttributes().get("output").getValues().get(0).getValue(), "value1");
+
+        final Map<String, Object> stats = resolver.getCircuitBreakerStatistics().get("dc1");
+        assertEquals(stats.get("state"), "CLOSED");
+        assertEquals(stats.get("transitions"), 3L);
+        assertEquals(stats.get("rejections"), 1L);
+        assertTrue(resolver.getCircuitBreakerStatistics().containsKey("dc2"));
+    }
+
+    @Test public void circuitBreakerIgnoresOtherFailures() throws Exception {
+        final IdPAttribute i1Val = new IdPAttribute("Atr");
+        i1Val.setValues(Collections.singletonList(new StringAttributeValue("value1")));
+        // Each successful call sees the shared failure time move, as if other requests were failing meanwhile.
+        final MockDataConnector dc1 = new MockDataConnector("dc1", Collections.singletonMap("Atr", i1Val)) {
+            @Override
+            @Nullable protected Map<String, IdPAttribute> doDataConnectorResolve(
+                    @Nonnull final AttributeResolutionContext resolutionContext,
+                    @Nonnull final AttributeResolverWorkContext workContext) throws ResolutionException {
+                setLastFail(Instant.now());
+                return super.doDataConnectorResolve(resolutionContext, workContext);
+            }
+        };
+        dc1.setPropagateResolutionExceptions(false);
+        dc1.initialize();
+
+        final SimpleAttributeDefinition ad = new SimpleAttributeDefinition();
+        ad.setId("output");
+        ad.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", "Atr")));
+        ad.initialize();
+
+        final CircuitBreakerPolicy policy = new CircuitBreakerPolicy();
+        policy.setMinimumCalls(2);
+        final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                Collections.singleton((AttributeDefinition) ad), Collections.<DataConnector>singletonList(dc1));
+        resolver.setCircuitBreakerPolicy(policy);
+        resolver.initialize();
+
+        for (int i = 0; i < 3; i++) {
+            final AttributeResolutionContext context = new AttributeResolutionContext();
+            resolver.resolveAttributes(context);
+            assertEquals(context.getResolvedIdPAttributes().get("output").getValues().get(0).getValue(), "value1");
+        }
+        assertEquals(resolver.getCircuitBreakerStatistics().get("dc1").get("state"), "CLOSED");
+
+        // A failure that is not propagated is still seen as the failure of that call.
+        dc1.setFailure(true);
+        for (int i = 0; i < 3; i++) {
+            resolver.resolveAttributes(new AttributeResolutionContext());
+        }
+        assertEquals(resolver.getCircuitBreakerStatistics().get("dc1").get("state"), "OPEN");
+    }
+
     /**
      * Test that resolve w/ dependencies returns the expected results.
      * 
@@ -983,6 +1086,202 @@ public class AttributeResolverImplTest {
         }
     }
 
+    @Test public void resolveConcurrently() throws Exception {
+        final IdPAttribute attr1 = new IdPAttribute("one");
+        attr1.setValues(Collections.singletonList(new StringAttributeValue("value1")));
+        final MockDataConnector dc1 = new MockDataConnector("dc1", Collections.singletonMap("one", attr1));
+        dc1.initialize();
+
+        final IdPAttribute attr2 = new IdPAttribute("two");
+        attr2.setValues(Collections.singletonList(new StringAttributeValue("value2")));
+        final MockDataConnector dc2 = new MockDataConnector("dc2", Collections.singletonMap("two", attr2));
+        dc2.initialize();
+
+        final IdPAttribute attr3 = new IdPAttribute("three");
+        attr3.setValues(Collections.singletonList(new StringAttributeValue("value3")));
+        final MockDataConnector dc3 = new MockDataConnector("dc3", Collections.singletonMap("three", attr3));
+        dc3.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", null)));
+        dc3.initialize();
+
+        final SimpleAttributeDefinition ad1 = new SimpleAttributeDefinition();
+        ad1.setId("ad1");
+        ad1.setDataConnectorDependencies(new HashSet<>(Arrays.asList(
+                TestSources.makeDataConnectorDependency("dc2", "two"),
+                TestSources.makeDataConnectorDependency("dc3", "three"))));
+        ad1.initialize();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                    Collections.singleton((AttributeDefinition) ad1), Arrays.<DataConnector>asList(dc1, dc2, dc3));
+            resolver.setExecutor(executor);
+            resolver.initialize();
+
+            final AttributeResolutionContext context = new AttributeResolutionContext();
+            resolver.resolveAttributes(context);
+
+            assertEquals(context.getResolvedIdPAttributes().size(), 1);
+            assertEquals(context.getResolvedIdPAttributes().get("ad1").getValues().size(), 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void resolveConcurrentlyWithFailover() throws Exception {
+        final IdPAttribute attr = new IdPAttribute("Atr");
+        attr.setValues(Collections.singletonList(new StringAttributeValue("failover")));
+        final MockDataConnector dc2 = new MockDataConnector("dc2", Collections.singletonMap("Atr", attr));
+        dc2.initialize();
+
+        final MockDataConnector dc1 = new MockDataConnector("dc1", new HashMap<String, IdPAttribute>());
+        dc1.setFailoverDataConnectorId("dc2");
+        dc1.setFailure(true);
+        dc1.initialize();
+
+        final SimpleAttributeDefinition ad = new SimpleAttributeDefinition();
+        ad.setId("output");
+        ad.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", "Atr")));
+        ad.initialize();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                    Collections.singleton((AttributeDefinition) ad), Arrays.<DataConnector>asList(dc1, dc2));
+            resolver.setExecutor(executor);
+            resolver.initialize();
+
+            final AttributeResolutionContext context = new AttributeResolutionContext();
+            resolver.resolveAttributes(context);
+
+            assertEquals(context.getResolvedIdPAttributes().get("output").getValues().size(), 1);
+            assertEquals(context.getResolvedIdPAttributes().get("output").getValues().get(0).getValue(), "failover");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void resolveConcurrentlyFails() throws Exception {
+        final MockDataConnector dc1 = new MockDataConnector("dc1", new HashMap<String, IdPAttribute>());
+        dc1.setFailure(true);
+        dc1.initialize();
+
+        final MockAttributeDefinition ad1 = new MockAttributeDefinition("ad1", new IdPAttribute("test"));
+        ad1.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", null)));
+        ad1.initialize();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                    Collections.singleton((AttributeDefinition) ad1), Collections.singleton((DataConnector) dc1));
+            resolver.setExecutor(executor);
+            resolver.initialize();
+
+            resolver.resolveAttributes(new AttributeResolutionContext());
+            fail();
+        } catch (final ResolutionException e) {
+            // OK
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void resolveBulk() throws Exception {
+        final IdPAttribute attr = new IdPAttribute("Atr");
+        attr.setValues(Collections.singletonList(new StringAttributeValue("value")));
+        final BulkMockDataConnector dc1 = new BulkMockDataConnector("dc1", Collections.singletonMap("Atr", attr));
+        dc1.initialize();
+
+        final SimpleAttributeDefinition ad = new SimpleAttributeDefinition();
+        ad.setId("output");
+        ad.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", "Atr")));
+        ad.initialize();
+
+        final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                Collections.singleton((AttributeDefinition) ad), Collections.singleton((DataConnector) dc1));
+        resolver.setBulkBatchSize(2);
+        resolver.initialize();
+
+        final List<AttributeResolutionContext> resolved = new ArrayList<>();
+        resolver.resolveAttributes(IntStream.range(0, 5).mapToObj(i -> {
+                    final AttributeResolutionContext context = new AttributeResolutionContext();
+                    context.setPrincipal("user" + i);
+                    return context;
+                }), (context, e) -> {
+                    assertNull(e);
+                    resolved.add(context);
+                });
+
+        assertEquals(resolved.stream().map(AttributeResolutionContext::getPrincipal).collect(Collectors.toList()),
+                Arrays.asList("user0", "user1", "user2", "user3", "user4"));
+        for (final AttributeResolutionContext context : resolved) {
+            assertEquals(context.getResolvedIdPAttributes().get("output").getValues().size(), 1);
+        }
+        assertEquals(dc1.getBulkCount(), 3);
+    }
+
+    @Test public void resolveBulkFails() throws Exception {
+        final MockDataConnector dc1 = new MockDataConnector("dc1", new HashMap<String, IdPAttribute>());
+        dc1.setFailure(true);
+        dc1.initialize();
+
+        final MockAttributeDefinition ad1 = new MockAttributeDefinition("ad1", new IdPAttribute("test"));
+        ad1.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", null)));
+        ad1.initialize();
+
+        final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                Collections.singleton((AttributeDefinition) ad1), Collections.singleton((DataConnector) dc1));
+        resolver.initialize();
+
+        final List<ResolutionException> failures = new ArrayList<>();
+        resolver.resolveAttributes(IntStream.range(0, 3).mapToObj(i -> new AttributeResolutionContext()),
+                (context, e) -> failures.add(e));
+
+        assertEquals(failures.size(), 3);
+        for (final ResolutionException e : failures) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test public void resolveBulkFailsOver() throws Exception {
+        final IdPAttribute attr = new IdPAttribute("Atr");
+        attr.setValues(Collections.singletonList(new StringAttributeValue("failover")));
+        final MockDataConnector dc2 = new MockDataConnector("dc2", Collections.singletonMap("Atr", attr));
+        dc2.initialize();
+
+        final BulkMockDataConnector dc1 = new BulkMockDataConnector("dc1", new HashMap<String, IdPAttribute>());
+        dc1.setFailure(true);
+        dc1.setFailoverDataConnectorId("dc2");
+        dc1.initialize();
+
+        final SimpleAttributeDefinition ad = new SimpleAttributeDefinition();
+        ad.setId("output");
+        ad.setDataConnectorDependencies(Collections.singleton(TestSources.makeDataConnectorDependency("dc1", "Atr")));
+        ad.initialize();
+
+        final AttributeResolverImpl resolver = newAttributeResolverImpl("foo",
+                Collections.singleton((AttributeDefinition) ad), Arrays.<DataConnector>asList(dc1, dc2));
+        resolver.setCircuitBreakerPolicy(new CircuitBreakerPolicy());
+        resolver.initialize();
+
+        final List<AttributeResolutionContext> resolved = new ArrayList<>();
+        resolver.resolveAttributes(IntStream.range(0, 3).mapToObj(i -> new AttributeResolutionContext()),
+                (context, e) -> {
+                    assertNull(e);
+                    resolved.add(context);
+                });
+
+        assertEquals(resolved.size(), 3);
+        for (final AttributeResolutionContext context : resolved) {
+            assertEquals(context.getResolvedIdPAttributes().get("output").getValues().get(0).getValue(), "failover");
+        }
+        // The failed bulk call is the only call made, and is recorded once.
+        assertEquals(dc1.getBulkCount(), 1);
+        assertEquals(dc1.getResolveCount(), 0);
+        assertNotNull(dc1.getLastFail());
+        assertEquals(resolver.getCircuitBreakerStatistics().get("dc1").get("calls"), 1L);
+        assertEquals(resolver.getCircuitBreakerStatistics().get("dc1").get("failureRate"), 1.0);
+    }
+
     public static AttributeResolverImpl newAttributeResolverImpl(@Nonnull @NotEmpty final String resolverId,
             @Nullable final Collection<AttributeDefinition> definitions,
             @Nullable final Collection<DataConnector> connectors) {
@@ -995,6 +1294,55 @@ public class AttributeResolverImplTest {
         return result;
     }
 
+    private static class BulkMockDataConnector extends MockDataConnector implements BulkDataConnector {
+        private final Map<String, IdPAttribute> values;
+
+        private boolean failure;
+
+        private int bulkCount;
+
+        private int resolveCount;
+
+        public BulkMockDataConnector(String id, Map<String, IdPAttribute> connectorValues)
+                throws ComponentInitializationException {
+            super(id, connectorValues);
+            values = connectorValues;
+        }
+
+        @Override
+        public void setFailure(boolean fail) {
+            super.setFailure(fail);
+            failure = fail;
+        }
+
+        public int getBulkCount() {
+            return bulkCount;
+        }
+
+        public int getResolveCount() {
+            return resolveCount;
+        }
+
+        @Override
+        @Nullable protected Map<String, IdPAttribute> doDataConnectorResolve(
+                @Nonnull final AttributeResolutionContext resolutionContext,
+                @Nonnull final AttributeResolverWorkContext workContext) throws ResolutionException {
+            resolveCount++;
+            return super.doDataConnectorResolve(resolutionContext, workContext);
+        }
+
+        @Override
+        @Nonnull public List<Map<String, IdPAttribute>> resolve(
+                @Nonnull final List<AttributeResolutionContext> resolutionContexts) throws ResolutionException {
+            bulkCount++;
+            if (failure) {
+                setLastFail(Instant.now());
+                throw new ResolutionException();
+            }
+            return Collections.nCopies(resolutionContexts.size(), values);
+        }
+    }
+
     private static class PreDefinedCheckingMockAttributeDefinition extends MockAttributeDefinition {
         private final String preResolvedName;
 
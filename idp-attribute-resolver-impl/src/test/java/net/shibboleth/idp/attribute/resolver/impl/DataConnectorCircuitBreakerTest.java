@@ -0,0 +1,132 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.attribute.resolver.impl;
+
+import static org.testng.Assert.assertEquals;
+
+import java.time.Duration;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.resolver.impl.DataConnectorCircuitBreaker.Permit;
+import net.shibboleth.idp.attribute.resolver.impl.DataConnectorCircuitBreaker.State;
+
+/** Unit test for {@link DataConnectorCircuitBreaker}. */
+public class DataConnectorCircuitBreakerTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private CircuitBreakerPolicy policy;
+
+    @BeforeMethod public void setUp() {
+        policy = new CircuitBreakerPolicy();
+        policy.setWindow(Duration.ofSeconds(10));
+        policy.setMinimumCalls(4);
+        policy.setFailureRateThreshold(0.5);
+        policy.setOpenDuration(Duration.ofSeconds(5));
+        policy.setMaxOpenDuration(Duration.ofSeconds(15));
+    }
+
+    @Test public void testFailureRate() {
+        final DataConnectorCircuitBreaker breaker = new DataConnectorCircuitBreaker(policy, Duration.ZERO);
+
+        long now = 100 * SECOND;
+        breaker.record(breaker.tryAcquire(now), false, 0, now);
+        breaker.record(breaker.tryAcquire(now), false, 0, now);
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        assertEquals(breaker.getState(), State.CLOSED);
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        assertEquals(breaker.getState(), State.OPEN);
+        assertEquals(breaker.tryAcquire(now), Permit.DENIED);
+
+        now += 5 * SECOND;
+        final Permit probe = breaker.tryAcquire(now);
+        assertEquals(probe, Permit.PROBE);
+        assertEquals(breaker.getState(), State.HALF_OPEN);
+        assertEquals(breaker.tryAcquire(now), Permit.DENIED);
+        breaker.record(probe, false, 0, now);
+        assertEquals(breaker.getState(), State.CLOSED);
+        assertEquals(breaker.getStatistics(now).get("calls"), 0L);
+    }
+
+    @Test public void testBackoff() {
+        final DataConnectorCircuitBreaker breaker = new DataConnectorCircuitBreaker(policy, Duration.ofSeconds(4));
+
+        long now = 100 * SECOND;
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.tryAcquire(now), true, 0, now);
+        }
+        assertEquals(breaker.getState(), State.OPEN);
+
+        // The connector's own retry delay applies first, then doubles per failed probe up to the maximum.
+        now += 4 * SECOND;
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        now += 8 * SECOND - 1;
+        assertEquals(breaker.tryAcquire(now), Permit.DENIED);
+        now += 1;
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        now += 15 * SECOND - 1;
+        assertEquals(breaker.tryAcquire(now), Permit.DENIED);
+        now += 1;
+        assertEquals(breaker.tryAcquire(now), Permit.PROBE);
+    }
+
+    @Test public void testSlowCalls() {
+        policy.setSlowCallDuration(Duration.ofMillis(500));
+        policy.setSlowCallRateThreshold(0.75);
+        final DataConnectorCircuitBreaker breaker = new DataConnectorCircuitBreaker(policy, Duration.ZERO);
+
+        final long now = 100 * SECOND;
+        breaker.record(breaker.tryAcquire(now), false, SECOND, now);
+        breaker.record(breaker.tryAcquire(now), false, SECOND, now);
+        breaker.record(breaker.tryAcquire(now), false, 0, now);
+        breaker.record(breaker.tryAcquire(now), false, SECOND, now);
+        assertEquals(breaker.getState(), State.OPEN);
+        assertEquals(breaker.getStatistics(now).get("slowCallRate"), 0.75);
+    }
+
+    @Test public void testWindowExpiry() {
+        final DataConnectorCircuitBreaker breaker = new DataConnectorCircuitBreaker(policy, Duration.ZERO);
+
+        long now = 100 * SECOND;
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+
+        // Earlier failures have left the window.
+        now += 11 * SECOND;
+        breaker.record(breaker.tryAcquire(now), true, 0, now);
+        assertEquals(breaker.getState(), State.CLOSED);
+        assertEquals(breaker.getStatistics(now).get("calls"), 1L);
+    }
+
+    @Test public void testReleasedProbe() {
+        final DataConnectorCircuitBreaker breaker = new DataConnectorCircuitBreaker(policy, Duration.ZERO);
+
+        long now = 100 * SECOND;
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.tryAcquire(now), true, 0, now);
+        }
+        now += 5 * SECOND;
+        breaker.release(breaker.tryAcquire(now));
+        assertEquals(breaker.getState(), State.OPEN);
+        assertEquals(breaker.tryAcquire(now), Permit.PROBE);
+    }
+
+}
@@ -121,6 +121,14 @@ public class HTTPDataConnectorParser extends AbstractDataConnectorParser {
             builder.addPropertyReference("validator", validatorID);
         }
 
+        if (config.hasAttributeNS(null, "requestTimeout")) {
+            builder.addPropertyValue("requestTimeout", config.getAttributeNS(null, "requestTimeout"));
+        }
+
+        if (config.hasAttributeNS(null, "maxConcurrentRequests")) {
+            builder.addPropertyValue("maxConcurrentRequests", config.getAttributeNS(null, "maxConcurrentRequests"));
+        }
+
         final String resultCacheBeanID = CacheConfigParser.getBeanResultCacheID(config);
         
         if (null != resultCacheBeanID) {
@@ -18,6 +18,7 @@
 package net.shibboleth.idp.attribute.resolver.spring.impl;
 
 import java.util.Collection;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -31,6 +32,7 @@ import net.shibboleth.idp.attribute.resolver.AttributeDefinition;
 import net.shibboleth.idp.attribute.resolver.AttributeResolver;
 import net.shibboleth.idp.attribute.resolver.DataConnector;
 import net.shibboleth.idp.attribute.resolver.impl.AttributeResolverImpl;
+import net.shibboleth.idp.attribute.resolver.impl.CircuitBreakerPolicy;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.service.ServiceException;
@@ -49,6 +51,15 @@ public class AttributeResolverServiceStrategy extends AbstractIdentifiableInitia
     
     /** Whether to strip null attribute values. */
     private boolean stripNulls;
+
+    /** Optional executor for concurrent data connector resolution. */
+    @Nullable private Executor executor;
+
+    /** Number of subjects resolved together during bulk resolution. */
+    private int bulkBatchSize = 100;
+
+    /** Optional circuit breaker settings for data connectors. */
+    @Nullable private CircuitBreakerPolicy circuitBreakerPolicy;
     
     /** Do we strip nulls from attribute values.
     * @return Returns whether to strip nulls from attribute values
@@ -65,6 +76,33 @@ public class AttributeResolverServiceStrategy extends AbstractIdentifiableInitia
        stripNulls = doStripNulls;
    }
 
+   /**
+    * Set an executor with which to resolve independent data connectors concurrently.
+    * 
+    * @param exec executor to use
+    */
+   public void setExecutor(@Nullable final Executor exec) {
+       executor = exec;
+   }
+
+   /**
+    * Set the number of subjects resolved together during bulk resolution.
+    * 
+    * @param size the batch size
+    */
+   public void setBulkBatchSize(final int size) {
+       bulkBatchSize = size;
+   }
+
+   /**
+    * Set the policy for circuit breakers placed around each data connector.
+    * 
+    * @param policy circuit breaker policy
+    */
+   public void setCircuitBreakerPolicy(@Nullable final CircuitBreakerPolicy policy) {
+       circuitBreakerPolicy = policy;
+   }
+
     /** {@inheritDoc} */
     @Nullable public ServiceableComponent<AttributeResolver> apply(@Nullable final ApplicationContext appContext) {
 
@@ -81,6 +119,9 @@ public class AttributeResolverServiceStrategy extends AbstractIdentifiableInitia
         resolver.setDataConnectors(connectors);
         resolver.setId(getId());
         resolver.setStripNulls(isStripNulls());
+        resolver.setExecutor(executor);
+        resolver.setBulkBatchSize(bulkBatchSize);
+        resolver.setCircuitBreakerPolicy(circuitBreakerPolicy);
         resolver.setApplicationContext(appContext);
 
         try {
@@ -21,12 +21,16 @@ import java.io.IOException;
 import java.security.Principal;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.AbstractCollection;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -103,6 +107,15 @@ public class AuthenticationFlowDescriptor extends AbstractIdentifiableInitializa
      */
     @Nonnull private Subject supportedPrincipals;
 
+    /** Live view of the supported principals that counts modifications. */
+    @Nonnull private final Collection<Principal> supportedPrincipalsView;
+
+    /** Number of modifications made to the supported principals. */
+    @Nonnull private final AtomicLong supportedPrincipalsModCount;
+
+    /** Immutable copies of the supported principals of each type looked up since initialization. */
+    @Nullable private volatile PrincipalIndex principalIndex;
+
     /** Predicate that must be true for this flow to be usable for a given request. */
     @Nonnull private Predicate<ProfileRequestContext> activationCondition;
     
@@ -118,6 +131,8 @@ public class AuthenticationFlowDescriptor extends AbstractIdentifiableInitializa
         proxyRestrictionsEnforced = true;
         reuseCondition = new ProxyCountPredicate();
         supportedPrincipals = new Subject();
+        supportedPrincipalsView = new TrackedPrincipals();
+        supportedPrincipalsModCount = new AtomicLong();
         activationCondition = Predicates.alwaysTrue();
         inactivityTimeout = Duration.ofMinutes(30);
         principalWeightMap = Collections.emptyMap();
@@ -349,20 +364,31 @@ public class AuthenticationFlowDescriptor extends AbstractIdentifiableInitializa
     /** {@inheritDoc} */
     @Override @Nonnull @NonnullElements @Unmodifiable public <T extends Principal> Set<T> getSupportedPrincipals(
             @Nonnull final Class<T> c) {
-        return supportedPrincipals.getPrincipals(c);
+        if (!isInitialized()) {
+            return supportedPrincipals.getPrincipals(c);
+        }
+        
+        // Any modification through the live collection since the index was created makes it stale.
+        final long modCount = supportedPrincipalsModCount.get();
+        PrincipalIndex index = principalIndex;
+        if (index == null || index.modCount != modCount) {
+            index = new PrincipalIndex(modCount);
+            principalIndex = index;
+        }
+        
+        @SuppressWarnings("unchecked")
+        final Set<T> principals =
+                (Set<T>) index.byType.computeIfAbsent(c, k -> Set.copyOf(supportedPrincipals.getPrincipals(c)));
+        return principals;
     }
 
     /**
      * Get a collection of supported non-user-specific principals that the flow may produce when it operates.
      * 
-     * <p>
-     * The {@link Collection#remove(java.lang.Object)} method is not supported.
-     * </p>
-     * 
      * @return a live collection of supported principals
      */
     @Nonnull @NonnullElements public Collection<Principal> getSupportedPrincipals() {
-        return supportedPrincipals.getPrincipals();
+        return supportedPrincipalsView;
     }
 
     /**
@@ -377,6 +403,7 @@ public class AuthenticationFlowDescriptor extends AbstractIdentifiableInitializa
 
         supportedPrincipals.getPrincipals().clear();
         supportedPrincipals.getPrincipals().addAll(Set.copyOf(principals));
+        supportedPrincipalsModCount.incrementAndGet();
     }
 
     /**
@@ -553,6 +580,72 @@ public class AuthenticationFlowDescriptor extends AbstractIdentifiableInitializa
         
     }
     
+    /** Supported principals by type, as of a given number of modifications to the supported principals. */
+    private static final class PrincipalIndex {
+
+        /** Number of modifications to the supported principals when the index was created. */
+        private final long modCount;
+
+        /** Supported principals by type. */
+        @Nonnull private final Map<Class<?>,Set<? extends Principal>> byType;
+
+        /**
+         * Constructor.
+         *
+         * @param count number of modifications to the supported principals
+         */
+        PrincipalIndex(final long count) {
+            modCount = count;
+            byType = new ConcurrentHashMap<>();
+        }
+    }
+
+    /** Live view of the supported principals that counts each modification made through it. */
+    private final class TrackedPrincipals extends AbstractCollection<Principal> {
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean add(final Principal principal) {
+            if (supportedPrincipals.getPrincipals().add(principal)) {
+                supportedPrincipalsModCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean contains(final Object o) {
+            return supportedPrincipals.getPrincipals().contains(o);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<Principal> iterator() {
+            final Iterator<Principal> iterator = supportedPrincipals.getPrincipals().iterator();
+            return new Iterator<>() {
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public Principal next() {
+                    return iterator.next();
+                }
+
+                public void remove() {
+                    iterator.remove();
+                    supportedPrincipalsModCount.incrementAndGet();
+                }
+            };
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return supportedPrincipals.getPrincipals().size();
+        }
+    }
+
     /**
      * A {@link Predicate} that implements a cross-check between an effective proxy count of zero and
      * whether a descriptor is honoring the limit.
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -57,8 +58,11 @@ import com.google.common.collect.ImmutableSet;
  */
 public class AuthenticationResult implements PrincipalSupportingComponent {
     
-    /** The Subject established by the authentication result. */
-    @Nonnull private final Subject subject;
+    /** The Subject established by the authentication result, once materialized. */
+    @Nullable private volatile Subject subject;
+
+    /** Source of the Subject until it is first needed. */
+    @Nullable private Supplier<Subject> subjectSource;
 
     /** The identifier of the flow used to produce this result. */
     @Nonnull @NotEmpty private final String authenticationFlowId;
@@ -97,6 +101,27 @@ public class AuthenticationResult implements PrincipalSupportingComponent {
         reuseCondition = Predicates.alwaysTrue();
     }
 
+    /**
+     * Constructor.
+     * 
+     * <p>Sets the authentication instant to the current time. The Subject is obtained from the supplied
+     * source the first time it is needed, so that the cost of recovering it can be deferred, or avoided
+     * entirely for results that are never examined.</p>
+     * 
+     * @param flowId the workflow used to authenticate the subject
+     * @param source source of a Subject identifying the authenticated entity
+     */
+    public AuthenticationResult(@Nonnull @NotEmpty final String flowId, @Nonnull final Supplier<Subject> source) {
+
+        authenticationFlowId = Constraint.isNotNull(StringSupport.trimOrNull(flowId),
+                "Authentication flow ID cannot be null nor empty");
+        subjectSource = Constraint.isNotNull(source, "Subject source cannot be null");
+        authenticationInstant = Instant.now();
+        lastActivityInstant = authenticationInstant;
+        additionalData = new HashMap<>();
+        reuseCondition = Predicates.alwaysTrue();
+    }
+
     /**
      * Constructor. <p>Sets the authentication instant to the current time.</p>
      * 
@@ -136,14 +161,25 @@ public class AuthenticationResult implements PrincipalSupportingComponent {
      * @return a Subject identifying the authenticated entity
      */
     @Nonnull public Subject getSubject() {
-        return subject;
+        Subject result = subject;
+        if (result == null) {
+            synchronized (this) {
+                result = subject;
+                if (result == null) {
+                    result = Constraint.isNotNull(subjectSource.get(), "Subject source returned null");
+                    subject = result;
+                    subjectSource = null;
+                }
+            }
+        }
+        return result;
     }
 
     /** {@inheritDoc} */
     @Override
     @Nonnull @NonnullElements @Unmodifiable @NotLive public <T extends Principal> Set<T> getSupportedPrincipals(
             @Nonnull final Class<T> c) {
-        return subject.getPrincipals(c);
+        return getSubject().getPrincipals(c);
     }
     
     /**
@@ -300,7 +336,7 @@ public class AuthenticationResult implements PrincipalSupportingComponent {
         public boolean test(@Nullable final ProfileRequestContext input) {
             
             final Set<ProxyAuthenticationPrincipal> proxieds =
-                    subject.getPrincipals(ProxyAuthenticationPrincipal.class);
+                    getSubject().getPrincipals(ProxyAuthenticationPrincipal.class);
             
             if (proxieds == null || proxieds.isEmpty()) {
                 return true;
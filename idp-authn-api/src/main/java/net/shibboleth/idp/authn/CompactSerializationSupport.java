@@ -0,0 +1,190 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.authn;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Helper class for the compact binary forms in which authentication results and sessions may be stored.
+ * 
+ * <p>A compact value is Base64 text, without padding, behind a leading {@link #MARKER} that distinguishes it from
+ * JSON. Within it, non-negative integers are written in seven-bit groups, least significant first, and strings as
+ * their UTF-8 length plus one, zero denoting null, followed by their UTF-8 bytes.</p>
+ */
+public final class CompactSerializationSupport {
+
+    /** Character that begins a compact value. */
+    public static final char MARKER = '~';
+
+    /** Constructor. */
+    private CompactSerializationSupport() {
+        
+    }
+
+    /**
+     * Get whether a stored value is in a compact form.
+     * 
+     * @param value stored value
+     * 
+     * @return true iff the value begins with {@link #MARKER}
+     */
+    public static boolean isCompact(@Nullable final String value) {
+        return value != null && !value.isEmpty() && value.charAt(0) == MARKER;
+    }
+
+    /**
+     * Encode binary data as a compact value.
+     * 
+     * @param data data to encode
+     * 
+     * @return the compact value
+     */
+    @Nonnull @NotEmpty public static String encode(@Nonnull final byte[] data) {
+        return MARKER + Base64.getEncoder().withoutPadding().encodeToString(data);
+    }
+
+    /**
+     * Decode a compact value for reading.
+     * 
+     * @param value compact value
+     * 
+     * @return input positioned at the start of the binary data
+     * 
+     * @throws IOException if the value is not a validly encoded compact value
+     */
+    @Nonnull public static DataInputStream decode(@Nonnull final String value) throws IOException {
+        if (!isCompact(value)) {
+            throw new IOException("Value is not in a compact form");
+        }
+        try {
+            return new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(value.substring(1))));
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Found invalid encoding in compact value", e);
+        }
+    }
+
+    /**
+     * Write a non-negative integer.
+     * 
+     * @param out output
+     * @param value value to write
+     * 
+     * @throws IOException if an error occurs
+     */
+    public static void writeNumber(@Nonnull final DataOutput out, final long value) throws IOException {
+        if (value < 0) {
+            throw new IOException("Cannot write negative number " + value);
+        }
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    /**
+     * Read a non-negative integer written by {@link #writeNumber(DataOutput, long)}.
+     * 
+     * @param in input
+     * 
+     * @return the value
+     * 
+     * @throws IOException if the data is malformed
+     */
+    public static long readNumber(@Nonnull final DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (result < 0) {
+                    break;
+                }
+                return result;
+            }
+        }
+        throw new IOException("Found invalid number in compact value");
+    }
+
+    /**
+     * Read a count of entries of at least a byte each, or a byte length, neither of which can exceed the data
+     * remaining.
+     * 
+     * @param in input
+     * 
+     * @return the value
+     * 
+     * @throws IOException if the data is malformed
+     */
+    public static int readLength(@Nonnull final DataInputStream in) throws IOException {
+        final long result = readNumber(in);
+        if (result > in.available() + 1) {
+            throw new IOException("Found invalid length in compact value");
+        }
+        return (int) result;
+    }
+
+    /**
+     * Write a string.
+     * 
+     * @param out output
+     * @param value value to write
+     * 
+     * @throws IOException if an error occurs
+     */
+    public static void writeString(@Nonnull final DataOutput out, @Nullable final String value) throws IOException {
+        if (value == null) {
+            writeNumber(out, 0);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeNumber(out, bytes.length + 1L);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     * 
+     * @param in input
+     * 
+     * @return the value
+     * 
+     * @throws IOException if the data is malformed
+     */
+    @Nullable public static String readString(@Nonnull final DataInputStream in) throws IOException {
+        final int length = readLength(in);
+        if (length == 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -17,12 +17,17 @@
 
 package net.shibboleth.idp.authn;
 
+import java.security.Principal;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
 
 import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
 
+import org.opensaml.storage.StorageSerializer;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -113,6 +118,52 @@ public class AuthenticationFlowDescriptorTest {
         Assert.assertTrue(descriptor.getSupportedPrincipals(UsernamePrincipal.class).contains(baz));
     }
     
+    /**
+     * Tests that changes to the live principal set after initialization are reflected, including those that leave
+     * its size unchanged.
+     * 
+     * @throws ComponentInitializationException ...
+     */
+    @Test public void testSupportedPrincipalsAfterInit() throws ComponentInitializationException {
+        final UsernamePrincipal foo = new UsernamePrincipal("foo");
+        final UsernamePrincipal bar = new UsernamePrincipal("bar");
+        final UsernamePrincipal baz = new UsernamePrincipal("baz");
+        
+        descriptor.setSupportedPrincipals(Arrays.asList(foo, bar));
+        descriptor.setResultSerializer(new StorageSerializer<AuthenticationResult>() {
+            public boolean isInitialized() {
+                return true;
+            }
+            public void initialize() {
+            }
+            public String serialize(final AuthenticationResult instance) {
+                throw new UnsupportedOperationException();
+            }
+            public AuthenticationResult deserialize(final long version, final String context, final String key,
+                    final String value, final Long expiration) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        descriptor.initialize();
+        Assert.assertEquals(descriptor.getSupportedPrincipals(UsernamePrincipal.class), Set.of(foo, bar));
+        
+        descriptor.getSupportedPrincipals().remove(bar);
+        descriptor.getSupportedPrincipals().add(baz);
+        Assert.assertEquals(descriptor.getSupportedPrincipals(UsernamePrincipal.class), Set.of(foo, baz));
+        
+        final Iterator<Principal> iterator = descriptor.getSupportedPrincipals().iterator();
+        while (iterator.hasNext()) {
+            if (foo.equals(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        descriptor.getSupportedPrincipals().add(bar);
+        Assert.assertEquals(descriptor.getSupportedPrincipals(UsernamePrincipal.class), Set.of(bar, baz));
+        
+        descriptor.getSupportedPrincipals().clear();
+        Assert.assertTrue(descriptor.getSupportedPrincipals(UsernamePrincipal.class).isEmpty());
+    }
+    
     /**
      * Tests handling of active/inactive checks.
      * 
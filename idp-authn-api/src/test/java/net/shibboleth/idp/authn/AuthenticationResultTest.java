@@ -18,6 +18,7 @@
 package net.shibboleth.idp.authn;
 
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.security.auth.Subject;
 
@@ -76,4 +77,20 @@ public class AuthenticationResultTest {
         }
     }
 
+    /** Tests that a deferred Subject is obtained once, when first needed. */
+    @Test public void testDeferredSubject() {
+        final AtomicInteger calls = new AtomicInteger();
+        final AuthenticationResult result = new AuthenticationResult("test", () -> {
+            calls.incrementAndGet();
+            final Subject subject = new Subject();
+            subject.getPrincipals().add(new UsernamePrincipal("bob"));
+            return subject;
+        });
+        Assert.assertEquals(calls.get(), 0);
+        
+        Assert.assertTrue(result.getSupportedPrincipals(UsernamePrincipal.class).contains(new UsernamePrincipal("bob")));
+        Assert.assertSame(result.getSubject(), result.getSubject());
+        Assert.assertEquals(calls.get(), 1);
+    }
+
 }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.authn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** {@link CompactSerializationSupport} unit test. */
+public class CompactSerializationSupportTest {
+
+    @Test public void testNumbers() throws IOException {
+        final long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE};
+
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(sink);
+        for (final long value : values) {
+            CompactSerializationSupport.writeNumber(out, value);
+        }
+        out.flush();
+
+        final DataInputStream in = CompactSerializationSupport.decode(
+                CompactSerializationSupport.encode(sink.toByteArray()));
+        for (final long value : values) {
+            Assert.assertEquals(CompactSerializationSupport.readNumber(in), value);
+        }
+        Assert.assertEquals(in.available(), 0);
+    }
+
+    @Test public void testStrings() throws IOException {
+        final String[] values = {null, "", "foo", "café ☃"};
+
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(sink);
+        for (final String value : values) {
+            CompactSerializationSupport.writeString(out, value);
+        }
+        out.flush();
+
+        final DataInputStream in = CompactSerializationSupport.decode(
+                CompactSerializationSupport.encode(sink.toByteArray()));
+        for (final String value : values) {
+            Assert.assertEquals(CompactSerializationSupport.readString(in), value);
+        }
+        Assert.assertEquals(in.available(), 0);
+    }
+
+    @Test public void testEncoding() throws IOException {
+        final String value = CompactSerializationSupport.encode(new byte[] {1, 2, 3});
+        Assert.assertEquals(value.charAt(0), CompactSerializationSupport.MARKER);
+        Assert.assertFalse(value.endsWith("="));
+        Assert.assertTrue(CompactSerializationSupport.isCompact(value));
+
+        final DataInputStream in = CompactSerializationSupport.decode(value);
+        Assert.assertEquals(in.readUnsignedByte(), 1);
+        Assert.assertEquals(in.readUnsignedByte(), 2);
+        Assert.assertEquals(in.readUnsignedByte(), 3);
+        Assert.assertEquals(in.available(), 0);
+
+        Assert.assertFalse(CompactSerializationSupport.isCompact(null));
+        Assert.assertFalse(CompactSerializationSupport.isCompact(""));
+        Assert.assertFalse(CompactSerializationSupport.isCompact("{\"foo\":\"bar\"}"));
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testNotCompact() throws IOException {
+        CompactSerializationSupport.decode("{}");
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testInvalidEncoding() throws IOException {
+        CompactSerializationSupport.decode(CompactSerializationSupport.MARKER + "!!!");
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testNegativeNumber() throws IOException {
+        CompactSerializationSupport.writeNumber(new DataOutputStream(new ByteArrayOutputStream()), -1);
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testOverlongNumber() throws IOException {
+        final byte[] data = new byte[11];
+        Arrays.fill(data, (byte) 0xFF);
+        data[10] = 1;
+        CompactSerializationSupport.readNumber(
+                CompactSerializationSupport.decode(CompactSerializationSupport.encode(data)));
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testTruncatedString() throws IOException {
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(sink);
+        CompactSerializationSupport.writeNumber(out, 100);
+        out.write(new byte[] {'a', 'b'});
+        out.flush();
+
+        CompactSerializationSupport.readString(
+                CompactSerializationSupport.decode(CompactSerializationSupport.encode(sink.toByteArray())));
+    }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.authn.impl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
+
+/**
+ * In-memory account lockout counters for a {@link StorageBackedAccountLockoutManager}, replicated to and from
+ * its {@link StorageService} periodically instead of on every attempt.
+ * 
+ * <p>A counter holds the same state as a storage record: the number of failed attempts and an expiration from
+ * which the time of the last attempt is recovered. The counting window slides with each attempt, so a counter is
+ * reset when the gap since the previous attempt exceeds the counter interval.</p>
+ * 
+ * <p>Each replication pass adds the attempts counted locally since the previous pass to the stored counter,
+ * using versioned updates so that concurrent passes on other nodes are not lost, and adopts the merged result.
+ * Counters checked since the previous pass are refreshed from storage, a counter whose record has been deleted
+ * (by a successful login elsewhere) is dropped, and keys checked without a local counter are loaded. Checks and
+ * increments thus never wait for storage, at the cost of other nodes' attempts being seen up to one pass
+ * late.</p>
+ * 
+ * <p>At most a fixed number of counters are held, beyond which the manager falls back to storage.</p>
+ */
+@ThreadSafe
+final class AccountLockoutCounters {
+
+    /** Number of times to retry a versioned write. */
+    private static final int MAX_RETRIES = 10;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AccountLockoutCounters.class);
+
+    /** Storage back-end. */
+    @Nonnull private final StorageService storageService;
+
+    /** Storage context. */
+    @Nonnull @NotEmpty private final String context;
+
+    /** Maximum number of counters held. */
+    private final int maxEntries;
+
+    /** Counters, keyed by lockout key. */
+    @Nonnull private final ConcurrentMap<String,Counter> counters;
+
+    /** Keys checked without a local counter, to load from storage. */
+    @Nonnull private final Set<String> loads;
+
+    /** Checks answered. */
+    @Nonnull private final LongAdder checks;
+
+    /** Checks that found the account locked out. */
+    @Nonnull private final LongAdder lockouts;
+
+    /** Failed attempts counted. */
+    @Nonnull private final LongAdder failures;
+
+    /** Counters written to storage. */
+    @Nonnull private final LongAdder replicated;
+
+    /** Counters read from storage. */
+    @Nonnull private final LongAdder loaded;
+
+    /** Storage operations that failed during replication. */
+    @Nonnull private final LongAdder replicationFailures;
+
+    /** Replication passes run. */
+    @Nonnull private final LongAdder passes;
+
+    /** Failures counted at the end of the previous pass. */
+    private long failuresAtLastPass;
+
+    /** Time the previous pass ended, in milliseconds since the epoch. */
+    private long lastPassEnded;
+
+    /** Failed attempts per minute between the last two passes. */
+    private volatile long failureRate;
+
+    /** Duration of the most recent pass, in milliseconds. */
+    private volatile long lastPassDuration;
+
+    /**
+     * Constructor.
+     *
+     * @param storage storage back-end
+     * @param storageContext storage context
+     * @param max maximum number of counters to hold
+     */
+    AccountLockoutCounters(@Nonnull final StorageService storage, @Nonnull @NotEmpty final String storageContext,
+            final int max) {
+        storageService = storage;
+        context = storageContext;
+        maxEntries = max;
+        counters = new ConcurrentHashMap<>();
+        loads = ConcurrentHashMap.newKeySet();
+        checks = new LongAdder();
+        lockouts = new LongAdder();
+        failures = new LongAdder();
+        replicated = new LongAdder();
+        loaded = new LongAdder();
+        replicationFailures = new LongAdder();
+        passes = new LongAdder();
+        lastPassEnded = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the state of a counter for a check, scheduling it to be loaded from storage if there is none.
+     *
+     * @param key lockout key
+     *
+     * @return the count and expiration of the counter, or null if there is none
+     */
+    @Nullable Pair<Integer,Long> get(@Nonnull @NotEmpty final String key) {
+        checks.increment();
+        final Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() + loads.size() < maxEntries) {
+                loads.add(key);
+            }
+            return null;
+        }
+        synchronized (counter) {
+            counter.checked = true;
+            return new Pair<>(counter.count, counter.expiration);
+        }
+    }
+
+    /**
+     * Get whether no more counters can be held, so that storage must be used for keys without one.
+     *
+     * @return true iff the maximum number of counters is held
+     */
+    boolean isFull() {
+        return counters.size() >= maxEntries;
+    }
+
+    /**
+     * Record that a check found an account locked out.
+     */
+    void recordLockout() {
+        lockouts.increment();
+    }
+
+    /**
+     * Count a failed attempt.
+     *
+     * @param key lockout key
+     * @param now current time, in milliseconds since the epoch
+     * @param interval counter interval, in milliseconds
+     * @param retention time for which the counter is kept after the attempt, in milliseconds
+     *
+     * @return the new count, or 0 if the counter could not be held
+     */
+    int increment(@Nonnull @NotEmpty final String key, final long now, final long interval, final long retention) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxEntries) {
+                return 0;
+            }
+            counter = counters.computeIfAbsent(key, k -> new Counter());
+        }
+        failures.increment();
+        synchronized (counter) {
+            if (counter.expiration != 0 && now - (counter.expiration - retention) > interval) {
+                counter.count = 0;
+                counter.reset = true;
+            }
+            counter.count++;
+            counter.unreplicated++;
+            counter.expiration = now + retention;
+            counter.interval = interval;
+            counter.retention = retention;
+            return counter.count;
+        }
+    }
+
+    /**
+     * Drop a counter.
+     *
+     * @param key lockout key
+     */
+    void remove(@Nonnull @NotEmpty final String key) {
+        counters.remove(key);
+        loads.remove(key);
+    }
+
+    /**
+     * Exchange counter state with storage.
+     *
+     * @param now current time, in milliseconds since the epoch
+     */
+    synchronized void replicate(final long now) {
+        final long start = System.currentTimeMillis();
+
+        for (final String key : loads) {
+            loads.remove(key);
+            if (!counters.containsKey(key)) {
+                load(key);
+            }
+        }
+
+        for (final Map.Entry<String,Counter> e : counters.entrySet()) {
+            final Counter counter = e.getValue();
+            final boolean push;
+            final boolean refresh;
+            synchronized (counter) {
+                push = counter.unreplicated > 0;
+                refresh = counter.checked;
+                if (!push && counter.expiration <= now) {
+                    counters.remove(e.getKey(), counter);
+                    continue;
+                }
+            }
+            if (push) {
+                push(e.getKey(), counter);
+            } else if (refresh) {
+                refresh(e.getKey(), counter);
+            }
+        }
+
+        final long end = System.currentTimeMillis();
+        final long total = failures.sum();
+        failureRate = (total - failuresAtLastPass) * 60000 / Math.max(1, end - lastPassEnded);
+        failuresAtLastPass = total;
+        lastPassEnded = end;
+        lastPassDuration = end - start;
+        passes.increment();
+        log.debug("Replicated lockout counters, holding {}", counters.size());
+    }
+
+    /**
+     * Get statistics.
+     *
+     * @return counts of checks, lockouts, failed attempts, counters replicated and loaded, replication failures
+     *  and passes, counters held and awaiting replication, the failure rate per minute, and the duration of the
+     *  last pass
+     */
+    @Nonnull @NonnullElements @Unmodifiable Map<String,Long> getStatistics() {
+        long pending = 0;
+        for (final Counter counter : counters.values()) {
+            synchronized (counter) {
+                if (counter.unreplicated > 0) {
+                    pending++;
+                }
+            }
+        }
+        return Map.ofEntries(Map.entry("checks", checks.sum()),
+                Map.entry("lockouts", lockouts.sum()),
+                Map.entry("failures", failures.sum()),
+                Map.entry("failuresPerMinute", failureRate),
+                Map.entry("replicated", replicated.sum()),
+                Map.entry("loaded", loaded.sum()),
+                Map.entry("replicationFailures", replicationFailures.sum()),
+                Map.entry("replications", passes.sum()),
+                Map.entry("tracked", (long) counters.size()),
+                Map.entry("pending", pending),
+                Map.entry("lastReplicationMillis", lastPassDuration));
+    }
+
+    /**
+     * Load a counter from storage.
+     *
+     * @param key lockout key
+     */
+    private void load(@Nonnull @NotEmpty final String key) {
+        try {
+            final StorageRecord<?> sr = storageService.read(context, key);
+            if (sr != null && sr.getExpiration() != null) {
+                final Counter counter = new Counter();
+                counter.count = Integer.parseInt(sr.getValue());
+                counter.expiration = sr.getExpiration();
+                counters.putIfAbsent(key, counter);
+                loaded.increment();
+            }
+        } catch (final IOException | NumberFormatException e) {
+            replicationFailures.increment();
+            log.warn("Error loading account lockout state for '{}': {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Replace a counter with the state in storage, or drop it if there is none, unless it has been incremented.
+     *
+     * @param key lockout key
+     * @param counter counter
+     */
+    private void refresh(@Nonnull @NotEmpty final String key, @Nonnull final Counter counter) {
+        try {
+            final StorageRecord<?> sr = storageService.read(context, key);
+            synchronized (counter) {
+                counter.checked = false;
+                if (counter.unreplicated > 0) {
+                    return;
+                }
+                if (sr == null || sr.getExpiration() == null) {
+                    counters.remove(key, counter);
+                } else {
+                    counter.count = Integer.parseInt(sr.getValue());
+                    counter.expiration = sr.getExpiration();
+                    loaded.increment();
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            replicationFailures.increment();
+            log.warn("Error refreshing account lockout state for '{}': {}", key, e.getMessage());
+        }
+    }
+
+// Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Add the attempts counted locally to the counter in storage, and adopt the result.
+     *
+     * @param key lockout key
+     * @param counter counter
+     */
+    private void push(@Nonnull @NotEmpty final String key, @Nonnull final Counter counter) {
+        final int delta;
+        final int local;
+        final boolean reset;
+        final long expiration;
+        final long interval;
+        final long retention;
+        synchronized (counter) {
+            delta = counter.unreplicated;
+            local = counter.count;
+            reset = counter.reset;
+            expiration = counter.expiration;
+            interval = counter.interval;
+            retention = counter.retention;
+            counter.unreplicated = 0;
+            counter.reset = false;
+            counter.checked = false;
+        }
+
+        try {
+            for (int i = 0; i < MAX_RETRIES; ++i) {
+                final StorageRecord<?> sr = storageService.read(context, key);
+
+                // Start from the stored count unless the local counter was reset after the stored attempt
+                // or the stored attempt falls outside the local counter's window.
+                int count = local;
+                long newExpiration = expiration;
+                if (sr != null && sr.getExpiration() != null) {
+                    final long storedAttempt = sr.getExpiration() - retention;
+                    if (!reset && expiration - retention - storedAttempt <= interval) {
+                        count = Integer.parseInt(sr.getValue()) + delta;
+                    }
+                    newExpiration = Math.max(expiration, sr.getExpiration());
+                }
+
+                boolean written = false;
+                if (sr == null) {
+                    written = storageService.create(context, key, Integer.toString(count), newExpiration);
+                } else {
+                    try {
+                        written = storageService.updateWithVersion(sr.getVersion(), context, key,
+                                Integer.toString(count), newExpiration) != null;
+                    } catch (final VersionMismatchException e) {
+                        log.debug("Account lockout state for '{}' changed during replication, retrying", key);
+                    }
+                }
+
+                if (written) {
+                    replicated.increment();
+                    synchronized (counter) {
+                        counter.count = count + counter.unreplicated;
+                        counter.expiration = Math.max(counter.expiration, newExpiration);
+                    }
+                    if (counters.get(key) != counter) {
+                        // Cleared while the write was in progress.
+                        storageService.delete(context, key);
+                    }
+                    return;
+                }
+            }
+            log.warn("Replication of account lockout state for '{}' exceeded retry limit", key);
+        } catch (final IOException | NumberFormatException e) {
+            log.warn("Error replicating account lockout state for '{}': {}", key, e.getMessage());
+        }
+
+        replicationFailures.increment();
+        synchronized (counter) {
+            counter.unreplicated += delta;
+            counter.reset |= reset;
+        }
+    }
+// Checkstyle: CyclomaticComplexity ON
+
+    /** State of a counter, guarded by its own monitor. */
+    private static final class Counter {
+
+        /** Failed attempts. */
+        private int count;
+
+        /** Expiration of the counter, in milliseconds since the epoch. */
+        private long expiration;
+
+        /** Counter interval applied by the last local attempt, in milliseconds. */
+        private long interval;
+
+        /** Retention applied by the last local attempt, in milliseconds. */
+        private long retention;
+
+        /** Failed attempts not yet added to storage. */
+        private int unreplicated;
+
+        /** Whether the counter was reset locally since it was last replicated. */
+        private boolean reset;
+
+        /** Whether the counter was checked since it was last exchanged with storage. */
+        private boolean checked;
+    }
+
+}
@@ -17,17 +17,26 @@
 
 package net.shibboleth.idp.authn.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.security.Principal;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -46,7 +55,9 @@ import javax.json.stream.JsonGeneratorFactory;
 import javax.security.auth.Subject;
 
 import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.CompactSerializationSupport;
 import net.shibboleth.idp.authn.principal.PrincipalSerializer;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
 import net.shibboleth.idp.authn.principal.impl.AuthenticationResultPrincipalSerializer;
 import net.shibboleth.idp.authn.principal.impl.GenericPrincipalSerializer;
 import net.shibboleth.idp.authn.principal.impl.UsernamePrincipalSerializer;
@@ -64,6 +75,14 @@ import org.slf4j.LoggerFactory;
 /**
  * Handles serialization of results, delegating handling of {@link Principal} objects to one or more
  * {@link PrincipalSerializer} plugins.
+ *
+ * <p>Results are written as JSON unless the compact format is enabled, in which case they are written as a
+ * versioned binary structure carried as Base64 text behind a leading marker. Principals that can be rebuilt from
+ * their class and name are stored that way, with each class name written at most once per result, and other
+ * principals carry the output of their plugin verbatim. Both formats are always readable, so the setting can be changed
+ * without invalidating stored results. Principals in the compact format that are rebuilt from their class and name
+ * are not recovered until the result's {@link Subject} is first needed, while those carrying plugin output are
+ * recovered as the result is read, so that a plugin failure rejects the result as it does for JSON.</p>
  */
 public class DefaultAuthenticationResultSerializer extends AbstractInitializableComponent
         implements StorageSerializer<AuthenticationResult> {
@@ -86,6 +105,26 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     /** Field name of private credentials array. */
     @Nonnull @NotEmpty private static final String ADDTL_DATA_FIELD = "props";    
 
+    /** Version of the compact format. */
+    private static final int COMPACT_VERSION = 1;
+
+    /** Compact entry for a principal constructed from its class and name. */
+    private static final int NAMED_ENTRY = 1;
+
+    /** Compact entry for a principal carried as the output of a plugin. */
+    private static final int SERIALIZED_ENTRY = 2;
+
+    /**
+     * Principal class names referenced by the compact format without being written. Entries may only ever be
+     * appended, as the position of an entry is its encoding.
+     */
+    @Nonnull @NonnullElements private static final List<String> KNOWN_CLASS_NAMES = List.of(
+            "net.shibboleth.idp.authn.principal.UsernamePrincipal",
+            "net.shibboleth.idp.saml.authn.principal.AuthnContextClassRefPrincipal",
+            "net.shibboleth.idp.saml.authn.principal.AuthnContextDeclRefPrincipal",
+            "net.shibboleth.idp.saml.authn.principal.AuthenticationMethodPrincipal",
+            "javax.security.auth.kerberos.KerberosPrincipal");
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(DefaultAuthenticationResultSerializer.class);
 
@@ -107,6 +146,12 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     /** Generic principal serializer for any unsupported principals. */
     @Nonnull private final GenericPrincipalSerializer genericSerializer;
 
+    /** Whether to write results in the compact format. */
+    private boolean compactFormat;
+
+    /** String constructors of principal types stored by class and name, keyed by class name. */
+    @Nonnull @NonnullElements private final Map<String,Constructor<? extends Principal>> principalConstructors;
+
     /** Constructor. */
     public DefaultAuthenticationResultSerializer() {
         generatorFactory = Json.createGeneratorFactory(null);
@@ -115,6 +160,7 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
         principalSerializers = Collections.emptyList();
         authnResultPrincipalSerializer = new AuthenticationResultPrincipalSerializer(this);
         genericSerializer = new GenericPrincipalSerializer();
+        principalConstructors = new ConcurrentHashMap<>();
     }
 
     /**
@@ -129,6 +175,19 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
         principalSerializers = List.copyOf(Constraint.isNotNull(serializers, "Serializers cannot be null"));
     }
 
+    /**
+     * Set whether to write results in the compact binary format rather than JSON.
+     * 
+     * <p>Defaults to false. Results in either format can be read regardless of this setting.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompactFormat(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        compactFormat = flag;
+    }
+
     /**
      * Returns the {@link GenericPrincipalSerializer} used for any unsupported principals found
      * in the {@link AuthenticationResult}.
@@ -164,6 +223,10 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     @Nonnull @NotEmpty public String serialize(@Nonnull final AuthenticationResult instance) throws IOException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
         
+        if (compactFormat) {
+            return serializeCompact(instance);
+        }
+        
         try {
             final StringWriter sink = new StringWriter(128);
             final JsonGenerator gen = generatorFactory.createGenerator(sink);
@@ -218,6 +281,10 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
                     @Nullable final Long expiration) throws IOException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
         
+        if (CompactSerializationSupport.isCompact(value)) {
+            return deserializeCompact(value, expiration);
+        }
+        
         try (final JsonReader reader = readerFactory.createReader(new StringReader(value))) {
             
             final JsonStructure st = reader.read();
@@ -284,6 +351,287 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     }
  // Checkstyle: CyclomaticComplexity ON
 
+    /**
+     * Write a result in the compact format.
+     *
+     * @param instance result to serialize
+     * 
+     * @return the serialized result
+     * 
+     * @throws IOException if serialization fails
+     */
+    @Nonnull @NotEmpty private String serializeCompact(@Nonnull final AuthenticationResult instance)
+            throws IOException {
+        
+        // Principals are encoded first so that the unfamiliar class names they refer to can be written ahead of them.
+        final Map<String,Integer> classNames = new LinkedHashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+        final DataOutputStream bodyOut = new DataOutputStream(body);
+        final Subject subject = instance.getSubject();
+        writePrincipals(bodyOut, subject.getPrincipals(), classNames);
+        writePrincipals(bodyOut, subject.getPublicCredentials(Principal.class), classNames);
+        writePrincipals(bodyOut, subject.getPrivateCredentials(Principal.class), classNames);
+        bodyOut.flush();
+        
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream(body.size() + 64);
+        final DataOutputStream out = new DataOutputStream(sink);
+        out.writeByte(COMPACT_VERSION);
+        CompactSerializationSupport.writeString(out, instance.getAuthenticationFlowId());
+        out.writeLong(instance.getAuthenticationInstant().toEpochMilli());
+        
+        final Map<String,String> addtlData = instance.getAdditionalData();
+        CompactSerializationSupport.writeNumber(out, addtlData.size());
+        for (final Map.Entry<String,String> entry : addtlData.entrySet()) {
+            CompactSerializationSupport.writeString(out, entry.getKey());
+            CompactSerializationSupport.writeString(out, entry.getValue());
+        }
+        
+        CompactSerializationSupport.writeNumber(out, classNames.size());
+        for (final String className : classNames.keySet()) {
+            CompactSerializationSupport.writeString(out, className);
+        }
+        out.flush();
+        body.writeTo(sink);
+        
+        return CompactSerializationSupport.encode(sink.toByteArray());
+    }
+    
+    /**
+     * Read a result in the compact format.
+     * 
+     * <p>The structure is fully decoded and principals carrying plugin output are recovered, but principals
+     * rebuilt from their class and name are only recovered when the result's {@link Subject} is first needed.</p>
+     * 
+     * @param value serialized result
+     * @param expiration expiration of the stored record
+     * 
+     * @return the deserialized result
+     * 
+     * @throws IOException if the value is malformed or of an unsupported version
+     */
+    @Nonnull private AuthenticationResult deserializeCompact(@Nonnull @NotEmpty final String value,
+            @Nullable final Long expiration) throws IOException {
+        
+        final DataInputStream in = CompactSerializationSupport.decode(value);
+        final int version = in.readUnsignedByte();
+        if (version != COMPACT_VERSION) {
+            throw new IOException("Unsupported AuthenticationResult format version " + version);
+        }
+        
+        final String flowId = CompactSerializationSupport.readString(in);
+        final long authnInstant = in.readLong();
+        
+        final Map<String,String> addtlData = new LinkedHashMap<>();
+        for (int count = CompactSerializationSupport.readLength(in); count > 0; count--) {
+            final String name = CompactSerializationSupport.readString(in);
+            final String val = CompactSerializationSupport.readString(in);
+            if (name == null || val == null) {
+                throw new IOException("Found invalid additional data while parsing AuthenticationResult");
+            }
+            addtlData.put(name, val);
+        }
+        
+        final String[] classNames =
+                new String[KNOWN_CLASS_NAMES.size() + CompactSerializationSupport.readLength(in)];
+        for (int i = 0; i < KNOWN_CLASS_NAMES.size(); i++) {
+            classNames[i] = KNOWN_CLASS_NAMES.get(i);
+        }
+        for (int i = KNOWN_CLASS_NAMES.size(); i < classNames.length; i++) {
+            classNames[i] = CompactSerializationSupport.readString(in);
+            if (classNames[i] == null) {
+                throw new IOException("Found invalid class name while parsing AuthenticationResult");
+            }
+        }
+        
+        final List<CompactEntry> principals = readEntries(in, classNames);
+        final List<CompactEntry> publicCreds = readEntries(in, classNames);
+        final List<CompactEntry> privateCreds = readEntries(in, classNames);
+        if (in.available() > 0) {
+            throw new IOException("Found trailing data while parsing AuthenticationResult");
+        } else if (flowId == null || flowId.isEmpty()) {
+            throw new IOException("Found missing flow ID while parsing AuthenticationResult");
+        }
+        
+        final AuthenticationResult result = new AuthenticationResult(flowId,
+                () -> recoverSubject(principals, publicCreds, privateCreds));
+        result.setAuthenticationInstant(Instant.ofEpochMilli(authnInstant));
+        result.setLastActivityInstant(Instant.ofEpochMilli(expiration != null ? expiration : authnInstant));
+        result.setPreviousResult(true);
+        result.getAdditionalData().putAll(addtlData);
+        
+        return result;
+    }
+    
+    /**
+     * Write a set of principals in the compact format.
+     * 
+     * <p>As with JSON, a principal is written once for each plugin that supports it, or by the generic serializer
+     * if none do. Principals left to the generic serializer, and {@link UsernamePrincipal} objects left to the
+     * standard plugin, are written as a class name reference and a name.</p>
+     * 
+     * @param out output
+     * @param principals principals to write
+     * @param classNames class names to be written, and their positions
+     * 
+     * @throws IOException if serialization fails
+     */
+    private void writePrincipals(@Nonnull final DataOutput out,
+            @Nonnull @NonnullElements final Set<? extends Principal> principals,
+            @Nonnull final Map<String,Integer> classNames) throws IOException {
+        
+        final List<CompactEntry> entries = new ArrayList<>(principals.size());
+        for (final Principal principal : principals) {
+            boolean serialized = false;
+            for (final PrincipalSerializer<String> serializer : principalSerializers) {
+                if (serializer.supports(principal)) {
+                    if (serializer.getClass() == UsernamePrincipalSerializer.class
+                            && principal.getClass() == UsernamePrincipal.class) {
+                        entries.add(new CompactEntry(NAMED_ENTRY, UsernamePrincipal.class.getName(),
+                                principal.getName()));
+                    } else {
+                        entries.add(new CompactEntry(SERIALIZED_ENTRY, null, serializer.serialize(principal)));
+                    }
+                    serialized = true;
+                }
+            }
+            if (!serialized && genericSerializer.supports(principal)) {
+                entries.add(new CompactEntry(NAMED_ENTRY, principal.getClass().getName(), principal.getName()));
+            }
+        }
+        
+        CompactSerializationSupport.writeNumber(out, entries.size());
+        for (final CompactEntry entry : entries) {
+            out.writeByte(entry.kind);
+            if (entry.kind == NAMED_ENTRY) {
+                int index = KNOWN_CLASS_NAMES.indexOf(entry.className);
+                if (index < 0) {
+                    final Integer written = classNames.get(entry.className);
+                    if (written != null) {
+                        index = written;
+                    } else {
+                        index = KNOWN_CLASS_NAMES.size() + classNames.size();
+                        classNames.put(entry.className, index);
+                    }
+                }
+                CompactSerializationSupport.writeNumber(out, index);
+            }
+            CompactSerializationSupport.writeString(out, entry.data);
+        }
+    }
+
+    /**
+     * Read a set of principal entries in the compact format.
+     * 
+     * @param in input
+     * @param classNames class names referenced by the entries, starting with the known names
+     * 
+     * @return the entries
+     * 
+     * @throws IOException if the data is malformed or a plugin fails to recover a principal
+     */
+    @Nonnull @NonnullElements private List<CompactEntry> readEntries(@Nonnull final DataInputStream in,
+            @Nonnull final String[] classNames) throws IOException {
+        
+        final int count = CompactSerializationSupport.readLength(in);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        
+        final List<CompactEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int kind = in.readUnsignedByte();
+            if (kind == NAMED_ENTRY) {
+                final long index = CompactSerializationSupport.readNumber(in);
+                if (index >= classNames.length) {
+                    throw new IOException("Found invalid class reference while parsing AuthenticationResult");
+                }
+                entries.add(new CompactEntry(kind, classNames[(int) index],
+                        CompactSerializationSupport.readString(in)));
+            } else if (kind == SERIALIZED_ENTRY) {
+                final String data = CompactSerializationSupport.readString(in);
+                if (data == null || data.isEmpty()) {
+                    throw new IOException("Found empty principal while parsing AuthenticationResult");
+                }
+                final Principal principal = deserializePrincipal(data);
+                if (principal != null) {
+                    entries.add(new CompactEntry(principal));
+                }
+            } else {
+                throw new IOException("Found unknown principal type while parsing AuthenticationResult");
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * Recover the {@link Subject} of a result read in the compact format.
+     * 
+     * @param principals principal entries
+     * @param publicCreds public credential entries
+     * @param privateCreds private credential entries
+     * 
+     * @return the recovered subject
+     */
+    @Nonnull private Subject recoverSubject(@Nonnull @NonnullElements final List<CompactEntry> principals,
+            @Nonnull @NonnullElements final List<CompactEntry> publicCreds,
+            @Nonnull @NonnullElements final List<CompactEntry> privateCreds) {
+        
+        final Subject subject = new Subject();
+        recoverPrincipals(principals, subject.getPrincipals());
+        recoverPrincipals(publicCreds, subject.getPublicCredentials());
+        recoverPrincipals(privateCreds, subject.getPrivateCredentials());
+        return subject;
+    }
+
+    /**
+     * Recover principals from compact entries.
+     * 
+     * @param entries entries to recover
+     * @param target set to add the principals to
+     */
+    private void recoverPrincipals(@Nonnull @NonnullElements final List<CompactEntry> entries,
+            @Nonnull final Set<? super Principal> target) {
+        
+        for (final CompactEntry entry : entries) {
+            final Principal principal = entry.principal != null
+                    ? entry.principal : constructPrincipal(entry.className, entry.data);
+            if (principal != null) {
+                target.add(principal);
+            }
+        }
+    }
+    
+    /**
+     * Construct a principal from its class and name.
+     * 
+     * @param className name of principal class
+     * @param name principal name
+     * 
+     * @return the principal, or null
+     */
+    @Nullable private Principal constructPrincipal(@Nonnull @NotEmpty final String className,
+            @Nullable final String name) {
+        
+        if (name == null || name.isEmpty()) {
+            log.warn("Missing name for Principal type {}", className);
+            return null;
+        }
+        
+        try {
+            Constructor<? extends Principal> ctor = principalConstructors.get(className);
+            if (ctor == null) {
+                ctor = Class.forName(className).asSubclass(Principal.class).getConstructor(String.class);
+                principalConstructors.put(className, ctor);
+            }
+            return ctor.newInstance(name);
+        } catch (final ClassNotFoundException | ClassCastException | NoSuchMethodException | SecurityException
+                | InstantiationException | IllegalAccessException | IllegalArgumentException
+                | InvocationTargetException e) {
+            log.warn("Exception instantiating Principal type {} with name {}", className, name, e);
+        }
+        return null;
+    }
+    
     /**
      * Attempt to serialize a principal with the registered and default serializers.
      *
@@ -322,18 +670,73 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
      */
     @Nullable private Principal deserializePrincipal(@Nonnull final JsonValue jsonValue) throws IOException {
         if (jsonValue instanceof JsonObject) {
-            final String json = ((JsonObject) jsonValue).toString();
-            for (final PrincipalSerializer<? super String> serializer : principalSerializers) {
-                if (serializer.supports(json)) {
-                    return serializer.deserialize(json);
-                }
-            }
-            if (genericSerializer.supports(json)) {
-                return genericSerializer.deserialize(json);
+            return deserializePrincipal(((JsonObject) jsonValue).toString());
+        }
+        
+        return null;
+    }
+
+    /**
+     * Attempt to deserialize a principal with the registered and default serializers.
+     * 
+     * @param json the serialized principal
+     * 
+     * @return the {@link Principal} recovered, or null
+     * @throws IOException if an error occurs
+     */
+    @Nullable private Principal deserializePrincipal(@Nonnull @NotEmpty final String json) throws IOException {
+        for (final PrincipalSerializer<? super String> serializer : principalSerializers) {
+            if (serializer.supports(json)) {
+                return serializer.deserialize(json);
             }
         }
+        if (genericSerializer.supports(json)) {
+            return genericSerializer.deserialize(json);
+        }
         
         return null;
     }
+
+    /** A principal in the compact format, held until it is needed. */
+    private static final class CompactEntry {
+        
+        /** Kind of entry. */
+        private final int kind;
+        
+        /** Principal class name, for entries constructed by name. */
+        @Nullable private final String className;
+        
+        /** Principal name or plugin output. */
+        @Nullable private final String data;
+        
+        /** Principal already recovered from plugin output, when read. */
+        @Nullable private final Principal principal;
+        
+        /**
+         * Constructor.
+         * 
+         * @param entryKind kind of entry
+         * @param type principal class name, for entries constructed by name
+         * @param value principal name or plugin output
+         */
+        CompactEntry(final int entryKind, @Nullable final String type, @Nullable final String value) {
+            kind = entryKind;
+            className = type;
+            data = value;
+            principal = null;
+        }
+        
+        /**
+         * Constructor for a principal recovered from plugin output.
+         * 
+         * @param recovered the recovered principal
+         */
+        CompactEntry(@Nonnull final Principal recovered) {
+            kind = SERIALIZED_ENTRY;
+            className = null;
+            data = null;
+            principal = recovered;
+        }
+    }
     
 }
\ No newline at end of file
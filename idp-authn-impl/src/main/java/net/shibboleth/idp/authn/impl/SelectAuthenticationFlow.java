@@ -18,6 +18,9 @@
 package net.shibboleth.idp.authn.impl;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -91,6 +94,12 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
     /** Tracks a proxy count of zero for the request. */
     private boolean noProxying;
 
+    /** Activation condition results for potential flows, by flow ID, evaluated at most once per request. */
+    @Nullable private Map<String,Boolean> flowActivations;
+
+    /** Reuse condition results for active results, by flow ID, evaluated at most once per request. */
+    @Nullable private Map<String,Boolean> resultReuses;
+
     /**
      * Get whether SSO should trump explicit relying party requirements preference.
      * 
@@ -121,6 +130,8 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
         }
         
         noProxying = authenticationContext.getProxyCount() != null && authenticationContext.getProxyCount() == 0;
+        flowActivations = new HashMap<>();
+        resultReuses = new HashMap<>();
         
         requestedPrincipalCtx = authenticationContext.getSubcontext(RequestedPrincipalContext.class);
         if (requestedPrincipalCtx != null) {
@@ -201,7 +212,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
         AuthenticationResult activeResult = null;
         if (!authenticationContext.isForceAuthn()) {
             activeResult = authenticationContext.getActiveResults().get(flow.getId());
-            if (!activeResult.getReuseCondition().test(profileRequestContext)) {
+            if (!isReusable(profileRequestContext, activeResult)) {
                 log.debug("{} Active result for flow {} not reusable, ignoring", getLogPrefix(),
                         activeResult.getAuthenticationFlowId());
                 activeResult = null;
@@ -240,7 +251,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
             for (final Principal p : requestedPrincipalCtx.getRequestedPrincipals()) {
                 final PrincipalEvalPredicate predicate = requestedPrincipalCtx.getPredicate(p);
                 if (predicate != null) {
-                    if (predicate.test(flow) && flow.test(profileRequestContext)) {
+                    if (predicate.test(flow) && isActivated(profileRequestContext, flow)) {
                         selectInactiveFlow(profileRequestContext, authenticationContext, flow);
                         return;
                     }
@@ -250,7 +261,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
                             p.getClass());
                 }
             }
-        } else if (flow.test(profileRequestContext)) {
+        } else if (isActivated(profileRequestContext, flow)) {
             selectInactiveFlow(profileRequestContext, authenticationContext, flow);
             return;
         }
@@ -293,7 +304,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
         AuthenticationResult resultToSelect = null;
         
         for (final AuthenticationResult activeResult : authenticationContext.getActiveResults().values()) {
-            if (activeResult.getReuseCondition().test(profileRequestContext)) {
+            if (isReusable(profileRequestContext, activeResult)) {
                 resultToSelect = activeResult;
                 if (preferredPrincipalCtx == null || preferredPrincipalCtx.isAcceptable(activeResult)) {
                     break;
@@ -341,7 +352,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
             if (!authenticationContext.getIntermediateFlows().containsKey(flow.getId())) {
                 if (!authenticationContext.isPassive() || flow.isPassiveAuthenticationSupported()) {
                     if (!noProxying || !flow.isProxyScopingEnforced()) {
-                        if (flow.test(profileRequestContext)) {
+                        if (isActivated(profileRequestContext, flow)) {
                             selectedFlow = flow;
                             if (preferredPrincipalCtx == null || preferredPrincipalCtx.isAcceptable(flow)) {
                                 break;
@@ -355,6 +366,59 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
         return selectedFlow;
     }
 
+    /**
+     * Return the potential flows not found in the intermediate flows collection, in order.
+     * 
+     * @param authenticationContext the current authentication context
+     * @return the unattempted potential flows
+     */
+    @Nonnull @NonnullElements private List<AuthenticationFlowDescriptor> getUnattemptedFlows(
+            @Nonnull final AuthenticationContext authenticationContext) {
+        
+        final Map<String,AuthenticationFlowDescriptor> potentialFlows = authenticationContext.getPotentialFlows();
+        final List<AuthenticationFlowDescriptor> flows = new ArrayList<>(potentialFlows.size());
+        for (final AuthenticationFlowDescriptor flow : potentialFlows.values()) {
+            if (!authenticationContext.getIntermediateFlows().containsKey(flow.getId())) {
+                flows.add(flow);
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * Evaluate a flow's activation condition, at most once per request.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @param flow the flow to check
+     * @return whether the flow is activated for the request
+     */
+    private boolean isActivated(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull final AuthenticationFlowDescriptor flow) {
+        Boolean activated = flowActivations.get(flow.getId());
+        if (activated == null) {
+            activated = flow.test(profileRequestContext);
+            flowActivations.put(flow.getId(), activated);
+        }
+        return activated;
+    }
+
+    /**
+     * Evaluate an active result's reuse condition, at most once per request.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @param result the result to check
+     * @return whether the result may be reused for the request
+     */
+    private boolean isReusable(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull final AuthenticationResult result) {
+        Boolean reusable = resultReuses.get(result.getAuthenticationFlowId());
+        if (reusable == null) {
+            reusable = result.getReuseCondition().test(profileRequestContext);
+            resultReuses.put(result.getAuthenticationFlowId(), reusable);
+        }
+        return reusable;
+    }
+
     /**
      * Selects an inactive flow and completes processing.
      * 
@@ -423,7 +487,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
     private void selectRequestedInactiveFlow(@Nonnull final ProfileRequestContext profileRequestContext,
             @Nonnull final AuthenticationContext authenticationContext) {
 
-        final Map<String,AuthenticationFlowDescriptor> potentialFlows = authenticationContext.getPotentialFlows();
+        final List<AuthenticationFlowDescriptor> candidateFlows = getUnattemptedFlows(authenticationContext);
         
         // Check each flow for compatibility with request. Don't check for an active result also.
         // Also omit anything in the intermediates collection already.
@@ -432,9 +496,8 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
                     getLogPrefix(), requestedPrincipalCtx.getOperator(), p.getName());
             final PrincipalEvalPredicate predicate = requestedPrincipalCtx.getPredicate(p);
             if (predicate != null) {
-                for (final AuthenticationFlowDescriptor descriptor : potentialFlows.values()) {
-                    if (!authenticationContext.getIntermediateFlows().containsKey(descriptor.getId())
-                            && predicate.test(descriptor) && descriptor.test(profileRequestContext)) {
+                for (final AuthenticationFlowDescriptor descriptor : candidateFlows) {
+                    if (predicate.test(descriptor) && isActivated(profileRequestContext, descriptor)) {
                         if (!authenticationContext.isPassive() || descriptor.isPassiveAuthenticationSupported()) {
                             if (!noProxying || !descriptor.isProxyScopingEnforced()) {
                                 selectInactiveFlow(profileRequestContext, authenticationContext, descriptor);
@@ -482,7 +545,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
                 final PrincipalEvalPredicate predicate = requestedPrincipalCtx.getPredicate(p);
                 if (predicate != null) {
                     for (final AuthenticationResult result : activeResults.values()) {
-                        if (result.getReuseCondition().test(profileRequestContext) && predicate.test(result)) {
+                        if (isReusable(profileRequestContext, result) && predicate.test(result)) {
                             selectActiveResult(profileRequestContext, authenticationContext, result);
                             return;
                         }
@@ -502,7 +565,7 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
 
         }
         
-        final Map<String,AuthenticationFlowDescriptor> potentialFlows = authenticationContext.getPotentialFlows();
+        final List<AuthenticationFlowDescriptor> candidateFlows = getUnattemptedFlows(authenticationContext);
 
         // In this branch, we check each flow for compatibility *and* then double check to see if an active
         // result from that flow also exists and is compatible. This favors a matching inactive flow that is
@@ -513,14 +576,13 @@ public class SelectAuthenticationFlow extends AbstractAuthenticationAction {
                     p.getName());
             final PrincipalEvalPredicate predicate = requestedPrincipalCtx.getPredicate(p);
             if (predicate != null) {
-                for (final AuthenticationFlowDescriptor descriptor : potentialFlows.values()) {
-                    if (!authenticationContext.getIntermediateFlows().containsKey(descriptor.getId())
-                            && predicate.test(descriptor) && descriptor.test(profileRequestContext)) {
+                for (final AuthenticationFlowDescriptor descriptor : candidateFlows) {
+                    if (predicate.test(descriptor) && isActivated(profileRequestContext, descriptor)) {
                         
                         // Now check for an active result we can use from this flow. Not all results from a flow
                         // will necessarily match the request just because the flow might.
                         final AuthenticationResult result = activeResults.get(descriptor.getId());
-                        if (result == null || !result.getReuseCondition().test(profileRequestContext)
+                        if (result == null || !isReusable(profileRequestContext, result)
                                 || !predicate.test(result)) {
                             if (result != null) {
                                 log.debug("{} Active result for flow {} not usable, ignoring", getLogPrefix(),
@@ -20,6 +20,9 @@ package net.shibboleth.idp.authn.impl;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -39,8 +42,10 @@ import net.shibboleth.idp.authn.context.AuthenticationContext;
 import net.shibboleth.idp.authn.context.LockoutManagerContext;
 import net.shibboleth.idp.authn.context.UsernamePasswordContext;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
@@ -50,6 +55,11 @@ import net.shibboleth.utilities.java.support.logic.FunctionSupport;
 /**
  * Implementation of {@link AccountLockoutManager} interface that relies on a {@link StorageService}
  * to track lockout state.
+ * 
+ * <p>Optionally, counters may be kept in memory and replicated to and from the storage service periodically, so
+ * that checking and counting failed attempts, as during a password-spraying attack, puts no load on storage.
+ * Lockouts then take effect on other nodes up to one replication interval late, and a key first checked on a node
+ * is not reported as locked out until its state has been loaded.</p>
  */
 public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInitializableComponent
         implements AccountLockoutManager {
@@ -75,11 +85,31 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
     /** Controls whether attempts against locked accounts extend duration. */
     private boolean extendLockoutDuration;
     
+    /** Interval between replications of in-memory counters, or 0 to keep counters only in storage. */
+    @Nonnull private Duration replicationInterval;
+    
+    /** Maximum number of counters kept in memory. */
+    private int maxInMemoryCounters;
+    
+    /** Timer used to schedule replication of in-memory counters. */
+    @Nullable private Timer replicationTimer;
+    
+    /** Whether the replication timer was created by this object. */
+    private boolean ownReplicationTimer;
+    
+    /** Task replicating in-memory counters. */
+    @Nullable private TimerTask replicationTask;
+    
+    /** In-memory counters. */
+    @Nullable private AccountLockoutCounters counters;
+    
     /** Constructor. */
     public StorageBackedAccountLockoutManager() {
         setMaxAttempts(5);
         setCounterInterval(Duration.ofMinutes(5));
         setLockoutDuration(Duration.ofMinutes(5));
+        replicationInterval = Duration.ZERO;
+        maxInMemoryCounters = 100000;
     }
 
     /**
@@ -207,6 +237,68 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
         extendLockoutDuration = flag;
     }
     
+    /**
+     * Set the interval between replications of in-memory counters to and from storage.
+     * 
+     * <p>A non-zero value keeps counters in memory, so that checks and failed attempts do not access storage.
+     * This should be well below the counter interval and lockout duration to be effective across a cluster.</p>
+     * 
+     * <p>Defaults to 0, which keeps counters only in storage.</p>
+     * 
+     * @param interval replication interval
+     */
+    public void setReplicationInterval(@Nonnull final Duration interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        Constraint.isNotNull(interval, "Replication interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Replication interval cannot be negative");
+        replicationInterval = interval;
+    }
+    
+    /**
+     * Set the maximum number of counters kept in memory, beyond which storage is used directly.
+     * 
+     * <p>Defaults to 100000.</p>
+     * 
+     * @param max maximum number of counters
+     */
+    public void setMaxInMemoryCounters(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        maxInMemoryCounters = (int) Constraint.isGreaterThan(0, max, "Maximum counters must be greater than 0");
+    }
+    
+    /**
+     * Set the timer used to schedule replication of in-memory counters.
+     * 
+     * <p>If not set, a private daemon timer is created when needed.</p>
+     * 
+     * @param timer timer to use
+     */
+    public void setReplicationTimer(@Nullable final Timer timer) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        replicationTimer = timer;
+    }
+    
+    /**
+     * Get statistics on in-memory counters, including the rate of failed attempts.
+     * 
+     * @return statistics, empty if counters are kept only in storage
+     */
+    @Nonnull @NonnullElements public Map<String,Long> getStatistics() {
+        return counters != null ? counters.getStatistics() : Map.of();
+    }
+    
+    /**
+     * Replicate in-memory counters to and from storage.
+     */
+    public void replicate() {
+        if (counters != null) {
+            counters.replicate(System.currentTimeMillis());
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
@@ -216,6 +308,37 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
         } else if (lockoutKeyStrategy == null) {
             throw new ComponentInitializationException("Lockout key strategy cannot be null");
         }
+        
+        if (!replicationInterval.isZero()) {
+            counters = new AccountLockoutCounters(storageService, getId(), maxInMemoryCounters);
+            if (replicationTimer == null) {
+                replicationTimer = new Timer(true);
+                ownReplicationTimer = true;
+            }
+            replicationTask = new TimerTask() {
+                public void run() {
+                    replicate();
+                }
+            };
+            replicationTimer.schedule(replicationTask, replicationInterval.toMillis(),
+                    replicationInterval.toMillis());
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override protected void doDestroy() {
+        if (replicationTask != null) {
+            replicationTask.cancel();
+            replicationTask = null;
+        }
+        if (ownReplicationTimer) {
+            replicationTimer.cancel();
+            replicationTimer = null;
+            ownReplicationTimer = false;
+        }
+        replicate();
+        
+        super.doDestroy();
     }
     
     /** {@inheritDoc} */
@@ -225,6 +348,21 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
             log.warn("No lockout key returned for request");
             return false;
         }
+        
+        if (counters != null) {
+            final Pair<Integer,Long> state = counters.get(key);
+            if (state != null) {
+                if (isLockedOut(profileRequestContext, key, state.getFirst(), state.getSecond())) {
+                    counters.recordLockout();
+                    return true;
+                }
+                return false;
+            }
+            if (!counters.isFull()) {
+                log.debug("No in-memory lockout state for '{}'", key);
+                return false;
+            }
+        }
 
         // Read back account state. No state obviously means no lockout, but in the case of errors
         // that does fail open. Of course, in-memory won't fail...
@@ -241,26 +379,7 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
         }
         
         try {
-            // Read counter and check if we've exceeded the limit.
-            final int counter = Integer.parseInt(sr.getValue());
-            if (counter >= maxAttemptsLookupStrategy.apply(profileRequestContext)) {
-                // Recover time of last attempt from the record expiration and find the time elapsed since.
-                // If that's under the lockout duration, we're locked out.
-                final long lockoutDuration = lockoutDurationLookupStrategy.apply(profileRequestContext).toMillis();
-                final long counterInterval = counterIntervalLookupStrategy.apply(profileRequestContext).toMillis();
-                final long lastAttempt = sr.getExpiration() - Math.max(lockoutDuration, counterInterval);
-                final long timeDifference = System.currentTimeMillis() - lastAttempt;
-                if (timeDifference <= lockoutDuration) {
-                    log.info("Lockout threshold reached for '{}', invalid count is {}", key, counter);
-                    if (extendLockoutDuration) {
-                        doIncrement(profileRequestContext, key, 10);
-                    }
-                    return true;
-                }
-                log.debug("Lockout for '{}' has elapsed", key);
-            } else {
-                log.debug("Invalid attempts counter for '{}' has only reached {}", key, counter);
-            }
+            return isLockedOut(profileRequestContext, key, Integer.parseInt(sr.getValue()), sr.getExpiration());
         } catch (final NumberFormatException e) {
             log.error("Error converting lockout data for '{}' into integer", key, e);
         }
@@ -277,7 +396,7 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
             return false;
         }
         
-        return doIncrement(profileRequestContext, key, 10);
+        return incrementCounter(profileRequestContext, key);
     }
 
     /** {@inheritDoc} */
@@ -286,6 +405,9 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
             final String key = lockoutKeyStrategy.apply(profileRequestContext);
             if (key != null) {
                 log.debug("Clearing lockout state for '{}'", key);
+                if (counters != null) {
+                    counters.remove(key);
+                }
                 storageService.delete(getId(), key);
                 return true;
             }
@@ -296,6 +418,68 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
         return false;
     }
     
+    /**
+     * Check whether a counter has reached the limit within the lockout duration.
+     * 
+     * @param profileRequestContext current profile request context
+     * @param key account lockout key
+     * @param counter invalid login count
+     * @param expiration expiration of the counter
+     * 
+     * @return true iff the account is locked out
+     */
+    private boolean isLockedOut(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull @NotEmpty final String key, final int counter, final long expiration) {
+        
+        // Check if we've exceeded the limit.
+        if (counter >= maxAttemptsLookupStrategy.apply(profileRequestContext)) {
+            // Recover time of last attempt from the record expiration and find the time elapsed since.
+            // If that's under the lockout duration, we're locked out.
+            final long lockoutDuration = lockoutDurationLookupStrategy.apply(profileRequestContext).toMillis();
+            final long counterInterval = counterIntervalLookupStrategy.apply(profileRequestContext).toMillis();
+            final long lastAttempt = expiration - Math.max(lockoutDuration, counterInterval);
+            final long timeDifference = System.currentTimeMillis() - lastAttempt;
+            if (timeDifference <= lockoutDuration) {
+                log.info("Lockout threshold reached for '{}', invalid count is {}", key, counter);
+                if (extendLockoutDuration) {
+                    incrementCounter(profileRequestContext, key);
+                }
+                return true;
+            }
+            log.debug("Lockout for '{}' has elapsed", key);
+        } else {
+            log.debug("Invalid attempts counter for '{}' has only reached {}", key, counter);
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Count an invalid login attempt in memory if possible, or in storage otherwise.
+     * 
+     * @param profileRequestContext current profile request context
+     * @param key account lockout key
+     * 
+     * @return true iff successful
+     */
+    private boolean incrementCounter(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull @NotEmpty final String key) {
+        
+        if (counters != null) {
+            final long lockoutDuration = lockoutDurationLookupStrategy.apply(profileRequestContext).toMillis();
+            final long counterInterval = counterIntervalLookupStrategy.apply(profileRequestContext).toMillis();
+            final int counter = counters.increment(key, System.currentTimeMillis(), counterInterval,
+                    Math.max(lockoutDuration, counterInterval));
+            if (counter > 0) {
+                log.debug("Invalid login count for '{}' will be {}", key, counter);
+                return true;
+            }
+            log.debug("In-memory lockout counters are full, using storage for '{}'", key);
+        }
+        
+        return doIncrement(profileRequestContext, key, 10);
+    }
+    
 // Checkstyle: CyclomaticComplexity OFF
     /**
      * Implement invalid login attempt counter via storage service, retrying as necessary.
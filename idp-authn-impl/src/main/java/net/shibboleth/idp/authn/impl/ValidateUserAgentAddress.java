@@ -17,11 +17,7 @@
 
 package net.shibboleth.idp.authn.impl;
 
-import java.net.InetAddress;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -33,6 +29,7 @@ import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
 import net.shibboleth.idp.authn.context.UserAgentContext;
 import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.profile.logic.IPRangeTrie;
 
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
@@ -68,8 +65,8 @@ public class ValidateUserAgentAddress extends AbstractValidationAction {
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(ValidateUserAgentAddress.class);
 
-    /** Map of IP ranges to principal names. */
-    @Nonnull @NonnullElements private Map<String,Collection<IPRange>> mappings;
+    /** Index of IP ranges to principal names. */
+    @Nonnull private IPRangeTrie<String> mappings;
 
     /** User Agent context containing address to evaluate. */
     @Nullable private UserAgentContext uaContext;
@@ -80,23 +77,29 @@ public class ValidateUserAgentAddress extends AbstractValidationAction {
     /** Constructor. */
     public ValidateUserAgentAddress() {
         setMetricName(DEFAULT_METRIC_NAME);
-        mappings = Collections.emptyMap();
+        mappings = new IPRangeTrie<>();
     }
     
     /**
      * Set the IP range(s) to authenticate as particular principals.
      * 
+     * <p>An address within ranges mapped to more than one principal is authenticated as the principal
+     * with the most specific range.</p>
+     * 
      * @param newMappings the IP range(s) to authenticate as particular principals
      */
     public void setMappings(@Nonnull @NonnullElements final Map<String,Collection<IPRange>> newMappings) {
         ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
         
-        mappings = new HashMap<>(newMappings.size());
+        final IPRangeTrie<String> trie = new IPRangeTrie<>();
         for (final Map.Entry<String,Collection<IPRange>> e : newMappings.entrySet()) {
             if (!Strings.isNullOrEmpty(e.getKey())) {
-                mappings.put(e.getKey(), List.copyOf(e.getValue()));
+                for (final IPRange range : e.getValue()) {
+                    trie.add(range, e.getKey());
+                }
             }
         }
+        mappings = trie;
     }
     
     /** {@inheritDoc} */
@@ -129,15 +132,13 @@ public class ValidateUserAgentAddress extends AbstractValidationAction {
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext,
             @Nonnull final AuthenticationContext authenticationContext) {
 
-        for (final Map.Entry<String,Collection<IPRange>> e : mappings.entrySet()) {
-            if (isAuthenticated(uaContext.getAddress(), e.getValue())) {
-                principalName = e.getKey();
-                log.info("{} Authenticated user agent with address {} as {}",
-                        getLogPrefix(), uaContext.getAddress().getHostAddress(), principalName);
-                recordSuccess();
-                buildAuthenticationResult(profileRequestContext, authenticationContext);
-                return;
-            }
+        principalName = mappings.lookupMostSpecific(uaContext.getAddress());
+        if (principalName != null) {
+            log.info("{} Authenticated user agent with address {} as {}",
+                    getLogPrefix(), uaContext.getAddress().getHostAddress(), principalName);
+            recordSuccess();
+            buildAuthenticationResult(profileRequestContext, authenticationContext);
+            return;
         }
 
         log.debug("{} User agent with address {} was not authenticated", getLogPrefix(),
@@ -146,27 +147,6 @@ public class ValidateUserAgentAddress extends AbstractValidationAction {
         recordFailure();
     }
 
-    /**
-     * Checks whether the given IP address meets a set of IP range requirements.
-     * 
-     * @param address the IP address to check
-     * @param ranges the ranges to check
-     * 
-     * @return true if the given IP address meets this stage's IP range requirements, false otherwise
-     */
-    private boolean isAuthenticated(@Nonnull final InetAddress address,
-            @Nonnull @NonnullElements final Collection<IPRange> ranges) {
-        final byte[] resolvedAddress = address.getAddress();
-
-        for (final IPRange range : ranges) {
-            if (range.contains(resolvedAddress)) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
-
     /** {@inheritDoc} */
     @Override
     @Nonnull protected Subject populateSubject(@Nonnull final Subject subject) {
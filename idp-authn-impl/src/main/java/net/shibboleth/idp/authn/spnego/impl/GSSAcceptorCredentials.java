@@ -0,0 +1,270 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.authn.spnego.impl;
+
+import java.security.PrivilegedActionException;
+import java.time.Duration;
+import java.time.Instant;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.LoginException;
+
+import org.ietf.jgss.GSSCredential;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.Oid;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Acceptor credentials for one realm, shared by all negotiations and re-established periodically.
+ * 
+ * <p>A refresh logs in again and swaps in the new credentials. The previous credentials are kept until the
+ * following refresh so that negotiations begun with them can complete. If a refresh fails, the existing
+ * credentials remain in use until any ticket they depend on expires.</p>
+ */
+@ThreadSafe
+final class GSSAcceptorCredentials {
+
+    /** How far ahead of ticket expiry credentials are refreshed. */
+    @Nonnull static final Duration EXPIRY_MARGIN = Duration.ofMinutes(5);
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(GSSAcceptorCredentials.class);
+
+    /** The realm. */
+    @Nonnull private final KerberosRealmSettings realm;
+
+    /** Whether to refresh the Kerberos configuration on login. */
+    private final boolean refreshKrb5Config;
+
+    /** JAAS login module to use. */
+    @Nonnull @NotEmpty private final String loginModuleClassName;
+
+    /** The SPNEGO mechanism OID. */
+    @Nonnull private final Oid spnegoOid;
+
+    /** Interval between refreshes in milliseconds. */
+    private final long refreshInterval;
+
+    /** Base name of metrics. */
+    @Nonnull @NotEmpty private final String metricName;
+
+    /** Current credentials. */
+    @Nullable private volatile Login current;
+
+    /** Previous credentials, kept for negotiations in progress. */
+    @Nullable private Login retired;
+
+    /**
+     * Constructor.
+     *
+     * @param realmSettings the realm
+     * @param settings the overall Kerberos settings
+     * @param oid the SPNEGO mechanism OID
+     */
+    GSSAcceptorCredentials(@Nonnull final KerberosRealmSettings realmSettings,
+            @Nonnull final KerberosSettings settings, @Nonnull final Oid oid) {
+        realm = realmSettings;
+        refreshKrb5Config = settings.getRefreshKrb5Config();
+        loginModuleClassName = settings.getLoginModuleClassName();
+        refreshInterval = settings.getCredentialRefreshInterval().toMillis();
+        metricName = settings.getMetricName();
+        spnegoOid = oid;
+    }
+
+    /**
+     * Get the acceptor credential, logging in if there is none or it has expired.
+     *
+     * @param now current time in milliseconds
+     *
+     * @return the credential
+     *
+     * @throws LoginException if login fails
+     * @throws PrivilegedActionException if the credential cannot be created
+     */
+    @Nonnull GSSCredential getCredential(final long now) throws LoginException, PrivilegedActionException {
+        final Login login = current;
+        if (login != null && now < login.expiresAt) {
+            return login.credential;
+        }
+
+        synchronized (this) {
+            if (current != null && now < current.expiresAt) {
+                return current.credential;
+            }
+            return replace(now).credential;
+        }
+    }
+
+    /**
+     * Refresh the credentials if they are due, keeping the existing ones on failure.
+     *
+     * <p>Credentials that have never been established are established now.</p>
+     *
+     * @param now current time in milliseconds
+     */
+    synchronized void refreshIfDue(final long now) {
+        if (current != null && now < current.refreshAt) {
+            return;
+        }
+
+        try {
+            replace(now);
+        } catch (final LoginException | PrivilegedActionException e) {
+            MetricsSupport.getMetricRegistry().counter(metricName + ".credentialRefreshFailures").inc();
+            if (current != null && now < current.expiresAt) {
+                log.warn("Unable to refresh acceptor credentials for {}, keeping existing credentials until {}",
+                        realm.getServicePrincipal(), Instant.ofEpochMilli(current.expiresAt), e);
+            } else {
+                log.error("Unable to establish acceptor credentials for {}", realm.getServicePrincipal(), e);
+            }
+        }
+    }
+
+    /** Dispose of all credentials and log out. */
+    synchronized void dispose() {
+        dispose(retired);
+        dispose(current);
+        retired = null;
+        current = null;
+    }
+
+    /**
+     * Log in, swap in the new credentials and dispose of those retired by the last swap.
+     *
+     * @param now current time in milliseconds
+     *
+     * @return the new credentials
+     *
+     * @throws LoginException if login fails
+     * @throws PrivilegedActionException if the credential cannot be created
+     */
+    @Nonnull private Login replace(final long now) throws LoginException, PrivilegedActionException {
+        final Login login = login(now);
+        dispose(retired);
+        retired = current;
+        current = login;
+        return login;
+    }
+
+    /**
+     * Perform a JAAS login and create the acceptor credential.
+     *
+     * @param now current time in milliseconds
+     *
+     * @return the new credentials
+     *
+     * @throws LoginException if login fails
+     * @throws PrivilegedActionException if the credential cannot be created
+     */
+    @Nonnull private Login login(final long now) throws LoginException, PrivilegedActionException {
+        log.debug("Establishing acceptor credentials using principal: {}", realm.getServicePrincipal());
+
+        final GSSAcceptorLoginModule module =
+                new GSSAcceptorLoginModule(realm, refreshKrb5Config, loginModuleClassName);
+        final Subject subject;
+        final GSSCredential credential;
+        try {
+            subject = module.login();
+            credential = GSSContextAcceptor.createServerCredential(subject, spnegoOid);
+        } catch (final LoginException | PrivilegedActionException e) {
+            MetricsSupport.getMetricRegistry().counter(metricName + ".loginFailures").inc();
+            try {
+                module.logout();
+            } catch (final LoginException e2) {
+                log.debug("Server credentials logout failed", e2);
+            }
+            throw e;
+        }
+        MetricsSupport.getMetricRegistry().counter(metricName + ".logins").inc();
+
+        long expiresAt = Long.MAX_VALUE;
+        for (final KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+            if (ticket.getEndTime() != null) {
+                expiresAt = Math.min(expiresAt, ticket.getEndTime().getTime());
+            }
+        }
+        final long refreshAt = Math.min(now + refreshInterval,
+                expiresAt == Long.MAX_VALUE ? Long.MAX_VALUE : expiresAt - EXPIRY_MARGIN.toMillis());
+
+        log.debug("Acceptor credentials established for {}, next refresh at {}", realm.getServicePrincipal(),
+                Instant.ofEpochMilli(refreshAt));
+        return new Login(module, credential, refreshAt, expiresAt);
+    }
+
+    /**
+     * Dispose of a credential and log out.
+     *
+     * @param login credentials to dispose of
+     */
+    private void dispose(@Nullable final Login login) {
+        if (login == null) {
+            return;
+        }
+        try {
+            login.credential.dispose();
+        } catch (final GSSException e) {
+            log.error("GSS-API credentials disposal failed", e);
+        }
+        try {
+            login.module.logout();
+        } catch (final LoginException e) {
+            log.error("Server credentials logout failed", e);
+        }
+    }
+
+    /** The result of one login. */
+    private static final class Login {
+
+        /** The login module holding the login state. */
+        @Nonnull private final GSSAcceptorLoginModule module;
+
+        /** The acceptor credential. */
+        @Nonnull private final GSSCredential credential;
+
+        /** When to refresh, in milliseconds. */
+        private final long refreshAt;
+
+        /** When the credentials may no longer be used, in milliseconds. */
+        private final long expiresAt;
+
+        /**
+         * Constructor.
+         *
+         * @param loginModule the login module holding the login state
+         * @param cred the acceptor credential
+         * @param refresh when to refresh
+         * @param expires when the credentials may no longer be used
+         */
+        Login(@Nonnull final GSSAcceptorLoginModule loginModule, @Nonnull final GSSCredential cred,
+                final long refresh, final long expires) {
+            module = loginModule;
+            credential = cred;
+            refreshAt = refresh;
+            expiresAt = expires;
+        }
+    }
+
+}
@@ -207,6 +207,15 @@ public class GSSContextAcceptor {
     private void createGSSContext(@Nonnull final KerberosRealmSettings realm)
             throws GSSException, LoginException, PrivilegedActionException {
         
+        // Use shared server credentials if available, leaving them to their owner to dispose of.
+        final GSSAcceptorCredentials sharedCreds = kerberosSettings.getAcceptorCredentials(realm);
+        if (sharedCreds != null) {
+            log.trace("Creating GSS context using shared credentials for principal: {}",
+                    realm.getServicePrincipal());
+            context = GSSManager.getInstance().createContext(sharedCreds.getCredential(System.currentTimeMillis()));
+            return;
+        }
+
         // Establish server login credentials.
         Subject krbSubject = null;
         krbLoginModule = new GSSAcceptorLoginModule(realm, kerberosSettings.getRefreshKrb5Config(),
@@ -223,7 +232,7 @@ public class GSSContextAcceptor {
         log.trace("Creating GSS credentials and context");
         final GSSManager manager = GSSManager.getInstance();
         try {
-            serverCreds = getServerCredential(krbSubject);
+            serverCreds = createServerCredential(krbSubject, spnegoOid);
             context = manager.createContext(serverCreds);
         } catch (final PrivilegedActionException e) {
             log.error("Error creating GSS credentials: {}", e.getMessage());
@@ -239,17 +248,18 @@ public class GSSContextAcceptor {
      * Create the credential for the GSS-API.
      * 
      * @param subject Kerberos subject to create the credentials from
+     * @param mechanism the OID of the mechanism for which to create the credentials
      * 
      * @return the created GSS credentials
      * @throws PrivilegedActionException thrown if server credentials could not be created
      */
-    @Nonnull private GSSCredential getServerCredential(@Nonnull final Subject subject)
-            throws PrivilegedActionException {
+    @Nonnull static GSSCredential createServerCredential(@Nonnull final Subject subject,
+            @Nonnull final Oid mechanism) throws PrivilegedActionException {
         final PrivilegedExceptionAction<GSSCredential> action = new PrivilegedExceptionAction<>() {
             public GSSCredential run() throws GSSException {
                 final GSSManager manager = GSSManager.getInstance();
                 final GSSCredential newServerCreds =
-                        manager.createCredential(null, GSSCredential.INDEFINITE_LIFETIME, spnegoOid,
+                        manager.createCredential(null, GSSCredential.INDEFINITE_LIFETIME, mechanism,
                                 GSSCredential.ACCEPT_ONLY);
                 return newServerCreds;
             }
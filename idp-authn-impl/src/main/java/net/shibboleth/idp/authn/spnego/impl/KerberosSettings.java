@@ -17,11 +17,20 @@
 
 package net.shibboleth.idp.authn.spnego.impl;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.Oid;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
@@ -36,9 +45,16 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 
 /**
  * Kerberos settings for the SPNEGO authentication flow.
+ * 
+ * <p>By default, each negotiation performs its own JAAS login to establish server credentials. If a
+ * credential refresh interval is set, each realm's credentials are instead established once, shared by all
+ * negotiations, and refreshed in the background.</p>
  */
 public class KerberosSettings extends AbstractInitializableComponent {
 
+    /** Longest time between checks for credentials due a refresh. */
+    @Nonnull private static final Duration REFRESH_CHECK_INTERVAL = Duration.ofMinutes(1);
+
     /** Class name of JAAS LoginModule to acquire Kerberos credentials. */
     @Nonnull @NotEmpty private String loginModuleClassName;
 
@@ -48,10 +64,30 @@ public class KerberosSettings extends AbstractInitializableComponent {
     /** List of realms (KerberosRealmSettings objects). */
     @NonnullAfterInit @NonnullElements private Collection<KerberosRealmSettings> realmSettings;
 
+    /** Interval between refreshes of shared credentials, or zero to log in per negotiation. */
+    @Nonnull private Duration credentialRefreshInterval;
+
+    /** Timer used to schedule credential refreshes. */
+    @Nullable private Timer credentialRefreshTimer;
+
+    /** Whether the refresh timer was created by this object. */
+    private boolean ownCredentialRefreshTimer;
+
+    /** Scheduled refresh task. */
+    @Nullable private TimerTask credentialRefreshTask;
+
+    /** Base name of metrics. */
+    @Nonnull @NotEmpty private String metricName;
+
+    /** Shared credentials by realm, if enabled. */
+    @Nullable private Map<KerberosRealmSettings,GSSAcceptorCredentials> acceptorCredentials;
+
     /** Constructor. */
     public KerberosSettings() {
         loginModuleClassName = "com.sun.security.auth.module.Krb5LoginModule";
         realmSettings = Collections.emptyList();
+        credentialRefreshInterval = Duration.ZERO;
+        metricName = "net.shibboleth.idp.authn.spnego";
     }
 
     /**
@@ -115,6 +151,85 @@ public class KerberosSettings extends AbstractInitializableComponent {
         return realmSettings;
     }
 
+    /**
+     * Get the interval between refreshes of shared server credentials.
+     * 
+     * @return refresh interval, or zero if credentials are established per negotiation
+     */
+    @Nonnull public Duration getCredentialRefreshInterval() {
+        return credentialRefreshInterval;
+    }
+
+    /**
+     * Set the interval between refreshes of shared server credentials.
+     * 
+     * <p>Defaults to zero, which causes each negotiation to log in separately. Credentials dependent on a
+     * ticket are refreshed ahead of its expiry regardless of this interval.</p>
+     * 
+     * @param interval refresh interval
+     */
+    public void setCredentialRefreshInterval(@Nonnull final Duration interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        Constraint.isNotNull(interval, "Interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Interval cannot be negative");
+        
+        credentialRefreshInterval = interval;
+    }
+
+    /**
+     * Set the timer used to schedule refreshes of shared server credentials.
+     * 
+     * <p>If not set, a private daemon timer is created when needed.</p>
+     * 
+     * @param timer timer to use
+     */
+    public void setCredentialRefreshTimer(@Nullable final Timer timer) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        credentialRefreshTimer = timer;
+    }
+
+    /**
+     * Get the base name of metrics for logins and negotiations.
+     * 
+     * @return root for name of metrics
+     */
+    @Nonnull @NotEmpty public String getMetricName() {
+        return metricName;
+    }
+
+    /**
+     * Set the base name of metrics for logins and negotiations.
+     * 
+     * @param name root for name of metrics
+     */
+    public void setMetricName(@Nonnull @NotEmpty final String name) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        metricName = Constraint.isNotNull(StringSupport.trimOrNull(name), "Metric name cannot be null or empty");
+    }
+
+    /**
+     * Get the shared server credentials for a realm.
+     * 
+     * @param realm the realm
+     * 
+     * @return the shared credentials, or null if credentials are established per negotiation
+     */
+    @Nullable GSSAcceptorCredentials getAcceptorCredentials(@Nonnull final KerberosRealmSettings realm) {
+        return acceptorCredentials != null ? acceptorCredentials.get(realm) : null;
+    }
+
+    /** Refresh any shared server credentials that are due. */
+    public void refreshCredentials() {
+        if (acceptorCredentials != null) {
+            final long now = System.currentTimeMillis();
+            for (final GSSAcceptorCredentials creds : acceptorCredentials.values()) {
+                creds.refreshIfDue(now);
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -124,6 +239,55 @@ public class KerberosSettings extends AbstractInitializableComponent {
             throw new ComponentInitializationException("Realm collection cannot be empty");
         }
         
+        if (!credentialRefreshInterval.isZero()) {
+            final Oid spnegoOid;
+            try {
+                spnegoOid = new Oid("1.3.6.1.5.5.2");
+            } catch (final GSSException e) {
+                throw new ComponentInitializationException("Unable to create SPNEGO mechanism OID", e);
+            }
+            
+            final Map<KerberosRealmSettings,GSSAcceptorCredentials> creds = new HashMap<>(realmSettings.size());
+            for (final KerberosRealmSettings realm : realmSettings) {
+                creds.put(realm, new GSSAcceptorCredentials(realm, this, spnegoOid));
+            }
+            acceptorCredentials = Map.copyOf(creds);
+            
+            // Establish credentials in the background, then check for due refreshes at least once a minute.
+            if (credentialRefreshTimer == null) {
+                credentialRefreshTimer = new Timer(true);
+                ownCredentialRefreshTimer = true;
+            }
+            credentialRefreshTask = new TimerTask() {
+                public void run() {
+                    refreshCredentials();
+                }
+            };
+            credentialRefreshTimer.schedule(credentialRefreshTask, 0,
+                    Math.min(credentialRefreshInterval.toMillis(), REFRESH_CHECK_INTERVAL.toMillis()));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (credentialRefreshTask != null) {
+            credentialRefreshTask.cancel();
+            credentialRefreshTask = null;
+        }
+        if (ownCredentialRefreshTimer) {
+            credentialRefreshTimer.cancel();
+            credentialRefreshTimer = null;
+            ownCredentialRefreshTimer = false;
+        }
+        if (acceptorCredentials != null) {
+            for (final GSSAcceptorCredentials creds : acceptorCredentials.values()) {
+                creds.dispose();
+            }
+            acceptorCredentials = null;
+        }
+        
+        super.doDestroy();
     }
     
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package net.shibboleth.idp.authn.spnego.impl;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -38,6 +39,7 @@ import net.shibboleth.utilities.java.support.codec.HTMLEncoder;
 import org.apache.commons.codec.binary.Base64;
 import org.ietf.jgss.GSSException;
 import org.ietf.jgss.GSSName;
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -165,6 +167,7 @@ public class SPNEGOAuthnController {
         }
 
         final byte[] tokenBytes;
+        final long start = System.nanoTime();
         try {
             tokenBytes = acceptor.acceptSecContext(gssapiData, 0, gssapiData.length);
             log.trace("GSS token accepted");
@@ -174,6 +177,9 @@ public class SPNEGOAuthnController {
             finishWithException(conversationKey, httpRequest, httpResponse,
                     new ExternalAuthenticationException(SPNEGO_NOT_AVAILABLE, e));
             return null;
+        } finally {
+            MetricsSupport.getMetricRegistry().timer(spnegoCtx.getKerberosSettings().getMetricName() + ".negotiation")
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
 
         // If the context is established, we can attempt to retrieve the name of the "context initiator."
@@ -335,6 +335,135 @@ public class DefaultAuthenticationResultSerializerTest {
         assertEquals(nested.getSubject(), nested2.getSubject());
     }
 
+    @Test public void testCompact() throws Exception {
+        serializer.setCompactFormat(true);
+        serializer.initialize();
+        
+        final AuthenticationResult result = createResult("test", new Subject());
+        result.getAdditionalData().put("foo", "bar");
+        result.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        result.getSubject().getPrincipals().add(new TestPrincipal("foo"));
+        result.getSubject().getPrincipals().add(new TestPrincipal("bar"));
+        result.getSubject().getPublicCredentials().add(new TestPrincipal("baz"));
+        
+        final String s = serializer.serialize(result);
+        assertTrue(s.startsWith("~"));
+        
+        final AuthenticationResult result2 = serializer.deserialize(1, CONTEXT, KEY, s, ACTIVITY);
+        
+        assertEquals(result.getAuthenticationFlowId(), result2.getAuthenticationFlowId());
+        assertEquals(result.getAuthenticationInstant(), result2.getAuthenticationInstant());
+        assertEquals(result.getLastActivityInstant(), result2.getLastActivityInstant());
+        assertTrue(result2.isPreviousResult());
+        assertEquals(result.getAdditionalData(), result2.getAdditionalData());
+        assertEquals(result.getSubject(), result2.getSubject());
+        assertEquals(result2.getSubject().getPublicCredentials(), Collections.singleton(new TestPrincipal("baz")));
+    }
+
+    @Test public void testCompactMixedFormats() throws Exception {
+        serializer.setCompactFormat(true);
+        serializer.initialize();
+        
+        final DefaultAuthenticationResultSerializer jsonSerializer = new DefaultAuthenticationResultSerializer();
+        jsonSerializer.initialize();
+        
+        final AuthenticationResult result = createResult("test", new Subject());
+        result.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        result.getSubject().getPrincipals().add(new TestPrincipal("foo"));
+        result.getSubject().getPrincipals().add(new TestPrincipal("bar"));
+        
+        final String json = fileToString(DATAPATH + "complexAuthenticationResult.json");
+        assertEquals(serializer.deserialize(1, CONTEXT, KEY, json, ACTIVITY).getSubject(), result.getSubject());
+        
+        final String compact = serializer.serialize(result);
+        assertTrue(compact.length() < json.length());
+        assertEquals(jsonSerializer.deserialize(1, CONTEXT, KEY, compact, ACTIVITY).getSubject(),
+                result.getSubject());
+    }
+
+    @Test public void testCompactPlugin() throws Exception {
+        final LDAPPrincipalSerializer lpSerializer = new LDAPPrincipalSerializer();
+        serializer.setPrincipalSerializers(Collections.singletonList(lpSerializer));
+        serializer.setCompactFormat(true);
+        serializer.initialize();
+        
+        final AuthenticationResult result = createResult("test", new Subject());
+        final LdapEntry entry = new LdapEntry(SortBehavior.SORTED);
+        entry.setDn("uid=1234,ou=people,dc=shibboleth,dc=net");
+        entry.addAttribute(new LdapAttribute("cn", "Bob Cobb"), new LdapAttribute("mail", "bob@shibboleth.net"));
+        result.getSubject().getPrincipals().add(new LdapPrincipal("bob", entry));
+        
+        final AuthenticationResult result2 =
+                serializer.deserialize(1, CONTEXT, KEY, serializer.serialize(result), ACTIVITY);
+        
+        assertEquals(result.getSubject(), result2.getSubject());
+        assertEquals(
+                ((LdapPrincipal) result.getSubject().getPrincipals().iterator().next()).getLdapEntry(),
+                ((LdapPrincipal) result2.getSubject().getPrincipals().iterator().next()).getLdapEntry());
+    }
+
+    @Test public void testCompactNestedAuthenticationResult() throws Exception {
+        serializer.setCompactFormat(true);
+        serializer.initialize();
+        
+        final AuthenticationResult result = createResult("test", new Subject());
+        final AuthenticationResult nested = createResult("nested", new Subject());
+        nested.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        result.getSubject().getPrincipals().add(new AuthenticationResultPrincipal(nested));
+        
+        final AuthenticationResult result2 =
+                serializer.deserialize(1, CONTEXT, KEY, serializer.serialize(result), ACTIVITY);
+        
+        final AuthenticationResult nested2 =
+                ((AuthenticationResultPrincipal) result2.getSubject().getPrincipals().iterator().next()).getAuthenticationResult();
+        assertEquals(nested.getAuthenticationFlowId(), nested2.getAuthenticationFlowId());
+        assertEquals(nested.getAuthenticationInstant(), nested2.getAuthenticationInstant());
+        assertEquals(nested.getSubject(), nested2.getSubject());
+    }
+
+    @Test public void testCompactInvalid() throws Exception {
+        serializer.setCompactFormat(true);
+        serializer.initialize();
+        
+        final AuthenticationResult result = createResult("test", new Subject());
+        result.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        final String s = serializer.serialize(result);
+        
+        for (final String value : List.of("~", "~!!", "~AA", s.substring(0, s.length() - 2), s + "AAAA")) {
+            try {
+                serializer.deserialize(1, CONTEXT, KEY, value, ACTIVITY);
+                fail();
+            } catch (IOException e) {
+                
+            }
+        }
+    }
+
+    @Test public void testCompactFailingPlugin() throws Exception {
+        final ProxyAuthenticationPrincipalSerializer proxySerializer = new ProxyAuthenticationPrincipalSerializer() {
+            @Override
+            public ProxyAuthenticationPrincipal deserialize(final String value) throws IOException {
+                throw new IOException("Simulated failure");
+            }
+        };
+        serializer.setPrincipalSerializers(Collections.singletonList(proxySerializer));
+        serializer.setCompactFormat(true);
+        serializer.initialize();
+        
+        final AuthenticationResult result = createResult("test", new Subject());
+        result.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        result.getSubject().getPrincipals().add(new ProxyAuthenticationPrincipal(List.of("foo")));
+        final String s = serializer.serialize(result);
+        
+        // The result must be rejected rather than used without the principal, as it is for JSON.
+        try {
+            serializer.deserialize(1, CONTEXT, KEY, s, ACTIVITY);
+            fail();
+        } catch (final IOException e) {
+            
+        }
+    }
+
     private AuthenticationResult createResult(String flowId, Subject subject) {
         final AuthenticationResult result = new AuthenticationResult(flowId, subject);
         result.setAuthenticationInstant(INSTANT);
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.authn.impl;
+
+import java.time.Duration;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.context.UsernamePasswordContext;
+import net.shibboleth.idp.authn.impl.StorageBackedAccountLockoutManager.UsernameIPLockoutKeyStrategy;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedAccountLockoutManager} unit test with in-memory counters. */
+public class ReplicatedAccountLockoutManagerTest extends BaseAuthenticationContextTest {
+
+    private MemoryStorageService storageService;
+    
+    private StorageBackedAccountLockoutManager manager;    
+
+    private StorageBackedAccountLockoutManager otherManager;    
+
+    @BeforeMethod public void setUp() throws Exception {
+        super.setUp();
+        
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        
+        manager = newManager();
+        otherManager = newManager();
+        
+        ((MockHttpServletRequest) src.getExternalContext().getNativeRequest()).setRemoteAddr("192.168.1.1");
+        prc.getSubcontext(AuthenticationContext.class).getSubcontext(UsernamePasswordContext.class, true).setUsername("jdoe");
+    }
+    
+    @AfterMethod public void tearDown() {
+        manager.destroy();
+        otherManager.destroy();
+        storageService.destroy();
+    }
+    
+    private StorageBackedAccountLockoutManager newManager() throws ComponentInitializationException {
+        final UsernameIPLockoutKeyStrategy keyStrategy = new UsernameIPLockoutKeyStrategy();
+        keyStrategy.setHttpServletRequest((HttpServletRequest) src.getExternalContext().getNativeRequest());
+        final StorageBackedAccountLockoutManager m = new StorageBackedAccountLockoutManager();
+        m.setId("test");
+        m.setStorageService(storageService);
+        m.setLockoutKeyStrategy(keyStrategy);
+        m.setMaxAttempts(3);
+        m.setCounterInterval(Duration.ofSeconds(3));
+        m.setLockoutDuration(Duration.ofSeconds(5));
+        // Replication is driven explicitly by the tests.
+        m.setReplicationInterval(Duration.ofHours(1));
+        m.initialize();
+        return m;
+    }
+
+    @Test public void inMemory() throws Exception {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.check(prc));
+        Assert.assertNull(storageService.read("test", "jdoe!192.168.1.1"));
+        
+        manager.replicate();
+        Assert.assertEquals(storageService.read("test", "jdoe!192.168.1.1").getValue(), "3");
+        
+        Assert.assertEquals(manager.getStatistics().get("failures").longValue(), 3);
+        Assert.assertEquals(manager.getStatistics().get("lockouts").longValue(), 1);
+    }
+
+    @Test public void acrossNodes() throws Exception {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(otherManager.increment(prc));
+        Assert.assertFalse(manager.check(prc));
+        
+        manager.replicate();
+        otherManager.replicate();
+        Assert.assertEquals(storageService.read("test", "jdoe!192.168.1.1").getValue(), "3");
+        Assert.assertTrue(otherManager.check(prc));
+
+        // A node checking the key for the first time loads it in the background.
+        final StorageBackedAccountLockoutManager thirdManager = newManager();
+        try {
+            Assert.assertFalse(thirdManager.check(prc));
+            thirdManager.replicate();
+            Assert.assertTrue(thirdManager.check(prc));
+        } finally {
+            thirdManager.destroy();
+        }
+    }
+
+    @Test public void clear() throws Exception {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        manager.replicate();
+        Assert.assertTrue(manager.check(prc));
+        otherManager.check(prc);
+        otherManager.replicate();
+        Assert.assertTrue(otherManager.check(prc));
+
+        Assert.assertTrue(manager.clear(prc));
+        Assert.assertFalse(manager.check(prc));
+        Assert.assertNull(storageService.read("test", "jdoe!192.168.1.1"));
+        
+        // The other node drops its counter once it sees the record is gone.
+        otherManager.replicate();
+        Assert.assertFalse(otherManager.check(prc));
+    }
+
+    @Test public void full() throws Exception {
+        final String[] key = {"jdoe"};
+        final StorageBackedAccountLockoutManager m = new StorageBackedAccountLockoutManager();
+        m.setId("test");
+        m.setStorageService(storageService);
+        m.setLockoutKeyStrategy(input -> key[0]);
+        m.setMaxAttempts(1);
+        m.setReplicationInterval(Duration.ofHours(1));
+        m.setMaxInMemoryCounters(1);
+        m.initialize();
+        try {
+            Assert.assertTrue(m.increment(prc));
+            Assert.assertTrue(m.check(prc));
+            Assert.assertNull(storageService.read("test", "jdoe"));
+            
+            // Beyond the limit, storage is used directly.
+            key[0] = "jsmith";
+            Assert.assertTrue(m.increment(prc));
+            Assert.assertNotNull(storageService.read("test", "jsmith"));
+            Assert.assertTrue(m.check(prc));
+        } finally {
+            m.destroy();
+        }
+    }
+
+}
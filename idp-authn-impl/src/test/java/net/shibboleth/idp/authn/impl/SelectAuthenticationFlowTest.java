@@ -23,6 +23,7 @@ import java.util.List;
 
 import javax.security.auth.Subject;
 
+import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
 import net.shibboleth.idp.authn.AuthenticationResult;
 import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
@@ -294,5 +295,55 @@ public class SelectAuthenticationFlowTest extends BaseAuthenticationContextTest
         ActionTestingSupport.assertProceedEvent(event);
         Assert.assertEquals(active, authCtx.getAuthenticationResult());
     }
-    
-}
\ No newline at end of file
+
+    @Test public void testRequestActivationEvaluatedOnce() {
+        final AuthenticationContext authCtx = prc.getSubcontext(AuthenticationContext.class);
+        final List<Principal> principals = Arrays.<Principal>asList(new TestPrincipal("foo"),
+                new TestPrincipal("bar"), new TestPrincipal("test3"));
+        final RequestedPrincipalContext rpc = new RequestedPrincipalContext();
+        rpc.getPrincipalEvalPredicateFactoryRegistry().register(
+                TestPrincipal.class, "exact", new ExactPrincipalEvalPredicateFactory());
+        rpc.setOperator("exact");
+        rpc.setRequestedPrincipals(principals);
+        authCtx.addSubcontext(rpc, true);
+        final int[] evaluations = new int[1];
+        authCtx.getPotentialFlows().get("test1").setSupportedPrincipals(principals.subList(0, 2));
+        authCtx.getPotentialFlows().get("test1").setActivationCondition(input -> {
+            evaluations[0]++;
+            return false;
+        });
+        authCtx.getPotentialFlows().get("test3").setSupportedPrincipals(principals.subList(2, 3));
+        
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, "test3");
+        Assert.assertEquals(evaluations[0], 1);
+    }
+
+    @Test public void testRequestInitializedFlows() throws ComponentInitializationException {
+        final AuthenticationContext authCtx = prc.getSubcontext(AuthenticationContext.class);
+        final List<Principal> principals = Arrays.<Principal>asList(new TestPrincipal("test3"),
+                new TestPrincipal("test2"));
+        final RequestedPrincipalContext rpc = new RequestedPrincipalContext();
+        rpc.getPrincipalEvalPredicateFactoryRegistry().register(
+                TestPrincipal.class, "exact", new ExactPrincipalEvalPredicateFactory());
+        rpc.setOperator("exact");
+        rpc.setRequestedPrincipals(principals);
+        authCtx.addSubcontext(rpc, true);
+        authCtx.getPotentialFlows().get("test2").setSupportedPrincipals(ImmutableList.of(new TestPrincipal("foo")));
+        for (final AuthenticationFlowDescriptor flow : authCtx.getPotentialFlows().values()) {
+            flow.setResultSerializer(new DefaultAuthenticationResultSerializer());
+            flow.initialize();
+        }
+        
+        // Look up the supported principals, then add one after initialization.
+        Assert.assertTrue(authCtx.getPotentialFlows().get("test2").getSupportedPrincipals(
+                TestPrincipal.class).contains(new TestPrincipal("foo")));
+        authCtx.getPotentialFlows().get("test2").getSupportedPrincipals().add(principals.get(1));
+        
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, "test2");
+        Assert.assertEquals(authCtx.getPotentialFlows().get("test2").getSupportedPrincipals(
+                TestPrincipal.class).size(), 2);
+    }
+
+}
@@ -22,6 +22,7 @@ import java.security.Principal;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 
 import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
@@ -129,6 +130,26 @@ public class ValidateUserAgentAddressTest extends BaseAuthenticationContextTest
                 UsernamePrincipal.class).iterator().next().getName(), "foo");
     }
     
+    @Test public void testMostSpecific() throws ComponentInitializationException {
+        action = new ValidateUserAgentAddress();
+        action.setMappings(Map.<String,Collection<IPRange>>of(
+                "foo", Arrays.asList(IPRange.parseCIDRBlock("192.168.0.0/16")),
+                "bar", Arrays.asList(IPRange.parseCIDRBlock("10.0.0.0/8"), IPRange.parseCIDRBlock("192.168.1.0/24"))));
+        action.setHttpServletRequest(new MockHttpServletRequest());
+        action.initialize();
+        ((MockHttpServletRequest) action.getHttpServletRequest()).setRemoteAddr("192.168.1.1");
+
+        final AuthenticationContext ac = prc.getSubcontext(AuthenticationContext.class, false);
+        ac.setAttemptedFlow(authenticationFlows.get(0));
+        
+        doExtract();
+        
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(ac.getAuthenticationResult().getSubject().getPrincipals(
+                UsernamePrincipal.class).iterator().next().getName(), "bar");
+    }
+    
     private void doExtract() throws ComponentInitializationException {
         final ExtractUserAgentAddress extract = new ExtractUserAgentAddress();
         extract.setHttpServletRequest(action.getHttpServletRequest());
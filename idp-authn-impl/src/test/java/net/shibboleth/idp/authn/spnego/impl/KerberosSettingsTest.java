@@ -18,10 +18,16 @@
 package net.shibboleth.idp.authn.spnego.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.security.auth.login.LoginException;
+
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
 
@@ -68,5 +74,44 @@ public class KerberosSettingsTest {
     public void nullRealms_shouldThrowException() {
         settings.setRealms(null);
     }
-    
-}
\ No newline at end of file
+
+    @Test
+    public void testPerNegotiationCredentials() throws ComponentInitializationException {
+        settings.setRealms(realms);
+        settings.initialize();
+
+        assertEquals(settings.getCredentialRefreshInterval(), Duration.ZERO);
+        assertNull(settings.getAcceptorCredentials(realms.get(0)));
+        settings.refreshCredentials();
+        settings.destroy();
+    }
+
+    @Test
+    public void testSharedCredentialsLoginFailure() throws Exception {
+        settings.setRealms(realms);
+        settings.setLoginModuleClassName("net.shibboleth.idp.authn.spnego.impl.NoSuchLoginModule");
+        settings.setCredentialRefreshInterval(Duration.ofHours(1));
+        settings.initialize();
+
+        final GSSAcceptorCredentials creds = settings.getAcceptorCredentials(realms.get(0));
+        assertNotNull(creds);
+
+        // A failed refresh is logged, not thrown, while a negotiation needing credentials fails.
+        settings.refreshCredentials();
+        try {
+            creds.getCredential(System.currentTimeMillis());
+            fail("Expected LoginException");
+        } catch (final LoginException e) {
+            // expected
+        }
+
+        settings.destroy();
+        assertNull(settings.getAcceptorCredentials(realms.get(0)));
+    }
+
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void negativeRefreshInterval_shouldThrowException() {
+        settings.setCredentialRefreshInterval(Duration.ofMinutes(-1));
+    }
+
+}
@@ -17,10 +17,14 @@
 
 package net.shibboleth.idp.cas.service;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -32,10 +36,18 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * Service registry that evaluates a candidate service URL against one or more defined services, where each
  * definition contains a service URL regular expression pattern.
  *
+ * <p>Definitions are evaluated in order and the first match wins. To avoid running every pattern for every lookup,
+ * the literal prefix of each pattern (the text any matching URL must begin with) is indexed in a trie, and only
+ * those patterns whose prefix the candidate URL begins with are evaluated. The outcome of recent lookups is also
+ * cached; since a reload produces a new registry instance, the cache never outlives the definitions.</p>
+ *
  * <p>NOTE: This class will become an implementation component in the next major software version.</p>
  *
  * @author Marvin S. Addison
@@ -43,13 +55,29 @@ import org.slf4j.LoggerFactory;
 public class PatternServiceRegistry extends AbstractServiceableComponent<ServiceRegistry>
         implements ServiceRegistry {
 
+    /** Default number of lookup results to cache. */
+    public static final long DEFAULT_CACHE_SIZE = 1000;
+
+    /** Regular expression metacharacters which end a literal prefix. */
+    @Nonnull private static final String METACHARACTERS = ".[]()*+?{}|^$";
+
+    /** Regular expression quantifiers which make the preceding literal optional or repeatable. */
+    @Nonnull private static final String QUANTIFIERS = "*+?{";
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(PatternServiceRegistry.class);
 
-    /** Map of service definitions to compiled patterns. */
-    @Nonnull
-    @NonnullElements
-    private Map<ServiceDefinition, Pattern> definitions = Collections.emptyMap();
+    /** Service definitions, in evaluation order. */
+    @Nonnull @NonnullElements private List<ServiceDefinition> definitions = List.of();
+
+    /** Compiled patterns, parallel to {@link #definitions}. */
+    @Nonnull @NonnullElements private List<Pattern> patterns = List.of();
+
+    /** Trie of literal pattern prefixes. */
+    @Nonnull private PrefixNode prefixes = new PrefixNode();
+
+    /** Recent lookup results, the position of the matching definition, if any, keyed by service URL. */
+    @Nullable private Cache<String,Optional<Integer>> lookupCache = buildCache(DEFAULT_CACHE_SIZE);
 
     /**
      * Sets the list of service definitions that back the registry.
@@ -59,13 +87,39 @@ public class PatternServiceRegistry extends AbstractServiceableComponent<Service
      */
     public void setDefinitions(@Nonnull @NonnullElements final List<ServiceDefinition> serviceDefinitions) {
         Constraint.noNullItems(serviceDefinitions, "Definitions cannot be null or contain null items");
-        // Preserve order of services in map
-        definitions = new LinkedHashMap<>(serviceDefinitions.size());
+
+        final List<ServiceDefinition> defs = new ArrayList<>(serviceDefinitions.size());
+        final List<Pattern> compiled = new ArrayList<>(serviceDefinitions.size());
+        final Set<ServiceDefinition> seen = new HashSet<>(serviceDefinitions.size());
+        final PrefixNode root = new PrefixNode();
         for (final ServiceDefinition definition : serviceDefinitions) {
-            definitions.put(definition, Pattern.compile(definition.getId()));
+            // Later duplicates of a definition are ignored, keeping the first in its original position.
+            if (!seen.add(definition)) {
+                continue;
+            }
+            root.add(getLiteralPrefix(definition.getId()), defs.size());
+            defs.add(definition);
+            compiled.add(Pattern.compile(definition.getId()));
+        }
+        definitions = List.copyOf(defs);
+        patterns = List.copyOf(compiled);
+        prefixes = root;
+        if (lookupCache != null) {
+            lookupCache.invalidateAll();
         }
     }
 
+    /**
+     * Set the maximum number of lookup results to cache.
+     * 
+     * <p>Defaults to {@link #DEFAULT_CACHE_SIZE}. Set to 0 to disable caching.</p>
+     * 
+     * @param size maximum number of results to cache
+     */
+    public void setCacheSize(final long size) {
+        lookupCache = buildCache(Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative"));
+    }
+
     @Nonnull
     @Override
     public ServiceRegistry getComponent() {
@@ -76,14 +130,178 @@ public class PatternServiceRegistry extends AbstractServiceableComponent<Service
     @Nullable
     public Service lookup(@Nonnull final String serviceURL) {
         Constraint.isNotNull(serviceURL, "Service URL cannot be null");
-        for (final ServiceDefinition def : definitions.keySet()) {
+
+        final Optional<Integer> match;
+        final Cache<String,Optional<Integer>> cache = lookupCache;
+        if (cache != null) {
+            final Optional<Integer> cached = cache.getIfPresent(serviceURL);
+            if (cached != null) {
+                log.debug("Using cached result for {}", serviceURL);
+                match = cached;
+            } else {
+                match = find(serviceURL);
+                cache.put(serviceURL, match);
+            }
+        } else {
+            match = find(serviceURL);
+        }
+
+        if (match.isEmpty()) {
+            return null;
+        }
+        final ServiceDefinition def = definitions.get(match.get());
+        return new Service(serviceURL, def.getGroup(), def.isAuthorizedToProxy(), def.isSingleLogoutParticipant());
+    }
+
+    /**
+     * Build a cache of lookup results.
+     * 
+     * @param size maximum number of results to cache
+     * 
+     * @return the cache, or null if size is 0
+     */
+    @Nullable private static Cache<String,Optional<Integer>> buildCache(final long size) {
+        return size > 0 ? CacheBuilder.newBuilder().maximumSize(size).build() : null;
+    }
+
+    /**
+     * Find the first definition matching a service URL, evaluating only the definitions whose literal prefix the
+     * URL begins with.
+     * 
+     * @param serviceURL candidate service URL
+     * 
+     * @return position of the first matching definition, if any
+     */
+    @Nonnull private Optional<Integer> find(@Nonnull final String serviceURL) {
+        final BitSet candidates = prefixes.getCandidates(serviceURL);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final ServiceDefinition def = definitions.get(i);
             log.debug("Evaluating whether {} matches {}", serviceURL, def);
-            if (definitions.get(def).matcher(serviceURL).matches()) {
+            if (patterns.get(i).matcher(serviceURL).matches()) {
                 log.debug("Found match");
-                return new Service(serviceURL, def.getGroup(), def.isAuthorizedToProxy(),
-                        def.isSingleLogoutParticipant());
+                return Optional.of(i);
             }
         }
-        return null;
+        return Optional.empty();
     }
+
+    /**
+     * Get the literal text that any string matching a regular expression must begin with.
+     * 
+     * <p>The result is conservative: it may be shorter than the true literal prefix, including empty, but never
+     * longer.</p>
+     * 
+     * @param regex regular expression
+     * 
+     * @return literal prefix
+     */
+    @Nonnull static String getLiteralPrefix(@Nonnull final String regex) {
+        if (regex.contains("\\Q") || hasTopLevelAlternation(regex)) {
+            return "";
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            final char literal;
+            final int next;
+            if (c == '\\') {
+                // Escaped punctuation is literal; escaped letters and digits are classes, references and the like.
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    break;
+                }
+                literal = regex.charAt(i + 1);
+                next = i + 2;
+            } else if (METACHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            if (next < regex.length() && QUANTIFIERS.indexOf(regex.charAt(next)) >= 0) {
+                break;
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Get whether a regular expression contains an alternation outside any group, in which case it has no common
+     * literal prefix.
+     * 
+     * @param regex regular expression
+     * 
+     * @return whether there is a top-level alternation
+     */
+    private static boolean hasTopLevelAlternation(@Nonnull final String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A node in a trie of literal pattern prefixes. */
+    private static final class PrefixNode {
+
+        /** Child nodes, keyed by the next character. */
+        @Nonnull private final Map<Character,PrefixNode> children = new HashMap<>();
+
+        /** Positions of the definitions whose prefix ends at this node. */
+        @Nonnull private final BitSet definitions = new BitSet();
+
+        /**
+         * Add a definition's prefix to the trie.
+         * 
+         * @param prefix the literal prefix
+         * @param position position of the definition
+         */
+        void add(@Nonnull final String prefix, final int position) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), k -> new PrefixNode());
+            }
+            node.definitions.set(position);
+        }
+
+        /**
+         * Get the positions of the definitions whose prefix the supplied string begins with.
+         * 
+         * @param value the string
+         * 
+         * @return positions of the candidate definitions
+         */
+        @Nonnull BitSet getCandidates(@Nonnull final String value) {
+            final BitSet candidates = (BitSet) definitions.clone();
+            PrefixNode node = this;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.children.get(value.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                candidates.or(node.definitions);
+            }
+            return candidates;
+        }
+    }
+
 }
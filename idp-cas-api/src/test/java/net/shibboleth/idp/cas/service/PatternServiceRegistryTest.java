@@ -17,8 +17,11 @@
 
 package net.shibboleth.idp.cas.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
 
 import net.shibboleth.idp.cas.service.Service;
 import org.testng.annotations.DataProvider;
@@ -70,4 +73,82 @@ public class PatternServiceRegistryTest {
             assertEquals(actual.isAuthorizedToProxy(), expected.isAuthorizedToProxy());
         }
     }
-}
\ No newline at end of file
+
+    @DataProvider(name = "prefixes")
+    public Object[][] getPrefixes() {
+        return new Object[][] {
+                {"https://trusted\\.example\\.org/.*", "https://trusted.example.org/"},
+                {"^https://trusted\\.example\\.org/.*", "https://trusted.example.org/"},
+                {"https://([A-Za-z0-9_-]+\\.)*example\\.org(:\\d+)?/.*", "https://"},
+                {"https?://example\\.org/.*", "http"},
+                {"https://example\\.org/a{2}", "https://example.org/"},
+                {"https://example\\.org/\\d+", "https://example.org/"},
+                {"https://a\\.org/.*|https://b\\.org/.*", ""},
+                {"https://(a|b)\\.org/.*", "https://"},
+                {"https://[a|b]\\.org/.*", "https://"},
+                {"(?i)https://example\\.org/.*", ""},
+                {"\\Qhttps://example.org/\\E.*", ""},
+                {".*", ""},
+        };
+    }
+
+    @Test(dataProvider = "prefixes")
+    public void testLiteralPrefix(final String regex, final String expected) {
+        assertEquals(PatternServiceRegistry.getLiteralPrefix(regex), expected);
+    }
+
+    @Test
+    public void testLookupMatchesLinearScan() {
+        final Random random = new Random(42);
+        final List<ServiceDefinition> services = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            final String host = "host" + random.nextInt(100) + "\\.example\\.org";
+            final String regex;
+            switch (i % 4) {
+                case 0:
+                    regex = "https://" + host + "/.*";
+                    break;
+                case 1:
+                    regex = "https://" + host + "/app" + random.nextInt(10) + "(/.*)?";
+                    break;
+                case 2:
+                    regex = "https?://" + host + "(:\\d+)?/.*";
+                    break;
+                default:
+                    regex = "https://([a-z0-9]+\\.)*" + host + "/.*";
+                    break;
+            }
+            final ServiceDefinition definition = new ServiceDefinition(regex);
+            definition.setGroup("group" + i);
+            services.add(definition);
+        }
+        services.add(new ServiceDefinition("https://a\\.example\\.org/.*|http://b\\.example\\.org/.*"));
+
+        final PatternServiceRegistry registry = new PatternServiceRegistry();
+        registry.setDefinitions(services);
+
+        for (int i = 0; i < 2000; i++) {
+            final String url = (random.nextBoolean() ? "https://" : "http://")
+                    + (random.nextInt(4) == 0 ? "sub.host" : "host") + random.nextInt(120) + ".example.org"
+                    + (random.nextInt(5) == 0 ? ":8443" : "") + "/app" + random.nextInt(12) + "/page";
+            ServiceDefinition expected = null;
+            for (final ServiceDefinition definition : services) {
+                if (Pattern.compile(definition.getId()).matcher(url).matches()) {
+                    expected = definition;
+                    break;
+                }
+            }
+            // Look up twice to exercise the result cache.
+            for (int j = 0; j < 2; j++) {
+                final Service actual = registry.lookup(url);
+                if (expected == null) {
+                    assertNull(actual, url);
+                } else {
+                    assertNotNull(actual, url);
+                    assertEquals(actual.getName(), url);
+                    assertEquals(actual.getGroup(), expected.getGroup(), url);
+                }
+            }
+        }
+    }
+}
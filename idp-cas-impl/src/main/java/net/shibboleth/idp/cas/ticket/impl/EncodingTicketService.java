@@ -27,6 +27,7 @@ import net.shibboleth.idp.cas.ticket.ProxyTicket;
 import net.shibboleth.idp.cas.ticket.ServiceTicket;
 import net.shibboleth.idp.cas.ticket.Ticket;
 import net.shibboleth.idp.cas.ticket.TicketState;
+import net.shibboleth.idp.cas.ticket.serialization.impl.CompactTicketCodec;
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.logic.Constraint;
@@ -45,6 +46,11 @@ import org.slf4j.LoggerFactory;
  *     <li>Proxy-granting tickets are persisted using a {@link StorageService}.</li>
  * </ol>
  *
+ * <p>Ticket data is serialized as JSON by default. If {@link #setCompactEncoding(boolean)} is enabled, the binary
+ * form produced by {@link CompactTicketCodec} is used instead, which yields shorter ticket IDs and is cheaper to
+ * produce and parse. Tickets in either form are accepted on decode regardless of the setting, so the setting can be
+ * changed without invalidating outstanding tickets.</p>
+ *
  * <p><strong>NOTE:</strong> The service tickets and proxy tickets produced by this component do not support one-time
  * use. More precisely, {@link #removeServiceTicket(String)} and {@link #removeProxyTicket(String)} simply return a
  * decoded ticket and do not invalidate the ticket in any way. Since there is no backing store for those types of
@@ -84,6 +90,8 @@ public class EncodingTicketService extends AbstractTicketService {
     @NotEmpty
     private String proxyTicketPrefix = PROXY_TICKET_PREFIX;
 
+    /** Whether to serialize ticket data in the compact binary form. */
+    private boolean compactEncoding;
 
     /**
      * Creates a new instance.
@@ -115,6 +123,15 @@ public class EncodingTicketService extends AbstractTicketService {
         proxyTicketPrefix = Constraint.isNotEmpty(prefix, "Prefix cannot be null or empty");
     }
 
+    /**
+     * Sets whether to serialize ticket data using {@link CompactTicketCodec} rather than JSON. Default is false.
+     *
+     * @param flag flag to set
+     */
+    public void setCompactEncoding(final boolean flag) {
+        compactEncoding = flag;
+    }
+
     @Override
     @Nonnull
     public ServiceTicket createServiceTicket(
@@ -176,7 +193,9 @@ public class EncodingTicketService extends AbstractTicketService {
     private <T extends Ticket> T encode(final Class<T> ticketClass, final T ticket, final String prefix) {
         final String opaque;
         try {
-            opaque = dataSealer.wrap(serializer(ticketClass).serialize(ticket), ticket.getExpirationInstant());
+            final String serialized = compactEncoding
+                    ? CompactTicketCodec.encode(ticket) : serializer(ticketClass).serialize(ticket);
+            opaque = dataSealer.wrap(serialized, ticket.getExpirationInstant());
         } catch (final Exception e) {
             throw new RuntimeException("Ticket encoding failed", e);
         }
@@ -196,6 +215,9 @@ public class EncodingTicketService extends AbstractTicketService {
     private <T extends Ticket> T decode(final Class<T> ticketClass, final String id, final String prefix) {
         try {
             final String decrypted = dataSealer.unwrap(id.substring(prefix.length() + 1));
+            if (CompactTicketCodec.isCompact(decrypted)) {
+                return CompactTicketCodec.decode(ticketClass, id, decrypted);
+            }
             return serializer(ticketClass).deserialize(0, NOT_USED, id, decrypted, 0L);
         } catch (final Exception e) {
             log.warn("Ticket decoding failed with error: " + e.getMessage());
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.cas.ticket.serialization.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.idp.cas.ticket.ProxyTicket;
+import net.shibboleth.idp.cas.ticket.ServiceTicket;
+import net.shibboleth.idp.cas.ticket.Ticket;
+import net.shibboleth.idp.cas.ticket.TicketState;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Compact binary encoding of service and proxy tickets, for use where ticket data is carried inside the ticket ID
+ * rather than stored.
+ *
+ * <p>Compared with the JSON form produced by {@link AbstractTicketSerializer}, field names are implied by position,
+ * instants are variable-length integers, and authentication methods naming the standard login flows are replaced
+ * by a one-byte reference. The encoding is carried in a {@link String} of characters in the range 0-255, one per
+ * byte, so that it can be passed to string-based APIs such as
+ * {@link net.shibboleth.utilities.java.support.security.DataSealer} without a further text encoding step.</p>
+ *
+ * <p>The first character is {@link #FORMAT_VERSION}, which can never begin a JSON object, so the two encodings can
+ * be told apart with {@link #isCompact(String)}.</p>
+ */
+public final class CompactTicketCodec {
+
+    /** Leading marker and version of the encoding. */
+    public static final char FORMAT_VERSION = 1;
+
+    /** Type marker for service tickets. */
+    private static final char SERVICE_TICKET = 'S';
+
+    /** Type marker for proxy tickets. */
+    private static final char PROXY_TICKET = 'P';
+
+    /** Flag indicating ticket state is present. */
+    private static final int FLAG_STATE = 0x01;
+
+    /** Flag indicating a service ticket requires renewed authentication. */
+    private static final int FLAG_RENEW = 0x02;
+
+    /**
+     * Authentication methods encoded by reference. Entries may only ever be appended, as the position of an entry
+     * is its encoding.
+     */
+    @Nonnull private static final List<String> KNOWN_METHODS = List.of(
+            "authn/Password",
+            "authn/RemoteUser",
+            "authn/RemoteUserInternal",
+            "authn/External",
+            "authn/X509",
+            "authn/X509Internal",
+            "authn/SPNEGO",
+            "authn/IPAddress",
+            "authn/Duo",
+            "authn/MFA",
+            "authn/Function",
+            "authn/SAML");
+
+    /** Constructor. */
+    private CompactTicketCodec() {
+
+    }
+
+    /**
+     * Get whether a string is in the compact encoding.
+     *
+     * @param value encoded ticket
+     *
+     * @return true iff the value is in the compact encoding rather than JSON
+     */
+    public static boolean isCompact(@Nonnull final String value) {
+        return !value.isEmpty() && value.charAt(0) == FORMAT_VERSION;
+    }
+
+    /**
+     * Encode a service or proxy ticket. The ticket ID is not included.
+     *
+     * @param ticket the ticket to encode
+     *
+     * @return the encoded ticket
+     */
+    @Nonnull public static String encode(@Nonnull final Ticket ticket) {
+        final TicketState state = ticket.getTicketState();
+        int flags = state != null ? FLAG_STATE : 0;
+
+        final StringBuilder out = new StringBuilder(64 + ticket.getService().length());
+        out.append(FORMAT_VERSION);
+        if (ticket instanceof ServiceTicket) {
+            out.append(SERVICE_TICKET);
+            if (((ServiceTicket) ticket).isRenew()) {
+                flags |= FLAG_RENEW;
+            }
+        } else if (ticket instanceof ProxyTicket) {
+            out.append(PROXY_TICKET);
+        } else {
+            throw new IllegalArgumentException("Unsupported ticket type " + ticket.getClass().getName());
+        }
+        out.append((char) flags);
+
+        writeVarLong(out, ticket.getExpirationInstant().toEpochMilli());
+        writeString(out, ticket.getService());
+        if (state != null) {
+            writeString(out, state.getSessionId());
+            writeString(out, state.getPrincipalName());
+            writeVarLong(out, state.getAuthenticationInstant().toEpochMilli());
+            final int method = KNOWN_METHODS.indexOf(state.getAuthenticationMethod());
+            writeVarLong(out, method + 1);
+            if (method < 0) {
+                writeString(out, state.getAuthenticationMethod());
+            }
+        }
+        if (ticket instanceof ProxyTicket) {
+            writeString(out, ((ProxyTicket) ticket).getPgtId());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Decode a service or proxy ticket.
+     *
+     * @param ticketClass class of ticket expected
+     * @param id ticket ID to assign
+     * @param value encoded ticket
+     * @param <T> type of ticket
+     *
+     * @return the decoded ticket
+     *
+     * @throws IOException if the value is malformed or of a different ticket type
+     */
+    @Nonnull public static <T extends Ticket> T decode(@Nonnull final Class<T> ticketClass,
+            @Nonnull @NotEmpty final String id, @Nonnull final String value) throws IOException {
+        final Reader in = new Reader(value);
+        if (in.next() != FORMAT_VERSION) {
+            throw new IOException("Unsupported ticket encoding");
+        }
+        final char type = in.next();
+        final int flags = in.next();
+
+        final Instant expiry = Instant.ofEpochMilli(in.readVarLong());
+        final String service = in.readString();
+        TicketState state = null;
+        if ((flags & FLAG_STATE) != 0) {
+            final String sessionId = in.readString();
+            final String principal = in.readString();
+            final Instant authnInstant = Instant.ofEpochMilli(in.readVarLong());
+            final long method = in.readVarLong();
+            final String authnMethod;
+            if (method == 0) {
+                authnMethod = in.readString();
+            } else if (method <= KNOWN_METHODS.size()) {
+                authnMethod = KNOWN_METHODS.get((int) method - 1);
+            } else {
+                throw new IOException("Unknown authentication method reference");
+            }
+            state = new TicketState(sessionId, principal, authnInstant, authnMethod);
+        }
+
+        final Ticket ticket;
+        if (type == SERVICE_TICKET) {
+            ticket = new ServiceTicket(id, service, expiry, (flags & FLAG_RENEW) != 0);
+        } else if (type == PROXY_TICKET) {
+            ticket = new ProxyTicket(id, service, expiry, in.readString());
+        } else {
+            throw new IOException("Unknown ticket type");
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Trailing data after encoded ticket");
+        }
+        if (!ticketClass.isInstance(ticket)) {
+            throw new IOException("Encoded ticket is not a " + ticketClass.getSimpleName());
+        }
+        ticket.setTicketState(state);
+        return ticketClass.cast(ticket);
+    }
+
+    /**
+     * Append an unsigned variable-length integer, seven bits per byte, least significant first.
+     *
+     * @param out output
+     * @param value non-negative value
+     */
+    private static void writeVarLong(@Nonnull final StringBuilder out, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.append((char) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.append((char) v);
+    }
+
+    /**
+     * Append a string as its UTF-8 length plus one (zero denoting null) followed by its UTF-8 bytes.
+     *
+     * @param out output
+     * @param value value to write
+     */
+    private static void writeString(@Nonnull final StringBuilder out, @Nullable final String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+
+        // Plain ASCII needs no transcoding, which is the common case for URLs and identifiers.
+        boolean ascii = true;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            writeVarLong(out, value.length() + 1L);
+            out.append(value);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length + 1L);
+            for (final byte b : bytes) {
+                out.append((char) (b & 0xFF));
+            }
+        }
+    }
+
+    /** Cursor over an encoded ticket. */
+    private static final class Reader {
+
+        /** Encoded ticket. */
+        @Nonnull private final String value;
+
+        /** Position of the next character. */
+        private int pos;
+
+        /**
+         * Constructor.
+         *
+         * @param encoded encoded ticket
+         */
+        Reader(@Nonnull final String encoded) {
+            value = encoded;
+        }
+
+        /**
+         * Get whether any characters remain.
+         *
+         * @return whether any characters remain
+         */
+        boolean hasRemaining() {
+            return pos < value.length();
+        }
+
+        /**
+         * Read one byte.
+         *
+         * @return the byte, as a character
+         *
+         * @throws IOException if the data is exhausted or not a byte
+         */
+        char next() throws IOException {
+            if (pos >= value.length()) {
+                throw new IOException("Truncated ticket encoding");
+            }
+            final char c = value.charAt(pos++);
+            if (c > 0xFF) {
+                throw new IOException("Invalid ticket encoding");
+            }
+            return c;
+        }
+
+        /**
+         * Read an unsigned variable-length integer.
+         *
+         * @return the value
+         *
+         * @throws IOException if the data is malformed
+         */
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final char c = next();
+                result |= (long) (c & 0x7F) << shift;
+                if ((c & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed variable-length integer");
+        }
+
+        /**
+         * Read a string.
+         *
+         * @return the string, or null
+         *
+         * @throws IOException if the data is malformed
+         */
+        @Nullable String readString() throws IOException {
+            final long encodedLength = readVarLong();
+            if (encodedLength == 0) {
+                return null;
+            }
+            final long length = encodedLength - 1;
+            if (length > value.length() - pos) {
+                throw new IOException("Truncated ticket encoding");
+            }
+            final int end = pos + (int) length;
+            boolean ascii = true;
+            for (int i = pos; i < end; i++) {
+                final char c = value.charAt(i);
+                if (c > 0xFF) {
+                    throw new IOException("Invalid ticket encoding");
+                } else if (c >= 0x80) {
+                    ascii = false;
+                }
+            }
+            final String result;
+            if (ascii) {
+                result = value.substring(pos, end);
+            } else {
+                final byte[] bytes = new byte[(int) length];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) value.charAt(pos + i);
+                }
+                result = new String(bytes, StandardCharsets.UTF_8);
+            }
+            pos = end;
+            return result;
+        }
+    }
+
+}
@@ -50,6 +50,8 @@ public class EncodingTicketServiceTest {
 
     private EncodingTicketService ticketService;
 
+    private DataSealer sealer;
+
     private IdentifierGenerationStrategy sessionIdGenerator = new RandomIdentifierGenerationStrategy(32);
 
     private IdentifierGenerationStrategy pgtIdGenerator = new TicketIdentifierGenerationStrategy("PGT", 32);
@@ -75,7 +77,7 @@ public class EncodingTicketServiceTest {
         strategy.setKeyPassword("password");
         strategy.initialize();
         final Base32 codec = new Base32(0, null, false, (byte) '-');
-        final DataSealer sealer = new DataSealer();
+        sealer = new DataSealer();
         sealer.setKeyStrategy(strategy);
         sealer.setRandom(secureRandom);
         sealer.setEncoder(codec);
@@ -166,6 +168,39 @@ public class EncodingTicketServiceTest {
         assertNull(ticketService.removeProxyTicket("PT-123"));
     }
 
+    @Test
+    public void testCompactEncoding() throws Exception {
+        final EncodingTicketService compactService = new EncodingTicketService(new MemoryStorageService(), sealer);
+        compactService.setCompactEncoding(true);
+        final TicketState state = newState("fitzgerald");
+        final String service = "https://www.example.com/s3/";
+        final Instant expiry = Instant.now().plusSeconds(5);
+        final String id = String.valueOf(System.currentTimeMillis());
+        final ServiceTicket st1 = compactService.createServiceTicket(id, expiry, service, state, false);
+        assertTrue(st1.getId().matches("ST-[A-Za-z0-9]+-*"));
+        final ServiceTicket st2 = compactService.removeServiceTicket(st1.getId());
+        assertNotNull(st2);
+        assertEquals(expiry.truncatedTo(ChronoUnit.MILLIS), st2.getExpirationInstant());
+        assertEquals(service, st2.getService());
+        assertFalse(st2.isRenew());
+        assertEquals(state, st2.getTicketState());
+
+        // Either encoding is accepted regardless of the configured mode.
+        assertNotNull(ticketService.removeServiceTicket(st1.getId()));
+        final ServiceTicket st3 = ticketService.createServiceTicket(id, expiry, service, state, false);
+        assertTrue(st3.getId().length() > st1.getId().length());
+        final ServiceTicket st4 = compactService.removeServiceTicket(st3.getId());
+        assertNotNull(st4);
+        assertEquals(state, st4.getTicketState());
+
+        final ProxyGrantingTicket pgt = newPGT(newState("gwendolyn"), service);
+        final ProxyTicket pt1 = compactService.createProxyTicket(id, expiry, pgt, "https://www.example.com/s4/");
+        final ProxyTicket pt2 = compactService.removeProxyTicket(pt1.getId());
+        assertNotNull(pt2);
+        assertEquals(pgt.getId(), pt2.getPgtId());
+        assertEquals(pgt.getTicketState(), pt2.getTicketState());
+    }
+
     private TicketState newState(final String principal) {
         return new TicketState(sessionIdGenerator.generateIdentifier(), principal,
                 Instant.now().truncatedTo(ChronoUnit.MILLIS), "authn/Password");
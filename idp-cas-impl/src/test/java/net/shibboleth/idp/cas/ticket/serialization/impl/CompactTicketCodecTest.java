@@ -0,0 +1,124 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.cas.ticket.serialization.impl;
+
+import net.shibboleth.idp.cas.ticket.ProxyTicket;
+import net.shibboleth.idp.cas.ticket.ServiceTicket;
+import net.shibboleth.idp.cas.ticket.TicketState;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Unit test for {@link CompactTicketCodec}.
+ */
+public class CompactTicketCodecTest {
+
+    @Test
+    public void testServiceTicketWithoutTicketState() throws Exception {
+        final ServiceTicket st1 = new ServiceTicket(
+                "ST-0123456789-616ea1550eef862761e5931bdccaaba0",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                false);
+        final String encoded = CompactTicketCodec.encode(st1);
+        assertTrue(CompactTicketCodec.isCompact(encoded));
+        final ServiceTicket st2 = CompactTicketCodec.decode(ServiceTicket.class, st1.getId(), encoded);
+        assertEquals(st2.getId(), st1.getId());
+        assertEquals(st2.getService(), st1.getService());
+        assertEquals(st2.getExpirationInstant(), st1.getExpirationInstant());
+        assertEquals(st2.isRenew(), st1.isRenew());
+        assertNull(st2.getTicketState());
+    }
+
+    @Test
+    public void testServiceTicketWithTicketState() throws Exception {
+        final ServiceTicket st1 = new ServiceTicket(
+                "ST-0123456789-e6342d467a4414e599aa3c323528e96f",
+                "https://nobody.example.org/caf\u00e9?q=\u6f22\u5b57",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                true);
+        st1.setTicketState(new TicketState("idpsess-d2db22058dc178d3b917363859e", "b\u00f6b",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS), "authn/Password"));
+        final String encoded = CompactTicketCodec.encode(st1);
+        final ServiceTicket st2 = CompactTicketCodec.decode(ServiceTicket.class, st1.getId(), encoded);
+        assertEquals(st2.getId(), st1.getId());
+        assertEquals(st2.getService(), st1.getService());
+        assertEquals(st2.getExpirationInstant(), st1.getExpirationInstant());
+        assertTrue(st2.isRenew());
+        assertEquals(st2.getTicketState(), st1.getTicketState());
+        assertEquals(st2.getTicketState().getPrincipalName(), "b\u00f6b");
+    }
+
+    @Test
+    public void testProxyTicket() throws Exception {
+        final ProxyTicket pt1 = new ProxyTicket(
+                "PT-0123456789-e6342d467a4414e599aa3c323528e96f",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                "PGT-0123456789-11f1b8b3d5e4c5a9e3ae0f0a2cd9b6d1");
+        pt1.setTicketState(new TicketState("idpsess-d2db22058dc178d3b917363859e", "bob",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS), "CustomMethod"));
+        final String encoded = CompactTicketCodec.encode(pt1);
+        final ProxyTicket pt2 = CompactTicketCodec.decode(ProxyTicket.class, pt1.getId(), encoded);
+        assertEquals(pt2.getId(), pt1.getId());
+        assertEquals(pt2.getService(), pt1.getService());
+        assertEquals(pt2.getExpirationInstant(), pt1.getExpirationInstant());
+        assertEquals(pt2.getPgtId(), pt1.getPgtId());
+        assertEquals(pt2.getTicketState(), pt1.getTicketState());
+    }
+
+    @Test
+    public void testShorterThanJSON() throws Exception {
+        final ServiceTicket st = new ServiceTicket(
+                "ST-0123456789-e6342d467a4414e599aa3c323528e96f",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                true);
+        st.setTicketState(new TicketState("idpsess-d2db22058dc178d3b917363859e", "bob",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS), "authn/Password"));
+        final String json = new ServiceTicketSerializer().serialize(st);
+        assertFalse(CompactTicketCodec.isCompact(json));
+        assertTrue(CompactTicketCodec.encode(st).length() < json.length());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testWrongTicketType() throws Exception {
+        final ServiceTicket st = new ServiceTicket(
+                "ST-0123456789-e6342d467a4414e599aa3c323528e96f",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                false);
+        CompactTicketCodec.decode(ProxyTicket.class, "PT-123", CompactTicketCodec.encode(st));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testTruncated() throws Exception {
+        final ServiceTicket st = new ServiceTicket(
+                "ST-0123456789-e6342d467a4414e599aa3c323528e96f",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                false);
+        final String encoded = CompactTicketCodec.encode(st);
+        CompactTicketCodec.decode(ServiceTicket.class, st.getId(), encoded.substring(0, encoded.length() - 3));
+    }
+}
@@ -44,6 +44,7 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.StorageSerializer;
+import org.opensaml.storage.VersionMismatchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,12 +54,20 @@ import org.slf4j.LoggerFactory;
  * To facilitate lookup of all storage keys for a storage context, an index record is maintained containing the storage
  * keys for the context. Because storage records may expire, the index record may contain keys which no longer exist in
  * the storage service.
+ * 
+ * <p>The index record may optionally be written in the compact form of {@link CollectionSerializer}, in which case
+ * records in the JSON form are read transparently and rewritten in the compact form when next changed. Records in
+ * either form are always readable. Each change to the index is made with a single read and a single versioned update,
+ * retried if the record changes in between.</p>
  */
 public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageAction {
 
     /** Default storage key for the storage index record. */
     @Nonnull @NotEmpty public static final String DEFAULT_STORAGE_INDEX_KEY = "_key_idx";
 
+    /** Number of attempts to update the storage index record. */
+    private static final int INDEX_UPDATE_ATTEMPTS = 10;
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractConsentIndexedStorageAction.class);
 
@@ -74,6 +83,9 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
     /** Storage keys serializer used to serialize the value of the storage key index record. */
     @Nonnull private StorageSerializer<Collection<String>> storageKeysSerializer;
 
+    /** Whether to write the storage index record in the compact form. */
+    private boolean compactStorageIndex;
+
     /** Constructor. */
     public AbstractConsentIndexedStorageAction() {
         super();
@@ -112,6 +124,23 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
         storageKeysSerializer = Constraint.isNotNull(serializer, "Storage keys serializer cannot be null");
     }
 
+    /**
+     * Set whether to write the storage index record in the compact form of {@link CollectionSerializer}.
+     * 
+     * <p>This is applied to the storage keys serializer during initialization, and is only supported if it is an
+     * uninitialized {@link CollectionSerializer}, which reads records in either form. It should only be enabled once
+     * every node sharing the storage can read the compact form.</p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompactStorageIndex(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        compactStorageIndex = flag;
+    }
+
     /**
      * Set the storage keys strategy used to manipulate the storage keys when pruning storage records.
      * 
@@ -135,6 +164,21 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
         if (storageKeysSerializer == null) {
             throw new ComponentInitializationException("Storage keys serializer cannot be null");
         }
+
+        if (compactStorageIndex) {
+            if (storageKeysSerializer instanceof CollectionSerializer) {
+                final CollectionSerializer serializer = (CollectionSerializer) storageKeysSerializer;
+                if (!serializer.isCompact()) {
+                    if (serializer.isInitialized()) {
+                        throw new ComponentInitializationException(
+                                "Storage keys serializer is already initialized and cannot be made compact");
+                    }
+                    serializer.setCompact(true);
+                }
+            } else {
+                log.warn("Storage keys serializer is not a CollectionSerializer, ignoring compact storage index");
+            }
+        }
     }
 
     /** {@inheritDoc} */
@@ -194,26 +238,7 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      * @throws IOException if an error occurs writing to the storage service
      */
     protected boolean addKeyToStorageIndex(@Nonnull final String keyToAdd) throws IOException {
-
-        final StorageRecord<?> storageRecord = getStorageService().read(getStorageContext(), getStorageIndexKey());
-        log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
-                getStorageContext(), getStorageIndexKey());
-
-        if (storageRecord == null) {
-            log.debug("{} Creating storage index with key '{}'", getLogPrefix(), keyToAdd);
-            return getStorageService().create(getStorageContext(), getStorageIndexKey(),
-                    Collections.singletonList(keyToAdd), storageKeysSerializer, null);
-        }
-        
-        final LinkedHashSet<String> keys = new LinkedHashSet<>(getStorageKeysFromIndex());
-        if (keys.add(keyToAdd)) {
-            log.debug("{} Updating storage index by adding key '{}'", getLogPrefix(), keyToAdd);
-            return getStorageService().update(getStorageContext(), getStorageIndexKey(), keys,
-                    storageKeysSerializer, null);
-        }
-        
-        log.debug("{} Storage key '{}' already indexed, nothing to do", getLogPrefix(), keyToAdd);
-        return false;
+        return updateStorageIndex(Collections.emptyList(), Collections.singletonList(keyToAdd));
     }
 
     /**
@@ -224,25 +249,67 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      * @throws IOException if an error occurs writing to the storage service
      */
     protected boolean removeKeyFromStorageIndex(@Nonnull final String keyToRemove) throws IOException {
+        return updateStorageIndex(Collections.singletonList(keyToRemove), Collections.emptyList());
+    }
 
-        final StorageRecord<?> storageRecord = getStorageService().read(getStorageContext(), getStorageIndexKey());
-        log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
-                getStorageContext(), getStorageIndexKey());
+    /**
+     * Remove and add storage keys to the index storage record in a single update.
+     * 
+     * <p>Keys to add which are already indexed keep their existing position.</p>
+     * 
+     * @param keysToRemove storage keys to remove from the index storage record
+     * @param keysToAdd storage keys to add to the end of the index storage record
+     * @return true if the index storage record was changed, false otherwise
+     * @throws IOException if an error occurs writing to the storage service
+     */
+    protected boolean updateStorageIndex(@Nonnull @NonnullElements final Collection<String> keysToRemove,
+            @Nonnull @NonnullElements final Collection<String> keysToAdd) throws IOException {
 
-        if (storageRecord == null) {
-            log.debug("{} No storage record exists with context '{}' and key '{}', nothing to do", getLogPrefix(),
+        for (int attempts = INDEX_UPDATE_ATTEMPTS; attempts > 0; attempts--) {
+            final StorageRecord<Collection<String>> storageRecord =
+                    getStorageService().read(getStorageContext(), getStorageIndexKey());
+            log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
                     getStorageContext(), getStorageIndexKey());
-            return false;
-        }
-        
-        final LinkedHashSet<String> keys = new LinkedHashSet<>(getStorageKeysFromIndex());
-        if (keys.remove(keyToRemove)) {
-            log.debug("{} Updating storage index by removing key '{}'", getLogPrefix(), keyToRemove);
-            return getStorageService().update(getStorageContext(), storageIndexKey, keys, storageKeysSerializer,
-                    null);
+
+            if (storageRecord == null) {
+                final LinkedHashSet<String> keys = new LinkedHashSet<>(keysToAdd);
+                keys.removeAll(keysToRemove);
+                if (keys.isEmpty()) {
+                    log.debug("{} No storage record exists with context '{}' and key '{}', nothing to do",
+                            getLogPrefix(), getStorageContext(), getStorageIndexKey());
+                    return false;
+                }
+                log.debug("{} Creating storage index with keys '{}'", getLogPrefix(), keys);
+                if (getStorageService().create(getStorageContext(), getStorageIndexKey(), keys, storageKeysSerializer,
+                        null)) {
+                    return true;
+                }
+                // Created elsewhere in the meantime, so update it instead.
+                continue;
+            }
+
+            final LinkedHashSet<String> keys = new LinkedHashSet<>(
+                    storageRecord.getValue(storageKeysSerializer, getStorageContext(), getStorageIndexKey()));
+            final boolean removed = keys.removeAll(keysToRemove);
+            final boolean added = keys.addAll(keysToAdd);
+            if (!removed && !added) {
+                log.debug("{} Storage index already reflects keys '{}' removed and '{}' added, nothing to do",
+                        getLogPrefix(), keysToRemove, keysToAdd);
+                return false;
+            }
+
+            log.debug("{} Updating storage index by removing keys '{}' and adding keys '{}'", getLogPrefix(),
+                    keysToRemove, keysToAdd);
+            try {
+                return getStorageService().updateWithVersion(storageRecord.getVersion(), getStorageContext(),
+                        getStorageIndexKey(), keys, storageKeysSerializer, null) != null;
+            } catch (final VersionMismatchException e) {
+                log.debug("{} Storage index changed during update, retrying", getLogPrefix());
+            }
         }
-        
-        log.debug("{} Storage key '{}' not indexed, nothing to do", getLogPrefix(), keyToRemove);
+
+        log.error("{} Exhausted retry attempts updating storage index with context '{}' and key '{}'",
+                getLogPrefix(), getStorageContext(), getStorageIndexKey());
         return false;
     }
 
@@ -262,6 +329,25 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      */
     protected void pruneStorageRecords(@Nonnull final ProfileRequestContext profileRequestContext) throws IOException {
 
+        final List<String> prunedKeys = deletePrunedStorageRecords(profileRequestContext);
+        if (!prunedKeys.isEmpty()) {
+            log.debug("{} Removing keys '{}' from storage index", getLogPrefix(), prunedKeys);
+            updateStorageIndex(prunedKeys, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Delete the storage records to be pruned, without updating the index storage record.
+     * 
+     * @param profileRequestContext the profile request context
+     * 
+     * @return the keys pruned, which should be removed from the index storage record
+     * 
+     * @throws IOException if an error occurs writing to the storage service
+     */
+    @Nonnull @NonnullElements private List<String> deletePrunedStorageRecords(
+            @Nonnull final ProfileRequestContext profileRequestContext) throws IOException {
+
         final ConsentFlowDescriptor flowDescriptor = getConsentFlowDescriptor();
         int maxStoredRecords = flowDescriptor.getMaximumNumberOfStoredRecords();
         if (getStorageService().getCapabilities().getValueSize() >= flowDescriptor.getExpandedStorageThreshold()) {
@@ -271,7 +357,7 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
         if (maxStoredRecords <= 0) {
             log.trace("{} Will not prune storage records, maximum number of records is not greater than zero",
                     getLogPrefix());
-            return;
+            return Collections.emptyList();
         }
 
         List<String> keys = getStorageKeysFromIndex();
@@ -279,7 +365,7 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
         if (keys.size() < maxStoredRecords) {
             log.debug("{} Will not prune storage records, number of keys '{}' is less than max number of records '{}'",
                     getLogPrefix(), keys.size(), maxStoredRecords);
-            return;
+            return Collections.emptyList();
         }
 
         if (storageKeysStrategy != null) {
@@ -290,6 +376,7 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
         }
 
         int numberOfKeys = keys.size();
+        final List<String> prunedKeys = new ArrayList<>();
 
         final Iterator<String> keysIterator = keys.iterator();
 
@@ -307,9 +394,10 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
                 numberOfKeys--;
             }
 
-            log.debug("{} Removing key '{}' from storage index", getLogPrefix(), keyToDelete);
-            removeKeyFromStorageIndex(keyToDelete);
+            prunedKeys.add(keyToDelete);
         }
+
+        return prunedKeys;
     }
   //CheckStyle: ReturnCount ON
 
@@ -359,10 +447,10 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
     protected void storeResultWithIndex(@Nonnull final ProfileRequestContext profileRequestContext,
             @Nonnull final ProfileInterceptorResult result) throws IOException {
 
-        pruneStorageRecords(profileRequestContext);
+        final List<String> prunedKeys = deletePrunedStorageRecords(profileRequestContext);
 
         storeResult(result);
 
-        addKeyToStorageIndex(result.getStorageKey());
+        updateStorageIndex(prunedKeys, Collections.singletonList(result.getStorageKey()));
     }
 }
@@ -52,9 +52,17 @@ import net.shibboleth.utilities.java.support.xml.SerializeSupport;
  * <code>Null</code> IdP attribute values are ignored.
  * 
  * The hash returned is the Base64 encoded representation of the SHA-256 digest.
+ * 
+ * The digest is of the values as written in order to an {@link ObjectOutputStream}, which stored hashes depend on.
+ * Values of the known types are fed straight into a per-thread digest in that form by an {@link ObjectStreamDigester};
+ * a stream is only actually built for values of other types.
  */
 public class AttributeValuesHashFunction implements Function<Collection<IdPAttributeValue>, String> {
 
+    /** Per-thread digester. */
+    @Nonnull private static final ThreadLocal<ObjectStreamDigester> DIGESTER =
+            ThreadLocal.withInitial(ObjectStreamDigester::new);
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AttributeValuesHashFunction.class);
 
@@ -72,6 +80,67 @@ public class AttributeValuesHashFunction implements Function<Collection<IdPAttri
             return null;
         }
 
+        final ObjectStreamDigester digester = DIGESTER.get();
+        digester.reset();
+
+        for (final IdPAttributeValue value : filteredInput) {
+            if (log.isTraceEnabled()) {
+                log.trace("Considering value of '{}' with native value {}",
+                        value.getClass(), value.getNativeValue());
+            }
+            if (value instanceof ScopedStringAttributeValue) {
+                digester.writeString(((ScopedStringAttributeValue) value).getValue() + '@'
+                        + ((ScopedStringAttributeValue) value).getScope());
+            } else if (value instanceof XMLObjectAttributeValue) {
+                final XMLObject xmlObject = ((XMLObjectAttributeValue) value).getValue();
+                if (xmlObject instanceof NameIDType) {
+                    digester.writeString(((NameIDType) xmlObject).getValue());
+                } else {
+                    try {
+                        digester.writeString(SerializeSupport.nodeToString(XMLObjectSupport.marshall(xmlObject)));
+                    } catch (final MarshallingException e) {
+                        log.error("Error while marshalling XMLObject value", e);
+                        return null;
+                    }
+                }
+            } else if (value instanceof StringAttributeValue) {
+                digester.writeString(((StringAttributeValue) value).getValue());
+            } else if (value instanceof EmptyAttributeValue) {
+                // unique signature
+                digester.writeEmptyValueMarker();
+                if (!EmptyAttributeValue.NULL.equals(value) &&
+                    !EmptyAttributeValue.ZERO_LENGTH.equals(value)) {
+                    log.error("Internal error - impossible null attribute");
+                }
+                digester.writeString(value.getNativeValue().toString());
+            } else if (value instanceof ByteAttributeValue) {
+                digester.writeBytes(((ByteAttributeValue) value).getValue());
+            } else if (value.getNativeValue() instanceof String) {
+                log.debug("Unknown atribute value '{}' hashed as {}", value.getClass(), value.getNativeValue());
+                digester.writeString((String) value.getNativeValue());
+            } else if (value.getNativeValue() != null) {
+                // Only a real stream can reproduce the serialized form of an arbitrary object.
+                return serializeAndHash(filteredInput);
+            } else {
+                log.warn("Unknown attribute value '{}' with no value was not hashed", value.getClass());
+            }
+        }
+
+        return CodecUtil.b64(digester.digest());
+    }
+    // CheckStyle: CyclomaticComplexity ON
+
+    // CheckStyle: CyclomaticComplexity OFF
+    /**
+     * Hash the values by writing them to an {@link ObjectOutputStream}.
+     * 
+     * @param filteredInput the values
+     * 
+     * @return the hash, or null if a value cannot be converted
+     */
+    @Nullable private String serializeAndHash(
+            @Nonnull @NonnullElements final Collection<IdPAttributeValue> filteredInput) {
+
         try (final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
             final ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
 
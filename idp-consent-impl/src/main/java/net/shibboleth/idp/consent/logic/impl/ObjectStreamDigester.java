@@ -0,0 +1,288 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.consent.logic.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Computes the SHA-256 digest of the bytes an {@link ObjectOutputStream} would produce for a sequence of objects,
+ * without materializing those bytes.
+ * 
+ * <p>Only strings, byte arrays and {@link #EMPTY_VALUE_MARKER} are supported. As with the stream itself, an object
+ * written more than once, as judged by identity, is written as a back reference after the first time, so the
+ * result is exactly the digest of the equivalent serialized stream.</p>
+ */
+@NotThreadSafe
+final class ObjectStreamDigester {
+
+    /** The object written to mark empty values. */
+    @Nonnull static final Long EMPTY_VALUE_MARKER = Long.valueOf(42);
+
+    /** Stream header. */
+    @Nonnull private static final byte[] STREAM_HEADER = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+    /** Type code of a string. */
+    private static final byte TC_STRING = 0x74;
+
+    /** Type code of a string whose encoding exceeds 65535 bytes. */
+    private static final byte TC_LONGSTRING = 0x7C;
+
+    /** Type code of an array. */
+    private static final byte TC_ARRAY = 0x75;
+
+    /** Type code of a back reference. */
+    private static final byte TC_REFERENCE = 0x71;
+
+    /** First handle assigned in a stream. */
+    private static final int BASE_WIRE_HANDLE = 0x7E0000;
+
+    /** Serialized form of {@link #EMPTY_VALUE_MARKER}, which assigns handles to two class descriptors and itself. */
+    @Nonnull private static final byte[] EMPTY_VALUE_MARKER_FORM;
+
+    /** Serialized class descriptor of a byte array, which assigns one handle. */
+    @Nonnull private static final byte[] BYTE_ARRAY_DESCRIPTOR_FORM;
+
+    /** Size of the buffer used to batch input to the digest. */
+    private static final int BUFFER_SIZE = 512;
+
+    /** The digest. */
+    @Nonnull private final MessageDigest digest;
+
+    /** Buffer used to batch input to the digest. */
+    @Nonnull private final byte[] buffer;
+
+    /** Handles assigned to objects written so far. */
+    @Nonnull private final Map<Object,Integer> handles;
+
+    /** Bytes in the buffer. */
+    private int position;
+
+    /** Next handle to assign. */
+    private int nextHandle;
+
+    /** Handle of the byte array class descriptor, or -1 if not yet written. */
+    private int byteArrayDescriptorHandle;
+
+    static {
+        // The class descriptors are constant, so take them from the real thing.
+        final byte[] marker = serialize(EMPTY_VALUE_MARKER);
+        EMPTY_VALUE_MARKER_FORM = Arrays.copyOfRange(marker, STREAM_HEADER.length, marker.length);
+        final byte[] array = serialize(new byte[0]);
+        BYTE_ARRAY_DESCRIPTOR_FORM = Arrays.copyOfRange(array, STREAM_HEADER.length + 1, array.length - 4);
+    }
+
+    /** Constructor. */
+    ObjectStreamDigester() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        buffer = new byte[BUFFER_SIZE];
+        handles = new IdentityHashMap<>();
+        reset();
+    }
+
+    /** Start a new stream. */
+    void reset() {
+        digest.reset();
+        handles.clear();
+        position = 0;
+        nextHandle = BASE_WIRE_HANDLE;
+        byteArrayDescriptorHandle = -1;
+        write(STREAM_HEADER, 0, STREAM_HEADER.length);
+    }
+
+    /**
+     * Write a string, as {@link ObjectOutputStream#writeObject(Object)} would.
+     * 
+     * @param value the string
+     */
+    void writeString(@Nonnull final String value) {
+        if (writeReference(value)) {
+            return;
+        }
+        handles.put(value, nextHandle++);
+
+        final int length = value.length();
+        long utfLength = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            utfLength += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+
+        if (utfLength > 0xFFFF) {
+            write(TC_LONGSTRING);
+            writeInt((int) (utfLength >>> 32));
+            writeInt((int) utfLength);
+        } else {
+            write(TC_STRING);
+            write((byte) (utfLength >>> 8));
+            write((byte) utfLength);
+        }
+
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                write((byte) c);
+            } else if (c > 0x07FF) {
+                write((byte) (0xE0 | c >> 12 & 0x0F));
+                write((byte) (0x80 | c >> 6 & 0x3F));
+                write((byte) (0x80 | c & 0x3F));
+            } else {
+                write((byte) (0xC0 | c >> 6 & 0x1F));
+                write((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Write a byte array, as {@link ObjectOutputStream#writeObject(Object)} would.
+     * 
+     * @param value the byte array
+     */
+    void writeBytes(@Nonnull final byte[] value) {
+        if (writeReference(value)) {
+            return;
+        }
+
+        write(TC_ARRAY);
+        if (byteArrayDescriptorHandle < 0) {
+            byteArrayDescriptorHandle = nextHandle++;
+            write(BYTE_ARRAY_DESCRIPTOR_FORM, 0, BYTE_ARRAY_DESCRIPTOR_FORM.length);
+        } else {
+            write(TC_REFERENCE);
+            writeInt(byteArrayDescriptorHandle);
+        }
+        handles.put(value, nextHandle++);
+        writeInt(value.length);
+        write(value, 0, value.length);
+    }
+
+    /** Write {@link #EMPTY_VALUE_MARKER}, as {@link ObjectOutputStream#writeObject(Object)} would. */
+    void writeEmptyValueMarker() {
+        if (writeReference(EMPTY_VALUE_MARKER)) {
+            return;
+        }
+        nextHandle += 2;
+        handles.put(EMPTY_VALUE_MARKER, nextHandle++);
+        write(EMPTY_VALUE_MARKER_FORM, 0, EMPTY_VALUE_MARKER_FORM.length);
+    }
+
+    /**
+     * Complete the stream and return its digest.
+     * 
+     * @return the digest of the stream
+     */
+    @Nonnull byte[] digest() {
+        digest.update(buffer, 0, position);
+        position = 0;
+        return digest.digest();
+    }
+
+    /**
+     * Write a back reference if the object has already been written.
+     * 
+     * @param object the object
+     * 
+     * @return whether a reference was written
+     */
+    private boolean writeReference(@Nonnull final Object object) {
+        final Integer handle = handles.get(object);
+        if (handle != null) {
+            write(TC_REFERENCE);
+            writeInt(handle);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write an integer in big-endian order.
+     * 
+     * @param value the integer
+     */
+    private void writeInt(final int value) {
+        write((byte) (value >>> 24));
+        write((byte) (value >>> 16));
+        write((byte) (value >>> 8));
+        write((byte) value);
+    }
+
+    /**
+     * Write a byte.
+     * 
+     * @param b the byte
+     */
+    private void write(final byte b) {
+        if (position == buffer.length) {
+            digest.update(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = b;
+    }
+
+    /**
+     * Write bytes.
+     * 
+     * @param bytes the bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     */
+    private void write(@Nonnull final byte[] bytes, final int offset, final int length) {
+        if (length > buffer.length - position) {
+            digest.update(buffer, 0, position);
+            position = 0;
+            if (length > buffer.length) {
+                digest.update(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    /**
+     * Serialize an object in its own stream.
+     * 
+     * @param object the object
+     * 
+     * @return the serialized stream
+     */
+    @Nonnull private static byte[] serialize(@Nonnull final Object object) {
+        try (final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
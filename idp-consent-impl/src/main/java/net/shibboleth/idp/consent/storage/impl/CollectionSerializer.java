@@ -38,6 +38,7 @@ import javax.json.stream.JsonGeneratorFactory;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.storage.StorageSerializer;
@@ -46,10 +47,18 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Serializes a {@link Collection} of strings. <code>Null</code> elements and non-string values are ignored.
+ * 
+ * <p>By default, the collection is serialized as a JSON array. In compact mode, it is instead serialized as the
+ * elements separated by newlines, preceded by a marker character, with backslash escaping of any backslash or
+ * newline within an element. Empty elements cannot be told apart from an empty collection in the compact form, and
+ * so are rejected in compact mode. Either form is accepted when deserializing, regardless of mode.</p>
  */
 public class CollectionSerializer extends AbstractInitializableComponent implements
         StorageSerializer<Collection<String>> {
 
+    /** Character that begins the compact form. */
+    private static final char COMPACT_MARKER = '~';
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(CollectionSerializer.class);
 
@@ -59,6 +68,9 @@ public class CollectionSerializer extends AbstractInitializableComponent impleme
     /** JSON reader factory. */
     @Nonnull private final JsonReaderFactory readerFactory;
 
+    /** Whether to serialize in the compact form. */
+    private boolean compact;
+
     /** Constructor. */
     public CollectionSerializer() {
         final JsonProvider provider = JsonProvider.provider();
@@ -66,11 +78,37 @@ public class CollectionSerializer extends AbstractInitializableComponent impleme
         readerFactory = provider.createReaderFactory(null);
     }
 
+    /**
+     * Get whether to serialize in the compact form.
+     * 
+     * @return whether to serialize in the compact form
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Set whether to serialize in the compact form.
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompact(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        compact = flag;
+    }
+
     /** {@inheritDoc} */
     @Override
     @Nonnull @NotEmpty public String serialize(@Nonnull final Collection<String> instance) throws IOException {
         Constraint.isNotNull(instance, "Storage indexes cannot be null");
 
+        if (compact) {
+            return serializeCompact(instance);
+        }
+
         final StringWriter sink = new StringWriter(128);
         
         try (final JsonGenerator gen = generatorFactory.createGenerator(sink)) {
@@ -94,6 +132,10 @@ public class CollectionSerializer extends AbstractInitializableComponent impleme
             @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
             @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
 
+        if (!value.isEmpty() && value.charAt(0) == COMPACT_MARKER) {
+            return deserializeCompact(value);
+        }
+
         final JsonReader reader = readerFactory.createReader(new StringReader(value));
         final JsonStructure st = reader.read();
         if (!(st instanceof JsonArray)) {
@@ -113,4 +155,83 @@ public class CollectionSerializer extends AbstractInitializableComponent impleme
         return collection;
     }
 
+    /**
+     * Serialize a collection in the compact form.
+     * 
+     * @param instance collection to serialize
+     * 
+     * @return the serialized collection
+     * 
+     * @throws IOException if the collection contains an empty element
+     */
+    @Nonnull @NotEmpty private String serializeCompact(@Nonnull final Collection<String> instance)
+            throws IOException {
+        final StringBuilder builder = new StringBuilder(32 * instance.size() + 1);
+        builder.append(COMPACT_MARKER);
+        boolean first = true;
+        for (final String element : instance) {
+            if (element == null) {
+                continue;
+            } else if (element.isEmpty()) {
+                throw new IOException("Empty elements are not supported in the compact form");
+            }
+            if (!first) {
+                builder.append('\n');
+            }
+            first = false;
+            for (int i = 0; i < element.length(); i++) {
+                final char c = element.charAt(i);
+                if (c == '\\') {
+                    builder.append("\\\\");
+                } else if (c == '\n') {
+                    builder.append("\\n");
+                } else {
+                    builder.append(c);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Deserialize a collection in the compact form.
+     * 
+     * @param value the serialized collection, starting with the marker character
+     * 
+     * @return the collection
+     * 
+     * @throws IOException if the value is malformed
+     */
+    @Nonnull private Collection<String> deserializeCompact(@Nonnull final String value) throws IOException {
+        final Collection<String> collection = new ArrayList<>();
+        if (value.length() == 1) {
+            return collection;
+        }
+
+        final StringBuilder element = new StringBuilder();
+        for (int i = 1; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\n') {
+                collection.add(element.toString());
+                element.setLength(0);
+            } else if (c == '\\') {
+                if (++i == value.length()) {
+                    throw new IOException("Found invalid escape sequence");
+                }
+                final char escaped = value.charAt(i);
+                if (escaped == 'n') {
+                    element.append('\n');
+                } else if (escaped == '\\') {
+                    element.append('\\');
+                } else {
+                    throw new IOException("Found invalid escape sequence");
+                }
+            } else {
+                element.append(c);
+            }
+        }
+        collection.add(element.toString());
+        return collection;
+    }
+
 }
@@ -28,9 +28,11 @@ import javax.annotation.Nonnull;
 import net.shibboleth.idp.consent.Consent;
 import net.shibboleth.idp.consent.context.ConsentContext;
 import net.shibboleth.idp.consent.impl.ConsentTestingSupport;
+import net.shibboleth.idp.consent.storage.impl.CollectionSerializer;
 import net.shibboleth.idp.consent.storage.impl.ConsentSerializer;
 import net.shibboleth.idp.profile.ActionTestingSupport;
 import net.shibboleth.idp.profile.context.ProfileInterceptorContext;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.logic.FunctionSupport;
 
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -208,4 +210,56 @@ public class CreateResultTest extends AbstractConsentIndexedStorageActionTest {
         }
         Assert.assertEquals(readStorageKeysFromIndex(), keys);
     }
+
+    @Test public void testMigrateIndex() throws Exception {
+        getMemoryStorageService().create("context", "_index", "[\"other\"]", null);
+
+        action.setCompactStorageIndex(true);
+        action.initialize();
+
+        final ConsentContext consentCtx = prc.getSubcontext(ConsentContext.class);
+        consentCtx.getCurrentConsents().putAll(ConsentTestingSupport.newConsentMap());
+
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+
+        Assert.assertEquals(readStorageKeysFromIndex(), Arrays.asList("other", "key"));
+        Assert.assertEquals(getMemoryStorageService().read("context", "_index").getValue(), "~other\nkey");
+    }
+
+    @Test public void testReadCompactIndex() throws Exception {
+        getMemoryStorageService().create("context", "_index", "~other", null);
+
+        action.initialize();
+
+        final ConsentContext consentCtx = prc.getSubcontext(ConsentContext.class);
+        consentCtx.getCurrentConsents().putAll(ConsentTestingSupport.newConsentMap());
+
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+
+        Assert.assertEquals(readStorageKeysFromIndex(), Arrays.asList("other", "key"));
+        Assert.assertEquals(getMemoryStorageService().read("context", "_index").getValue(), "[\"other\",\"key\"]");
+    }
+
+    @Test public void testCompactIndexSetBeforeSerializer() throws Exception {
+        action.setCompactStorageIndex(true);
+        action.setStorageKeysSerializer(new CollectionSerializer());
+        action.initialize();
+
+        final ConsentContext consentCtx = prc.getSubcontext(ConsentContext.class);
+        consentCtx.getCurrentConsents().putAll(ConsentTestingSupport.newConsentMap());
+
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+
+        Assert.assertEquals(getMemoryStorageService().read("context", "_index").getValue(), "~key");
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testCompactIndexInitializedSerializer() throws Exception {
+        final CollectionSerializer serializer = new CollectionSerializer();
+        serializer.initialize();
+
+        action.setStorageKeysSerializer(serializer);
+        action.setCompactStorageIndex(true);
+        action.initialize();
+    }
 }
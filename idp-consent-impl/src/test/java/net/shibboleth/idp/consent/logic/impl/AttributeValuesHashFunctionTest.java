@@ -19,6 +19,7 @@ package net.shibboleth.idp.consent.logic.impl;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -34,6 +35,7 @@ import net.shibboleth.idp.attribute.ByteAttributeValue;
 import net.shibboleth.idp.attribute.EmptyAttributeValue;
 import net.shibboleth.idp.attribute.IdPAttributeValue;
 import net.shibboleth.idp.attribute.ScopedStringAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.attribute.XMLObjectAttributeValue;
 import net.shibboleth.idp.consent.impl.ConsentTestingSupport;
 
@@ -118,4 +120,21 @@ public class AttributeValuesHashFunctionTest extends XMLObjectBaseTestCase {
     @Test public void unknownTypeNoValue() {
         assertEquals(function.apply(Collections.singletonList(testAV(null))), "xPtMT+sJsVtAtjNLzPrBBlfbY/yUsAQ7Ncxxc7Q5k70=");
     }
+
+    @Test public void testManyValues() {
+        // NOTE Any change is an ODS drift
+        final List<IdPAttributeValue> values = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            values.add(new StringAttributeValue("cn=group" + i + ",ou=groups,dc=example,dc=org"));
+        }
+        values.add(EmptyAttributeValue.NULL);
+        values.add(EmptyAttributeValue.NULL);
+        assertEquals(function.apply(values), "LzTyGoEW8luKul4UDkXIKIa+R01VZ+TmRLqitZaooSM=");
+        assertEquals(function.apply(values), "LzTyGoEW8luKul4UDkXIKIa+R01VZ+TmRLqitZaooSM=");
+    }
+
+    @Test public void unknownTypeObjectValue() {
+        assertEquals(function.apply(List.of(testAV("42"), testAV(Integer.valueOf(42)))),
+                "gU5KWTx3w4+NJpdg/QTk3QnH/a5wzA8E91xJG5enRt0=");
+    }
 }
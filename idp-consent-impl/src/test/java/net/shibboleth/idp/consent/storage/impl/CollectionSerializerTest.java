@@ -60,4 +60,44 @@ public class CollectionSerializerTest {
         final Collection<String> deserialized = serializer.deserialize(-1, "context", "key", serialized, null);
         Assert.assertEquals(deserialized, collection);
     }
+
+    @Test public void testCompact() throws Exception {
+        final CollectionSerializer compactSerializer = new CollectionSerializer();
+        compactSerializer.setCompact(true);
+        compactSerializer.initialize();
+
+        final Collection<String> collection = Arrays.asList("element1", "https://sp.example.org/shibboleth",
+                "back\\slash", "new\nline");
+        final String serialized = compactSerializer.serialize(collection);
+        Assert.assertEquals(serialized,
+                "~element1\nhttps://sp.example.org/shibboleth\nback\\\\slash\nnew\\nline");
+        Assert.assertTrue(serialized.length() < serializer.serialize(collection).length());
+        Assert.assertEquals(compactSerializer.deserialize(-1, "context", "key", serialized, null), collection);
+
+        // Either form is readable in either mode.
+        Assert.assertEquals(serializer.deserialize(-1, "context", "key", serialized, null), collection);
+        Assert.assertEquals(compactSerializer.deserialize(-1, "context", "key", serializer.serialize(collection),
+                null), collection);
+    }
+
+    @Test public void testCompactEmpty() throws Exception {
+        final CollectionSerializer compactSerializer = new CollectionSerializer();
+        compactSerializer.setCompact(true);
+        compactSerializer.initialize();
+
+        Assert.assertEquals(compactSerializer.serialize(Arrays.asList((String) null)), "~");
+        Assert.assertEquals(compactSerializer.deserialize(-1, "context", "key", "~", null), Collections.emptyList());
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testCompactEmptyElement() throws Exception {
+        final CollectionSerializer compactSerializer = new CollectionSerializer();
+        compactSerializer.setCompact(true);
+        compactSerializer.initialize();
+
+        compactSerializer.serialize(Arrays.asList(""));
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testCompactInvalidEscape() throws Exception {
+        serializer.deserialize(-1, "context", "key", "~bad\\escape", null);
+    }
 }
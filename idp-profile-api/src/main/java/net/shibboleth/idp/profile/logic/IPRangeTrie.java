@@ -0,0 +1,322 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.profile.logic;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.net.IPRange;
+
+/**
+ * Index of values by {@link IPRange}, answering which ranges contain an address in time proportional to the
+ * address length rather than the number of ranges.
+ *
+ * <p>IPv4 and IPv6 ranges are held in separate path-compressed binary tries keyed on the bits of each range's
+ * network address, so that a lookup descends at most one node per significant bit and visits only nodes whose
+ * range contains the address.</p>
+ *
+ * <p>The index is populated with {@link #add(IPRange, Object)} and must not be modified once shared between
+ * threads; lookups may then be made concurrently.</p>
+ *
+ * @param <T> type of value associated with each range
+ */
+@NotThreadSafe
+public class IPRangeTrie<T> {
+
+    /** Root of the IPv4 trie. */
+    @Nullable private Node<T> ipv4Root;
+
+    /** Root of the IPv6 trie. */
+    @Nullable private Node<T> ipv6Root;
+
+    /** Number of ranges added. */
+    private int size;
+
+    /**
+     * Associate a value with a range.
+     *
+     * @param range address range
+     * @param value value to return for addresses in the range
+     */
+    public void add(@Nonnull final IPRange range, @Nonnull final T value) {
+        Constraint.isNotNull(range, "Range cannot be null");
+        Constraint.isNotNull(value, "Value cannot be null");
+
+        final byte[] network = range.getNetworkAddress().getAddress();
+        final int prefixLength = getPrefixLength(range, network);
+        if (network.length == 4) {
+            ipv4Root = insert(ipv4Root, network, prefixLength, value);
+        } else {
+            ipv6Root = insert(ipv6Root, network, prefixLength, value);
+        }
+        size++;
+    }
+
+    /**
+     * Get whether any ranges have been added.
+     *
+     * @return true iff no ranges have been added
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the number of ranges added.
+     *
+     * @return number of ranges added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the values associated with every range containing an address.
+     *
+     * @param address address to look up
+     *
+     * @return the values, without duplicates, in order of increasingly specific range and, for ranges of the same
+     *  specificity, in the order added
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public List<T> lookup(@Nonnull final InetAddress address) {
+        return lookup(address.getAddress());
+    }
+
+    /**
+     * Get the values associated with every range containing an address.
+     *
+     * @param address address to look up, in network byte order
+     *
+     * @return the values, without duplicates, in order of increasingly specific range and, for ranges of the same
+     *  specificity, in the order added
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public List<T> lookup(@Nonnull final byte[] address) {
+        Node<T> node = address.length == 4 ? ipv4Root : (address.length == 16 ? ipv6Root : null);
+
+        List<T> result = null;
+        while (node != null && commonPrefixLength(node.key, address, node.prefixLength) == node.prefixLength) {
+            if (node.values != null) {
+                if (result == null) {
+                    result = new ArrayList<>(node.values.size());
+                }
+                for (final T value : node.values) {
+                    if (!result.contains(value)) {
+                        result.add(value);
+                    }
+                }
+            }
+            if (node.prefixLength == address.length * 8) {
+                break;
+            }
+            node = bit(address, node.prefixLength) == 0 ? node.zero : node.one;
+        }
+
+        return result != null ? Collections.unmodifiableList(result) : Collections.emptyList();
+    }
+
+    /**
+     * Get the most specific value associated with a range containing an address.
+     *
+     * @param address address to look up
+     *
+     * @return the value associated with the longest matching prefix, the first added if there are several, or null
+     */
+    @Nullable public T lookupMostSpecific(@Nonnull final InetAddress address) {
+        final byte[] bytes = address.getAddress();
+        Node<T> node = bytes.length == 4 ? ipv4Root : (bytes.length == 16 ? ipv6Root : null);
+
+        T result = null;
+        while (node != null && commonPrefixLength(node.key, bytes, node.prefixLength) == node.prefixLength) {
+            if (node.values != null) {
+                result = node.values.get(0);
+            }
+            if (node.prefixLength == bytes.length * 8) {
+                break;
+            }
+            node = bit(bytes, node.prefixLength) == 0 ? node.zero : node.one;
+        }
+        return result;
+    }
+
+    /**
+     * Insert a range below a node.
+     *
+     * @param node node to insert below, or null
+     * @param key network address of the range
+     * @param prefixLength number of significant bits in the key
+     * @param value value to associate with the range
+     * @param <T> type of value
+     *
+     * @return the node to put in place of the original
+     */
+    @Nonnull private static <T> Node<T> insert(@Nullable final Node<T> node, @Nonnull final byte[] key,
+            final int prefixLength, @Nonnull final T value) {
+        if (node == null) {
+            return new Node<>(key, prefixLength, value);
+        }
+
+        final int common = commonPrefixLength(node.key, key, Math.min(node.prefixLength, prefixLength));
+        if (common == node.prefixLength) {
+            if (common == prefixLength) {
+                node.addValue(value);
+            } else if (bit(key, common) == 0) {
+                node.zero = insert(node.zero, key, prefixLength, value);
+            } else {
+                node.one = insert(node.one, key, prefixLength, value);
+            }
+            return node;
+        }
+
+        // The new range either contains the node's range or diverges from it.
+        final Node<T> parent = common == prefixLength ? new Node<>(key, prefixLength, value)
+                : new Node<>(key, common, null);
+        parent.setChild(bit(node.key, common), node);
+        if (common < prefixLength) {
+            parent.setChild(bit(key, common), new Node<>(key, prefixLength, value));
+        }
+        return parent;
+    }
+
+    /**
+     * Determine the prefix length of a range by finding the first bit of its network address that can change
+     * without leaving the range.
+     *
+     * @param range address range
+     * @param network network address of the range
+     *
+     * @return the prefix length
+     */
+    private static int getPrefixLength(@Nonnull final IPRange range, @Nonnull final byte[] network) {
+        final byte[] probe = network.clone();
+        for (int i = 0; i < probe.length * 8; i++) {
+            probe[i >> 3] ^= 0x80 >>> (i & 7);
+            final boolean contained = range.contains(probe);
+            probe[i >> 3] ^= 0x80 >>> (i & 7);
+            if (contained) {
+                return i;
+            }
+        }
+        return probe.length * 8;
+    }
+
+    /**
+     * Count the leading bits two addresses have in common, up to a limit.
+     *
+     * @param a first address
+     * @param b second address
+     * @param limit maximum number of bits to compare
+     *
+     * @return the number of leading bits in common, at most the limit
+     */
+    private static int commonPrefixLength(@Nonnull final byte[] a, @Nonnull final byte[] b, final int limit) {
+        for (int i = 0; i * 8 < limit; i++) {
+            final int diff = (a[i] ^ b[i]) & 0xFF;
+            if (diff != 0) {
+                return Math.min(limit, i * 8 + Integer.numberOfLeadingZeros(diff) - 24);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Get a bit of an address.
+     *
+     * @param address address
+     * @param index bit index, counting from the most significant bit
+     *
+     * @return the bit
+     */
+    private static int bit(@Nonnull final byte[] address, final int index) {
+        return (address[index >> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * Trie node covering a single prefix.
+     *
+     * @param <T> type of value
+     */
+    private static final class Node<T> {
+
+        /** Address whose leading bits form the prefix. */
+        @Nonnull private final byte[] key;
+
+        /** Number of significant bits. */
+        private final int prefixLength;
+
+        /** Values of ranges with exactly this prefix, or null for a branching node. */
+        @Nullable private List<T> values;
+
+        /** Subtrie whose next bit is zero. */
+        @Nullable private Node<T> zero;
+
+        /** Subtrie whose next bit is one. */
+        @Nullable private Node<T> one;
+
+        /**
+         * Constructor.
+         *
+         * @param address address whose leading bits form the prefix
+         * @param length number of significant bits
+         * @param value initial value, or null for a branching node
+         */
+        Node(@Nonnull final byte[] address, final int length, @Nullable final T value) {
+            key = address;
+            prefixLength = length;
+            if (value != null) {
+                addValue(value);
+            }
+        }
+
+        /**
+         * Add a value.
+         *
+         * @param value value to add
+         */
+        void addValue(@Nonnull final T value) {
+            if (values == null) {
+                values = new ArrayList<>(1);
+            }
+            values.add(value);
+        }
+
+        /**
+         * Set a child.
+         *
+         * @param bit the next bit of addresses in the child
+         * @param child the child
+         */
+        void setChild(final int bit, @Nonnull final Node<T> child) {
+            if (bit == 0) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+    }
+
+}
@@ -19,14 +19,17 @@ package net.shibboleth.idp.profile.logic;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Set;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import net.shibboleth.idp.profile.context.navigate.RelyingPartyIdLookupFunction;
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.logic.StrategyIndirectedPredicate;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 
@@ -39,6 +42,9 @@ import org.opensaml.profile.context.ProfileRequestContext;
  */
 public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<ProfileRequestContext,String> {
 
+    /** Hardwired set of values to check against, if the predicate was built from one. */
+    @Nullable private final Set<String> candidateSet;
+
     /**
      * Constructor.
      * 
@@ -47,6 +53,7 @@ public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<Profile
     public RelyingPartyIdPredicate(
             @Nonnull @NonnullElements @ParameterName(name="candidates") final Collection<String> candidates) {
         super(new RelyingPartyIdLookupFunction(), StringSupport.normalizeStringCollection(candidates));
+        candidateSet = Set.copyOf(StringSupport.normalizeStringCollection(candidates));
     }
 
     /**
@@ -65,6 +72,18 @@ public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<Profile
      */
     public RelyingPartyIdPredicate(@Nonnull @ParameterName(name="pred") final Predicate<String> pred) {
         super(new RelyingPartyIdLookupFunction(), pred);
+        candidateSet = null;
+    }
+
+    /**
+     * Get the hardwired set of values the predicate checks against.
+     * 
+     * <p>This allows callers to index the predicate by relying party ID rather than evaluating it.</p>
+     * 
+     * @return the candidate values, or null if the predicate was built from a generalized predicate
+     */
+    @Nullable @NonnullElements @Unmodifiable public Set<String> getCandidates() {
+        return candidateSet;
     }
     
     /**
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.profile.logic;
+
+import java.util.List;
+
+import net.shibboleth.utilities.java.support.net.IPRange;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.net.InetAddresses;
+
+/** Unit test for {@link IPRangeTrie}. */
+public class IPRangeTrieTest {
+
+    @Test
+    public void testEmpty() {
+        final IPRangeTrie<String> trie = new IPRangeTrie<>();
+        
+        Assert.assertTrue(trie.isEmpty());
+        Assert.assertTrue(trie.lookup(InetAddresses.forString("192.168.1.1")).isEmpty());
+        Assert.assertTrue(trie.lookup(InetAddresses.forString("::1")).isEmpty());
+        Assert.assertNull(trie.lookupMostSpecific(InetAddresses.forString("192.168.1.1")));
+    }
+
+    @Test
+    public void testNested() {
+        final IPRangeTrie<String> trie = new IPRangeTrie<>();
+        trie.add(IPRange.parseCIDRBlock("192.168.1.0/24"), "c");
+        trie.add(IPRange.parseCIDRBlock("10.0.0.0/8"), "other");
+        trie.add(IPRange.parseCIDRBlock("192.168.0.0/16"), "b");
+        trie.add(IPRange.parseCIDRBlock("192.168.1.128/32"), "d");
+        trie.add(IPRange.parseCIDRBlock("0.0.0.0/0"), "a");
+        
+        Assert.assertEquals(trie.size(), 5);
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("192.168.1.128")), List.of("a", "b", "c", "d"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("192.168.1.129")), List.of("a", "b", "c"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("192.168.2.1")), List.of("a", "b"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("10.1.2.3")), List.of("a", "other"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("172.16.0.1")), List.of("a"));
+        Assert.assertEquals(trie.lookupMostSpecific(InetAddresses.forString("192.168.1.128")), "d");
+        Assert.assertEquals(trie.lookupMostSpecific(InetAddresses.forString("192.168.3.3")), "b");
+        
+        // IPv4 ranges do not match IPv6 addresses.
+        Assert.assertTrue(trie.lookup(InetAddresses.forString("::ffff:0:c0a8:101")).isEmpty());
+    }
+
+    @Test
+    public void testSiblings() {
+        final IPRangeTrie<String> trie = new IPRangeTrie<>();
+        trie.add(IPRange.parseCIDRBlock("192.168.1.0/25"), "low");
+        trie.add(IPRange.parseCIDRBlock("192.168.1.128/25"), "high");
+        trie.add(IPRange.parseCIDRBlock("192.168.1.0/24"), "all");
+        
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("192.168.1.1")), List.of("all", "low"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("192.168.1.200")), List.of("all", "high"));
+        Assert.assertTrue(trie.lookup(InetAddresses.forString("192.168.0.200")).isEmpty());
+    }
+
+    @Test
+    public void testDuplicates() {
+        final IPRangeTrie<String> trie = new IPRangeTrie<>();
+        trie.add(IPRange.parseCIDRBlock("192.168.1.0/24"), "foo");
+        trie.add(IPRange.parseCIDRBlock("192.168.1.0/24"), "bar");
+        trie.add(IPRange.parseCIDRBlock("192.168.0.0/16"), "foo");
+        
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("192.168.1.1")), List.of("foo", "bar"));
+        Assert.assertEquals(trie.lookupMostSpecific(InetAddresses.forString("192.168.1.1")), "foo");
+    }
+
+    @Test
+    public void testIPv6() {
+        final IPRangeTrie<String> trie = new IPRangeTrie<>();
+        trie.add(IPRange.parseCIDRBlock("2001:db8::/32"), "doc");
+        trie.add(IPRange.parseCIDRBlock("2001:db8:1::/48"), "site");
+        trie.add(IPRange.parseCIDRBlock("fe80::/10"), "local");
+        trie.add(IPRange.parseCIDRBlock("192.168.0.0/16"), "v4");
+        
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("2001:db8:1::1")), List.of("doc", "site"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("2001:db8:2::1")), List.of("doc"));
+        Assert.assertEquals(trie.lookup(InetAddresses.forString("fe80::ca2a:14ff:fe2a:3e04")), List.of("local"));
+        Assert.assertTrue(trie.lookup(InetAddresses.forString("2001:db9::1")).isEmpty());
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.profile.audit.impl;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Writes audit records to their loggers on a background thread, so that requests do not wait on the
+ * logging back-end.
+ * 
+ * <p>Records are held in a bounded queue. When the queue is full, a record is written on the calling thread
+ * instead, so that none is lost, and counted as an overflow. Records still queued when the component is
+ * destroyed are written before it returns.</p>
+ * 
+ * <p>Records are written without the caller's logging context (MDC), so this is only suitable for appenders
+ * whose layout relies on the record alone.</p>
+ */
+@ThreadSafe
+public class AsynchronousAuditSink extends AbstractInitializableComponent {
+
+    /** Time to wait for the queue to drain on shutdown, in milliseconds. */
+    private static final long SHUTDOWN_WAIT = 5000;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AsynchronousAuditSink.class);
+
+    /** Records queued. */
+    @Nonnull private final LongAdder queued;
+
+    /** Records written by the background thread. */
+    @Nonnull private final LongAdder written;
+
+    /** Records written on the calling thread because the queue was full. */
+    @Nonnull private final LongAdder overflows;
+
+    /** Maximum number of records queued. */
+    @Positive private int queueSize;
+
+    /** Queued records and the loggers to write them to. */
+    @Nullable private BlockingQueue<Pair<Logger,String>> queue;
+
+    /** Background thread. */
+    @Nullable private Thread writer;
+
+    /** Whether the background thread should keep running. */
+    private volatile boolean running;
+
+    /** Constructor. */
+    public AsynchronousAuditSink() {
+        queued = new LongAdder();
+        written = new LongAdder();
+        overflows = new LongAdder();
+        queueSize = 10000;
+    }
+
+    /**
+     * Set the maximum number of records queued, beyond which records are written on the calling thread.
+     * 
+     * <p>Defaults to 10000.</p>
+     * 
+     * @param size maximum number of records
+     */
+    public void setQueueSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        queueSize = (int) Constraint.isGreaterThan(0, size, "Queue size must be greater than 0");
+    }
+
+    /**
+     * Write an audit record.
+     * 
+     * @param logger logger to write to
+     * @param record record to write
+     */
+    public void write(@Nonnull final Logger logger, @Nonnull final String record) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        if (running && queue.offer(new Pair<>(logger, record))) {
+            queued.increment();
+        } else {
+            overflows.increment();
+            logger.info(record);
+        }
+    }
+
+    /**
+     * Get statistics.
+     * 
+     * @return counts of records queued, written in the background, written on the calling thread because the
+     *  queue was full, and currently queued
+     */
+    @Nonnull @NonnullElements @Unmodifiable public Map<String,Long> getStatistics() {
+        return Map.of("queued", queued.sum(),
+                "written", written.sum(),
+                "overflows", overflows.sum(),
+                "pending", queue != null ? (long) queue.size() : 0L);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        queue = new ArrayBlockingQueue<>(queueSize);
+        running = true;
+        writer = new Thread(this::drain, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(SHUTDOWN_WAIT);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        if (queue != null) {
+            // Anything left if the writer didn't finish in time.
+            Pair<Logger,String> entry;
+            while ((entry = queue.poll()) != null) {
+                entry.getFirst().info(entry.getSecond());
+            }
+        }
+
+        super.doDestroy();
+    }
+
+    /** Write queued records until stopped and the queue is empty. */
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                final Pair<Logger,String> entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    entry.getFirst().info(entry.getSecond());
+                    written.increment();
+                }
+            } catch (final InterruptedException e) {
+                log.debug("Audit log writer interrupted");
+            } catch (final RuntimeException e) {
+                log.error("Error writing audit record", e);
+            }
+        }
+    }
+
+}
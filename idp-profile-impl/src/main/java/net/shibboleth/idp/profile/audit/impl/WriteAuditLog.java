@@ -27,6 +27,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -36,6 +38,7 @@ import javax.servlet.http.HttpServletRequest;
 import net.shibboleth.idp.profile.AbstractProfileAction;
 import net.shibboleth.idp.profile.IdPAuditFields;
 import net.shibboleth.idp.profile.context.AuditContext;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
@@ -58,10 +61,26 @@ import org.springframework.webflow.execution.RequestContext;
 /**
  * Action that produces audit log entries based on an {@link AuditContext} and one or more formatting strings. 
  * 
+ * <p>The formatting strings are compiled into a sequence of field writers when the first action using them is
+ * initialized. The result, including the loggers it writes to, is shared with every other instance using the same
+ * formatting, since an instance is normally created for each request. Records are built in a buffer reused by each
+ * thread, and may optionally be handed to an {@link AsynchronousAuditSink} to be written in the background.</p>
+ * 
  * @event {@link EventIds#PROCEED_EVENT_ID}
  */
 public class WriteAuditLog extends AbstractProfileAction {
 
+    /** Largest record buffer retained by a thread between records. */
+    private static final int MAX_RETAINED_BUFFER = 16384;
+
+    /** Record buffer for each thread. */
+    @Nonnull private static final ThreadLocal<StringBuilder> RECORD_BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    /** Compiled formatting shared by instances, keyed by formatting map. */
+    @Nonnull private static final ConcurrentMap<Map<String,List<String>>,CompiledFormat[]> COMPILED_FORMATS =
+            new ConcurrentHashMap<>();
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(WriteAuditLog.class);
     
@@ -76,6 +95,12 @@ public class WriteAuditLog extends AbstractProfileAction {
     
     /** Convert date/time fields to default time zone. */
     private boolean useDefaultTimeZone;
+    
+    /** Optional sink to write records in the background. */
+    @Nullable private AsynchronousAuditSink auditSink;
+    
+    /** Compiled formatting, one per category, shared with other instances. */
+    @NonnullAfterInit private CompiledFormat[] compiledFormats;
 
     /** The Spring RequestContext to operate on. */
     @Nullable private RequestContext requestContext;
@@ -128,7 +153,7 @@ public class WriteAuditLog extends AbstractProfileAction {
         ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
         Constraint.isNotNull(map, "Audit formatting map cannot be null");
         
-        formattingMap = new HashMap<>(map.size());
+        final Map<String,List<String>> formats = new HashMap<>(map.size());
         
         for (final Map.Entry<String,String> entry : map.entrySet()) {
             final String category = StringSupport.trimOrNull(entry.getKey());
@@ -164,8 +189,10 @@ public class WriteAuditLog extends AbstractProfileAction {
                 format.add(field.toString());
             }
             
-            formattingMap.put(category, format);
+            formats.put(category, List.copyOf(format));
         }
+        
+        formattingMap = Map.copyOf(formats);
     }
 // Checkstyle: CyclomaticComplexity ON
 
@@ -193,6 +220,17 @@ public class WriteAuditLog extends AbstractProfileAction {
         useDefaultTimeZone = flag;
     }
     
+    /**
+     * Set a sink to write records in the background instead of on the calling thread.
+     * 
+     * @param sink audit sink
+     */
+    public void setAuditSink(@Nullable final AsynchronousAuditSink sink) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        auditSink = sink;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -203,6 +241,17 @@ public class WriteAuditLog extends AbstractProfileAction {
         } else {
             dateTimeFormatter = dateTimeFormatter.withZone(ZoneOffset.UTC);
         }
+        
+        compiledFormats = COMPILED_FORMATS.computeIfAbsent(formattingMap, WriteAuditLog::compile);
+    }
+
+    /**
+     * Get the compiled formatting in use.
+     * 
+     * @return compiled formatting, one per category
+     */
+    @NonnullAfterInit @NonnullElements CompiledFormat[] getCompiledFormats() {
+        return compiledFormats;
     }
 
     /** {@inheritDoc} */
@@ -228,61 +277,34 @@ public class WriteAuditLog extends AbstractProfileAction {
         return true;
     }
     
-// Checkstyle: CyclomaticComplexity OFF
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        for (final Map.Entry<String,List<String>> entry : formattingMap.entrySet()) {
+        StringBuilder record = RECORD_BUFFER.get();
         
-            final StringBuilder record = new StringBuilder();
-    
-            for (final String token : entry.getValue()) {
-                if (token.startsWith("%")) {
-                    if (token.length() == 1 || token.charAt(1) == '%') {
-                        record.append('%');
-                    } else {
-                        final String field = token.substring(1);
-                        
-                        if (IdPAuditFields.EVENT_TIME.equals(field)) {
-                            record.append(dateTimeFormatter.format(Instant.now()));
-                        } else if (IdPAuditFields.EVENT_TYPE.equals(field)) {
-                            final Event event = requestContext.getCurrentEvent();
-                            if (event != null && !event.getId().equals(EventIds.PROCEED_EVENT_ID)) {
-                                record.append(event.getId());
-                            }
-                        } else if (IdPAuditFields.PROFILE.equals(field)) {
-                            record.append(profileRequestContext.getProfileId());
-                        } else if (IdPAuditFields.REMOTE_ADDR.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getRemoteAddr());
-                        } else if (IdPAuditFields.URI.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getRequestURI());
-                        } else if (IdPAuditFields.URL.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getRequestURL());
-                        } else if (IdPAuditFields.USER_AGENT.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getHeader("User-Agent"));
-                        } else if (auditCtx != null) {
-                            final Iterator<String> iter = auditCtx.getFieldValues(field).iterator();
-                            while (iter.hasNext()) {
-                                record.append(iter.next());
-                                if (iter.hasNext()) {
-                                    record.append(',');
-                                }
-                            }
-                        }
-                    }
-                } else {
-                    record.append(token);
-                }
+        for (final CompiledFormat format : compiledFormats) {
+        
+            record.setLength(0);
+            for (final FieldWriter writer : format.writers) {
+                writer.write(record, this, profileRequestContext);
             }
             
             filter(record);
             
-            LoggerFactory.getLogger(entry.getKey() + '.'
-                    + profileRequestContext.getLoggingId()).info(record.toString());
+            final Logger logger = format.getLogger(profileRequestContext.getLoggingId());
+            if (auditSink != null) {
+                auditSink.write(logger, record.toString());
+            } else {
+                logger.info(record.toString());
+            }
+        }
+        
+        if (record.capacity() > MAX_RETAINED_BUFFER) {
+            record = new StringBuilder(512);
+            RECORD_BUFFER.set(record);
         }
     }
-// Checkstyle: CyclomaticComplexity ON
     
     /**
      * Optional override to filter the outgoing log message, does nothing by default.
@@ -293,4 +315,205 @@ public class WriteAuditLog extends AbstractProfileAction {
         
     }
     
+    /**
+     * Compile a formatting map.
+     * 
+     * @param formats map of log category to formatting tokens
+     * 
+     * @return compiled formatting, one per category
+     */
+    @Nonnull @NonnullElements private static CompiledFormat[] compile(
+            @Nonnull @NonnullElements final Map<String,List<String>> formats) {
+        final CompiledFormat[] compiled = new CompiledFormat[formats.size()];
+        int i = 0;
+        for (final Map.Entry<String,List<String>> entry : formats.entrySet()) {
+            compiled[i++] = new CompiledFormat(entry.getKey(), compile(entry.getValue()));
+        }
+        return compiled;
+    }
+    
+    /**
+     * Compile formatting tokens into field writers, merging adjacent literals.
+     * 
+     * @param tokens formatting tokens
+     * 
+     * @return field writers
+     */
+    @Nonnull @NonnullElements private static FieldWriter[] compile(
+            @Nonnull @NonnullElements final List<String> tokens) {
+        final List<FieldWriter> writers = new ArrayList<>(tokens.size());
+        final StringBuilder literal = new StringBuilder();
+        
+        for (final String token : tokens) {
+            if (!token.startsWith("%")) {
+                literal.append(token);
+            } else if (token.length() == 1 || token.charAt(1) == '%') {
+                literal.append('%');
+            } else {
+                if (literal.length() > 0) {
+                    writers.add(literalWriter(literal.toString()));
+                    literal.setLength(0);
+                }
+                writers.add(fieldWriter(token.substring(1)));
+            }
+        }
+        
+        if (literal.length() > 0) {
+            writers.add(literalWriter(literal.toString()));
+        }
+        
+        return writers.toArray(new FieldWriter[writers.size()]);
+    }
+    
+    /**
+     * Get a writer for literal text.
+     * 
+     * @param literal text to write
+     * 
+     * @return field writer
+     */
+    @Nonnull private static FieldWriter literalWriter(@Nonnull final String literal) {
+        return (record, action, profileRequestContext) -> record.append(literal);
+    }
+    
+// Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Get a writer for a field.
+     * 
+     * <p>Fields drawn from the servlet request fall back to the {@link AuditContext} if there is no request.</p>
+     * 
+     * @param field field name
+     * 
+     * @return field writer
+     */
+    @Nonnull private static FieldWriter fieldWriter(@Nonnull @NotEmpty final String field) {
+        switch (field) {
+            case IdPAuditFields.EVENT_TIME:
+                return (record, action, profileRequestContext) ->
+                        record.append(action.dateTimeFormatter.format(Instant.now()));
+                
+            case IdPAuditFields.EVENT_TYPE:
+                return (record, action, profileRequestContext) -> {
+                    final Event event = action.requestContext.getCurrentEvent();
+                    if (event != null && !event.getId().equals(EventIds.PROCEED_EVENT_ID)) {
+                        record.append(event.getId());
+                    }
+                };
+                
+            case IdPAuditFields.PROFILE:
+                return (record, action, profileRequestContext) -> record.append(profileRequestContext.getProfileId());
+                
+            case IdPAuditFields.REMOTE_ADDR:
+                return (record, action, profileRequestContext) -> {
+                    if (action.httpRequest != null) {
+                        record.append(action.httpRequest.getRemoteAddr());
+                    } else {
+                        action.appendAuditField(record, field);
+                    }
+                };
+                
+            case IdPAuditFields.URI:
+                return (record, action, profileRequestContext) -> {
+                    if (action.httpRequest != null) {
+                        record.append(action.httpRequest.getRequestURI());
+                    } else {
+                        action.appendAuditField(record, field);
+                    }
+                };
+                
+            case IdPAuditFields.URL:
+                return (record, action, profileRequestContext) -> {
+                    if (action.httpRequest != null) {
+                        record.append(action.httpRequest.getRequestURL());
+                    } else {
+                        action.appendAuditField(record, field);
+                    }
+                };
+                
+            case IdPAuditFields.USER_AGENT:
+                return (record, action, profileRequestContext) -> {
+                    if (action.httpRequest != null) {
+                        record.append(action.httpRequest.getHeader("User-Agent"));
+                    } else {
+                        action.appendAuditField(record, field);
+                    }
+                };
+                
+            default:
+                return (record, action, profileRequestContext) -> action.appendAuditField(record, field);
+        }
+    }
+// Checkstyle: CyclomaticComplexity ON
+    
+    /**
+     * Append the comma-separated values of a field in the {@link AuditContext}, if any.
+     * 
+     * @param record record being built
+     * @param field field name
+     */
+    private void appendAuditField(@Nonnull final StringBuilder record, @Nonnull @NotEmpty final String field) {
+        if (auditCtx != null) {
+            final Iterator<String> iter = auditCtx.getFieldValues(field).iterator();
+            while (iter.hasNext()) {
+                record.append(iter.next());
+                if (iter.hasNext()) {
+                    record.append(',');
+                }
+            }
+        }
+    }
+    
+    /** Writes one part of a record. */
+    @FunctionalInterface
+    private interface FieldWriter {
+        
+        /**
+         * Append this part of the record.
+         * 
+         * @param record record being built
+         * @param action action writing the record
+         * @param profileRequestContext current profile request context
+         */
+        void write(@Nonnull StringBuilder record, @Nonnull WriteAuditLog action,
+                @Nonnull ProfileRequestContext profileRequestContext);
+    }
+    
+    /** The compiled formatting for one category, with its loggers. */
+    static final class CompiledFormat {
+        
+        /** Log category. */
+        @Nonnull @NotEmpty private final String category;
+        
+        /** Field writers. */
+        @Nonnull @NonnullElements private final FieldWriter[] writers;
+        
+        /** Loggers by logging ID. */
+        @Nonnull private final ConcurrentMap<String,Logger> loggers;
+        
+        /**
+         * Constructor.
+         * 
+         * @param cat log category
+         * @param fieldWriters field writers
+         */
+        CompiledFormat(@Nonnull @NotEmpty final String cat,
+                @Nonnull @NonnullElements final FieldWriter[] fieldWriters) {
+            category = cat;
+            writers = fieldWriters;
+            loggers = new ConcurrentHashMap<>();
+        }
+        
+        /**
+         * Get the logger for a logging ID.
+         * 
+         * @param loggingId logging ID of the profile
+         * 
+         * @return logger
+         */
+        @Nonnull Logger getLogger(@Nullable final String loggingId) {
+            return loggers.computeIfAbsent(String.valueOf(loggingId),
+                    id -> LoggerFactory.getLogger(category + '.' + id));
+        }
+    }
+    
 }
\ No newline at end of file
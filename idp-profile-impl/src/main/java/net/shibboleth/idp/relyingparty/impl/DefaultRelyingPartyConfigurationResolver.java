@@ -19,8 +19,11 @@ package net.shibboleth.idp.relyingparty.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -28,6 +31,8 @@ import javax.annotation.Nullable;
 
 import net.shibboleth.ext.spring.service.AbstractServiceableComponent;
 import net.shibboleth.idp.profile.config.SecurityConfiguration;
+import net.shibboleth.idp.profile.context.navigate.RelyingPartyIdLookupFunction;
+import net.shibboleth.idp.profile.logic.RelyingPartyIdPredicate;
 import net.shibboleth.idp.profile.logic.VerifiedProfilePredicate;
 import net.shibboleth.idp.relyingparty.RelyingPartyConfiguration;
 import net.shibboleth.idp.relyingparty.RelyingPartyConfigurationResolver;
@@ -52,17 +57,35 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Note that this resolver does not permit more than one {@link RelyingPartyConfiguration} with the same ID.
  * </p>
+ * 
+ * <p>
+ * Configurations activated by a fixed set of relying party IDs (via {@link RelyingPartyIdPredicate}) are indexed
+ * by ID at initialization, so only the remaining configurations have their conditions evaluated per request.
+ * Results are returned in the order the configurations were supplied.
+ * </p>
  */
 public class DefaultRelyingPartyConfigurationResolver
         extends AbstractServiceableComponent<RelyingPartyConfigurationResolver>
         implements RelyingPartyConfigurationResolver {
 
+    /** Shared empty position array. */
+    @Nonnull private static final int[] NO_POSITIONS = new int[0];
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(DefaultRelyingPartyConfigurationResolver.class);
 
+    /** Lookup strategy for the relying party ID, matching that used by {@link RelyingPartyIdPredicate}. */
+    @Nonnull private final RelyingPartyIdLookupFunction relyingPartyIdLookupStrategy;
+
     /** Registered relying party configurations. */
     @Nonnull private List<RelyingPartyConfiguration> rpConfigurations;
 
+    /** Positions of the configurations activated by each relying party ID, in ascending order. */
+    @NonnullAfterInit private Map<String,int[]> relyingPartyIdIndex;
+
+    /** Positions of the configurations whose conditions must be evaluated, in ascending order. */
+    @NonnullAfterInit private int[] evaluatedPositions;
+
     /** Unverified relying party configuration, used if the request is unverified. */
     @Nullable private RelyingPartyConfiguration unverifiedConfiguration;
 
@@ -84,6 +107,7 @@ public class DefaultRelyingPartyConfigurationResolver
     /** Constructor. */
     public DefaultRelyingPartyConfigurationResolver() {
         rpConfigurations = Collections.emptyList();
+        relyingPartyIdLookupStrategy = new RelyingPartyIdLookupFunction();
         verificationPredicate = new VerifiedProfilePredicate();
         signingCredentials = Collections.emptyList();
         encryptionCredentials = Collections.emptyList();
@@ -195,6 +219,27 @@ public class DefaultRelyingPartyConfigurationResolver
             }
             configIds.add(config.getId());
         }
+
+        final Map<String,List<Integer>> positionsById = new HashMap<>();
+        final List<Integer> evaluated = new ArrayList<>();
+        for (int i = 0; i < rpConfigurations.size(); i++) {
+            final Set<String> candidates = getCandidates(rpConfigurations.get(i));
+            if (candidates != null) {
+                for (final String candidate : candidates) {
+                    positionsById.computeIfAbsent(candidate, k -> new ArrayList<>()).add(i);
+                }
+            } else {
+                evaluated.add(i);
+            }
+        }
+
+        final Map<String,int[]> index = new HashMap<>(positionsById.size());
+        positionsById.forEach((id, positions) -> index.put(id, toArray(positions)));
+        relyingPartyIdIndex = Map.copyOf(index);
+        evaluatedPositions = toArray(evaluated);
+
+        log.debug("Indexed {} relying party configurations by name, {} will be evaluated per request",
+                rpConfigurations.size() - evaluatedPositions.length, evaluatedPositions.length);
     }
 
     /** {@inheritDoc} */
@@ -217,17 +262,7 @@ public class DefaultRelyingPartyConfigurationResolver
             return Collections.singleton(getUnverifiedConfiguration());
         }
 
-        final ArrayList<RelyingPartyConfiguration> matches = new ArrayList<>();
-
-        for (final RelyingPartyConfiguration configuration : rpConfigurations) {
-            log.debug("Checking if relying party configuration {} is applicable", configuration.getId());
-            if (configuration.test(context)) {
-                log.debug("Relying party configuration {} is applicable", configuration.getId());
-                matches.add(configuration);
-            } else {
-                log.debug("Relying party configuration {} is not applicable", configuration.getId());
-            }
-        }
+        final List<RelyingPartyConfiguration> matches = findApplicable(context, false);
 
         if (matches.isEmpty()) {
             log.debug("No matching Relying Party Configuration found, returning the default configuration {}",
@@ -257,13 +292,9 @@ public class DefaultRelyingPartyConfigurationResolver
             return getUnverifiedConfiguration();
         }
 
-        for (final RelyingPartyConfiguration configuration : rpConfigurations) {
-            log.debug("Checking if relying party configuration {} is applicable", configuration.getId());
-            if (configuration.test(context)) {
-                log.debug("Relying party configuration {} is applicable", configuration.getId());
-                return configuration;
-            }
-            log.debug("Relying party configuration {} is not applicable", configuration.getId());
+        final List<RelyingPartyConfiguration> matches = findApplicable(context, true);
+        if (!matches.isEmpty()) {
+            return matches.get(0);
         }
 
         log.debug("No relying party configurations are applicable, returning the default configuration {}",
@@ -271,6 +302,76 @@ public class DefaultRelyingPartyConfigurationResolver
         return getDefaultConfiguration();
     }
 
+    /**
+     * Find the verified configurations applicable to a request, in order.
+     * 
+     * <p>Configurations indexed under the request's relying party ID are applicable without evaluation, and are
+     * merged by position with those whose conditions have to be evaluated.</p>
+     * 
+     * @param context profile request context
+     * @param single whether to stop at the first applicable configuration
+     * 
+     * @return the applicable configurations
+     */
+    @Nonnull @NonnullElements private List<RelyingPartyConfiguration> findApplicable(
+            @Nonnull final ProfileRequestContext context, final boolean single) {
+        
+        final String relyingPartyId = relyingPartyIdLookupStrategy.apply(context);
+        final int[] named = relyingPartyId != null
+                ? relyingPartyIdIndex.getOrDefault(relyingPartyId, NO_POSITIONS) : NO_POSITIONS;
+
+        final List<RelyingPartyConfiguration> matches = new ArrayList<>(single ? 1 : named.length + 1);
+        int n = 0;
+        int e = 0;
+        while (n < named.length || e < evaluatedPositions.length) {
+            if (e == evaluatedPositions.length || (n < named.length && named[n] < evaluatedPositions[e])) {
+                final RelyingPartyConfiguration configuration = rpConfigurations.get(named[n++]);
+                log.debug("Relying party configuration {} is applicable to {} by name", configuration.getId(),
+                        relyingPartyId);
+                matches.add(configuration);
+            } else {
+                final RelyingPartyConfiguration configuration = rpConfigurations.get(evaluatedPositions[e++]);
+                log.debug("Checking if relying party configuration {} is applicable", configuration.getId());
+                if (!configuration.test(context)) {
+                    log.debug("Relying party configuration {} is not applicable", configuration.getId());
+                    continue;
+                }
+                log.debug("Relying party configuration {} is applicable", configuration.getId());
+                matches.add(configuration);
+            }
+            if (single) {
+                break;
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Get the relying party IDs that alone activate a configuration.
+     * 
+     * @param config the configuration
+     * 
+     * @return the IDs, or null if the configuration's condition has to be evaluated
+     */
+    @Nullable private Set<String> getCandidates(@Nonnull final RelyingPartyConfiguration config) {
+        if (config.getActivationCondition() instanceof RelyingPartyIdPredicate) {
+            return ((RelyingPartyIdPredicate) config.getActivationCondition()).getCandidates();
+        }
+        return null;
+    }
+
+    /**
+     * Convert a list of positions to an array.
+     * 
+     * @param positions the positions
+     * 
+     * @return the array
+     */
+    @Nonnull private static int[] toArray(@Nonnull final List<Integer> positions) {
+        return positions.isEmpty() ? NO_POSITIONS : positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
     /** {@inheritDoc} */
     @Override
     @Nullable public SecurityConfiguration getDefaultSecurityConfiguration(@Nonnull @NotEmpty final String profileId) {
@@ -140,6 +140,80 @@ public class WriteAuditLogTest {
         Assert.assertEquals(action.getResult(), "192.168.1.1 https://idp.example.org/path/to/foo - Mock");
     }
 
+    @Test public void testLiterals() throws ComponentInitializationException {
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("A").add("foo");
+        
+        action.setFormattingMap(Collections.singletonMap("category", "%% %A 100% |%A|"));
+        action.initialize();
+        
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(action.getResult(), "% foo 100% |foo|");
+        
+        // The record buffer is reused.
+        ac.getFieldValues("A").clear();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(action.getResult(), "%  100% ||");
+    }
+
+    @Test public void testNoServletRequest() throws ComponentInitializationException {
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("a").add("10.0.0.1");
+        
+        final FilteringAction noRequest = new FilteringAction();
+        noRequest.setFormattingMap(Collections.singletonMap("category", "%a %UA"));
+        noRequest.initialize();
+        
+        ActionTestingSupport.assertProceedEvent(noRequest.execute(src));
+        Assert.assertEquals(noRequest.getResult(), "10.0.0.1 ");
+    }
+
+    @Test public void testSharedFormats() throws ComponentInitializationException {
+        action.setFormattingMap(Collections.singletonMap("category", "%a %UA"));
+        action.initialize();
+        
+        final MockHttpServletRequest mock = new MockHttpServletRequest();
+        mock.setRemoteAddr("10.0.0.2");
+        mock.addHeader("User-Agent", "Other");
+        final FilteringAction other = new FilteringAction();
+        other.setHttpServletRequest(mock);
+        other.setFormattingMap(Collections.singletonMap("category", "%a %UA"));
+        other.initialize();
+        
+        Assert.assertSame(other.getCompiledFormats(), action.getCompiledFormats());
+        Assert.assertSame(other.getCompiledFormats()[0].getLogger(prc.getLoggingId()),
+                action.getCompiledFormats()[0].getLogger(prc.getLoggingId()));
+        
+        // Shared formatting still draws on each instance's own request.
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(action.getResult(), "192.168.1.1 Mock");
+        ActionTestingSupport.assertProceedEvent(other.execute(src));
+        Assert.assertEquals(other.getResult(), "10.0.0.2 Other");
+    }
+
+    @Test public void testAuditSink() throws ComponentInitializationException {
+        final AsynchronousAuditSink sink = new AsynchronousAuditSink();
+        sink.setQueueSize(10);
+        sink.initialize();
+        
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("A").add("foo");
+        
+        action.setFormattingMap(Collections.singletonMap("category", "%A"));
+        action.setAuditSink(sink);
+        action.initialize();
+        
+        for (int i = 0; i < 50; ++i) {
+            ActionTestingSupport.assertProceedEvent(action.execute(src));
+        }
+        Assert.assertEquals(action.getResult(), "foo");
+        
+        sink.destroy();
+        final long queued = sink.getStatistics().get("queued");
+        Assert.assertEquals(queued + sink.getStatistics().get("overflows"), 50);
+        Assert.assertEquals(sink.getStatistics().get("pending").longValue(), 0);
+    }
+
 
     /**
      * Subclass for testing purposes that grants access to the built log entry.
@@ -20,9 +20,11 @@ package net.shibboleth.idp.relyingparty.impl;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 
 import net.shibboleth.ext.spring.service.MockApplicationContext;
 import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.idp.profile.logic.RelyingPartyIdPredicate;
 import net.shibboleth.idp.relyingparty.RelyingPartyConfiguration;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 
@@ -210,4 +212,79 @@ public class DefaultRelyingPartyConfigurationResolverTest {
         result = resolver.resolveSingle(null);
         Assert.assertNull(result);
     }
-}
\ No newline at end of file
+
+    @Test public void testResolveByName() throws Exception {
+        final ProfileRequestContext requestContext = new ProfileRequestContext();
+        final RelyingPartyContext rpc = requestContext.getSubcontext(RelyingPartyContext.class, true);
+        rpc.setVerified(true);
+
+        final RelyingPartyConfiguration defaultRP = new RelyingPartyConfiguration();
+        defaultRP.setId("defaultRPId");
+        defaultRP.setResponderId("defaultRPResp");
+        defaultRP.initialize();
+
+        final RelyingPartyConfiguration one = buildConfiguration("one",
+                new RelyingPartyIdPredicate(Arrays.asList("sp1", " sp2 ")));
+        final RelyingPartyConfiguration two = buildConfiguration("two", Predicates.alwaysTrue());
+        final RelyingPartyConfiguration three = buildConfiguration("three", new RelyingPartyIdPredicate("sp1"));
+        final RelyingPartyConfiguration four = buildConfiguration("four", Predicates.alwaysFalse());
+        final RelyingPartyConfiguration five = buildConfiguration("five",
+                new RelyingPartyIdPredicate(Predicates.equalTo("sp1")));
+
+        final DefaultRelyingPartyConfigurationResolver resolver = new DefaultRelyingPartyConfigurationResolver();
+        resolver.setId("test");
+        resolver.setRelyingPartyConfigurations(Arrays.asList(one, two, three, four, five));
+        resolver.setDefaultConfiguration(defaultRP);
+        resolver.setApplicationContext(new MockApplicationContext());
+        resolver.initialize();
+
+        rpc.setRelyingPartyId("sp1");
+        Assert.assertEquals(resolver.resolve(requestContext), Arrays.asList(one, two, three, five));
+        Assert.assertSame(resolver.resolveSingle(requestContext), one);
+
+        rpc.setRelyingPartyId("sp2");
+        Assert.assertEquals(resolver.resolve(requestContext), Arrays.asList(one, two));
+        Assert.assertSame(resolver.resolveSingle(requestContext), one);
+
+        rpc.setRelyingPartyId("sp3");
+        Assert.assertEquals(resolver.resolve(requestContext), Arrays.asList(two));
+        Assert.assertSame(resolver.resolveSingle(requestContext), two);
+
+        rpc.setRelyingPartyId(null);
+        Assert.assertEquals(resolver.resolve(requestContext), Arrays.asList(two));
+    }
+
+    @Test public void testResolveByNameDefault() throws Exception {
+        final ProfileRequestContext requestContext = new ProfileRequestContext();
+        final RelyingPartyContext rpc = requestContext.getSubcontext(RelyingPartyContext.class, true);
+        rpc.setVerified(true);
+        rpc.setRelyingPartyId("sp3");
+
+        final RelyingPartyConfiguration defaultRP = new RelyingPartyConfiguration();
+        defaultRP.setId("defaultRPId");
+        defaultRP.setResponderId("defaultRPResp");
+        defaultRP.initialize();
+
+        final DefaultRelyingPartyConfigurationResolver resolver = new DefaultRelyingPartyConfigurationResolver();
+        resolver.setId("test");
+        resolver.setRelyingPartyConfigurations(Arrays.asList(
+                buildConfiguration("one", new RelyingPartyIdPredicate("sp1")),
+                buildConfiguration("two", new RelyingPartyIdPredicate("sp2"))));
+        resolver.setDefaultConfiguration(defaultRP);
+        resolver.setApplicationContext(new MockApplicationContext());
+        resolver.initialize();
+
+        Assert.assertEquals(resolver.resolve(requestContext), Arrays.asList(defaultRP));
+        Assert.assertSame(resolver.resolveSingle(requestContext), defaultRP);
+    }
+
+    private RelyingPartyConfiguration buildConfiguration(final String id,
+            final Predicate<ProfileRequestContext> condition) throws ComponentInitializationException {
+        final RelyingPartyConfiguration config = new RelyingPartyConfiguration();
+        config.setId(id);
+        config.setResponderId("foo");
+        config.setActivationCondition(condition);
+        config.initialize();
+        return config;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.saml.relyingparty.impl;
+
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Wraps a predicate over metadata so that its result is computed once per {@link EntityDescriptor} object.
+ * 
+ * <p>Results are held against the identity of the descriptor and weakly referenced, so a metadata refresh,
+ * which replaces the descriptor objects, invalidates them. The wrapped predicate must depend only on the
+ * descriptor and the document containing it.</p>
+ */
+@ThreadSafe
+final class MemoizingEntityDescriptorPredicate implements Predicate<EntityDescriptor> {
+
+    /** The wrapped predicate. */
+    @Nonnull private final Predicate<EntityDescriptor> predicate;
+
+    /** Results by descriptor. */
+    @Nonnull private final Cache<EntityDescriptor,Boolean> results;
+
+    /**
+     * Constructor.
+     *
+     * @param pred the predicate to wrap
+     */
+    MemoizingEntityDescriptorPredicate(@Nonnull final Predicate<EntityDescriptor> pred) {
+        predicate = Constraint.isNotNull(pred, "Predicate cannot be null");
+        results = CacheBuilder.newBuilder().weakKeys().build();
+    }
+
+    /** {@inheritDoc} */
+    public boolean test(@Nullable final EntityDescriptor input) {
+        if (input == null) {
+            return predicate.test(null);
+        }
+
+        final Boolean cached = results.getIfPresent(input);
+        if (cached != null) {
+            return cached;
+        }
+
+        final boolean result = predicate.test(input);
+        results.put(input, result);
+        return result;
+    }
+
+}
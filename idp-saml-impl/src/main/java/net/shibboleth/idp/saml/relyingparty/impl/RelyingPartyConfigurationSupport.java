@@ -18,6 +18,7 @@
 package net.shibboleth.idp.saml.relyingparty.impl;
 
 import java.util.Collection;
+import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -93,11 +94,13 @@ public final class RelyingPartyConfigurationSupport {
         
         // We adapt an OpenSAML Predicate applying to an EntityDescriptor by indirecting the lookup of the
         // EntityDescriptor to a lookup sequence of PRC -> RPC -> SAMLMetadataContext -> EntityDescriptor.
+        // Affiliations are looked up in other metadata, so results are only memoized without a resolver.
         
+        final Predicate<EntityDescriptor> groupPredicate = new EntityGroupNamePredicate(groupNames, resolver);
         final StrategyIndirectedPredicate<ProfileRequestContext,EntityDescriptor> indirectPredicate =
                 new StrategyIndirectedPredicate<>(
                         new EntityDescriptorLookupFunction().compose(new SAMLMetadataContextLookupFunction()),
-                        new EntityGroupNamePredicate(groupNames, resolver));
+                        resolver != null ? groupPredicate : new MemoizingEntityDescriptorPredicate(groupPredicate));
         
         final RelyingPartyConfiguration config = new RelyingPartyConfiguration();
         config.setActivationCondition(indirectPredicate);
@@ -129,12 +132,14 @@ public final class RelyingPartyConfigurationSupport {
         Constraint.isNotNull(candidates, "Candidate list cannot be null");
         
         // We adapt an OpenSAML Predicate applying to an EntityDescriptor by indirecting the lookup of the
-        // EntityDescriptor to a lookup sequence of PRC -> RPC -> SAMLMetadataContext -> EntityDescriptor.
+        // EntityDescriptor to a lookup sequence of PRC -> RPC -> SAMLMetadataContext -> EntityDescriptor,
+        // memoizing the result for each EntityDescriptor.
         
         final StrategyIndirectedPredicate<ProfileRequestContext,EntityDescriptor> indirectPredicate =
                 new StrategyIndirectedPredicate<>(
                         new EntityDescriptorLookupFunction().compose(new SAMLMetadataContextLookupFunction()),
-                        new EntityAttributesPredicate(candidates, trim, matchAll));
+                        new MemoizingEntityDescriptorPredicate(
+                                new EntityAttributesPredicate(candidates, trim, matchAll)));
         
         final RelyingPartyConfiguration config = new RelyingPartyConfiguration();
         config.setActivationCondition(indirectPredicate);
@@ -158,12 +163,14 @@ public final class RelyingPartyConfigurationSupport {
         Constraint.isNotNull(candidates, "Candidate list cannot be null");
         
         // We adapt an OpenSAML Predicate applying to an EntityDescriptor by indirecting the lookup of the
-        // EntityDescriptor to a lookup sequence of PRC -> RPC -> SAMLMetadataContext -> EntityDescriptor.
+        // EntityDescriptor to a lookup sequence of PRC -> RPC -> SAMLMetadataContext -> EntityDescriptor,
+        // memoizing the result for each EntityDescriptor.
         
         final StrategyIndirectedPredicate<ProfileRequestContext,EntityDescriptor> indirectPredicate =
                 new StrategyIndirectedPredicate<>(
                         new EntityDescriptorLookupFunction().compose(new SAMLMetadataContextLookupFunction()),
-                        new MappedEntityAttributesPredicate(candidates, trim, matchAll));
+                        new MemoizingEntityDescriptorPredicate(
+                                new MappedEntityAttributesPredicate(candidates, trim, matchAll)));
         
         final RelyingPartyConfiguration config = new RelyingPartyConfiguration();
         config.setActivationCondition(indirectPredicate);
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Extension of {@link StorageService} for backends able to read several records in a context with a single
+ * operation.
+ * 
+ * <p>Session managers use this, when available, to load all the records belonging to a session at once rather
+ * than with a round-trip per record.</p>
+ */
+@ThreadSafe
+public interface BulkReadStorageService extends StorageService {
+
+    /**
+     * Read the records with the given keys in a context.
+     * 
+     * @param context context to search
+     * @param keys keys of the records to read
+     * 
+     * @return the unexpired records found, indexed by key; keys with no record are omitted
+     * 
+     * @throws IOException if an error occurs while reading
+     */
+    @Nonnull @NonnullElements Map<String,StorageRecord<?>> readAll(@Nonnull @NotEmpty String context,
+            @Nonnull @NonnullElements Collection<String> keys) throws IOException;
+
+}
@@ -17,6 +17,7 @@
 
 package net.shibboleth.idp.session.logic;
 
+import java.net.InetAddress;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.BiPredicate;
@@ -26,6 +27,7 @@ import javax.annotation.Nullable;
 
 import com.google.common.net.InetAddresses;
 
+import net.shibboleth.idp.profile.logic.IPRangeTrie;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.net.IPRange;
@@ -34,11 +36,11 @@ import net.shibboleth.utilities.java.support.net.IPRange;
 public class IPRangeBiPredicate implements BiPredicate<String,String> {
     
     /** IP ranges to match against. */
-    @Nonnull @NonnullElements private Collection<IPRange> addressRanges;
+    @Nonnull private IPRangeTrie<IPRange> addressRanges;
 
     /** Constructor. */
     IPRangeBiPredicate() {
-        addressRanges = List.of();
+        addressRanges = new IPRangeTrie<>();
     }
     
     /**
@@ -49,7 +51,11 @@ public class IPRangeBiPredicate implements BiPredicate<String,String> {
     public void setRanges(@Nonnull @NonnullElements final Collection<IPRange> ranges) {
         Constraint.isNotNull(ranges, "Address range collection cannot be null");
         
-        addressRanges = List.copyOf(ranges);
+        final IPRangeTrie<IPRange> trie = new IPRangeTrie<>();
+        for (final IPRange range : ranges) {
+            trie.add(range, range);
+        }
+        addressRanges = trie;
     }
     
     /** {@inheritDoc} */
@@ -59,11 +65,17 @@ public class IPRangeBiPredicate implements BiPredicate<String,String> {
             return false;
         } else if (input1.equals(input2)) {
             return true;
+        } else if (addressRanges.isEmpty()) {
+            return false;
         }
         
-        for (final IPRange range : addressRanges) {
-            if (range.contains(InetAddresses.forString(input1)) && range.contains(InetAddresses.forString(input2))) {
-                return true;
+        final List<IPRange> candidates = addressRanges.lookup(InetAddresses.forString(input1));
+        if (!candidates.isEmpty()) {
+            final InetAddress address2 = InetAddresses.forString(input2);
+            for (final IPRange range : candidates) {
+                if (range.contains(address2)) {
+                    return true;
+                }
             }
         }
         
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
+
+/**
+ * Coalesces updates to the expiration of storage records, writing them to storage periodically instead of on
+ * every update.
+ * 
+ * <p>The expiration of session and authentication result records doubles as their record of last activity, so
+ * other nodes judge timeouts from the expiration last written. An update is therefore written through at once
+ * whenever the stored expiration, less the record's grace period, is within the given margin of the current time;
+ * with a margin of at least twice the flush interval, a record's stored view cannot time out before the pending
+ * update would have been flushed. The updates lost if the process stops without flushing are thus bounded by the
+ * margin.</p>
+ * 
+ * <p>Records are tracked only once they have been written through, and at most a fixed number are tracked, beyond
+ * which updates are written through.</p>
+ */
+@ThreadSafe
+final class ExpirationWriteBehind {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(ExpirationWriteBehind.class);
+
+    /** Storage back-end. */
+    @Nonnull private final StorageService storageService;
+
+    /** Minimum remaining lifetime of the stored expiration for an update to be deferred, in milliseconds. */
+    private final long margin;
+
+    /** Maximum number of records tracked. */
+    private final int maxEntries;
+
+    /** Tracked records, keyed by context and key. */
+    @Nonnull private final ConcurrentMap<Pair<String,String>,Entry> entries;
+
+    /** Updates written through. */
+    @Nonnull private final LongAdder writes;
+
+    /** Updates deferred. */
+    @Nonnull private final LongAdder coalesced;
+
+    /** Deferred updates written by a flush. */
+    @Nonnull private final LongAdder flushed;
+
+    /** Deferred updates that failed to flush. */
+    @Nonnull private final LongAdder flushFailures;
+
+    /** Flushes run. */
+    @Nonnull private final LongAdder flushes;
+
+    /** Duration of the most recent flush, in milliseconds. */
+    private volatile long lastFlushDuration;
+
+    /**
+     * Constructor.
+     *
+     * @param storage storage back-end
+     * @param marginMillis minimum remaining lifetime of the stored expiration for an update to be deferred
+     * @param max maximum number of records to track
+     */
+    ExpirationWriteBehind(@Nonnull final StorageService storage, final long marginMillis, final int max) {
+        storageService = storage;
+        margin = marginMillis;
+        maxEntries = max;
+        entries = new ConcurrentHashMap<>();
+        writes = new LongAdder();
+        coalesced = new LongAdder();
+        flushed = new LongAdder();
+        flushFailures = new LongAdder();
+        flushes = new LongAdder();
+    }
+
+    /**
+     * Update the expiration of a record, deferring the write if possible.
+     *
+     * @param context record context
+     * @param key record key
+     * @param expiration new expiration, in milliseconds since the epoch
+     * @param grace time by which the expiration exceeds the point at which the record times out, in milliseconds
+     * @param now current time, in milliseconds since the epoch
+     *
+     * @return false iff the record was found not to exist
+     *
+     * @throws IOException if an error occurs writing to storage
+     */
+    boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            final long expiration, final long grace, final long now) throws IOException {
+        final Pair<String,String> id = new Pair<>(context, key);
+        Entry entry = entries.get(id);
+        if (entry == null && entries.size() < maxEntries) {
+            entry = entries.computeIfAbsent(id, k -> new Entry());
+        }
+        if (entry == null) {
+            writes.increment();
+            return storageService.updateExpiration(context, key, expiration);
+        }
+
+        synchronized (entry) {
+            if (entry.stored != 0 && entry.stored - grace - now >= margin) {
+                if (expiration > entry.pending) {
+                    entry.pending = expiration;
+                }
+                coalesced.increment();
+                return true;
+            }
+
+            writes.increment();
+            if (!storageService.updateExpiration(context, key, expiration)) {
+                entries.remove(id, entry);
+                return false;
+            }
+            entry.stored = Math.max(entry.stored, expiration);
+            if (entry.pending <= entry.stored) {
+                entry.pending = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Get the effective expiration of a record, accounting for any deferred update.
+     *
+     * @param context record context
+     * @param key record key
+     * @param expiration expiration read from storage
+     *
+     * @return the later of the stored expiration and any deferred update
+     */
+    @Nullable Long getExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable final Long expiration) {
+        if (expiration == null) {
+            return null;
+        }
+        final Entry entry = entries.get(new Pair<>(context, key));
+        if (entry != null) {
+            synchronized (entry) {
+                return Math.max(expiration, entry.pending);
+            }
+        }
+        return expiration;
+    }
+
+    /**
+     * Write all deferred updates to storage, and stop tracking records that have expired.
+     *
+     * @param now current time, in milliseconds since the epoch
+     */
+    void flush(final long now) {
+        final long start = System.currentTimeMillis();
+        int count = 0;
+        for (final Map.Entry<Pair<String,String>,Entry> e : entries.entrySet()) {
+            final Entry entry = e.getValue();
+            synchronized (entry) {
+                if (entry.pending > entry.stored) {
+                    try {
+                        if (storageService.updateExpiration(e.getKey().getFirst(), e.getKey().getSecond(),
+                                entry.pending)) {
+                            entry.stored = entry.pending;
+                            entry.pending = 0;
+                            count++;
+                        } else {
+                            entries.remove(e.getKey(), entry);
+                        }
+                    } catch (final IOException ex) {
+                        flushFailures.increment();
+                        log.warn("Exception flushing expiration of record {} in context {}: {}",
+                                e.getKey().getSecond(), e.getKey().getFirst(), ex.getMessage());
+                    }
+                } else if (entry.stored < now) {
+                    entries.remove(e.getKey(), entry);
+                }
+            }
+        }
+        flushed.add(count);
+        flushes.increment();
+        lastFlushDuration = System.currentTimeMillis() - start;
+        log.debug("Flushed {} deferred expiration updates, tracking {} records", count, entries.size());
+    }
+
+    /**
+     * Get statistics.
+     *
+     * @return counts of updates written through, deferred, flushed and failed to flush, flushes run, records
+     *  tracked and records with deferred updates, and the duration of the last flush
+     */
+    @Nonnull @NonnullElements @Unmodifiable Map<String,Long> getStatistics() {
+        long pending = 0;
+        for (final Entry entry : entries.values()) {
+            if (entry.pending != 0) {
+                pending++;
+            }
+        }
+        return Map.of("writes", writes.sum(),
+                "coalesced", coalesced.sum(),
+                "flushed", flushed.sum(),
+                "flushFailures", flushFailures.sum(),
+                "flushes", flushes.sum(),
+                "tracked", (long) entries.size(),
+                "pending", pending,
+                "lastFlushMillis", lastFlushDuration);
+    }
+
+    /** State of a tracked record, guarded by its own monitor. */
+    private static final class Entry {
+
+        /** Expiration last written to storage, or zero if none. */
+        private long stored;
+
+        /** Deferred expiration to write, or zero if none. */
+        private long pending;
+    }
+
+}
@@ -19,10 +19,18 @@ package net.shibboleth.idp.session.impl;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -30,6 +38,7 @@ import javax.annotation.Nullable;
 import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
 import net.shibboleth.idp.authn.AuthenticationResult;
 import net.shibboleth.idp.session.AbstractIdPSession;
+import net.shibboleth.idp.session.BulkReadStorageService;
 import net.shibboleth.idp.session.SPSession;
 import net.shibboleth.idp.session.SessionException;
 import net.shibboleth.utilities.java.support.annotation.constraint.Live;
@@ -43,6 +52,7 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.StorageSerializer;
+import org.opensaml.storage.StorageService;
 import org.opensaml.storage.VersionMismatchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +69,7 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
     @Nonnull private final StorageBackedSessionManager sessionManager;
     
     /** Storage version used to synchronize changes. */
-    private long version;
+    private volatile long version;
     
     /**
      * Constructor.
@@ -88,8 +98,8 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         log.debug("Updating expiration of master record for session {} to {}", getId(), exp);
         
         try {
-            sessionManager.getStorageService().updateExpiration(
-                    getId(), StorageBackedSessionManager.SESSION_MASTER_KEY, exp.toEpochMilli());
+            sessionManager.updateActivityExpiration(getId(), StorageBackedSessionManager.SESSION_MASTER_KEY, exp,
+                    sessionManager.getSessionSlop());
             super.setLastActivityInstant(instant);
         } catch (final IOException e) {
             if (!sessionManager.isMaskStorageFailure()) {
@@ -168,23 +178,11 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
     @Nonnull @NonnullElements @NotLive @Unmodifiable public Set<AuthenticationResult> getAuthenticationResults() {
         
         // Check for any sparse/null values in the map, which need to be loaded before returning a complete set.
-        final Iterator<Map.Entry<String,Optional<AuthenticationResult>>> entries =
-                getAuthenticationResultMap().entrySet().iterator();
-        while (entries.hasNext()) {
-            final Map.Entry<String,Optional<AuthenticationResult>> entry = entries.next();
-            if (entry.getValue().isEmpty()) {
-                try {
-                    final AuthenticationResult result = loadAuthenticationResultFromStorage(entry.getKey());
-                    if (result != null) {
-                        entry.setValue(Optional.of(result));
-                    } else {
-                        // A null here means the reference to the record should be removed.
-                        entries.remove();
-                    }
-                } catch (final IOException e) {
-                    // An exception implies the record *might* still be accessible later.
-                }
-            }
+        final List<String> missing = getMissingKeys(getAuthenticationResultMap());
+        if (!missing.isEmpty()) {
+            final Map<String,Optional<AuthenticationResult>> loaded =
+                    loadFromStorage(missing, Function.identity(), this::readAuthenticationResult);
+            applyLoaded(getAuthenticationResultMap(), loaded);
         }
         
         return super.getAuthenticationResults();
@@ -267,9 +265,10 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         final AuthenticationFlowDescriptor flow = sessionManager.getAuthenticationFlowDescriptor(flowId);
         if (flow != null) {
             try {
-                if (!sessionManager.getStorageService().updateExpiration(getId(), result.getAuthenticationFlowId(),
+                if (!sessionManager.updateActivityExpiration(getId(), result.getAuthenticationFlowId(),
                         result.getLastActivityInstant().plus(flow.getInactivityTimeout()).plus(
-                            AuthenticationFlowDescriptor.STORAGE_EXPIRATION_OFFSET).toEpochMilli())) {
+                            AuthenticationFlowDescriptor.STORAGE_EXPIRATION_OFFSET),
+                        AuthenticationFlowDescriptor.STORAGE_EXPIRATION_OFFSET)) {
                     log.warn("Skipping update, AuthenticationResult for flow {} in session {} not found in storage",
                             flowId, getId());
                 }
@@ -336,23 +335,11 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         
         if (sessionManager.isTrackSPSessions() && sessionManager.storageServiceMeetsThreshold()) {
             // Check for any sparse/null values in the map, which need to be loaded before returning a complete set.
-            final Iterator<Map.Entry<String, Optional<SPSession>>> entries =
-                    getSPSessionMap().entrySet().iterator();
-            while (entries.hasNext()) {
-                final Map.Entry<String, Optional<SPSession>> entry = entries.next();
-                if (entry.getValue().isEmpty()) {
-                    try {
-                        final SPSession result = loadSPSessionFromStorage(entry.getKey());
-                        if (result != null) {
-                            entry.setValue(Optional.of(result));
-                        } else {
-                            // A null here means the reference to the record should be removed.
-                            entries.remove();
-                        }
-                    } catch (final IOException e) {
-                        // An exception implies the record *might* still be accessible later.
-                    }
-                }
+            final List<String> missing = getMissingKeys(getSPSessionMap());
+            if (!missing.isEmpty()) {
+                final Map<String,Optional<SPSession>> loaded =
+                        loadFromStorage(missing, this::getSPSessionStorageKey, this::readSPSession);
+                applyLoaded(getSPSessionMap(), loaded);
             }
         }
         
@@ -544,25 +531,46 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
             throws IOException {
         log.debug("Loading AuthenticationResult for flow {} in session {}", flowId, getId());
         
-        final AuthenticationFlowDescriptor flow = sessionManager.getAuthenticationFlowDescriptor(flowId);
-        if (flow == null) {
+        if (sessionManager.getAuthenticationFlowDescriptor(flowId) == null) {
             log.warn("No flow descriptor installed for ID {}, unable to load result from storage", flowId);
             return null;
         }
         
         try {
-            final StorageRecord<AuthenticationResult> record = sessionManager.getStorageService().read(getId(), flowId);
-            if (record != null) {
-                return record.getValue(flow, getId(), flowId);
-            }
-            log.debug("No AuthenticationResult for flow {} in session {}", flowId, getId());
-            return null;
+            return readAuthenticationResult(flowId, sessionManager.getStorageService().read(getId(), flowId));
         } catch (final IOException e) {
             log.error("Exception loading AuthenticationResult for flow {} from storage: {}", flowId, e.getMessage());
             throw e;
         }
     }
 
+    /**
+     * Deserializes an {@link AuthenticationResult} record using the object attached to the corresponding
+     * {@link AuthenticationFlowDescriptor}.
+     * 
+     * @param flowId ID of result/flow
+     * @param record the record read from storage, or null if none was found
+     * 
+     * @return the stored result, or null if the record is missing or unusable
+     * @throws IOException if the record cannot be deserialized
+     */
+    @Nullable private AuthenticationResult readAuthenticationResult(@Nonnull @NotEmpty final String flowId,
+            @Nullable final StorageRecord<?> record) throws IOException {
+        if (record == null) {
+            log.debug("No AuthenticationResult for flow {} in session {}", flowId, getId());
+            return null;
+        }
+
+        final AuthenticationFlowDescriptor flow = sessionManager.getAuthenticationFlowDescriptor(flowId);
+        if (flow == null) {
+            log.warn("No flow descriptor installed for ID {}, unable to load result from storage", flowId);
+            return null;
+        }
+
+        return flow.deserialize(record.getVersion(), getId(), flowId, record.getValue(),
+                sessionManager.getActivityExpiration(getId(), flowId, record.getExpiration()));
+    }
+
     /**
      * Saves an {@link AuthenticationResult} record to storage, serializing it using the object
      * attached to the corresponding {@link AuthenticationFlowDescriptor}.
@@ -625,12 +633,31 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         final String key = getSPSessionStorageKey(serviceId);
         
         try {
-            final StorageRecord<SPSession> record = sessionManager.getStorageService().read(getId(), key);
-            if (record == null) {
-                log.debug("No SPSession found for service {} in session {}", serviceId, getId());
-                return null;
-            }
-            
+            return readSPSession(serviceId, sessionManager.getStorageService().read(getId(), key));
+        } catch (final IOException e) {
+            log.error("IOException loading SPSession for service {} from storage: {}", serviceId, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Deserializes a {@link SPSession} record using the object registered in the attached
+     * {@link net.shibboleth.idp.session.SPSessionSerializerRegistry}.
+     * 
+     * @param serviceId ID of service for session
+     * @param record the record read from storage, or null if none was found
+     * 
+     * @return the stored session, or null if the record is missing
+     * @throws IOException if the record cannot be deserialized
+     */
+    @Nullable private SPSession readSPSession(@Nonnull @NotEmpty final String serviceId,
+            @Nullable final StorageRecord<?> record) throws IOException {
+        if (record == null) {
+            log.debug("No SPSession found for service {} in session {}", serviceId, getId());
+            return null;
+        }
+
+        try {
             // Parse out the class type.
             final int pos = record.getValue().indexOf(':');
             if (pos <= 0) {
@@ -648,12 +675,9 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
             }
             
             // Deserializer starting past the colon delimiter.
-            return spSessionSerializer.deserialize(
-                    record.getVersion(), getId(), key, record.getValue().substring(pos + 1), record.getExpiration());
+            return spSessionSerializer.deserialize(record.getVersion(), getId(), getSPSessionStorageKey(serviceId),
+                    record.getValue().substring(pos + 1), record.getExpiration());
             
-        } catch (final IOException e) {
-            log.error("IOException loading SPSession for service {} from storage: {}", serviceId, e.getMessage());
-            throw e;
         } catch (final ClassNotFoundException e) {
             log.error("ClassNotFoundException loading SPSession for service {} from storage: {}", serviceId,
                     e.getMessage());
@@ -713,6 +737,128 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         }
     }
     
+    /**
+     * Get the keys of the sparse entries in a map of child records.
+     * 
+     * @param map the map to examine
+     * @param <T> type of child record
+     * 
+     * @return keys whose records have yet to be loaded
+     */
+    @Nonnull @NonnullElements private static <T> List<String> getMissingKeys(
+            @Nonnull @NonnullElements final Map<String,Optional<T>> map) {
+        final List<String> missing = new ArrayList<>();
+        for (final Map.Entry<String,Optional<T>> entry : map.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                missing.add(entry.getKey());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Fill in sparse entries in a map of child records with the results of
+     * {@link #loadFromStorage(List, Function, RecordReader)}.
+     * 
+     * @param map the map to update
+     * @param loaded the loaded records
+     * @param <T> type of child record
+     */
+    private static <T> void applyLoaded(@Nonnull @NonnullElements final Map<String,Optional<T>> map,
+            @Nonnull @NonnullElements final Map<String,Optional<T>> loaded) {
+        for (final Map.Entry<String,Optional<T>> entry : loaded.entrySet()) {
+            if (entry.getValue().isPresent()) {
+                map.replace(entry.getKey(), Optional.empty(), entry.getValue());
+            } else {
+                // A missing record means the reference to it should be removed.
+                map.remove(entry.getKey(), Optional.empty());
+            }
+        }
+    }
+
+    /**
+     * Load a set of child records from storage.
+     * 
+     * <p>If the storage service supports it, the records are read with a single operation. If an executor is
+     * available, the records are then read (if need be) and deserialized on it, otherwise on the calling thread.</p>
+     * 
+     * @param ids the IDs of the records to load
+     * @param keyStrategy maps each ID to its storage key
+     * @param reader deserializes a record
+     * @param <T> type of child record
+     * 
+     * @return the result for each ID loaded, empty if the record is missing or unusable; IDs which could not be
+     *  loaded because of a possibly transitory error are omitted
+     */
+    @Nonnull @NonnullElements private <T> Map<String,Optional<T>> loadFromStorage(
+            @Nonnull @NonnullElements final List<String> ids,
+            @Nonnull final Function<String,String> keyStrategy, @Nonnull final RecordReader<T> reader) {
+        
+        final StorageService storageService = sessionManager.getStorageService();
+        final Map<String,String> keys = new LinkedHashMap<>(ids.size());
+        for (final String id : ids) {
+            keys.put(id, keyStrategy.apply(id));
+        }
+
+        final Map<String,StorageRecord<?>> records;
+        if (ids.size() > 1 && storageService instanceof BulkReadStorageService) {
+            log.debug("Bulk loading {} records for session {}", ids.size(), getId());
+            try {
+                records = ((BulkReadStorageService) storageService).readAll(getId(), keys.values());
+            } catch (final IOException e) {
+                log.error("Exception bulk loading records for session {} from storage: {}", getId(), e.getMessage());
+                return Map.of();
+            }
+        } else {
+            records = null;
+        }
+
+        final Map<String,Optional<T>> loaded = new HashMap<>(ids.size());
+        final Executor executor = sessionManager.getBulkLoadExecutor();
+        if (executor == null || ids.size() == 1) {
+            for (final Map.Entry<String,String> entry : keys.entrySet()) {
+                try {
+                    loaded.put(entry.getKey(), Optional.ofNullable(reader.read(entry.getKey(),
+                            records != null ? records.get(entry.getValue()) : storageService.read(getId(),
+                                    entry.getValue()))));
+                } catch (final IOException e) {
+                    log.error("Exception loading record {} for session {} from storage: {}", entry.getKey(), getId(),
+                            e.getMessage());
+                }
+            }
+            return loaded;
+        }
+
+        final Map<String,CompletableFuture<T>> futures = new LinkedHashMap<>(ids.size());
+        for (final Map.Entry<String,String> entry : keys.entrySet()) {
+            futures.put(entry.getKey(), CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reader.read(entry.getKey(),
+                            records != null ? records.get(entry.getValue()) : storageService.read(getId(),
+                                    entry.getValue()));
+                } catch (final IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, task -> {
+                try {
+                    executor.execute(task);
+                } catch (final RejectedExecutionException e) {
+                    task.run();
+                }
+            }));
+        }
+
+        for (final Map.Entry<String,CompletableFuture<T>> future : futures.entrySet()) {
+            try {
+                loaded.put(future.getKey(), Optional.ofNullable(future.getValue().join()));
+            } catch (final CompletionException e) {
+                log.error("Exception loading record {} for session {} from storage: {}", future.getKey(), getId(),
+                        e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
     /**
      * Convert a service identifier into a suitable key for the underlying storage service.
      * 
@@ -745,6 +891,7 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                 throw new IOException("Unable to update session, record disappeared");
             }
             version = ver;
+            sessionManager.refreshCachedSession(this);
             return true;
         } catch (final VersionMismatchException e) {
             // The record has changed underneath. We need to deserialize the session back into the
@@ -753,12 +900,37 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                     sessionManager.getStorageService().read(getId(), StorageBackedSessionManager.SESSION_MASTER_KEY);
             if (record == null) {
                 log.error("Record for session {} has disappeared from backing store", getId());
+                sessionManager.invalidateCachedSession(getId());
                 throw new IOException("Unable to update session, record disappeared");
             }
             record.getValue(new StorageBackedIdPSessionSerializer(sessionManager, this),
                     getId(), StorageBackedSessionManager.SESSION_MASTER_KEY);
             return false;
+        } catch (final IOException e) {
+            // This object may no longer match storage, so it can't be reused.
+            sessionManager.invalidateCachedSession(getId());
+            throw e;
         }
     }
     
-}
\ No newline at end of file
+    /**
+     * Deserializes a child record of a session.
+     * 
+     * @param <T> type of child record
+     */
+    @FunctionalInterface
+    private interface RecordReader<T> {
+
+        /**
+         * Deserialize a record.
+         * 
+         * @param id ID of the child record
+         * @param record the record read from storage, or null if none was found
+         * 
+         * @return the child record, or null if the record is missing or unusable
+         * @throws IOException if the record cannot be deserialized
+         */
+        @Nullable T read(@Nonnull @NotEmpty String id, @Nullable StorageRecord<?> record) throws IOException;
+    }
+
+}
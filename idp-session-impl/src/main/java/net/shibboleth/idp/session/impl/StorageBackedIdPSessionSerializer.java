@@ -17,10 +17,17 @@
 
 package net.shibboleth.idp.session.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -36,9 +43,12 @@ import javax.json.JsonStructure;
 import javax.json.spi.JsonProvider;
 import javax.json.stream.JsonGenerator;
 
+import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
 import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.CompactSerializationSupport;
 import net.shibboleth.idp.session.AbstractIdPSession;
 import net.shibboleth.idp.session.SPSession;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
 import net.shibboleth.utilities.java.support.logic.Constraint;
@@ -50,6 +60,11 @@ import org.slf4j.LoggerFactory;
 /**
  * A serializer for instances of {@link StorageBackedIdPSession} designed in conjunction with the
  * {@link org.opensaml.storage.StorageService}-backed {@link net.shibboleth.idp.session.SessionManager} implementation.
+ *
+ * <p>Records are written as JSON unless {@link StorageBackedSessionManager#isCompactSerialization()} is set, in
+ * which case they are written as a versioned binary structure of length-prefixed fields and variable-length
+ * integers, carried as Base64 text behind a leading marker. Standard flow IDs are written as a one-byte reference.
+ * Records in either format are read.</p>
  */
 @ThreadSafe
 public class StorageBackedIdPSessionSerializer extends AbstractInitializableComponent implements
@@ -73,6 +88,27 @@ public class StorageBackedIdPSessionSerializer extends AbstractInitializableComp
     /** Field name of service ID array. */
     @Nonnull @NotEmpty private static final String SERVICE_ID_ARRAY_FIELD = "svcs";
 
+    /** Version of the compact format. */
+    private static final int COMPACT_VERSION = 1;
+
+    /**
+     * Flow IDs written by reference in the compact format. Entries may only ever be appended, as the position of an
+     * entry is its encoding.
+     */
+    @Nonnull @NonnullElements private static final List<String> KNOWN_FLOW_IDS = List.of(
+            "authn/Password",
+            "authn/RemoteUser",
+            "authn/RemoteUserInternal",
+            "authn/External",
+            "authn/X509",
+            "authn/X509Internal",
+            "authn/SPNEGO",
+            "authn/IPAddress",
+            "authn/Duo",
+            "authn/MFA",
+            "authn/Function",
+            "authn/SAML");
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(StorageBackedIdPSessionSerializer.class);
 
@@ -101,6 +137,10 @@ public class StorageBackedIdPSessionSerializer extends AbstractInitializableComp
     @Override @Nonnull @NotEmpty public String serialize(@Nonnull final StorageBackedIdPSession instance)
             throws IOException {
 
+        if (sessionManager.isCompactSerialization()) {
+            return serializeCompact(instance);
+        }
+
         try {
             final StringWriter sink = new StringWriter(128);
             final JsonGenerator gen = jsonProvider.createGenerator(sink);
@@ -152,12 +192,18 @@ public class StorageBackedIdPSessionSerializer extends AbstractInitializableComp
     // Checkstyle: CyclomaticComplexity OFF
     @Override @Nonnull public StorageBackedIdPSession deserialize(final long version,
             @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
-            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+            @Nonnull @NotEmpty final String value, @Nullable final Long storedExpiration) throws IOException {
 
+        // Account for any activity update not yet written.
+        final Long expiration = sessionManager.getActivityExpiration(context, key, storedExpiration);
         if (expiration == null) {
             throw new IOException("IdPSession objects must have an expiration");
         }
 
+        if (CompactSerializationSupport.isCompact(value)) {
+            return deserializeCompact(version, context, value, expiration);
+        }
+
         try {
             final JsonReader reader = jsonProvider.createReader(new StringReader(value));
             final JsonStructure st = reader.read();
@@ -175,40 +221,30 @@ public class StorageBackedIdPSessionSerializer extends AbstractInitializableComp
                 objectToPopulate = new StorageBackedIdPSession(sessionManager, context, principalName, creation);
             }
 
-            // Populate fields in-place, bypassing any storage interactions.
-            objectToPopulate.setVersion(version);
-            objectToPopulate.doSetLastActivityInstant(
-                    Instant.ofEpochMilli(expiration).minus(sessionManager.getSessionTimeout()).minus(
-                            sessionManager.getSessionSlop()));
-            if (obj.containsKey(IPV4_ADDRESS_FIELD)) {
-                objectToPopulate.doBindToAddress(obj.getString(IPV4_ADDRESS_FIELD));
-            }
-            if (obj.containsKey(IPV6_ADDRESS_FIELD)) {
-                objectToPopulate.doBindToAddress(obj.getString(IPV6_ADDRESS_FIELD));
-            }
-
-            objectToPopulate.getAuthenticationResultMap().clear();
+            final List<String> flowIds = new ArrayList<>();
             if (obj.containsKey(FLOW_ID_ARRAY_FIELD)) {
-                final JsonArray flowIds = obj.getJsonArray(FLOW_ID_ARRAY_FIELD);
-                if (flowIds != null) {
-                    for (final JsonString flowId : flowIds.getValuesAs(JsonString.class)) {
-                        // An absent mapping is used to signify the existence of a result not yet loaded.
-                        objectToPopulate.getAuthenticationResultMap().put(flowId.getString(), Optional.empty());
+                final JsonArray flowIdArray = obj.getJsonArray(FLOW_ID_ARRAY_FIELD);
+                if (flowIdArray != null) {
+                    for (final JsonString flowId : flowIdArray.getValuesAs(JsonString.class)) {
+                        flowIds.add(flowId.getString());
                     }
                 }
             }
 
-            objectToPopulate.getSPSessionMap().clear();
+            final List<String> svcIds = new ArrayList<>();
             if (obj.containsKey(SERVICE_ID_ARRAY_FIELD)) {
-                final JsonArray svcIds = obj.getJsonArray(SERVICE_ID_ARRAY_FIELD);
-                if (svcIds != null) {
-                    for (final JsonString svcId : svcIds.getValuesAs(JsonString.class)) {
-                        // An absent mapping is used to signify the existence of a session not yet loaded.
-                        objectToPopulate.getSPSessionMap().put(svcId.getString(), Optional.empty());
+                final JsonArray svcIdArray = obj.getJsonArray(SERVICE_ID_ARRAY_FIELD);
+                if (svcIdArray != null) {
+                    for (final JsonString svcId : svcIdArray.getValuesAs(JsonString.class)) {
+                        svcIds.add(svcId.getString());
                     }
                 }
             }
 
+            populate(objectToPopulate, version, expiration,
+                    obj.containsKey(IPV4_ADDRESS_FIELD) ? obj.getString(IPV4_ADDRESS_FIELD) : null,
+                    obj.containsKey(IPV6_ADDRESS_FIELD) ? obj.getString(IPV6_ADDRESS_FIELD) : null,
+                    flowIds, svcIds);
             return objectToPopulate;
 
         } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
@@ -218,4 +254,185 @@ public class StorageBackedIdPSessionSerializer extends AbstractInitializableComp
     }
     // Checkstyle: CyclomaticComplexity ON
 
-}
\ No newline at end of file
+    /**
+     * Populate a session object in-place, bypassing any storage interactions.
+     * 
+     * @param session object to populate
+     * @param version record version
+     * @param expiration record expiration
+     * @param ipv4 bound IPv4 address, if any
+     * @param ipv6 bound IPv6 address, if any
+     * @param flowIds IDs of flows with stored results
+     * @param svcIds IDs of services with stored sessions
+     */
+    private void populate(@Nonnull final StorageBackedIdPSession session, final long version, final long expiration,
+            @Nullable final String ipv4, @Nullable final String ipv6,
+            @Nonnull @NonnullElements final Collection<String> flowIds,
+            @Nonnull @NonnullElements final Collection<String> svcIds) {
+
+        session.setVersion(version);
+        session.doSetLastActivityInstant(
+                Instant.ofEpochMilli(expiration).minus(sessionManager.getSessionTimeout()).minus(
+                        sessionManager.getSessionSlop()));
+        if (ipv4 != null) {
+            session.doBindToAddress(ipv4);
+        }
+        if (ipv6 != null) {
+            session.doBindToAddress(ipv6);
+        }
+
+        session.getAuthenticationResultMap().clear();
+        for (final String flowId : flowIds) {
+            // An absent mapping is used to signify the existence of a result not yet loaded.
+            session.getAuthenticationResultMap().put(flowId, Optional.empty());
+        }
+
+        session.getSPSessionMap().clear();
+        for (final String svcId : svcIds) {
+            // An absent mapping is used to signify the existence of a session not yet loaded.
+            session.getSPSessionMap().put(svcId, Optional.empty());
+        }
+    }
+
+    /**
+     * Write a session in the compact format.
+     * 
+     * @param instance session to serialize
+     * 
+     * @return the serialized session
+     * 
+     * @throws IOException if serialization fails
+     */
+    @Nonnull @NotEmpty private String serializeCompact(@Nonnull final StorageBackedIdPSession instance)
+            throws IOException {
+
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream(128);
+        final DataOutputStream out = new DataOutputStream(sink);
+        out.writeByte(COMPACT_VERSION);
+        CompactSerializationSupport.writeNumber(out, instance.getCreationInstant().toEpochMilli());
+        CompactSerializationSupport.writeString(out, instance.getPrincipalName());
+        CompactSerializationSupport.writeString(out, instance.getAddress(AbstractIdPSession.AddressFamily.IPV4));
+        CompactSerializationSupport.writeString(out, instance.getAddress(AbstractIdPSession.AddressFamily.IPV6));
+
+        final Set<AuthenticationResult> results = instance.getAuthenticationResults();
+        CompactSerializationSupport.writeNumber(out, results.size());
+        for (final AuthenticationResult result : results) {
+            final String flowId = result.getAuthenticationFlowId();
+            final int index = KNOWN_FLOW_IDS.indexOf(flowId);
+            CompactSerializationSupport.writeNumber(out, index + 1);
+            if (index < 0) {
+                CompactSerializationSupport.writeString(out, flowId);
+            }
+        }
+
+        Set<SPSession> services = Collections.emptySet();
+        if (sessionManager.isTrackSPSessions()) {
+            if (sessionManager.storageServiceMeetsThreshold()) {
+                services = instance.getSPSessions();
+            } else {
+                log.debug("Unable to serialize SP session due to to storage service limitations");
+            }
+        }
+        CompactSerializationSupport.writeNumber(out, services.size());
+        for (final SPSession service : services) {
+            CompactSerializationSupport.writeString(out, service.getId());
+        }
+        out.flush();
+
+        return CompactSerializationSupport.encode(sink.toByteArray());
+    }
+
+    /**
+     * Read a session in the compact format.
+     * 
+     * @param version record version
+     * @param context record context, the session ID
+     * @param value serialized session
+     * @param expiration record expiration, accounting for any pending activity update
+     * 
+     * @return the deserialized session
+     * 
+     * @throws IOException if the value is malformed or of an unsupported version
+     */
+    @Nonnull private StorageBackedIdPSession deserializeCompact(final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String value, final long expiration)
+                    throws IOException {
+
+        final DataInputStream in = CompactSerializationSupport.decode(value);
+        final int formatVersion = in.readUnsignedByte();
+        if (formatVersion != COMPACT_VERSION) {
+            throw new IOException("Unsupported IdPSession format version " + formatVersion);
+        }
+
+        final long creation = CompactSerializationSupport.readNumber(in);
+        final String principalName = CompactSerializationSupport.readString(in);
+        final String ipv4 = CompactSerializationSupport.readString(in);
+        final String ipv6 = CompactSerializationSupport.readString(in);
+
+        final int flowCount = CompactSerializationSupport.readLength(in);
+        final List<String> flowIds = new ArrayList<>(flowCount);
+        for (int i = 0; i < flowCount; i++) {
+            final long ref = CompactSerializationSupport.readNumber(in);
+            if (ref == 0) {
+                flowIds.add(internFlowId(readNonEmptyString(in)));
+            } else if (ref <= KNOWN_FLOW_IDS.size()) {
+                flowIds.add(KNOWN_FLOW_IDS.get((int) ref - 1));
+            } else {
+                throw new IOException("Found unknown flow reference while parsing IdPSession");
+            }
+        }
+
+        final int svcCount = CompactSerializationSupport.readLength(in);
+        final List<String> svcIds = new ArrayList<>(svcCount);
+        for (int i = 0; i < svcCount; i++) {
+            svcIds.add(readNonEmptyString(in));
+        }
+
+        if (in.available() > 0) {
+            throw new IOException("Found trailing data while parsing IdPSession");
+        }
+
+        StorageBackedIdPSession objectToPopulate = targetObject;
+        if (objectToPopulate == null) {
+            if (principalName == null) {
+                throw new IOException("Found missing principal name while parsing IdPSession");
+            }
+            objectToPopulate = new StorageBackedIdPSession(sessionManager, context, principalName,
+                    Instant.ofEpochMilli(creation));
+        }
+        populate(objectToPopulate, version, expiration, ipv4, ipv6, flowIds, svcIds);
+        return objectToPopulate;
+    }
+
+    /**
+     * Get the instance of a flow ID held by the matching flow descriptor, to avoid retaining a copy per session.
+     * 
+     * @param flowId flow ID read from a record
+     * 
+     * @return the equivalent flow ID
+     */
+    @Nonnull @NotEmpty private String internFlowId(@Nonnull @NotEmpty final String flowId) {
+        final AuthenticationFlowDescriptor descriptor = sessionManager.getAuthenticationFlowDescriptor(flowId);
+        return descriptor != null ? descriptor.getId() : flowId;
+    }
+
+    /**
+     * Read a string written by {@link CompactSerializationSupport#writeString(java.io.DataOutput, String)} that must
+     * be neither null nor empty.
+     * 
+     * @param in input
+     * 
+     * @return the value
+     * 
+     * @throws IOException if the data is malformed
+     */
+    @Nonnull @NotEmpty private static String readNonEmptyString(@Nonnull final DataInputStream in)
+            throws IOException {
+        final String result = CompactSerializationSupport.readString(in);
+        if (result == null || result.isEmpty()) {
+            throw new IOException("Found missing identifier while parsing IdPSession");
+        }
+        return result;
+    }
+
+}
@@ -20,10 +20,20 @@ package net.shibboleth.idp.session.impl;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiPredicate;
 
 import javax.annotation.Nonnull;
@@ -33,6 +43,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
+import net.shibboleth.idp.session.AbstractIdPSession;
 import net.shibboleth.idp.session.IdPSession;
 import net.shibboleth.idp.session.SPSession;
 import net.shibboleth.idp.session.SPSessionSerializerRegistry;
@@ -45,6 +56,7 @@ import net.shibboleth.idp.session.criterion.SessionIdCriterion;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
@@ -63,6 +75,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 
 /**
@@ -105,6 +119,29 @@ import com.google.common.collect.ImmutableList;
  * The primary purpose of the secondary list is SAML logout, and is an optional feature that can be disabled. In the
  * case of a SAML 2 session, the secondary key is some form of the NameID issued to the service.
  * </p>
+ * 
+ * <p>
+ * Optionally, the secondary list may be sharded across a fixed number of records whose keys append a shard number
+ * to the secondary key, with each IdPSession ID recorded in the shard selected by its hash. Lookups read every shard,
+ * and unless disabled, migrate any list found in the unsharded format into the shards.
+ * </p>
+ * 
+ * <p>
+ * Optionally, the contents of master records may be held in a bounded in-process cache keyed by session ID. A cached
+ * record is reused if a versioned read shows it to be unchanged, or without any read if it was checked within a
+ * configurable interval. Each lookup builds a new session object from the cached record, with its
+ * AuthenticationResults and SPSessions loaded from storage when first needed, so no object is shared between
+ * requests and activity recorded for those records by other nodes is always seen. Writes made through a session
+ * refresh the cached record's version, and changes made elsewhere are detected by the version check.
+ * </p>
+ * 
+ * <p>
+ * Optionally, the activity updates that extend the expiration of master and AuthenticationResult records may be
+ * coalesced in memory and written on a schedule, rather than on every request. An update is still written at once
+ * whenever the record's stored expiration leaves less than two flush intervals before it would time out, so other
+ * nodes never see a session time out early, and at most that much activity is lost if the process stops without
+ * flushing.
+ * </p>
  */
 public class StorageBackedSessionManager extends AbstractIdentifiableInitializableComponent implements SessionManager,
         SessionResolver {
@@ -115,6 +152,9 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     /** Default cookie name for session tracking. */
     @Nonnull @NotEmpty protected static final String DEFAULT_COOKIE_NAME = "shib_idp_session";
 
+    /** Separator between the SPSession key and shard number in sharded secondary index keys. */
+    @Nonnull @NotEmpty private static final String SHARD_KEY_SEPARATOR = "!!";
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(StorageBackedSessionManager.class);
 
@@ -139,6 +179,18 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     /** Indicates whether to secondary-index SPSessions. */
     private boolean secondaryServiceIndex;
 
+    /** Number of records across which each secondary index entry is sharded, or 0 for a single record. */
+    private int secondaryServiceIndexShards;
+
+    /** Whether to look for secondary index records in the unsharded format when sharded. */
+    private boolean secondaryServiceIndexMigration;
+
+    /** Optional executor with which to read secondary index shards in parallel. */
+    @Nullable private Executor secondaryServiceIndexExecutor;
+
+    /** Optional executor with which to load a session's child records in parallel. */
+    @Nullable private Executor bulkLoadExecutor;
+
     /** Indicates how bound session addresses and client addresses are compared. */
     @Nonnull private BiPredicate<String,String> consistentAddressCondition;
 
@@ -160,12 +212,51 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     /** Serializer for sessions. */
     @Nonnull private final StorageBackedIdPSessionSerializer serializer;
 
+    /** Indicates whether to write session records in the compact format. */
+    private boolean compactSerialization;
+
     /** Flows that could potentially be used to authenticate the user. */
     @Nonnull @NonnullElements private final Map<String,AuthenticationFlowDescriptor> flowDescriptorMap;
 
     /** Mappings between a SPSession type and a serializer implementation. */
     @Nullable private SPSessionSerializerRegistry spSessionSerializerRegistry;
 
+    /** Maximum number of sessions to cache in-process, or 0 for no cache. */
+    private long sessionCacheSize;
+
+    /** Interval within which a cached session is reused without checking its storage version. */
+    @Nonnull private Duration sessionCacheRevalidationInterval;
+
+    /** In-process cache of sessions. */
+    @Nullable private Cache<String,CachedSession> sessionCache;
+
+    /** Lookups satisfied by the session cache. */
+    @Nonnull private final LongAdder sessionCacheHits;
+
+    /** Lookups not found in the session cache. */
+    @Nonnull private final LongAdder sessionCacheMisses;
+
+    /** Lookups finding an out of date entry in the session cache. */
+    @Nonnull private final LongAdder sessionCacheInvalidations;
+
+    /** Interval between writes of coalesced activity updates, or 0 to write them through. */
+    @Nonnull private Duration activityFlushInterval;
+
+    /** Maximum number of records whose activity updates are coalesced. */
+    private int activityWriteBehindMaxEntries;
+
+    /** Timer used to schedule flushes of coalesced activity updates. */
+    @Nullable private Timer activityFlushTimer;
+
+    /** Whether the timer is our own. */
+    private boolean ownActivityFlushTimer;
+
+    /** Task flushing coalesced activity updates. */
+    @Nullable private TimerTask activityFlushTask;
+
+    /** Coalesces activity updates. */
+    @Nullable private ExpirationWriteBehind activityWriteBehind;
+
     /**
      * Constructor.
      * 
@@ -179,6 +270,13 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
                 DefaultConsistentAddressConditionFactory.getDefaultConsistentAddressCondition(true);
         cookieName = DEFAULT_COOKIE_NAME;
         storageServiceThreshold = 1024 * 1024;
+        secondaryServiceIndexMigration = true;
+        sessionCacheRevalidationInterval = Duration.ZERO;
+        sessionCacheHits = new LongAdder();
+        sessionCacheMisses = new LongAdder();
+        sessionCacheInvalidations = new LongAdder();
+        activityFlushInterval = Duration.ZERO;
+        activityWriteBehindMaxEntries = 50000;
     }
 
     /**
@@ -311,6 +409,279 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         secondaryServiceIndex = flag;
     }
 
+    /**
+     * Get the number of records across which each secondary index entry is sharded.
+     * 
+     * @return number of shards, or 0 if each entry is a single record
+     */
+    public int getSecondaryServiceIndexShards() {
+        return secondaryServiceIndexShards;
+    }
+
+    /**
+     * Set the number of records across which each secondary index entry is sharded.
+     * 
+     * <p>
+     * By default each service ID and SPSession key maps to a single record listing every IdPSession ID, which
+     * every update must read and rewrite. When sharded, each IdPSession ID is recorded in one of a fixed number of
+     * records chosen by hashing the ID, so updates touch a short record that few other sessions contend for, at the
+     * cost of a lookup reading every shard. Each shard is still rewritten in full on every update, so the number of
+     * shards should be large enough to keep each one short for the busiest keys. Records in the single-record format
+     * are migrated into the shards the first time they are looked up, see
+     * {@link #setSecondaryServiceIndexMigration(boolean)}.
+     * </p>
+     * 
+     * <p>
+     * The number of shards may be raised at any time, since lookups read every shard and prune entries for sessions
+     * that no longer exist. Lowering it leaves any entries recorded in the shards no longer read to be found by
+     * neither lookups nor removals until they expire, so it should only be lowered along with a storage reset or
+     * after the existing records have expired.
+     * </p>
+     * 
+     * <p>
+     * Defaults to 0, the single-record format.
+     * </p>
+     * 
+     * @param shards number of shards
+     */
+    public void setSecondaryServiceIndexShards(final int shards) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        secondaryServiceIndexShards = (int) Constraint.isGreaterThanOrEqual(0, shards,
+                "Number of shards cannot be negative");
+    }
+
+    /**
+     * Get whether to look for secondary index records in the unsharded format when sharded.
+     * 
+     * @return whether to migrate unsharded records
+     */
+    public boolean isSecondaryServiceIndexMigration() {
+        return secondaryServiceIndexMigration;
+    }
+
+    /**
+     * Set whether to look for secondary index records in the unsharded format when sharded.
+     * 
+     * <p>
+     * When enabled, each lookup migrates any unsharded record for its key into the shards, and each removal also
+     * updates any unsharded record, at the cost of an additional read for each. Once sharding has been in place for
+     * longer than records live, which is at most the longest SPSession lifetime plus the slop, no unsharded records
+     * can remain and this may be disabled.
+     * </p>
+     * 
+     * <p>
+     * Defaults to true. Has no effect unless the index is sharded.
+     * </p>
+     * 
+     * @param flag flag to set
+     */
+    public void setSecondaryServiceIndexMigration(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        secondaryServiceIndexMigration = flag;
+    }
+
+    /**
+     * Set an executor with which to read secondary index shards in parallel during lookups.
+     * 
+     * <p>
+     * If not set, shards are read sequentially on the calling thread.
+     * </p>
+     * 
+     * @param executor executor to use
+     */
+    public void setSecondaryServiceIndexExecutor(@Nullable final Executor executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        secondaryServiceIndexExecutor = executor;
+    }
+
+    /**
+     * Get the executor with which to load a session's {@link net.shibboleth.idp.authn.AuthenticationResult} and
+     * {@link SPSession} records in parallel.
+     * 
+     * @return executor to use, or null
+     */
+    @Nullable public Executor getBulkLoadExecutor() {
+        return bulkLoadExecutor;
+    }
+
+    /**
+     * Set an executor with which to load a session's {@link net.shibboleth.idp.authn.AuthenticationResult} and
+     * {@link SPSession} records in parallel.
+     * 
+     * <p>
+     * When a session's full set of results or service sessions is needed, as during logout, each record not yet
+     * loaded is read and deserialized on the executor. If the storage service is a
+     * {@link net.shibboleth.idp.session.BulkReadStorageService}, the records are instead read with a single
+     * operation and only deserialized on the executor. If not set, records are deserialized on the calling thread.
+     * </p>
+     * 
+     * @param executor executor to use
+     */
+    public void setBulkLoadExecutor(@Nullable final Executor executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        bulkLoadExecutor = executor;
+    }
+
+    /**
+     * Set the maximum number of sessions to cache in-process.
+     * 
+     * <p>
+     * Caching avoids reading and deserializing the master session record when a node handles successive requests
+     * for the same session. A cached record is only used after a versioned read confirms it is unchanged (see
+     * {@link #setSessionCacheRevalidationInterval(Duration)}), and is treated as a miss if the session would
+     * otherwise appear to have timed out, since activity updates elsewhere do not change the record version. The
+     * AuthenticationResult and SPSession records of a session are never cached.
+     * </p>
+     * 
+     * <p>
+     * Defaults to 0, which disables the cache.
+     * </p>
+     * 
+     * @param size maximum number of sessions to cache
+     */
+    public void setSessionCacheSize(final long size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        sessionCacheSize = Constraint.isGreaterThanOrEqual(0, size, "Session cache size cannot be negative");
+    }
+
+    /**
+     * Set the interval within which a cached session is reused without checking the version of the master
+     * record in storage.
+     * 
+     * <p>
+     * A non-zero value avoids any storage access for sessions used repeatedly within the interval, but allows
+     * changes made to the session by other nodes to go unseen for that long, so should only be used with
+     * deployments that route requests for a session to the same node.
+     * </p>
+     * 
+     * <p>
+     * Defaults to 0, which checks the version on every use.
+     * </p>
+     * 
+     * @param interval revalidation interval
+     */
+    public void setSessionCacheRevalidationInterval(@Nonnull final Duration interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        Constraint.isNotNull(interval, "Revalidation interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Revalidation interval cannot be negative");
+        sessionCacheRevalidationInterval = interval;
+    }
+
+    /**
+     * Get the number of session lookups satisfied by the in-process cache.
+     * 
+     * @return number of cache hits
+     */
+    public long getSessionCacheHits() {
+        return sessionCacheHits.sum();
+    }
+
+    /**
+     * Get the number of session lookups not found in the in-process cache.
+     * 
+     * @return number of cache misses
+     */
+    public long getSessionCacheMisses() {
+        return sessionCacheMisses.sum();
+    }
+
+    /**
+     * Get the number of session lookups that found a cached session to be out of date.
+     * 
+     * @return number of cache invalidations
+     */
+    public long getSessionCacheInvalidations() {
+        return sessionCacheInvalidations.sum();
+    }
+
+    /**
+     * Get the approximate number of sessions in the in-process cache.
+     * 
+     * @return number of cached sessions
+     */
+    public long getSessionCacheEntries() {
+        return sessionCache != null ? sessionCache.size() : 0;
+    }
+
+    /**
+     * Set the interval between writes of coalesced activity updates.
+     * 
+     * <p>
+     * A non-zero value defers activity updates to the master and AuthenticationResult records of a session, writing
+     * only the latest of them once per interval. An update is written at once if the stored record would otherwise
+     * time out within two intervals, so this should be well below the session and flow timeouts to be effective.
+     * </p>
+     * 
+     * <p>
+     * Defaults to 0, which writes every update through to storage.
+     * </p>
+     * 
+     * @param interval flush interval
+     */
+    public void setActivityFlushInterval(@Nonnull final Duration interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        Constraint.isNotNull(interval, "Flush interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Flush interval cannot be negative");
+        activityFlushInterval = interval;
+    }
+
+    /**
+     * Set the maximum number of records whose activity updates are coalesced, beyond which updates are written
+     * through to storage.
+     * 
+     * <p>
+     * Defaults to 50000.
+     * </p>
+     * 
+     * @param max maximum number of records
+     */
+    public void setActivityWriteBehindMaxEntries(final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        activityWriteBehindMaxEntries =
+                (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than 0");
+    }
+
+    /**
+     * Set the timer used to schedule flushes of coalesced activity updates.
+     * 
+     * <p>
+     * If not set, a private daemon timer is created when needed.
+     * </p>
+     * 
+     * @param timer timer to use
+     */
+    public void setActivityFlushTimer(@Nullable final Timer timer) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        activityFlushTimer = timer;
+    }
+
+    /**
+     * Get statistics on coalesced activity updates.
+     * 
+     * @return statistics, empty if activity updates are written through
+     */
+    @Nonnull @NonnullElements public Map<String,Long> getActivityWriteBehindStatistics() {
+        return activityWriteBehind != null ? activityWriteBehind.getStatistics() : Map.of();
+    }
+
+    /**
+     * Write any coalesced activity updates to storage.
+     */
+    public void flushActivity() {
+        if (activityWriteBehind != null) {
+            activityWriteBehind.flush(System.currentTimeMillis());
+        }
+    }
+
     /**
      * Get condition to evaluate bound session and client addresses for consistency.
      * 
@@ -379,6 +750,41 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         return storageService;
     }
 
+    /**
+     * Update the expiration of a record to reflect activity, coalescing the write if enabled.
+     * 
+     * @param context record context
+     * @param key record key
+     * @param expiration new expiration
+     * @param grace time by which the expiration exceeds the point at which the record times out
+     * 
+     * @return false iff the record was found not to exist
+     * @throws IOException if an error occurs writing to storage
+     */
+    boolean updateActivityExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final Instant expiration, @Nonnull final Duration grace) throws IOException {
+        if (activityWriteBehind != null) {
+            return activityWriteBehind.updateExpiration(context, key, expiration.toEpochMilli(), grace.toMillis(),
+                    System.currentTimeMillis());
+        }
+        return storageService.updateExpiration(context, key, expiration.toEpochMilli());
+    }
+
+    /**
+     * Get the effective expiration of a record read from storage, accounting for any coalesced activity update
+     * not yet written.
+     * 
+     * @param context record context
+     * @param key record key
+     * @param expiration expiration read from storage
+     * 
+     * @return effective expiration
+     */
+    @Nullable Long getActivityExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable final Long expiration) {
+        return activityWriteBehind != null ? activityWriteBehind.getExpiration(context, key, expiration) : expiration;
+    }
+
     /**
      * Set the {@link StorageService} back-end to use.
      * 
@@ -432,6 +838,30 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         idGenerator = Constraint.isNotNull(newIDGenerator, "IdentifierGenerationStrategy cannot be null");
     }
 
+    /**
+     * Get whether to write session records in the compact binary format.
+     * 
+     * @return true iff session records should be written in the compact format
+     */
+    public boolean isCompactSerialization() {
+        return compactSerialization;
+    }
+
+    /**
+     * Set whether to write session records in the compact binary format rather than JSON.
+     * 
+     * <p>Records in either format are read regardless of this setting, so existing sessions survive a change.</p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompactSerialization(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        compactSerialization = flag;
+    }
+
     /**
      * Get the serializer for the {@link IdPSession} objects managed by this implementation.
      * 
@@ -509,6 +939,45 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
 
         // This is our private instance, so we initialize it.
         serializer.initialize();
+
+        if (sessionCacheSize > 0) {
+            sessionCache = CacheBuilder.newBuilder()
+                    .maximumSize(sessionCacheSize)
+                    .expireAfterAccess(sessionTimeout.plus(sessionSlop))
+                    .build();
+        }
+
+        if (!activityFlushInterval.isZero()) {
+            activityWriteBehind = new ExpirationWriteBehind(storageService,
+                    activityFlushInterval.multipliedBy(2).toMillis(), activityWriteBehindMaxEntries);
+            if (activityFlushTimer == null) {
+                activityFlushTimer = new Timer(true);
+                ownActivityFlushTimer = true;
+            }
+            activityFlushTask = new TimerTask() {
+                public void run() {
+                    flushActivity();
+                }
+            };
+            activityFlushTimer.schedule(activityFlushTask, activityFlushInterval.toMillis(),
+                    activityFlushInterval.toMillis());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void doDestroy() {
+        if (activityFlushTask != null) {
+            activityFlushTask.cancel();
+            activityFlushTask = null;
+        }
+        if (ownActivityFlushTimer) {
+            activityFlushTimer.cancel();
+            activityFlushTimer = null;
+            ownActivityFlushTimer = false;
+        }
+        flushActivity();
+
+        super.doDestroy();
     }
 
     /** {@inheritDoc} */
@@ -563,6 +1032,8 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
             cookieManager.unsetCookie(cookieName);
         }
 
+        invalidateCachedSession(sessionId);
+
         try {
             storageService.deleteContext(sessionId);
             log.debug("Destroyed session {}", sessionId);
@@ -646,151 +1117,185 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
      */
     protected void indexBySPSession(@Nonnull final IdPSession idpSession, @Nonnull final SPSession spSession,
             final int attempts) throws SessionException {
-        if (attempts <= 0) {
-            log.error("Exceeded retry attempts while adding to secondary index");
-            if (!maskStorageFailure) {
-                throw new SessionException("Exceeded retry attempts while adding to secondary index");
+        if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
+            final String serviceKey = spSession.getSPSessionKey();
+            if (serviceKey == null) {
+                return;
+            }
+
+            final String serviceId = truncateContext(spSession.getId());
+            String indexKey = truncateKey(serviceKey);
+            if (secondaryServiceIndexShards > 0) {
+                indexKey = getShardKey(indexKey, getShard(idpSession.getId()));
             }
-        } else if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
-            String serviceId = spSession.getId();
-            String serviceKey = spSession.getSPSessionKey();
+            log.debug("Maintaining secondary index for service ID {} and key {}", serviceId, indexKey);
+
+            addToIndexRecord(serviceId, indexKey, idpSession.getId(),
+                    spSession.getExpirationInstant().plus(sessionSlop).toEpochMilli(), attempts);
+        }
+    }
+
+    /**
+     * Remove or update a secondary index record from an SPSession to a parent IdPSession.
+     * 
+     * @param idpSession the parent session
+     * @param spSession the SPSession to de-index
+     * @param attempts number of times to retry operation in the event of a synchronization issue
+     * 
+     * @throws SessionException if a fatal error occurs
+     */
+    protected void unindexSPSession(@Nonnull final IdPSession idpSession, @Nonnull final SPSession spSession,
+            final int attempts) throws SessionException {
+        if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
+            final String serviceKey = spSession.getSPSessionKey();
             if (serviceKey == null) {
                 return;
             }
-            log.debug("Maintaining secondary index for service ID {} and key {}", serviceId, serviceKey);
 
-            final int contextSize = storageService.getCapabilities().getContextSize();
-            final int keySize = storageService.getCapabilities().getKeySize();
+            final String serviceId = truncateContext(spSession.getId());
+            final String indexKey = truncateKey(serviceKey);
+            log.debug("Removing secondary index for service ID {} and key {}", serviceId, indexKey);
 
-            // Truncate context and key if needed.
-            if (serviceId.length() > contextSize) {
-                serviceId = serviceId.substring(0, contextSize);
+            if (secondaryServiceIndexShards > 0) {
+                removeFromIndexRecord(serviceId, getShardKey(indexKey, getShard(idpSession.getId())),
+                        idpSession.getId(), attempts);
+                if (!secondaryServiceIndexMigration) {
+                    return;
+                }
             }
-            if (serviceKey.length() > keySize) {
-                serviceKey = serviceKey.substring(0, keySize);
+            // The session may also be indexed in a record in the original format, awaiting migration.
+            removeFromIndexRecord(serviceId, indexKey, idpSession.getId(), attempts);
+        }
+    }
+
+    /**
+     * Add an IdPSession ID to a secondary index record, creating the record if necessary.
+     * 
+     * @param serviceId the (truncated) service ID
+     * @param indexKey the (truncated) key of the index record
+     * @param sessionId the IdPSession ID to add
+     * @param expiration minimum expiration of the index record
+     * @param attempts number of times to retry operation in the event of a synchronization issue
+     * 
+     * @return true iff the ID was recorded, false if a failure was masked
+     * 
+     * @throws SessionException if a fatal error occurs
+     */
+    private boolean addToIndexRecord(@Nonnull @NotEmpty final String serviceId,
+            @Nonnull @NotEmpty final String indexKey, @Nonnull @NotEmpty final String sessionId,
+            final long expiration, final int attempts) throws SessionException {
+        if (attempts <= 0) {
+            log.error("Exceeded retry attempts while adding to secondary index");
+            if (!maskStorageFailure) {
+                throw new SessionException("Exceeded retry attempts while adding to secondary index");
             }
+            return false;
+        }
 
-            StorageRecord<?> sessionList = null;
+        StorageRecord<?> sessionList = null;
 
-            try {
-                sessionList = storageService.read(serviceId, serviceKey);
-            } catch (final IOException e) {
-                log.error("Exception while querying based service ID {} and key {}", serviceId, serviceKey, e);
-                if (!maskStorageFailure) {
-                    throw new SessionException("Exception while querying based on SPSession", e);
-                }
+        try {
+            sessionList = storageService.read(serviceId, indexKey);
+        } catch (final IOException e) {
+            log.error("Exception while querying based service ID {} and key {}", serviceId, indexKey, e);
+            if (!maskStorageFailure) {
+                throw new SessionException("Exception while querying based on SPSession", e);
             }
+        }
 
-            try {
-                if (sessionList != null) {
-                    if (!sessionList.getValue().contains(idpSession.getId() + ',')) {
-                        // Need to update record.
-                        final String updated = sessionList.getValue() + idpSession.getId() + ',';
-                        if (storageService.updateWithVersion(sessionList.getVersion(), serviceId, serviceKey, updated,
-                                Math.max(sessionList.getExpiration(), 
-                                         spSession.getExpirationInstant().plus(sessionSlop).toEpochMilli())) == null) {
-                            log.debug("Secondary index record disappeared, retrying as insert");
-                            indexBySPSession(idpSession, spSession, attempts - 1);
-                        }
-                    } else {
-                        log.debug("IdP session {} already indexed against service ID {} and key {}", idpSession.getId(),
-                                serviceId, serviceKey);
+        try {
+            if (sessionList != null) {
+                if (!sessionList.getValue().contains(sessionId + ',')) {
+                    // Need to update record.
+                    final String updated = sessionList.getValue() + sessionId + ',';
+                    if (storageService.updateWithVersion(sessionList.getVersion(), serviceId, indexKey, updated,
+                            Math.max(sessionList.getExpiration(), expiration)) == null) {
+                        log.debug("Secondary index record disappeared, retrying as insert");
+                        return addToIndexRecord(serviceId, indexKey, sessionId, expiration, attempts - 1);
                     }
-                } else if (!storageService.create(serviceId, serviceKey, idpSession.getId() + ',',
-                        spSession.getExpirationInstant().plus(sessionSlop).toEpochMilli())) {
-                    log.debug("Secondary index record appeared, retrying as update");
-                    indexBySPSession(idpSession, spSession, attempts - 1);
-                }
-            } catch (final IOException e) {
-                log.error("Exception maintaining secondary index for service ID {} and key {}",
-                        serviceId, serviceKey, e);
-                if (!maskStorageFailure) {
-                    throw new SessionException("Exception maintaining secondary index", e);
+                } else {
+                    log.debug("IdP session {} already indexed against service ID {} and key {}", sessionId,
+                            serviceId, indexKey);
                 }
-            } catch (final VersionMismatchException e) {
-                log.debug("Secondary index record was updated between read/update, retrying");
-                indexBySPSession(idpSession, spSession, attempts - 1);
+            } else if (!storageService.create(serviceId, indexKey, sessionId + ',', expiration)) {
+                log.debug("Secondary index record appeared, retrying as update");
+                return addToIndexRecord(serviceId, indexKey, sessionId, expiration, attempts - 1);
             }
+        } catch (final IOException e) {
+            log.error("Exception maintaining secondary index for service ID {} and key {}", serviceId, indexKey, e);
+            if (!maskStorageFailure) {
+                throw new SessionException("Exception maintaining secondary index", e);
+            }
+            return false;
+        } catch (final VersionMismatchException e) {
+            log.debug("Secondary index record was updated between read/update, retrying");
+            return addToIndexRecord(serviceId, indexKey, sessionId, expiration, attempts - 1);
         }
+        
+        return true;
     }
 
     /**
-     * Remove or update a secondary index record from an SPSession to a parent IdPSession.
+     * Remove an IdPSession ID from a secondary index record, deleting the record if it becomes empty.
      * 
-     * @param idpSession the parent session
-     * @param spSession the SPSession to de-index
+     * @param serviceId the (truncated) service ID
+     * @param indexKey the (truncated) key of the index record
+     * @param sessionId the IdPSession ID to remove
      * @param attempts number of times to retry operation in the event of a synchronization issue
      * 
      * @throws SessionException if a fatal error occurs
      */
-    protected void unindexSPSession(@Nonnull final IdPSession idpSession, @Nonnull final SPSession spSession,
-            final int attempts) throws SessionException {
+    private void removeFromIndexRecord(@Nonnull @NotEmpty final String serviceId,
+            @Nonnull @NotEmpty final String indexKey, @Nonnull @NotEmpty final String sessionId, final int attempts)
+                    throws SessionException {
         if (attempts <= 0) {
             log.error("Exceeded retry attempts while removing from secondary index");
             if (!maskStorageFailure) {
                 throw new SessionException("Exceeded retry attempts while removing from secondary index");
             }
-        } else if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
-            String serviceId = spSession.getId();
-            String serviceKey = spSession.getSPSessionKey();
-            if (serviceKey == null) {
-                return;
-            }
-            log.debug("Removing secondary index for service ID {} and key {}", serviceId, serviceKey);
-
-            final int contextSize = storageService.getCapabilities().getContextSize();
-            final int keySize = storageService.getCapabilities().getKeySize();
-
-            // Truncate context and key if needed.
-            if (serviceId.length() > contextSize) {
-                serviceId = serviceId.substring(0, contextSize);
-            }
-            if (serviceKey.length() > keySize) {
-                serviceKey = serviceKey.substring(0, keySize);
-            }
+            return;
+        }
 
-            StorageRecord<?> sessionList = null;
+        StorageRecord<?> sessionList = null;
 
-            try {
-                sessionList = storageService.read(serviceId, serviceKey);
-            } catch (final IOException e) {
-                log.error("Exception while querying based service ID {} and key {}", serviceId, serviceKey, e);
-                if (!maskStorageFailure) {
-                    throw new SessionException("Exception while querying based on SPSession", e);
-                }
+        try {
+            sessionList = storageService.read(serviceId, indexKey);
+        } catch (final IOException e) {
+            log.error("Exception while querying based service ID {} and key {}", serviceId, indexKey, e);
+            if (!maskStorageFailure) {
+                throw new SessionException("Exception while querying based on SPSession", e);
             }
+        }
 
-            try {
-                if (sessionList != null) {
-                    final String recordValue = sessionList.getValue();
-                    if (recordValue.contains(idpSession.getId() + ',')) {
-                        // Need to update or delete record.
-                        final String updated = recordValue.replace(idpSession.getId() + ',', "");
-                        if (updated.length() > 0) {
-                            if (storageService.updateWithVersion(sessionList.getVersion(), serviceId, serviceKey,
-                                    updated, sessionList.getExpiration()) == null) {
-                                log.debug("Secondary index record disappeared, nothing to do");
-                            }
-                        } else {
-                            storageService.deleteWithVersion(sessionList.getVersion(), serviceId, serviceKey);
+        try {
+            if (sessionList != null) {
+                final String recordValue = sessionList.getValue();
+                if (recordValue.contains(sessionId + ',')) {
+                    // Need to update or delete record.
+                    final String updated = recordValue.replace(sessionId + ',', "");
+                    if (updated.length() > 0) {
+                        if (storageService.updateWithVersion(sessionList.getVersion(), serviceId, indexKey,
+                                updated, sessionList.getExpiration()) == null) {
+                            log.debug("Secondary index record disappeared, nothing to do");
                         }
                     } else {
-                        log.debug("IdP session {} not indexed against service ID {} and key {}", idpSession.getId(),
-                                serviceId, serviceKey);
+                        storageService.deleteWithVersion(sessionList.getVersion(), serviceId, indexKey);
                     }
                 } else {
-                    log.debug("Secondary index record not found, nothing to do");
-                }
-            } catch (final IOException e) {
-                log.error("Exception removing secondary index for service ID {} and key {}",
-                        serviceId, serviceKey, e);
-                if (!maskStorageFailure) {
-                    throw new SessionException("Exception maintaining secondary index", e);
+                    log.debug("IdP session {} not indexed against service ID {} and key {}", sessionId,
+                            serviceId, indexKey);
                 }
-            } catch (final VersionMismatchException e) {
-                log.debug("Secondary index record was updated between read/update/delete, retrying");
-                unindexSPSession(idpSession, spSession, attempts - 1);
+            } else {
+                log.debug("Secondary index record not found, nothing to do");
             }
+        } catch (final IOException e) {
+            log.error("Exception removing secondary index for service ID {} and key {}", serviceId, indexKey, e);
+            if (!maskStorageFailure) {
+                throw new SessionException("Exception maintaining secondary index", e);
+            }
+        } catch (final VersionMismatchException e) {
+            log.debug("Secondary index record was updated between read/update/delete, retrying");
+            removeFromIndexRecord(serviceId, indexKey, sessionId, attempts - 1);
         }
     }
     
@@ -811,10 +1316,17 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         log.debug("Performing primary lookup on session ID {}", sessionId);
 
         try {
+            final CachedSession cached = sessionCache != null ? sessionCache.getIfPresent(sessionId) : null;
+            if (cached != null) {
+                return lookupCachedSession(cached);
+            } else if (sessionCache != null) {
+                sessionCacheMisses.increment();
+            }
+
             final StorageRecord<StorageBackedIdPSession> sessionRecord =
                     storageService.read(sessionId, SESSION_MASTER_KEY);
             if (sessionRecord != null) {
-                return sessionRecord.getValue(serializer, sessionId, SESSION_MASTER_KEY);
+                return cacheSession(sessionRecord.getValue(serializer, sessionId, SESSION_MASTER_KEY));
             }
             log.debug("Primary lookup failed for session ID {}", sessionId);
         } catch (final IOException e) {
@@ -827,6 +1339,100 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         return null;
     }
 
+    /**
+     * Returns a cached session after checking that it remains current, replacing it if the master record has
+     * changed.
+     * 
+     * @param cached the cache entry
+     * 
+     * @return the current session, or null if the session no longer exists
+     * @throws IOException if an error occurs reading from storage
+     */
+    @Nullable private StorageBackedIdPSession lookupCachedSession(@Nonnull final CachedSession cached)
+            throws IOException {
+        final String sessionId = cached.getId();
+        final long now = System.currentTimeMillis();
+
+        // Activity updates from other nodes don't change the record version, so a session that appears to
+        // have timed out has to be reloaded to get a reliable answer.
+        final boolean active = cached.getLastActivityInstant().plus(sessionTimeout).toEpochMilli() > now;
+        if (active && now - cached.getValidated() < sessionCacheRevalidationInterval.toMillis()) {
+            sessionCacheHits.increment();
+            return cached.newSession(this);
+        }
+
+        @SuppressWarnings("rawtypes")
+        final Pair<Long,StorageRecord> versioned =
+                storageService.read(sessionId, SESSION_MASTER_KEY, cached.getVersion());
+        if (versioned.getFirst() == null) {
+            log.debug("Primary lookup failed for cached session ID {}", sessionId);
+            sessionCacheInvalidations.increment();
+            invalidateCachedSession(sessionId);
+            return null;
+        } else if (versioned.getSecond() == null && active) {
+            sessionCacheHits.increment();
+            cached.setValidated(now);
+            return cached.newSession(this);
+        }
+
+        sessionCacheInvalidations.increment();
+        if (versioned.getSecond() != null) {
+            log.debug("Cached session {} is out of date, reloading", sessionId);
+            @SuppressWarnings("unchecked")
+            final StorageRecord<StorageBackedIdPSession> sessionRecord = versioned.getSecond();
+            return cacheSession(sessionRecord.getValue(serializer, sessionId, SESSION_MASTER_KEY));
+        }
+
+        // Unchanged, but the expiration of the record may have been extended, which requires a full read.
+        final StorageRecord<StorageBackedIdPSession> sessionRecord = storageService.read(sessionId, SESSION_MASTER_KEY);
+        if (sessionRecord != null) {
+            return cacheSession(sessionRecord.getValue(serializer, sessionId, SESSION_MASTER_KEY));
+        }
+        invalidateCachedSession(sessionId);
+        return null;
+    }
+
+    /**
+     * Adds the master record contents of a session to the in-process cache, if enabled.
+     * 
+     * @param session the session to cache
+     * 
+     * @return the session
+     */
+    @Nonnull private StorageBackedIdPSession cacheSession(@Nonnull final StorageBackedIdPSession session) {
+        if (sessionCache != null) {
+            sessionCache.put(session.getId(), new CachedSession(session));
+        }
+        return session;
+    }
+
+    /**
+     * Replaces the cached master record contents of a session after it has been written, if it is cached at an
+     * older version.
+     * 
+     * @param session the session written
+     */
+    void refreshCachedSession(@Nonnull final StorageBackedIdPSession session) {
+        if (sessionCache != null) {
+            sessionCache.asMap().computeIfPresent(session.getId(),
+                    (id, cached) -> cached.getVersion() < session.getVersion() ? new CachedSession(session) : cached);
+        }
+    }
+
+    /**
+     * Removes a session from the in-process cache, if enabled.
+     * 
+     * <p>This is used when a session is destroyed, and when a write of the master record fails, since
+     * the cached object may then reflect changes that were not stored.</p>
+     * 
+     * @param sessionId ID of session to remove
+     */
+    void invalidateCachedSession(@Nonnull @NotEmpty final String sessionId) {
+        if (sessionCache != null) {
+            sessionCache.invalidate(sessionId);
+        }
+    }
+
     /**
      * Performs a lookup and deserializes records potentially matching a SPSession.
      * 
@@ -838,34 +1444,78 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     @Nonnull @NonnullElements private Iterable<IdPSession>
             lookupBySPSession(@Nonnull final SPSessionCriterion criterion) throws ResolverException {
 
-        final int contextSize = storageService.getCapabilities().getContextSize();
-        final int keySize = storageService.getCapabilities().getKeySize();
-
-        String serviceId = criterion.getServiceId();
-        String serviceKey = criterion.getSPSessionKey();
+        final String serviceId = truncateContext(criterion.getServiceId());
+        final String serviceKey = truncateKey(criterion.getSPSessionKey());
         log.debug("Performing secondary lookup on service ID {} and key {}", serviceId, serviceKey);
 
-        // Truncate context and key if needed.
-        if (serviceId.length() > contextSize) {
-            serviceId = serviceId.substring(0, contextSize);
+        if (secondaryServiceIndexShards <= 0) {
+            return lookupByIndexRecord(serviceId, serviceKey);
         }
-        if (serviceKey.length() > keySize) {
-            serviceKey = serviceKey.substring(0, keySize);
+
+        if (secondaryServiceIndexMigration) {
+            migrateIndexRecord(serviceId, serviceKey);
+        }
+
+        final ImmutableList.Builder<IdPSession> builder = ImmutableList.builder();
+
+        if (secondaryServiceIndexExecutor == null) {
+            for (int shard = 0; shard < secondaryServiceIndexShards; shard++) {
+                builder.addAll(lookupByIndexRecord(serviceId, getShardKey(serviceKey, shard)));
+            }
+            return builder.build();
+        }
+
+        final List<CompletableFuture<List<IdPSession>>> lookups = new ArrayList<>(secondaryServiceIndexShards);
+        for (int shard = 0; shard < secondaryServiceIndexShards; shard++) {
+            final String shardKey = getShardKey(serviceKey, shard);
+            lookups.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return lookupByIndexRecord(serviceId, shardKey);
+                } catch (final ResolverException e) {
+                    throw new CompletionException(e);
+                }
+            }, this::executeIndexLookup));
         }
 
+        try {
+            for (final CompletableFuture<List<IdPSession>> lookup : lookups) {
+                builder.addAll(lookup.join());
+            }
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof ResolverException) {
+                throw (ResolverException) e.getCause();
+            }
+            throw e;
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Reads a secondary index record and deserializes the sessions it lists, pruning any that no longer exist.
+     * 
+     * @param serviceId the (truncated) service ID
+     * @param indexKey the (truncated) key of the index record
+     * 
+     * @return collection of zero or more sessions
+     * @throws ResolverException if an error occurs during lookup
+     */
+    @Nonnull @NonnullElements private List<IdPSession> lookupByIndexRecord(@Nonnull @NotEmpty final String serviceId,
+            @Nonnull @NotEmpty final String indexKey) throws ResolverException {
+
         StorageRecord<?> sessionList = null;
 
         try {
-            sessionList = storageService.read(serviceId, serviceKey);
+            sessionList = storageService.read(serviceId, indexKey);
         } catch (final IOException e) {
-            log.error("Exception while querying based service ID {} and key {}", serviceId, serviceKey, e);
+            log.error("Exception while querying based service ID {} and key {}", serviceId, indexKey, e);
             if (!maskStorageFailure) {
                 throw new ResolverException("Exception while querying based on SPSession", e);
             }
         }
 
         if (sessionList == null) {
-            log.debug("Secondary lookup failed on service ID {} and key {}", serviceId, serviceKey);
+            log.debug("Secondary lookup failed on service ID {} and key {}", serviceId, indexKey);
             return ImmutableList.of();
         }
 
@@ -886,9 +1536,9 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         try {
             final String writeBackValue = writeBackSessionList.toString();
             if (writeBackValue.length() == 0) {
-                storageService.deleteWithVersion(sessionList.getVersion(), serviceId, serviceKey);
+                storageService.deleteWithVersion(sessionList.getVersion(), serviceId, indexKey);
             } else if (!writeBackValue.equals(sessionList.getValue())) {
-                storageService.updateWithVersion(sessionList.getVersion(), serviceId, serviceKey, writeBackValue,
+                storageService.updateWithVersion(sessionList.getVersion(), serviceId, indexKey, writeBackValue,
                         sessionList.getExpiration());
             }
         } catch (final IOException e) {
@@ -899,7 +1549,245 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
 
         return builder.build();
     }
+
+    /**
+     * Moves the entries of a secondary index record in the original, unsharded format into the sharded records,
+     * and deletes it.
+     * 
+     * <p>Failures are logged and otherwise ignored, leaving the record in place to be migrated by a later
+     * lookup.</p>
+     * 
+     * @param serviceId the (truncated) service ID
+     * @param serviceKey the (truncated) SPSession key
+     */
+    private void migrateIndexRecord(@Nonnull @NotEmpty final String serviceId,
+            @Nonnull @NotEmpty final String serviceKey) {
+        try {
+            final StorageRecord<?> sessionList = storageService.read(serviceId, serviceKey);
+            if (sessionList == null) {
+                return;
+            }
+
+            log.debug("Migrating secondary index record for service ID {} and key {} to {} shards", serviceId,
+                    serviceKey, secondaryServiceIndexShards);
+            final long expiration = sessionList.getExpiration() != null ? sessionList.getExpiration()
+                    : Instant.now().plus(sessionTimeout).plus(sessionSlop).toEpochMilli();
+            boolean migrated = true;
+            for (final String sessionId : sessionList.getValue().split(",")) {
+                if (!sessionId.isEmpty() && !addToIndexRecord(serviceId,
+                        getShardKey(serviceKey, getShard(sessionId)), sessionId, expiration, 10)) {
+                    migrated = false;
+                }
+            }
+            if (!migrated) {
+                log.warn("Unable to migrate all entries of secondary index record for service ID {} and key {}, "
+                        + "leaving it for a later lookup", serviceId, serviceKey);
+                return;
+            }
+            storageService.deleteWithVersion(sessionList.getVersion(), serviceId, serviceKey);
+        } catch (final IOException | SessionException e) {
+            log.warn("Ignoring exception while migrating secondary index record", e);
+        } catch (final VersionMismatchException e) {
+            log.debug("Secondary index record was updated during migration, leaving it for a later lookup");
+        }
+    }
+
+    /**
+     * Get the shard of the secondary index in which an IdPSession ID is recorded.
+     * 
+     * @param sessionId the IdPSession ID
+     * 
+     * @return the shard number
+     */
+    private int getShard(@Nonnull @NotEmpty final String sessionId) {
+        return Math.floorMod(sessionId.hashCode(), secondaryServiceIndexShards);
+    }
+
+    /**
+     * Get the storage key of a secondary index shard, truncating the SPSession key further if needed to leave room
+     * for the shard suffix.
+     * 
+     * @param serviceKey the (truncated) SPSession key
+     * @param shard the shard number
+     * 
+     * @return the storage key of the shard
+     */
+    @Nonnull @NotEmpty private String getShardKey(@Nonnull @NotEmpty final String serviceKey, final int shard) {
+        final String suffix = SHARD_KEY_SEPARATOR + shard;
+        final int keySize = storageService.getCapabilities().getKeySize() - suffix.length();
+        if (serviceKey.length() > keySize) {
+            return serviceKey.substring(0, keySize) + suffix;
+        }
+        return serviceKey + suffix;
+    }
+
+    /**
+     * Truncate a service ID to the context size supported by the storage service.
+     * 
+     * @param serviceId the service ID
+     * 
+     * @return the possibly truncated service ID
+     */
+    @Nonnull @NotEmpty private String truncateContext(@Nonnull @NotEmpty final String serviceId) {
+        final int contextSize = storageService.getCapabilities().getContextSize();
+        return serviceId.length() > contextSize ? serviceId.substring(0, contextSize) : serviceId;
+    }
+
+    /**
+     * Truncate an SPSession key to the key size supported by the storage service.
+     * 
+     * @param serviceKey the SPSession key
+     * 
+     * @return the possibly truncated key
+     */
+    @Nonnull @NotEmpty private String truncateKey(@Nonnull @NotEmpty final String serviceKey) {
+        final int keySize = storageService.getCapabilities().getKeySize();
+        return serviceKey.length() > keySize ? serviceKey.substring(0, keySize) : serviceKey;
+    }
+
+    /**
+     * Hand a secondary index lookup to the configured {@link Executor}, running it on the calling thread if it is
+     * rejected.
+     * 
+     * @param task the task to run
+     */
+    private void executeIndexLookup(@Nonnull final Runnable task) {
+        try {
+            secondaryServiceIndexExecutor.execute(task);
+        } catch (final RejectedExecutionException e) {
+            log.debug("Executor rejected secondary index lookup, running it on the calling thread");
+            task.run();
+        }
+    }
     
+    /**
+     * Entry in the in-process session cache, holding the contents of a master record from which new session objects
+     * can be built.
+     */
+    private static final class CachedSession {
+
+        /** Session ID. */
+        @Nonnull @NotEmpty private final String id;
+
+        /** Canonical name of the session subject. */
+        @Nonnull @NotEmpty private final String principalName;
+
+        /** Creation time of the session. */
+        @Nonnull private final Instant creationInstant;
+
+        /** Version of the master record. */
+        private final long version;
+
+        /** Last activity time of the session. */
+        @Nonnull private final Instant lastActivityInstant;
+
+        /** Bound IPv4 address, if any. */
+        @Nullable private final String ipv4;
+
+        /** Bound IPv6 address, if any. */
+        @Nullable private final String ipv6;
+
+        /** IDs of flows with stored results. */
+        @Nonnull @NonnullElements private final List<String> flowIds;
+
+        /** IDs of services with stored sessions. */
+        @Nonnull @NonnullElements private final List<String> svcIds;
+
+        /** Time the record was last confirmed to be current, in milliseconds since the epoch. */
+        private volatile long validated;
+
+        /**
+         * Constructor.
+         *
+         * @param s the session to cache
+         */
+        CachedSession(@Nonnull final StorageBackedIdPSession s) {
+            id = s.getId();
+            principalName = s.getPrincipalName();
+            creationInstant = s.getCreationInstant();
+            version = s.getVersion();
+            lastActivityInstant = s.getLastActivityInstant();
+            ipv4 = s.getAddress(AbstractIdPSession.AddressFamily.IPV4);
+            ipv6 = s.getAddress(AbstractIdPSession.AddressFamily.IPV6);
+            flowIds = List.copyOf(s.getAuthenticationResultMap().keySet());
+            svcIds = List.copyOf(s.getSPSessionMap().keySet());
+            validated = System.currentTimeMillis();
+        }
+
+        /**
+         * Get the session ID.
+         *
+         * @return session ID
+         */
+        @Nonnull @NotEmpty String getId() {
+            return id;
+        }
+
+        /**
+         * Get the version of the cached master record.
+         *
+         * @return record version
+         */
+        long getVersion() {
+            return version;
+        }
+
+        /**
+         * Get the last activity time of the session when cached.
+         *
+         * @return last activity time
+         */
+        @Nonnull Instant getLastActivityInstant() {
+            return lastActivityInstant;
+        }
+
+        /**
+         * Get the time the record was last confirmed to be current.
+         *
+         * @return milliseconds since the epoch
+         */
+        long getValidated() {
+            return validated;
+        }
+
+        /**
+         * Set the time the record was last confirmed to be current.
+         *
+         * @param time milliseconds since the epoch
+         */
+        void setValidated(final long time) {
+            validated = time;
+        }
+
+        /**
+         * Build a new session object from the cached record, with no child records yet loaded.
+         *
+         * @param manager parent SessionManager instance
+         *
+         * @return the new session
+         */
+        @Nonnull StorageBackedIdPSession newSession(@Nonnull final StorageBackedSessionManager manager) {
+            final StorageBackedIdPSession session =
+                    new StorageBackedIdPSession(manager, id, principalName, creationInstant);
+            session.setVersion(version);
+            session.doSetLastActivityInstant(lastActivityInstant);
+            if (ipv4 != null) {
+                session.doBindToAddress(ipv4);
+            }
+            if (ipv6 != null) {
+                session.doBindToAddress(ipv6);
+            }
+            for (final String flowId : flowIds) {
+                // An absent mapping is used to signify the existence of a result not yet loaded.
+                session.getAuthenticationResultMap().put(flowId, Optional.empty());
+            }
+            for (final String svcId : svcIds) {
+                session.getSPSessionMap().put(svcId, Optional.empty());
+            }
+            return session;
+        }
+    }
+
     /**
      * Simplifies Spring wiring of a true/false condition for the consistentAddress feature.
      * 
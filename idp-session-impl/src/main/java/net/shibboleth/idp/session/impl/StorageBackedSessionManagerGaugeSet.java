@@ -0,0 +1,150 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+
+import net.shibboleth.utilities.java.support.annotation.ParameterName;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A set of gauges for the in-process session cache and coalesced activity updates of a
+ * {@link StorageBackedSessionManager}.
+ */
+public class StorageBackedSessionManagerGaugeSet extends AbstractInitializableComponent
+        implements MetricSet, MetricFilter {
+
+    /** Default prefix for metrics. */
+    @Nonnull @NotEmpty private static final String DEFAULT_METRIC_NAME = "net.shibboleth.idp";
+
+    /** The map of gauges. */
+    @Nonnull @NonnullElements private final Map<String,Metric> gauges;
+
+    /** The session manager to report on. */
+    @NonnullAfterInit private StorageBackedSessionManager sessionManager;
+
+    /**
+     * Constructor.
+     *
+     * @param metricName name to include in metric names produced by this set
+     */
+    public StorageBackedSessionManagerGaugeSet(
+            @Nonnull @NotEmpty @ParameterName(name="metricName") final String metricName) {
+        Constraint.isNotEmpty(metricName, "Metric name cannot be null or empty");
+
+        gauges = new HashMap<>();
+
+        gauges.put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "cache", "hits"),
+                new Gauge<Long>() {
+                    public Long getValue() {
+                        return sessionManager.getSessionCacheHits();
+                    }
+                });
+
+        gauges.put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "cache", "misses"),
+                new Gauge<Long>() {
+                    public Long getValue() {
+                        return sessionManager.getSessionCacheMisses();
+                    }
+                });
+
+        gauges.put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "cache", "invalidations"),
+                new Gauge<Long>() {
+                    public Long getValue() {
+                        return sessionManager.getSessionCacheInvalidations();
+                    }
+                });
+
+        gauges.put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "cache", "size"),
+                new Gauge<Long>() {
+                    public Long getValue() {
+                        return sessionManager.getSessionCacheEntries();
+                    }
+                });
+
+        gauges.put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "cache", "hitratio"),
+                new RatioGauge() {
+                    protected Ratio getRatio() {
+                        final long hits = sessionManager.getSessionCacheHits();
+                        return Ratio.of(hits, hits + sessionManager.getSessionCacheMisses()
+                                + sessionManager.getSessionCacheInvalidations());
+                    }
+                });
+
+        gauges.put(
+                MetricRegistry.name(DEFAULT_METRIC_NAME, metricName, "activity"),
+                new Gauge<Map<String,Long>>() {
+                    public Map<String,Long> getValue() {
+                        return sessionManager.getActivityWriteBehindStatistics();
+                    }
+                });
+    }
+
+    /**
+     * Set the session manager to report on.
+     *
+     * @param manager session manager
+     */
+    public void setSessionManager(@Nonnull final StorageBackedSessionManager manager) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        sessionManager = Constraint.isNotNull(manager, "StorageBackedSessionManager cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        if (sessionManager == null) {
+            throw new ComponentInitializationException("Injected StorageBackedSessionManager cannot be null");
+        }
+        super.doInitialize();
+    }
+
+    /** {@inheritDoc} */
+    public Map<String,Metric> getMetrics() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    /** {@inheritDoc} */
+    public boolean matches(final String name, final Metric metric) {
+        return gauges.containsKey(name);
+    }
+
+}
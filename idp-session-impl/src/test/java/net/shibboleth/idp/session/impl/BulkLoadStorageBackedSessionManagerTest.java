@@ -0,0 +1,144 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.session.BasicSPSession;
+import net.shibboleth.idp.session.BulkReadStorageService;
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.criterion.SessionIdCriterion;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with bulk loading of child records. */
+public class BulkLoadStorageBackedSessionManagerTest extends StorageBackedSessionManagerTest {
+
+    private ExecutorService executor;
+
+    private CountingStorageService countingStorageService;
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() {
+        super.adjustProperties();
+        countingStorageService = new CountingStorageService();
+        countingStorageService.setId("TestStorageService");
+        storageService = countingStorageService;
+        sessionManager.setStorageService(storageService);
+        executor = Executors.newFixedThreadPool(4);
+        sessionManager.setBulkLoadExecutor(executor);
+    }
+
+    @AfterClass public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBulkLoad() throws ResolverException, SessionException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final IdPSession session = sessionManager.createSession("joe");
+        final Instant now = Instant.now();
+        for (int i = 0; i < 25; i++) {
+            session.addSPSession(
+                    new BasicSPSession("https://sp" + i + ".example.org/shibboleth", now, now.plusSeconds(3600)));
+        }
+        session.addAuthenticationResult(
+                new AuthenticationResult("AuthenticationFlow/Foo", new UsernamePrincipal("joe")));
+        session.addAuthenticationResult(
+                new AuthenticationResult("AuthenticationFlow/Bar", new UsernamePrincipal("joe")));
+
+        final IdPSession session2 =
+                sessionManager.resolveSingle(new CriteriaSet(new SessionIdCriterion(session.getId())));
+        Assert.assertNotNull(session2);
+
+        // Remove one record behind the session's back; its reference should be dropped.
+        try {
+            countingStorageService.delete(session.getId(), "https://sp7.example.org/shibboleth");
+        } catch (final IOException e) {
+            Assert.fail("Unable to delete record", e);
+        }
+
+        countingStorageService.reads.set(0);
+        countingStorageService.bulkReads.set(0);
+
+        Assert.assertEquals(session2.getSPSessions().size(), 24);
+        Assert.assertNull(session2.getSPSession("https://sp7.example.org/shibboleth"));
+        Assert.assertNotNull(session2.getSPSession("https://sp24.example.org/shibboleth"));
+        Assert.assertEquals(session2.getAuthenticationResults().size(), 2);
+
+        Assert.assertEquals(countingStorageService.bulkReads.get(), 2);
+        Assert.assertEquals(countingStorageService.reads.get(), 0);
+
+        sessionManager.destroySession(session.getId(), true);
+    }
+
+    /** Storage service counting single and bulk reads. */
+    private static class CountingStorageService extends MemoryStorageService implements BulkReadStorageService {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private final AtomicInteger bulkReads = new AtomicInteger();
+
+        /** {@inheritDoc} */
+        @Override
+        public <T> StorageRecord<T> read(@Nonnull final String context, @Nonnull final String key)
+                throws IOException {
+            reads.incrementAndGet();
+            return super.read(context, key);
+        }
+
+        /** {@inheritDoc} */
+        public Map<String,StorageRecord<?>> readAll(@Nonnull final String context,
+                @Nonnull final Collection<String> keys) throws IOException {
+            bulkReads.incrementAndGet();
+            final Map<String,StorageRecord<?>> records = new HashMap<>();
+            for (final String key : keys) {
+                final StorageRecord<?> record = super.read(context, key);
+                if (record != null) {
+                    records.put(key, record);
+                }
+            }
+            return records;
+        }
+    }
+
+}
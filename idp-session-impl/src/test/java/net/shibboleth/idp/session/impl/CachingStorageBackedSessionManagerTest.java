@@ -0,0 +1,225 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+
+import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.impl.DefaultAuthenticationResultSerializer;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.AbstractIdPSession.AddressFamily;
+import net.shibboleth.idp.session.criterion.SessionIdCriterion;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+import net.shibboleth.utilities.java.support.net.CookieManager;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import net.shibboleth.utilities.java.support.security.impl.SecureRandomIdentifierGenerationStrategy;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with the in-process session cache enabled. */
+public class CachingStorageBackedSessionManagerTest extends SessionManagerBaseTestCase {
+
+    private AuthenticationFlowDescriptor flowDescriptor;
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() throws ComponentInitializationException {
+        final DefaultAuthenticationResultSerializer resultSerializer = new DefaultAuthenticationResultSerializer();
+        resultSerializer.initialize();
+
+        flowDescriptor = new AuthenticationFlowDescriptor();
+        flowDescriptor.setId("AuthenticationFlow/Foo");
+        flowDescriptor.setLifetime(Duration.ofMinutes(1));
+        flowDescriptor.setInactivityTimeout(Duration.ofMinutes(1));
+        flowDescriptor.setResultSerializer(resultSerializer);
+        flowDescriptor.initialize();
+
+        sessionManager.setAuthenticationFlowDescriptors(Collections.singletonList(flowDescriptor));
+        sessionManager.setSessionCacheSize(100);
+    }
+
+    @Test
+    public void testCacheHit() throws ResolverException, SessionException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final long hits = sessionManager.getSessionCacheHits();
+        final long misses = sessionManager.getSessionCacheMisses();
+
+        final IdPSession session = sessionManager.createSession("joe");
+        final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+
+        final IdPSession one = sessionManager.resolveSingle(criteria);
+        final IdPSession two = sessionManager.resolveSingle(criteria);
+        Assert.assertNotNull(one);
+        Assert.assertNotNull(two);
+        // Each lookup gets its own object, built from the cached record.
+        Assert.assertNotSame(one, two);
+        Assert.assertEquals(two.getId(), one.getId());
+        Assert.assertEquals(two.getPrincipalName(), one.getPrincipalName());
+        Assert.assertEquals(sessionManager.getSessionCacheMisses(), misses + 1);
+        Assert.assertEquals(sessionManager.getSessionCacheHits(), hits + 1);
+
+        sessionManager.destroySession(session.getId(), true);
+    }
+
+    @Test
+    public void testChangedRecord() throws ResolverException, SessionException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final long invalidations = sessionManager.getSessionCacheInvalidations();
+
+        final IdPSession session = sessionManager.createSession("joe");
+        final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+
+        final IdPSession cached = sessionManager.resolveSingle(criteria);
+        Assert.assertNotNull(cached);
+        Assert.assertNotSame(cached, session);
+
+        // Update the record through another copy, as another node would.
+        ((StorageBackedIdPSession) session).bindToAddress("fe80::ca2a:14ff:fe2a:3e04");
+
+        final IdPSession reloaded = sessionManager.resolveSingle(criteria);
+        Assert.assertNotNull(reloaded);
+        Assert.assertNotSame(reloaded, cached);
+        Assert.assertEquals(((StorageBackedIdPSession) reloaded).getAddress(AddressFamily.IPV6),
+                "fe80::ca2a:14ff:fe2a:3e04");
+        Assert.assertEquals(sessionManager.getSessionCacheInvalidations(), invalidations + 1);
+
+        // Updates made through a looked up copy keep the cached record current.
+        ((StorageBackedIdPSession) reloaded).bindToAddress("192.168.1.1");
+        final IdPSession updated = sessionManager.resolveSingle(criteria);
+        Assert.assertEquals(((StorageBackedIdPSession) updated).getAddress(AddressFamily.IPV4), "192.168.1.1");
+        Assert.assertEquals(sessionManager.getSessionCacheInvalidations(), invalidations + 1);
+
+        sessionManager.destroySession(session.getId(), true);
+    }
+
+    @Test
+    public void testResultActivityAcrossNodes() throws ResolverException, SessionException,
+            ComponentInitializationException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final StorageBackedSessionManager otherManager = createManager();
+        try {
+            final IdPSession session = sessionManager.createSession("joe");
+            final AuthenticationResult result =
+                    new AuthenticationResult(flowDescriptor.getId(), new UsernamePrincipal("joe"));
+            session.addAuthenticationResult(result);
+            final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+
+            // Cache the session on this node, and load its result.
+            final IdPSession cachedFirst = sessionManager.resolveSingle(criteria);
+            Assert.assertNotNull(cachedFirst.getAuthenticationResult(flowDescriptor.getId()));
+
+            // Record activity for the result on the other node.
+            final IdPSession other = otherManager.resolveSingle(criteria);
+            final AuthenticationResult otherResult = other.getAuthenticationResult(flowDescriptor.getId());
+            final Instant activity = Instant.now().plusSeconds(30).truncatedTo(ChronoUnit.MILLIS);
+            otherResult.setLastActivityInstant(activity);
+            other.updateAuthenticationResultActivity(otherResult);
+
+            // The cached session on this node must see it.
+            final long hits = sessionManager.getSessionCacheHits();
+            final IdPSession cached = sessionManager.resolveSingle(criteria);
+            Assert.assertEquals(sessionManager.getSessionCacheHits(), hits + 1);
+            Assert.assertEquals(cached.getAuthenticationResult(flowDescriptor.getId()).getLastActivityInstant(),
+                    activity);
+
+            sessionManager.destroySession(session.getId(), true);
+        } finally {
+            otherManager.destroy();
+        }
+    }
+
+    @Test
+    public void testRemovedRecord() throws ResolverException, SessionException, IOException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final IdPSession session = sessionManager.createSession("joe");
+        final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+        Assert.assertNotNull(sessionManager.resolveSingle(criteria));
+
+        // Remove the record behind the cache.
+        storageService.deleteContext(session.getId());
+        Assert.assertNull(sessionManager.resolveSingle(criteria));
+        Assert.assertNull(sessionManager.resolveSingle(criteria));
+    }
+
+    @Test
+    public void testDestroy() throws ResolverException, SessionException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final IdPSession session = sessionManager.createSession("joe");
+        final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+        Assert.assertNotNull(sessionManager.resolveSingle(criteria));
+
+        sessionManager.destroySession(session.getId(), true);
+        Assert.assertNull(sessionManager.resolveSingle(criteria));
+    }
+
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testNegativeInterval() {
+        new StorageBackedSessionManager().setSessionCacheRevalidationInterval(Duration.ofSeconds(-1));
+    }
+
+    /**
+     * Create a second session manager sharing the same storage, as another node would.
+     * 
+     * @return the initialized manager
+     * 
+     * @throws ComponentInitializationException if initialization fails
+     */
+    private StorageBackedSessionManager createManager() throws ComponentInitializationException {
+        final CookieManager cookieManager = new CookieManager();
+        cookieManager.setHttpServletRequest(requestProxy);
+        cookieManager.setHttpServletResponse(responseProxy);
+        cookieManager.initialize();
+
+        final StorageBackedSessionManager manager = new StorageBackedSessionManager();
+        manager.setId("Other Session Manager");
+        manager.setSessionTimeout(Duration.ofSeconds(15));
+        manager.setStorageService(storageService);
+        manager.setIDGenerator(new SecureRandomIdentifierGenerationStrategy());
+        manager.setHttpServletRequest(requestProxy);
+        manager.setHttpServletResponse(responseProxy);
+        manager.setCookieManager(cookieManager);
+        manager.setAuthenticationFlowDescriptors(Collections.singletonList(flowDescriptor));
+        manager.setSessionCacheSize(100);
+        manager.initialize();
+        return manager;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.criterion.SPSessionCriterion;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.net.CookieManager;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import net.shibboleth.utilities.java.support.security.impl.SecureRandomIdentifierGenerationStrategy;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with a sharded secondary index. */
+public class ShardedStorageBackedSessionManagerTest extends StorageBackedSessionManagerTest {
+
+    private ExecutorService executor;
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() {
+        super.adjustProperties();
+        executor = Executors.newFixedThreadPool(2);
+        sessionManager.setSecondaryServiceIndexShards(4);
+        sessionManager.setSecondaryServiceIndexExecutor(executor);
+    }
+
+    @AfterClass public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testLegacyMigration() throws ResolverException, SessionException, IOException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final IdPSession session = sessionManager.createSession("joe");
+        final IdPSession session2 = sessionManager.createSession("joe2");
+
+        // Write an index record in the unsharded format, including a session that no longer exists.
+        final String serviceId = "https://sp3.example.org/shibboleth";
+        Assert.assertTrue(storageService.create(serviceId, "LegacyKey",
+                session.getId() + ",missing," + session2.getId() + ',',
+                Instant.now().plusSeconds(3600).toEpochMilli()));
+
+        final CriteriaSet criteria = new CriteriaSet(new SPSessionCriterion(serviceId, "LegacyKey"));
+        final List<IdPSession> sessions = new ArrayList<>();
+        for (final IdPSession s : sessionManager.resolve(criteria)) {
+            sessions.add(s);
+        }
+        Assert.assertEquals(sessions.size(), 2);
+        Assert.assertNull(storageService.read(serviceId, "LegacyKey"));
+
+        sessionManager.destroySession(session.getId(), true);
+
+        sessions.clear();
+        for (final IdPSession s : sessionManager.resolve(criteria)) {
+            sessions.add(s);
+        }
+        Assert.assertEquals(sessions.size(), 1);
+        Assert.assertEquals(sessions.get(0).getId(), session2.getId());
+
+        sessionManager.destroySession(session2.getId(), true);
+        Assert.assertFalse(sessionManager.resolve(criteria).iterator().hasNext());
+    }
+
+    @Test
+    public void testFailedMigration() throws ComponentInitializationException, ResolverException, IOException {
+
+        final FailingStorageService failingStorage = new FailingStorageService();
+        failingStorage.setId("FailingStorageService");
+        failingStorage.initialize();
+
+        final StorageBackedSessionManager manager = createManager(failingStorage, true);
+
+        try {
+            final String serviceId = "https://sp4.example.org/shibboleth";
+            Assert.assertTrue(failingStorage.create(serviceId, "LegacyKey", "one,two,",
+                    Instant.now().plusSeconds(3600).toEpochMilli()));
+            final CriteriaSet criteria = new CriteriaSet(new SPSessionCriterion(serviceId, "LegacyKey"));
+
+            // Masked failures writing the shards must leave the original record in place.
+            failingStorage.failShards = true;
+            manager.resolve(criteria);
+            Assert.assertNotNull(failingStorage.read(serviceId, "LegacyKey"));
+
+            failingStorage.failShards = false;
+            manager.resolve(criteria);
+            Assert.assertNull(failingStorage.read(serviceId, "LegacyKey"));
+
+            final StringBuilder migrated = new StringBuilder();
+            for (int shard = 0; shard < 4; shard++) {
+                final StorageRecord<?> record = failingStorage.read(serviceId, "LegacyKey!!" + shard);
+                if (record != null) {
+                    migrated.append(record.getValue());
+                }
+            }
+            Assert.assertTrue(migrated.toString().contains("one,"));
+            Assert.assertTrue(migrated.toString().contains("two,"));
+        } finally {
+            manager.destroy();
+            failingStorage.destroy();
+        }
+    }
+
+    @Test
+    public void testMigrationDisabled() throws ComponentInitializationException, ResolverException, IOException {
+
+        final FailingStorageService countingStorage = new FailingStorageService();
+        countingStorage.setId("CountingStorageService");
+        countingStorage.initialize();
+
+        final StorageBackedSessionManager manager = createManager(countingStorage, false);
+
+        try {
+            final String serviceId = "https://sp5.example.org/shibboleth";
+            Assert.assertTrue(countingStorage.create(serviceId, "LegacyKey", "one,two,",
+                    Instant.now().plusSeconds(3600).toEpochMilli()));
+            final CriteriaSet criteria = new CriteriaSet(new SPSessionCriterion(serviceId, "LegacyKey"));
+
+            // Without migration, only the shards are read and the original record is left alone.
+            Assert.assertFalse(manager.resolve(criteria).iterator().hasNext());
+            Assert.assertEquals(countingStorage.unshardedReads, 0);
+            Assert.assertNotNull(countingStorage.read(serviceId, "LegacyKey"));
+        } finally {
+            manager.destroy();
+            countingStorage.destroy();
+        }
+    }
+
+    /**
+     * Create a session manager with a sharded secondary index over a given storage service.
+     * 
+     * @param storage storage service
+     * @param migration whether to migrate unsharded index records
+     * 
+     * @return the initialized manager
+     * 
+     * @throws ComponentInitializationException if initialization fails
+     */
+    private StorageBackedSessionManager createManager(final MemoryStorageService storage, final boolean migration)
+            throws ComponentInitializationException {
+        final CookieManager cookieManager = new CookieManager();
+        cookieManager.setHttpServletRequest(requestProxy);
+        cookieManager.setHttpServletResponse(responseProxy);
+        cookieManager.initialize();
+
+        final StorageBackedSessionManager manager = new StorageBackedSessionManager();
+        manager.setId("Sharded Session Manager");
+        manager.setSessionTimeout(Duration.ofSeconds(15));
+        manager.setStorageService(storage);
+        manager.setIDGenerator(new SecureRandomIdentifierGenerationStrategy());
+        manager.setHttpServletRequest(requestProxy);
+        manager.setHttpServletResponse(responseProxy);
+        manager.setCookieManager(cookieManager);
+        manager.setSecondaryServiceIndex(true);
+        manager.setSecondaryServiceIndexShards(4);
+        manager.setSecondaryServiceIndexMigration(migration);
+        manager.setMaskStorageFailure(true);
+        manager.initialize();
+        return manager;
+    }
+
+    /** Storage service that can be told to fail writes to secondary index shards, and counts other index reads. */
+    private static class FailingStorageService extends MemoryStorageService {
+
+        /** Whether to fail writes to shards. */
+        private boolean failShards;
+
+        /** Number of reads of unsharded secondary index records. */
+        private int unshardedReads;
+
+        /** {@inheritDoc} */
+        @Override
+        public <T> StorageRecord<T> read(final String context, final String key) throws IOException {
+            if (context.startsWith("https://") && !key.contains("!!")) {
+                unshardedReads++;
+            }
+            return super.read(context, key);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean create(final String context, final String key, final String value, final Long expiration)
+                throws IOException {
+            if (failShards && key.contains("!!")) {
+                throw new IOException("Simulated failure");
+            }
+            return super.create(context, key, value, expiration);
+        }
+    }
+
+}
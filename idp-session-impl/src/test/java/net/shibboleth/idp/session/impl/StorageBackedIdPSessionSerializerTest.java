@@ -22,9 +22,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.time.Instant;
+import java.util.Set;
 
 import net.shibboleth.idp.authn.AuthenticationResult;
 import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.session.AbstractIdPSession.AddressFamily;
 import net.shibboleth.idp.session.BasicSPSession;
 import net.shibboleth.idp.session.SPSessionSerializerRegistry;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
@@ -55,25 +57,7 @@ public class StorageBackedIdPSessionSerializerTest {
     private StorageBackedIdPSessionSerializer serializer;
     
     @BeforeMethod public void setUp() throws ComponentInitializationException {
-        final MemoryStorageService storageService = new MemoryStorageService();
-        storageService.setId("TestStorageService");
-        storageService.initialize();
-
-        CookieManager cookieManager = new CookieManager();
-        cookieManager.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
-        cookieManager.setHttpServletResponse(new ThreadLocalHttpServletResponseProxy());
-        cookieManager.initialize();
-        
-        manager = new StorageBackedSessionManager();
-        manager.setStorageService(storageService);
-        manager.setIDGenerator(new SecureRandomIdentifierGenerationStrategy());
-        manager.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
-        manager.setHttpServletResponse(new ThreadLocalHttpServletResponseProxy());
-        manager.setCookieManager(cookieManager);
-        manager.setId("Test Session Manager");
-        manager.setTrackSPSessions(true);
-        manager.setSPSessionSerializerRegistry(new SPSessionSerializerRegistry());
-        manager.initialize();
+        manager = createManager(false);
 
         serializer = new StorageBackedIdPSessionSerializer(manager, null);
         serializer.initialize();
@@ -152,6 +136,103 @@ public class StorageBackedIdPSessionSerializerTest {
         Assert.assertEquals(session.getLastActivityInstant(), session2.getLastActivityInstant());
     }
     
+    @Test public void testCompact() throws Exception {
+        final Instant exp = Instant.ofEpochMilli(INSTANT).plusSeconds(3600);
+        final StorageBackedSessionManager compactManager = createManager(true);
+        final StorageBackedIdPSessionSerializer compactSerializer =
+                new StorageBackedIdPSessionSerializer(compactManager, null);
+        compactSerializer.initialize();
+        
+        final StorageBackedIdPSession session =
+                new StorageBackedIdPSession(compactManager, "test", "foo", Instant.ofEpochMilli(INSTANT));
+        session.doBindToAddress("127.0.0.1");
+        session.doBindToAddress("fe80::ca2a:14ff:fe2a:3e04");
+        session.doAddAuthenticationResult(new AuthenticationResult("authn/Password", new UsernamePrincipal("jdoe")));
+        session.doAddAuthenticationResult(new AuthenticationResult("b", new UsernamePrincipal("jdoe")));
+        session.doAddSPSession(new BasicSPSession("bar", Instant.ofEpochMilli(INSTANT), exp));
+        session.doAddSPSession(new BasicSPSession("baz", Instant.ofEpochMilli(INSTANT), exp));
+        
+        final String s = compactSerializer.serialize(session);
+        Assert.assertTrue(s.startsWith("~"));
+        Assert.assertTrue(s.length() < serializer.serialize(session).length());
+        
+        final StorageBackedIdPSession session2 =
+                compactSerializer.deserialize(2, "test", KEY, s, exp.toEpochMilli());
+        
+        Assert.assertEquals(session2.getId(), session.getId());
+        Assert.assertEquals(session2.getPrincipalName(), session.getPrincipalName());
+        Assert.assertEquals(session2.getCreationInstant(), session.getCreationInstant());
+        Assert.assertEquals(session2.getLastActivityInstant(), session.getLastActivityInstant());
+        Assert.assertEquals(session2.getAddress(AddressFamily.IPV4), "127.0.0.1");
+        Assert.assertEquals(session2.getAddress(AddressFamily.IPV6), "fe80::ca2a:14ff:fe2a:3e04");
+        Assert.assertEquals(session2.getAuthenticationResultMap().keySet(), Set.of("authn/Password", "b"));
+        Assert.assertEquals(session2.getSPSessionMap().keySet(), Set.of("bar", "baz"));
+        Assert.assertEquals(session2.getVersion(), 2);
+    }
+
+    @Test public void testCompactMixedFormats() throws Exception {
+        final long exp = INSTANT + (60 * 60 * 1000);
+        final StorageBackedSessionManager compactManager = createManager(true);
+        final StorageBackedIdPSessionSerializer compactSerializer =
+                new StorageBackedIdPSessionSerializer(compactManager, null);
+        compactSerializer.initialize();
+        
+        final StorageBackedIdPSession session =
+                compactSerializer.deserialize(1, "test", KEY, fileToString(DATAPATH + "basicIdPSession.json"), exp);
+        Assert.assertEquals(session.getPrincipalName(), "foo");
+        Assert.assertEquals(session.getAddress(AddressFamily.IPV4), "127.0.0.1");
+        
+        final StorageBackedIdPSession session2 =
+                serializer.deserialize(1, "test", KEY, compactSerializer.serialize(session), exp);
+        Assert.assertEquals(session2.getPrincipalName(), session.getPrincipalName());
+        Assert.assertEquals(session2.getCreationInstant(), session.getCreationInstant());
+        Assert.assertEquals(session2.getAddress(AddressFamily.IPV4), "127.0.0.1");
+    }
+
+    @Test public void testCompactInvalid() throws Exception {
+        final StorageBackedSessionManager compactManager = createManager(true);
+        final StorageBackedIdPSessionSerializer compactSerializer =
+                new StorageBackedIdPSessionSerializer(compactManager, null);
+        compactSerializer.initialize();
+        
+        final StorageBackedIdPSession session =
+                new StorageBackedIdPSession(compactManager, "test", "foo", Instant.ofEpochMilli(INSTANT));
+        final String s = compactSerializer.serialize(session);
+        
+        for (final String value : new String[] {"~", "~!!", "~AA", s.substring(0, s.length() - 2), s + "AAAA"}) {
+            try {
+                compactSerializer.deserialize(1, "test", KEY, value, INSTANT);
+                Assert.fail();
+            } catch (IOException e) {
+                
+            }
+        }
+    }
+
+    private StorageBackedSessionManager createManager(final boolean compact) throws ComponentInitializationException {
+        final MemoryStorageService storageService = new MemoryStorageService();
+        storageService.setId("TestStorageService");
+        storageService.initialize();
+
+        CookieManager cookieManager = new CookieManager();
+        cookieManager.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
+        cookieManager.setHttpServletResponse(new ThreadLocalHttpServletResponseProxy());
+        cookieManager.initialize();
+        
+        final StorageBackedSessionManager sessionManager = new StorageBackedSessionManager();
+        sessionManager.setStorageService(storageService);
+        sessionManager.setIDGenerator(new SecureRandomIdentifierGenerationStrategy());
+        sessionManager.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
+        sessionManager.setHttpServletResponse(new ThreadLocalHttpServletResponseProxy());
+        sessionManager.setCookieManager(cookieManager);
+        sessionManager.setId("Test Session Manager");
+        sessionManager.setTrackSPSessions(true);
+        sessionManager.setSPSessionSerializerRegistry(new SPSessionSerializerRegistry());
+        sessionManager.setCompactSerialization(compact);
+        sessionManager.initialize();
+        return sessionManager;
+    }
+    
     private String fileToString(String pathname) throws URISyntaxException, IOException {
         try (FileInputStream stream = new FileInputStream(
                 new File(StorageBackedIdPSessionSerializerTest.class.getResource(pathname).toURI()))) {
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.criterion.SessionIdCriterion;
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with coalesced activity updates. */
+public class WriteBehindStorageBackedSessionManagerTest extends SessionManagerBaseTestCase {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() {
+        sessionManager.setSessionTimeout(Duration.ofHours(1));
+        sessionManager.setActivityFlushInterval(Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void testCoalesce() throws ResolverException, SessionException, IOException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final StorageBackedIdPSession session = (StorageBackedIdPSession) sessionManager.createSession("joe");
+        final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+        final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        final Map<String,Long> stats = sessionManager.getActivityWriteBehindStatistics();
+
+        // The first update is written through, since the record isn't yet tracked.
+        session.setLastActivityInstant(now);
+        Assert.assertEquals(getStoredExpiration(session), now.plus(Duration.ofHours(1)).toEpochMilli());
+        Assert.assertEquals(sessionManager.getActivityWriteBehindStatistics().get("writes").longValue(),
+                stats.get("writes") + 1);
+
+        // The next is deferred, but visible on lookup.
+        session.setLastActivityInstant(now.plusSeconds(5));
+        Assert.assertEquals(getStoredExpiration(session), now.plus(Duration.ofHours(1)).toEpochMilli());
+        Assert.assertEquals(sessionManager.getActivityWriteBehindStatistics().get("coalesced").longValue(),
+                stats.get("coalesced") + 1);
+        Assert.assertEquals(sessionManager.resolveSingle(criteria).getLastActivityInstant(), now.plusSeconds(5));
+
+        sessionManager.flushActivity();
+        Assert.assertEquals(getStoredExpiration(session),
+                now.plusSeconds(5).plus(Duration.ofHours(1)).toEpochMilli());
+        Assert.assertEquals(sessionManager.getActivityWriteBehindStatistics().get("flushed").longValue(),
+                stats.get("flushed") + 1);
+
+        sessionManager.destroySession(session.getId(), true);
+    }
+
+    @Test
+    public void testNearExpiration() throws SessionException, IOException {
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final StorageBackedIdPSession session = (StorageBackedIdPSession) sessionManager.createSession("joe");
+        final Instant then = Instant.now().truncatedTo(ChronoUnit.MILLIS).minus(Duration.ofMinutes(59));
+
+        // The stored record is within two flush intervals of timing out, so updates go straight to storage.
+        session.setLastActivityInstant(then);
+        session.setLastActivityInstant(then.plusSeconds(5));
+        Assert.assertEquals(getStoredExpiration(session),
+                then.plusSeconds(5).plus(Duration.ofHours(1)).toEpochMilli());
+
+        sessionManager.destroySession(session.getId(), true);
+    }
+
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testNegativeInterval() {
+        new StorageBackedSessionManager().setActivityFlushInterval(Duration.ofSeconds(-1));
+    }
+
+    /**
+     * Get the expiration of a session's master record in storage.
+     * 
+     * @param session the session
+     * 
+     * @return the stored expiration
+     * 
+     * @throws IOException if an error occurs reading the record
+     */
+    private long getStoredExpiration(final IdPSession session) throws IOException {
+        return storageService.read(session.getId(), StorageBackedSessionManager.SESSION_MASTER_KEY).getExpiration();
+    }
+
+}